@@ -0,0 +1,106 @@
+package ru.netology.backend;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.util.FileSystemUtils;
+import org.testcontainers.containers.PostgreSQLContainer;
+import ru.netology.backend.model.entity.UserEntity;
+import ru.netology.backend.repository.UserRepository;
+import ru.netology.backend.security.AuthenticatedUser;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The backend started in a benchmark fork: the whole service layer against a real
+ * Postgres, without a web server. The database is a Testcontainers Postgres, or the
+ * one given with {@code -Dbenchmark.jdbc-url} (and {@code benchmark.jdbc-username},
+ * {@code benchmark.jdbc-password}), which should be a throwaway database: benchmark
+ * users and their rows are left in it. Content goes to a temporary directory that is
+ * removed on close.
+ */
+public class BenchmarkApplication implements AutoCloseable {
+
+    private final PostgreSQLContainer<?> postgres;
+    private final Path storageLocation;
+    private final ConfigurableApplicationContext context;
+
+    private BenchmarkApplication(PostgreSQLContainer<?> postgres, Path storageLocation,
+                                 ConfigurableApplicationContext context) {
+        this.postgres = postgres;
+        this.storageLocation = storageLocation;
+        this.context = context;
+    }
+
+    public static BenchmarkApplication start() throws IOException {
+        Map<String, String> properties = new HashMap<>();
+        PostgreSQLContainer<?> postgres = null;
+        String jdbcUrl = System.getProperty("benchmark.jdbc-url");
+        if (jdbcUrl != null) {
+            properties.put("spring.datasource.url", jdbcUrl);
+            properties.put("spring.datasource.username", System.getProperty("benchmark.jdbc-username", "postgres"));
+            properties.put("spring.datasource.password", System.getProperty("benchmark.jdbc-password", ""));
+        } else {
+            postgres = new PostgreSQLContainer<>("postgres:14-alpine");
+            postgres.start();
+            properties.put("spring.datasource.url", postgres.getJdbcUrl());
+            properties.put("spring.datasource.username", postgres.getUsername());
+            properties.put("spring.datasource.password", postgres.getPassword());
+        }
+
+        Path storageLocation = Files.createTempDirectory("benchmark-storage");
+        properties.put("app.storage.type", "local");
+        properties.put("app.storage.location", storageLocation.toString());
+        // Content of files deleted between iterations is unlinked right away
+        properties.put("app.storage.gc.delay", "PT0S");
+        properties.put("app.storage.gc.interval", "PT1S");
+        properties.put("spring.jpa.show-sql", "false");
+        properties.put("logging.level.root", "WARN");
+
+        // Passed as arguments, which override application.yml
+        String[] args = properties.entrySet().stream()
+                .map(property -> "--" + property.getKey() + "=" + property.getValue())
+                .toArray(String[]::new);
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(BackendApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(args);
+        return new BenchmarkApplication(postgres, storageLocation, context);
+    }
+
+    public <T> T getBean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    /**
+     * A new user, signed in for every thread of the fork, as the services expect a
+     * request's user to be.
+     */
+    public UserEntity signInNewUser() {
+        UserEntity user = new UserEntity();
+        user.setLogin("benchmark-" + UUID.randomUUID());
+        user.setPassword("-");
+        user = getBean(UserRepository.class).save(user);
+
+        AuthenticatedUser principal = new AuthenticatedUser(user);
+        SecurityContextHolder.setStrategyName(SecurityContextHolder.MODE_GLOBAL);
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities()));
+        return user;
+    }
+
+    @Override
+    public void close() throws IOException {
+        context.close();
+        FileSystemUtils.deleteRecursively(storageLocation);
+        if (postgres != null) {
+            postgres.stop();
+        }
+    }
+}
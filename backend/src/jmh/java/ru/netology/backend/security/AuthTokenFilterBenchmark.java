@@ -0,0 +1,71 @@
+package ru.netology.backend.security;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import ru.netology.backend.BenchmarkApplication;
+import ru.netology.backend.model.entity.UserEntity;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolving the token of a request in {@link AuthTokenFilter}: from the token cache,
+ * from the database after the cache entry was dropped, and for a token that does not
+ * exist, which is looked up in the database every time.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class AuthTokenFilterBenchmark {
+
+    private static final FilterChain NO_OP_CHAIN = (request, response) -> { };
+
+    @Param({"cached", "database", "unknown"})
+    private String lookup;
+
+    private BenchmarkApplication application;
+    private TokenCache tokenCache;
+    private AuthTokenFilter authTokenFilter;
+    private String token;
+    private MockHttpServletRequest request;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        application = BenchmarkApplication.start();
+        UserEntity user = application.signInNewUser();
+        SecurityContextHolder.setStrategyName(SecurityContextHolder.MODE_THREADLOCAL);
+
+        TokenService tokenService = application.getBean(TokenService.class);
+        tokenCache = application.getBean(TokenCache.class);
+        authTokenFilter = new AuthTokenFilter(tokenService);
+        token = "unknown".equals(lookup) ? UUID.randomUUID().toString() : tokenService.createToken(user).getToken();
+
+        request = new MockHttpServletRequest("GET", "/list");
+        request.setServletPath("/list");
+        request.addHeader("auth-token", "Bearer " + token);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        application.close();
+    }
+
+    @Benchmark
+    public Authentication resolveToken() throws ServletException, IOException {
+        if ("database".equals(lookup)) {
+            tokenCache.invalidate(token);
+        }
+        SecurityContextHolder.clearContext();
+        authTokenFilter.doFilter(request, new MockHttpServletResponse(), NO_OP_CHAIN);
+        return SecurityContextHolder.getContext().getAuthentication();
+    }
+}
@@ -0,0 +1,66 @@
+package ru.netology.backend.service;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.netology.backend.BenchmarkApplication;
+import ru.netology.backend.model.entity.UserEntity;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A page of the file list of an account holding {@code rows} files, the first one
+ * and the one after it, which is read through its cursor. Keyset pagination should
+ * keep both flat as the account grows.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class FileListBenchmark {
+
+    private static final int PAGE_SIZE = 100;
+
+    @Param({"1000", "100000", "1000000"})
+    private int rows;
+
+    @Param({"name", "date"})
+    private String sort;
+
+    private BenchmarkApplication application;
+    private FileStorageService fileStorageService;
+    private String nextCursor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        application = BenchmarkApplication.start();
+        UserEntity user = application.signInNewUser();
+        fileStorageService = application.getBean(FileStorageService.class);
+
+        // Rows only: the list never reads the content
+        JdbcTemplate jdbcTemplate = application.getBean(JdbcTemplate.class);
+        jdbcTemplate.update("INSERT INTO files (filename, storage_filename, size, created_at, version, versioned, user_id) "
+                + "SELECT 'file-' || lpad(i::text, 7, '0'), 'benchmark', i, now() - i * interval '1 second', "
+                + "1, false, ? FROM generate_series(1, ?) i", user.getId(), rows);
+        jdbcTemplate.execute("ANALYZE files");
+
+        nextCursor = fileStorageService.getFilesList(PAGE_SIZE, sort, "desc", null).getNextCursor();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        application.close();
+    }
+
+    @Benchmark
+    public FilePage firstPage() {
+        return fileStorageService.getFilesList(PAGE_SIZE, sort, "desc", null);
+    }
+
+    @Benchmark
+    public FilePage nextPage() {
+        return fileStorageService.getFilesList(PAGE_SIZE, sort, "desc", nextCursor);
+    }
+}
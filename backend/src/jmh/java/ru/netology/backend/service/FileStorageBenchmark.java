@@ -0,0 +1,84 @@
+package ru.netology.backend.service;
+
+import org.openjdk.jmh.annotations.*;
+import ru.netology.backend.BenchmarkApplication;
+import ru.netology.backend.model.entity.FileEntity;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Storing and reading back one file through {@link FileStorageService}, at sizes from
+ * a small document to a large upload. The content is random, so it is stored
+ * uncompressed, and every stored file gets new content: each call hashes, writes and
+ * records a blob instead of taking a reference to an existing one.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class FileStorageBenchmark {
+
+    private static final String STORED_FILENAME = "stored.bin";
+
+    @Param({"4096", "1048576", "16777216"})
+    private int size;
+
+    private BenchmarkApplication application;
+    private FileStorageService fileStorageService;
+    private FileBatchService fileBatchService;
+    private byte[] content;
+    private long counter;
+    private final List<String> storedFilenames = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        application = BenchmarkApplication.start();
+        application.signInNewUser();
+        fileStorageService = application.getBean(FileStorageService.class);
+        fileBatchService = application.getBean(FileBatchService.class);
+
+        content = new byte[size];
+        new Random(42).nextBytes(content);
+        fileStorageService.storeFile(new ByteArrayInputStream(content), STORED_FILENAME);
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteStoredFiles() {
+        // Keeps the disk from filling up over a run of large files
+        for (int from = 0; from < storedFilenames.size(); from += 1000) {
+            fileBatchService.deleteFiles(storedFilenames.subList(from, Math.min(from + 1000, storedFilenames.size())));
+        }
+        storedFilenames.clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        application.close();
+    }
+
+    @Benchmark
+    public FileEntity storeFile() {
+        counter++;
+        ByteBuffer.wrap(content).putLong(0, counter);
+        String filename = "file-" + counter;
+        storedFilenames.add(filename);
+        return fileStorageService.storeFile(new ByteArrayInputStream(content), filename);
+    }
+
+    @Benchmark
+    public long loadFileAsResource() throws IOException {
+        try (InputStream in = fileStorageService.loadFileAsResource(STORED_FILENAME).getInputStream()) {
+            return in.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package ru.netology.backend.service;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Filename normalisation, which every upload, rename and batch item goes through.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class FilenameNormalizationBenchmark {
+
+    @Param({"report.pdf", "photos/2024/summer/IMG_0001.jpg", "a/./b/../c//notes with spaces.txt"})
+    private String filename;
+
+    @Benchmark
+    public String normalizeFilename() {
+        return FileStorageServiceImpl.normalizeFilename(filename);
+    }
+}
@@ -0,0 +1,62 @@
+package ru.netology.backend.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
+import org.springframework.security.config.web.server.SecurityWebFiltersOrder;
+import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.web.server.SecurityWebFilterChain;
+import org.springframework.security.web.server.authentication.HttpStatusServerEntryPoint;
+import org.springframework.security.web.server.context.NoOpServerSecurityContextRepository;
+import org.springframework.security.web.server.util.matcher.ServerWebExchangeMatcher;
+import reactor.core.scheduler.Scheduler;
+import ru.netology.backend.security.ReactiveAuthTokenFilter;
+import ru.netology.backend.security.TokenCache;
+import ru.netology.backend.security.TokenService;
+
+import java.net.InetSocketAddress;
+
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@EnableWebFluxSecurity
+public class ReactiveSecurityConfig {
+
+    @Bean
+    public SecurityWebFilterChain securityWebFilterChain(
+            ServerHttpSecurity http,
+            TokenService tokenService,
+            TokenCache tokenCache,
+            Scheduler blockingScheduler,
+            Environment environment) {
+        http
+                .csrf(ServerHttpSecurity.CsrfSpec::disable)
+                .httpBasic(ServerHttpSecurity.HttpBasicSpec::disable)
+                .formLogin(ServerHttpSecurity.FormLoginSpec::disable)
+                .logout(ServerHttpSecurity.LogoutSpec::disable)
+                .cors(cors -> { })
+                .securityContextRepository(NoOpServerSecurityContextRepository.getInstance())
+                .exceptionHandling(exceptions -> exceptions
+                        .authenticationEntryPoint(new HttpStatusServerEntryPoint(HttpStatus.FORBIDDEN)))
+                .authorizeExchange(exchanges -> exchanges
+                        .pathMatchers("/login", "/actuator/health").permitAll()
+                        // Scraped without a token on the management port only; elsewhere it needs one
+                        .matchers(onPort(SecurityConfig.managementPort(environment))).permitAll()
+                        .anyExchange().authenticated())
+                .addFilterAt(new ReactiveAuthTokenFilter(tokenService, tokenCache, blockingScheduler),
+                        SecurityWebFiltersOrder.AUTHENTICATION);
+
+        return http.build();
+    }
+
+    private static ServerWebExchangeMatcher onPort(int port) {
+        return exchange -> {
+            InetSocketAddress address = exchange.getRequest().getLocalAddress();
+            return address != null && address.getPort() == port
+                    ? ServerWebExchangeMatcher.MatchResult.match()
+                    : ServerWebExchangeMatcher.MatchResult.notMatch();
+        };
+    }
+}
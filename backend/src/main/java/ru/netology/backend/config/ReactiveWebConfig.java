@@ -0,0 +1,64 @@
+package ru.netology.backend.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.web.reactive.config.BlockingExecutionConfigurer;
+import org.springframework.web.reactive.config.CorsRegistry;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * WebFlux setup for the {@code reactive} profile. Request and response bodies stay on
+ * the event loop; metadata access through JPA and other blocking calls run on a
+ * bounded scheduler sized like the connection pool, so a burst of requests queues
+ * there instead of spawning threads.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveWebConfig implements WebFluxConfigurer {
+
+    private final Scheduler blockingScheduler;
+
+    public ReactiveWebConfig(
+            @Value("${app.reactive.blocking-threads:10}") int blockingThreads,
+            @Value("${app.reactive.blocking-queue-size:10000}") int blockingQueueSize) {
+        this.blockingScheduler = Schedulers.newBoundedElastic(blockingThreads, blockingQueueSize, "blocking-io");
+    }
+
+    @Bean(destroyMethod = "dispose")
+    public Scheduler blockingScheduler() {
+        return blockingScheduler;
+    }
+
+    /**
+     * Tomcat is on the classpath for the servlet stack and would otherwise be picked;
+     * Netty serves all connections from a few event loop threads.
+     */
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        NettyReactiveWebServerFactory factory = new NettyReactiveWebServerFactory();
+        // Bytes in/out per connection; one URI tag, per-file paths would explode the series count
+        factory.addServerCustomizers(server -> server.metrics(true, uri -> "/"));
+        return factory;
+    }
+
+    @Override
+    public void addCorsMappings(CorsRegistry registry) {
+        registry.addMapping("/**")
+                .allowCredentials(true)
+                .allowedOrigins("http://localhost:8081")
+                .allowedMethods("*")
+                .exposedHeaders("X-Next-Cursor");
+    }
+
+    @Override
+    public void configureBlockingExecution(BlockingExecutionConfigurer configurer) {
+        // Handlers with plain return types, such as /login, run here instead of on the event loop
+        configurer.setExecutor(new TaskExecutorAdapter(blockingScheduler::schedule));
+    }
+}
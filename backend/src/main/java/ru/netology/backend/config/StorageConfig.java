@@ -0,0 +1,90 @@
+package ru.netology.backend.config;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.util.StringUtils;
+import org.springframework.util.unit.DataSize;
+import ru.netology.backend.storage.BlobStore;
+import ru.netology.backend.storage.LocalBlobStore;
+import ru.netology.backend.storage.S3BlobStore;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+
+import java.net.URI;
+import java.nio.file.Paths;
+
+/**
+ * Selects the storage engine for file content with {@code app.storage.type}:
+ * {@code local} (default) keeps blobs under {@code app.storage.location}, {@code s3}
+ * keeps them in an S3-compatible bucket so several backend instances can share them.
+ */
+@Configuration
+public class StorageConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "app.storage.type", havingValue = "local", matchIfMissing = true)
+    public LocalBlobStore localBlobStore(
+            @Value("${app.storage.location}") String storageLocation,
+            @Value("${app.storage.local.shard-levels:2}") int shardLevels) {
+        return new LocalBlobStore(Paths.get(storageLocation), shardLevels);
+    }
+
+    /**
+     * Moves blobs from the old flat layout into shard directories in the background,
+     * so the application serves requests while an existing directory is migrated.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "app.storage.local.reshard-on-startup", havingValue = "true")
+    public ApplicationListener<ApplicationReadyEvent> localBlobStoreResharding(
+            ObjectProvider<LocalBlobStore> localBlobStore,
+            Environment environment) {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("blob-reshard-");
+        executor.setDaemon(true);
+        executor.setVirtualThreads(Threading.VIRTUAL.isActive(environment));
+        return event -> localBlobStore.ifAvailable(store -> executor.execute(store::reshard));
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "app.storage.type", havingValue = "s3")
+    public S3Client s3Client(
+            @Value("${app.storage.s3.endpoint:}") String endpoint,
+            @Value("${app.storage.s3.region:us-east-1}") String region,
+            @Value("${app.storage.s3.access-key:}") String accessKey,
+            @Value("${app.storage.s3.secret-key:}") String secretKey,
+            @Value("${app.storage.s3.path-style-access:true}") boolean pathStyleAccess) {
+        S3ClientBuilder builder = S3Client.builder()
+                .region(Region.of(region))
+                .forcePathStyle(pathStyleAccess);
+
+        if (StringUtils.hasText(endpoint)) {
+            builder.endpointOverride(URI.create(endpoint));
+        }
+        // Without explicit keys the default AWS credentials chain is used
+        if (StringUtils.hasText(accessKey)) {
+            builder.credentialsProvider(StaticCredentialsProvider.create(
+                    AwsBasicCredentials.create(accessKey, secretKey)));
+        }
+        return builder.build();
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "app.storage.type", havingValue = "s3")
+    public BlobStore s3BlobStore(
+            S3Client s3Client,
+            @Value("${app.storage.s3.bucket}") String bucket,
+            @Value("${app.storage.s3.prefix:}") String prefix,
+            @Value("${app.storage.s3.part-size:16MB}") DataSize partSize) {
+        return new S3BlobStore(s3Client, bucket, prefix, partSize.toBytes());
+    }
+}
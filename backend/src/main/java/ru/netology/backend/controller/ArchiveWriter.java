@@ -0,0 +1,70 @@
+package ru.netology.backend.controller;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ContentDisposition;
+import org.springframework.stereotype.Component;
+import ru.netology.backend.exception.BadRequestException;
+import ru.netology.backend.service.ArchiveEntry;
+import ru.netology.backend.web.ZipStreamWriter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Streams files into a ZIP archive as each blob is read, for both web stacks. Nothing
+ * is staged: the first entry goes out as soon as its blob is opened, and the archive
+ * ends with the central directory once the last one is written.
+ */
+@Component
+public class ArchiveWriter {
+
+    static final String APPLICATION_ZIP_VALUE = "application/zip";
+
+    private final int deflateLevel;
+
+    public ArchiveWriter(@Value("${app.archive.deflate-level:1}") int deflateLevel) {
+        this.deflateLevel = deflateLevel;
+    }
+
+    public void write(List<ArchiveEntry> entries, ZipStreamWriter.Method method, OutputStream out) throws IOException {
+        try (ZipStreamWriter zip = new ZipStreamWriter(out, method, deflateLevel)) {
+            for (ArchiveEntry entry : entries) {
+                try (InputStream content = entry.open()) {
+                    zip.putEntry(entry.getFilename(), entry.getSize(), entry.getLastModified(), content);
+                }
+            }
+            zip.finish();
+        }
+    }
+
+    static ZipStreamWriter.Method parseMethod(String compression) {
+        if (compression == null) {
+            return ZipStreamWriter.Method.DEFLATE;
+        }
+        try {
+            return ZipStreamWriter.Method.fromParameter(compression);
+        } catch (IllegalArgumentException ex) {
+            throw new BadRequestException("Unsupported compression: " + compression);
+        }
+    }
+
+    /**
+     * Content-Disposition for the archive, named after the prefix it was built from.
+     */
+    static String contentDisposition(String prefix) {
+        String path = prefix != null ? prefix.replaceAll("^/+|/+$", "") : "";
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        String filename = (name.isEmpty() ? "files" : name) + ".zip";
+        ContentDisposition.Builder disposition = ContentDisposition.attachment();
+        // Non-ASCII names go into filename*, which every current browser reads
+        if (StandardCharsets.US_ASCII.newEncoder().canEncode(filename)) {
+            disposition.filename(filename);
+        } else {
+            disposition.filename(filename, StandardCharsets.UTF_8);
+        }
+        return disposition.build().toString();
+    }
+}
@@ -1,25 +1,94 @@
 package ru.netology.backend.controller;
 
+import ru.netology.backend.model.dto.ArchiveDto;
+import ru.netology.backend.model.dto.BatchDeleteDto;
+import ru.netology.backend.model.dto.BatchRenameDto;
+import ru.netology.backend.model.dto.BatchResultDto;
 import ru.netology.backend.model.dto.FileDto;
+import ru.netology.backend.model.dto.FileVersionDto;
 import ru.netology.backend.model.dto.RenameFileDto;
-import ru.netology.backend.model.entity.FileEntity;
+import ru.netology.backend.model.dto.UsageDto;
+import ru.netology.backend.model.dto.VersioningDto;
+import ru.netology.backend.service.ArchiveEntry;
+import ru.netology.backend.service.BlobService;
+import ru.netology.backend.service.DeltaInputStream;
+import ru.netology.backend.service.DeltaSyncService;
+import ru.netology.backend.service.FileBatchService;
+import ru.netology.backend.service.FilePage;
+import ru.netology.backend.service.FileSignature;
 import ru.netology.backend.service.FileStorageService;
-import org.springframework.core.io.Resource;
+import ru.netology.backend.service.FileVersionService;
+import ru.netology.backend.service.QuotaService;
+import ru.netology.backend.service.StagedFile;
+import ru.netology.backend.service.StoredFile;
+import ru.netology.backend.web.BlockSignatures;
+import ru.netology.backend.web.ContentDigest;
+import ru.netology.backend.web.ZipStreamWriter;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
 
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class FileController {
 
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
     private final FileStorageService fileStorageService;
+    private final FileBatchService fileBatchService;
+    private final DeltaSyncService deltaSyncService;
+    private final FileVersionService fileVersionService;
+    private final QuotaService quotaService;
+    private final BlobService blobService;
+    private final FileDownloadWriter fileDownloadWriter;
+    private final ArchiveWriter archiveWriter;
+    private final DataSize maxStreamUploadSize;
+    private final ObjectWriter listWriter;
 
-    public FileController(FileStorageService fileStorageService) {
+    public FileController(
+            FileStorageService fileStorageService,
+            FileBatchService fileBatchService,
+            DeltaSyncService deltaSyncService,
+            FileVersionService fileVersionService,
+            QuotaService quotaService,
+            BlobService blobService,
+            FileDownloadWriter fileDownloadWriter,
+            ArchiveWriter archiveWriter,
+            @Value("${app.storage.max-stream-upload-size:10GB}") DataSize maxStreamUploadSize,
+            ObjectMapper objectMapper) {
         this.fileStorageService = fileStorageService;
+        this.fileBatchService = fileBatchService;
+        this.deltaSyncService = deltaSyncService;
+        this.fileVersionService = fileVersionService;
+        this.quotaService = quotaService;
+        this.blobService = blobService;
+        this.fileDownloadWriter = fileDownloadWriter;
+        this.archiveWriter = archiveWriter;
+        this.maxStreamUploadSize = maxStreamUploadSize;
+        // Let the output buffers fill up instead of flushing every element
+        this.listWriter = objectMapper.writerFor(FileDto.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
     }
 
     @PostMapping("/file")
@@ -27,18 +96,85 @@ public class FileController {
             @RequestParam("file") MultipartFile file,
             @RequestParam(value = "filename", required = false) String filename) {
 
-        FileEntity savedFile = fileStorageService.storeFile(file, filename);
+        // Multipart content is staged before a transaction takes a connection
+        StagedFile staged = fileStorageService.stageFile(file, filename);
+        try {
+            fileStorageService.storeStagedFile(staged, null);
+        } finally {
+            // Already moved into the blob store on success
+            deleteQuietly(staged.getPath());
+        }
+        return ResponseEntity.ok().build();
+    }
+
+    @PostMapping(value = "/file", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<Void> uploadFileStream(
+            @RequestParam("filename") String filename,
+            HttpServletRequest request) throws IOException {
+
+        if (request.getContentLengthLong() > maxStreamUploadSize.toBytes()) {
+            throw new MaxUploadSizeExceededException(maxStreamUploadSize.toBytes());
+        }
+
+        // Content the user already stores is not read again; a client sending Expect: 100-continue never sends it
+        ContentDigest digest = requestDigest(request.getHeader(ContentDigest.REPR_DIGEST),
+                request.getHeader(ContentDigest.CONTENT_DIGEST));
+        if (digest != null && digest.getSha256() != null
+                && fileStorageService.storeExistingFile(digest.getSha256(), filename).isPresent()) {
+            return ResponseEntity.ok().build();
+        }
+
+        // Raw body is staged without multipart spooling, before a transaction takes a connection
+        StagedFile staged = blobService.stage(request.getInputStream(), filename, maxStreamUploadSize.toBytes());
+        try {
+            fileStorageService.storeStagedFile(staged, digest);
+        } finally {
+            // Already moved into the blob store on success
+            deleteQuietly(staged.getPath());
+        }
         return ResponseEntity.ok().build();
     }
 
     @GetMapping("/file")
-    public ResponseEntity<Resource> downloadFile(@RequestParam("filename") String filename) {
-        Resource resource = fileStorageService.loadFileAsResource(filename);
+    public void downloadFile(
+            @RequestParam("filename") String filename,
+            @RequestParam(value = "version", required = false) Integer version,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
 
-        return ResponseEntity.ok()
-                .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
-                .body(resource);
+        StoredFile storedFile = fileStorageService.loadStoredFile(filename, version);
+        fileDownloadWriter.write(storedFile, request, response);
+    }
+
+    @GetMapping("/archive")
+    public void downloadArchive(
+            @RequestParam(value = "filename", required = false) List<String> filenames,
+            @RequestParam(value = "prefix", required = false) String prefix,
+            @RequestParam(value = "compression", required = false) String compression,
+            HttpServletResponse response) throws IOException {
+
+        writeArchive(filenames, prefix, compression, response);
+    }
+
+    @PostMapping("/archive")
+    public void downloadArchive(
+            @RequestBody ArchiveDto archiveDto,
+            HttpServletResponse response) throws IOException {
+
+        // For lists of names too long for a query string
+        writeArchive(archiveDto.getFilenames(), archiveDto.getPrefix(), archiveDto.getCompression(), response);
+    }
+
+    private void writeArchive(List<String> filenames, String prefix, String compression,
+                              HttpServletResponse response) throws IOException {
+        ZipStreamWriter.Method method = ArchiveWriter.parseMethod(compression);
+        List<ArchiveEntry> entries = fileStorageService.loadArchiveEntries(filenames, prefix);
+
+        // The length is unknown until the last entry is written, so the archive is sent chunked
+        response.setContentType(ArchiveWriter.APPLICATION_ZIP_VALUE);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ArchiveWriter.contentDisposition(prefix));
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "private, no-cache");
+        archiveWriter.write(entries, method, response.getOutputStream());
     }
 
     @DeleteMapping("/file")
@@ -56,11 +192,169 @@ public class FileController {
         return ResponseEntity.ok().build();
     }
 
+    @GetMapping("/file/versions")
+    public ResponseEntity<List<FileVersionDto>> getVersions(@RequestParam("filename") String filename) {
+        return ResponseEntity.ok(fileVersionService.getVersions(filename));
+    }
+
+    @PostMapping("/file/versions/restore")
+    public ResponseEntity<Void> restoreVersion(
+            @RequestParam("filename") String filename,
+            @RequestParam("version") int version) {
+
+        fileVersionService.restoreVersion(filename, version);
+        return ResponseEntity.ok().build();
+    }
+
+    @PutMapping("/file/versioning")
+    public ResponseEntity<Void> setVersioning(
+            @RequestParam("filename") String filename,
+            @RequestBody VersioningDto versioningDto) {
+
+        fileVersionService.setVersioning(filename, Boolean.TRUE.equals(versioningDto.getEnabled()));
+        return ResponseEntity.ok().build();
+    }
+
+    @GetMapping("/file/signature")
+    public void downloadSignature(
+            @RequestParam("filename") String filename,
+            @RequestParam(value = "blockSize", required = false) Integer blockSize,
+            HttpServletResponse response) throws IOException {
+
+        FileSignature signature = deltaSyncService.loadSignature(filename, blockSize);
+        response.setContentType(BlockSignatures.MEDIA_TYPE);
+        response.setHeader(HttpHeaders.ETAG, signature.getEtag());
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "private, no-cache");
+        signature.writeTo(response.getOutputStream());
+    }
+
+    @PostMapping(value = "/file/delta", consumes = DeltaInputStream.MEDIA_TYPE)
+    public ResponseEntity<Void> uploadDelta(
+            @RequestParam("filename") String filename,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @RequestHeader(value = ContentDigest.REPR_DIGEST, required = false) String reprDigest,
+            HttpServletRequest request) throws IOException {
+
+        if (request.getContentLengthLong() > maxStreamUploadSize.toBytes()) {
+            throw new MaxUploadSizeExceededException(maxStreamUploadSize.toBytes());
+        }
+        // The digest describes the rebuilt content, not the delta
+        deltaSyncService.applyDelta(filename, ifMatch, request.getInputStream(), ContentDigest.parse(reprDigest));
+        return ResponseEntity.ok().build();
+    }
+
+    @PostMapping(value = "/batch/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<BatchResultDto> uploadFiles(@RequestParam("file") List<MultipartFile> files) {
+        // Each "file" part is stored under its own filename; all are staged before the batch transaction
+        List<StagedFile> stagedFiles = fileBatchService.stageFiles(files);
+        try {
+            return ResponseEntity.ok(fileBatchService.storeStagedFiles(stagedFiles));
+        } finally {
+            stagedFiles.forEach(stagedFile -> deleteQuietly(stagedFile.getPath()));
+        }
+    }
+
+    @PostMapping("/batch/delete")
+    public ResponseEntity<BatchResultDto> deleteFiles(@RequestBody BatchDeleteDto batchDeleteDto) {
+        return ResponseEntity.ok(fileBatchService.deleteFiles(batchDeleteDto.getFilenames()));
+    }
+
+    @PostMapping("/batch/rename")
+    public ResponseEntity<BatchResultDto> renameFiles(@RequestBody BatchRenameDto batchRenameDto) {
+        return ResponseEntity.ok(fileBatchService.renameFiles(batchRenameDto.getRenames()));
+    }
+
+    @GetMapping("/usage")
+    public ResponseEntity<UsageDto> getUsage() {
+        return ResponseEntity.ok(quotaService.getUsage());
+    }
+
     @GetMapping("/list")
     public ResponseEntity<List<FileDto>> getFileList(
-            @RequestParam(value = "limit", required = false) Integer limit) {
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @RequestParam(value = "sort", required = false) String sort,
+            @RequestParam(value = "order", required = false) String order,
+            @RequestParam(value = "cursor", required = false) String cursor) {
+
+        FilePage page = fileStorageService.getFilesList(limit, sort, order, cursor);
+
+        // The body stays a plain array; the next page is reached through the header
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        return response.body(page.getFiles());
+    }
+
+    @GetMapping(value = "/list", params = "stream=true")
+    public void streamFileList(
+            @RequestParam(value = "sort", required = false) String sort,
+            @RequestParam(value = "order", required = false) String order,
+            HttpServletResponse response) throws IOException {
+
+        writeFileList(sort, order, false, response);
+    }
+
+    @GetMapping(value = "/list", produces = APPLICATION_NDJSON_VALUE)
+    public void streamFileListAsNdjson(
+            @RequestParam(value = "sort", required = false) String sort,
+            @RequestParam(value = "order", required = false) String order,
+            HttpServletResponse response) throws IOException {
+
+        writeFileList(sort, order, true, response);
+    }
+
+    /**
+     * The digest a client sent with an upload. Uploads have no content coding, so
+     * Content-Digest describes the same bytes as Repr-Digest.
+     */
+    static ContentDigest requestDigest(String reprDigest, String contentDigest) {
+        return ContentDigest.parse(reprDigest != null ? reprDigest : contentDigest);
+    }
+
+    private void writeFileList(String sort, String order, boolean ndjson,
+                               HttpServletResponse response) throws IOException {
+        response.setContentType(ndjson ? APPLICATION_NDJSON_VALUE : MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+
+        // Every file is written as soon as it is read, so memory use does not depend on the listing size
+        if (ndjson) {
+            // Every record, and only a record, ends with a newline, so an empty listing is an empty body
+            JsonGenerator generator = listWriter.createGenerator(response.getOutputStream());
+            generator.setRootValueSeparator(null);
+            streamFilesList(sort, order, file -> {
+                listWriter.writeValue(generator, file);
+                generator.writeRaw('\n');
+            });
+            // Not closed on failure, so an error before the first flush still reaches the exception handler
+            generator.close();
+        } else {
+            SequenceWriter writer = listWriter.writeValuesAsArray(response.getOutputStream());
+            streamFilesList(sort, order, writer::write);
+            writer.close();
+        }
+    }
+
+    private void streamFilesList(String sort, String order, FileDtoWriter writer) {
+        fileStorageService.streamFilesList(sort, order, file -> {
+            try {
+                writer.write(file);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+    }
+
+    @FunctionalInterface
+    private interface FileDtoWriter {
+        void write(FileDto file) throws IOException;
+    }
 
-        List<FileDto> files = fileStorageService.getFilesList(limit);
-        return ResponseEntity.ok(files);
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ignored) {
+            // Removed with other stale staging files later
+        }
     }
 }
@@ -0,0 +1,254 @@
+package ru.netology.backend.controller;
+
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.context.request.ServletWebRequest;
+import ru.netology.backend.service.StoredFile;
+import ru.netology.backend.web.CompressedFormats;
+import ru.netology.backend.web.ContentDigest;
+import ru.netology.backend.web.ResponseCompressionFilter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Writes a stored file to the response with support for conditional requests
+ * (If-None-Match / If-Modified-Since), single and multiple byte ranges and If-Range.
+ * Single-segment responses for content on the local disk are handed to Tomcat's
+ * sendfile when the connector supports it, so the bytes go from the page cache to
+ * the socket without being copied through the heap.
+ *
+ * <p>Files stored compressed with a codec that is also an HTTP content coding are sent
+ * as stored to clients that accept it; everyone else, and every range request, gets
+ * the original bytes.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class FileDownloadWriter {
+
+    static final String SENDFILE_SUPPORT_ATTRIBUTE = "org.apache.tomcat.sendfile.support";
+    static final String SENDFILE_FILENAME_ATTRIBUTE = "org.apache.tomcat.sendfile.filename";
+    static final String SENDFILE_START_ATTRIBUTE = "org.apache.tomcat.sendfile.start";
+    static final String SENDFILE_END_ATTRIBUTE = "org.apache.tomcat.sendfile.end";
+
+    private final long sendfileThreshold;
+    private final ObservationRegistry observationRegistry;
+
+    public FileDownloadWriter(
+            @Value("${app.download.sendfile-threshold:48KB}") DataSize sendfileThreshold,
+            ObservationRegistry observationRegistry) {
+        this.sendfileThreshold = sendfileThreshold.toBytes();
+        this.observationRegistry = observationRegistry;
+    }
+
+    public void write(StoredFile storedFile, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (storedFile.getEncoded() != null) {
+            response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+        StoredFile file = storedFile.negotiate(
+                request.getHeader(HttpHeaders.ACCEPT_ENCODING), request.getHeader(HttpHeaders.RANGE) != null);
+
+        ServletWebRequest webRequest = new ServletWebRequest(request, response);
+        if (webRequest.checkNotModified(file.getEtag(), file.getLastModified())) {
+            return;
+        }
+
+        if (file.getContentEncoding() != null) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, file.getContentEncoding());
+        }
+        response.setHeader(HttpHeaders.ETAG, file.getEtag());
+        if (file.getDigest() != null) {
+            response.setHeader(ContentDigest.REPR_DIGEST, file.getDigest());
+        }
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, file.getLastModified());
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "private, no-cache");
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + file.getFilename() + "\"");
+
+        List<HttpRange> ranges;
+        try {
+            ranges = rangesToServe(file, request);
+        } catch (IllegalArgumentException ex) {
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + file.getSize());
+            response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            return;
+        }
+
+        boolean headRequest = "HEAD".equals(request.getMethod());
+
+        if (ranges.isEmpty()) {
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+            response.setContentLengthLong(file.getSize());
+            if (!headRequest) {
+                transfer(file, 0, file.getSize(), request, response);
+            }
+        } else if (ranges.size() == 1) {
+            long start = ranges.get(0).getRangeStart(file.getSize());
+            long end = ranges.get(0).getRangeEnd(file.getSize());
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, contentRange(start, end, file.getSize()));
+            response.setContentLengthLong(end - start + 1);
+            if (!headRequest) {
+                transfer(file, start, end - start + 1, request, response);
+            }
+        } else {
+            String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setContentType("multipart/byteranges; boundary=" + boundary);
+            if (!headRequest) {
+                writeMultipart(file, ranges, boundary, response);
+            }
+        }
+    }
+
+    private List<HttpRange> rangesToServe(StoredFile file, HttpServletRequest request) {
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader == null || !ifRangeMatches(file, request)) {
+            return List.of();
+        }
+
+        List<HttpRange> ranges = HttpRange.parseRanges(rangeHeader);
+        long requested = 0;
+        for (HttpRange range : ranges) {
+            long start = range.getRangeStart(file.getSize());
+            long end = range.getRangeEnd(file.getSize());
+            if (start >= file.getSize() || start > end) {
+                throw new IllegalArgumentException("Range not satisfiable: " + range);
+            }
+            requested += end - start + 1;
+        }
+        // Overlapping ranges asking for more than the whole file are not worth serving piecewise
+        if (ranges.size() > 1 && requested > file.getSize()) {
+            return List.of();
+        }
+        return ranges;
+    }
+
+    private boolean ifRangeMatches(StoredFile file, HttpServletRequest request) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(file.getEtag());
+        }
+        long ifRangeDate = request.getDateHeader(HttpHeaders.IF_RANGE);
+        return ifRangeDate != -1 && file.getLastModified() / 1000 <= ifRangeDate / 1000;
+    }
+
+    private void transfer(StoredFile file, long position, long count,
+                          HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (file.getPath() != null && count >= sendfileThreshold
+                && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTRIBUTE))
+                && !willBeCompressed(file, request, response)) {
+            // Tomcat streams the file itself once the servlet returns
+            request.setAttribute(SENDFILE_FILENAME_ATTRIBUTE, file.getPath().toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START_ATTRIBUTE, position);
+            request.setAttribute(SENDFILE_END_ATTRIBUTE, position + count);
+            return;
+        }
+
+        OutputStream out = response.getOutputStream();
+        copyRange(file, position, count, out);
+        out.flush();
+    }
+
+    /**
+     * Whether the response compression filter is going to compress this body, which
+     * rules out handing the file to sendfile. Mirrors the filter's check of the
+     * leading bytes.
+     */
+    private static boolean willBeCompressed(StoredFile file, HttpServletRequest request,
+                                            HttpServletResponse response) throws IOException {
+        if (request.getAttribute(ResponseCompressionFilter.CODING_ATTRIBUTE) == null
+                || response.getStatus() != HttpServletResponse.SC_OK
+                || file.getContentEncoding() != null) {
+            return false;
+        }
+        try (InputStream in = Files.newInputStream(file.getPath())) {
+            byte[] head = in.readNBytes(CompressedFormats.SNIFF_LENGTH);
+            return !CompressedFormats.looksCompressed(head, head.length);
+        }
+    }
+
+    private void writeMultipart(StoredFile file, List<HttpRange> ranges, String boundary,
+                                HttpServletResponse response) throws IOException {
+        OutputStream out = response.getOutputStream();
+        for (HttpRange range : ranges) {
+            long start = range.getRangeStart(file.getSize());
+            long end = range.getRangeEnd(file.getSize());
+            String partHeader = "\r\n--" + boundary + "\r\n"
+                    + HttpHeaders.CONTENT_TYPE + ": " + MediaType.APPLICATION_OCTET_STREAM_VALUE + "\r\n"
+                    + HttpHeaders.CONTENT_RANGE + ": " + contentRange(start, end, file.getSize()) + "\r\n\r\n";
+            out.write(partHeader.getBytes(StandardCharsets.US_ASCII));
+            copyRange(file, start, end - start + 1, out);
+        }
+        out.write(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+
+    /**
+     * Copies a range to the response under its own span, which separates reading and
+     * sending the content from the rest of the request. Sendfile transfers happen after
+     * the request is handled and only show up in the server span.
+     */
+    private void copyRange(StoredFile file, long position, long count, OutputStream out) throws IOException {
+        Observation observation = Observation.createNotStarted("file.transfer", observationRegistry)
+                .highCardinalityKeyValue("bytes", Long.toString(count))
+                .start();
+        try (Observation.Scope scope = observation.openScope()) {
+            copy(file, position, count, out);
+        } catch (IOException | RuntimeException ex) {
+            observation.error(ex);
+            throw ex;
+        } finally {
+            observation.stop();
+        }
+    }
+
+    private static void copy(StoredFile file, long position, long count, OutputStream out) throws IOException {
+        if (file.getPath() == null) {
+            // Content from a remote store is streamed through the heap
+            try (InputStream in = file.openRange(position, count)) {
+                in.transferTo(out);
+            }
+            return;
+        }
+
+        WritableByteChannel target = Channels.newChannel(out);
+        try (FileChannel source = FileChannel.open(file.getPath(), StandardOpenOption.READ)) {
+            long transferred = 0;
+            while (transferred < count) {
+                long written = source.transferTo(position + transferred, count - transferred, target);
+                if (written <= 0) {
+                    break;
+                }
+                transferred += written;
+            }
+        }
+    }
+
+    private static String contentRange(long start, long end, long size) {
+        return "bytes " + start + "-" + end + "/" + size;
+    }
+}
@@ -0,0 +1,536 @@
+package ru.netology.backend.controller;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.multipart.FilePartEvent;
+import org.springframework.http.codec.multipart.PartEvent;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.util.StringUtils;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import ru.netology.backend.exception.FileStorageException;
+import ru.netology.backend.model.dto.ArchiveDto;
+import ru.netology.backend.model.dto.BatchDeleteDto;
+import ru.netology.backend.model.dto.BatchRenameDto;
+import ru.netology.backend.model.dto.BatchResultDto;
+import ru.netology.backend.model.dto.FileDto;
+import ru.netology.backend.model.dto.FileVersionDto;
+import ru.netology.backend.model.dto.RenameFileDto;
+import ru.netology.backend.model.dto.UsageDto;
+import ru.netology.backend.model.dto.VersioningDto;
+import ru.netology.backend.service.ArchiveEntry;
+import ru.netology.backend.service.BlobService;
+import ru.netology.backend.service.DeltaInputStream;
+import ru.netology.backend.service.DeltaSyncService;
+import ru.netology.backend.service.FileBatchService;
+import ru.netology.backend.service.FilePage;
+import ru.netology.backend.service.FileStorageService;
+import ru.netology.backend.service.FileVersionService;
+import ru.netology.backend.service.QuotaService;
+import ru.netology.backend.service.StagedFile;
+import ru.netology.backend.service.StoredFile;
+import ru.netology.backend.web.BlockSignatures;
+import ru.netology.backend.web.ContentDigest;
+import ru.netology.backend.web.ZipStreamWriter;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32C;
+
+import static ru.netology.backend.controller.FileController.APPLICATION_NDJSON_VALUE;
+import static ru.netology.backend.controller.FileController.NEXT_CURSOR_HEADER;
+
+/**
+ * WebFlux version of {@link FileController} for the {@code reactive} profile.
+ * Uploads are written to the staging area through an asynchronous file channel
+ * while their hash is computed, and downloads of local blobs go through the
+ * resource writer, which serves ranges and uses zero-copy transfer. Metadata calls
+ * run on the bounded blocking scheduler, so a slow client only costs a connection.
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveFileController {
+
+    private final FileStorageService fileStorageService;
+    private final FileBatchService fileBatchService;
+    private final DeltaSyncService deltaSyncService;
+    private final FileVersionService fileVersionService;
+    private final QuotaService quotaService;
+    private final BlobService blobService;
+    private final ArchiveWriter archiveWriter;
+    private final Scheduler blockingScheduler;
+    private final long maxStreamUploadSize;
+    private final int listPageSize;
+    private final int remoteBufferSize;
+
+    public ReactiveFileController(
+            FileStorageService fileStorageService,
+            FileBatchService fileBatchService,
+            DeltaSyncService deltaSyncService,
+            FileVersionService fileVersionService,
+            QuotaService quotaService,
+            BlobService blobService,
+            ArchiveWriter archiveWriter,
+            Scheduler blockingScheduler,
+            @Value("${app.storage.max-stream-upload-size:10GB}") DataSize maxStreamUploadSize,
+            @Value("${app.list.stream-fetch-size:500}") int listPageSize,
+            @Value("${app.reactive.remote-buffer-size:64KB}") DataSize remoteBufferSize) {
+        this.fileStorageService = fileStorageService;
+        this.fileBatchService = fileBatchService;
+        this.deltaSyncService = deltaSyncService;
+        this.fileVersionService = fileVersionService;
+        this.quotaService = quotaService;
+        this.blobService = blobService;
+        this.archiveWriter = archiveWriter;
+        this.blockingScheduler = blockingScheduler;
+        this.maxStreamUploadSize = maxStreamUploadSize.toBytes();
+        this.listPageSize = listPageSize;
+        this.remoteBufferSize = (int) remoteBufferSize.toBytes();
+    }
+
+    @PostMapping(value = "/file", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public Mono<ResponseEntity<Void>> uploadFile(
+            @RequestParam(value = "filename", required = false) String filename,
+            @RequestBody Flux<PartEvent> parts) {
+
+        // Parts arrive as events; the content of the "file" part is streamed, others are skipped
+        return parts.windowUntil(PartEvent::isLast)
+                .concatMap(part -> part.switchOnFirst((first, events) -> {
+                    if (first.get() instanceof FilePartEvent fileEvent && "file".equals(fileEvent.name())) {
+                        String name = StringUtils.hasLength(filename) ? filename : fileEvent.filename();
+                        return store(events.map(PartEvent::content), name, null).thenReturn(true);
+                    }
+                    return events.doOnNext(event -> DataBufferUtils.release(event.content())).then(Mono.just(false));
+                }))
+                .reduce(false, Boolean::logicalOr)
+                .flatMap(stored -> stored
+                        ? Mono.just(ResponseEntity.ok().<Void>build())
+                        : Mono.error(new FileStorageException("Failed to store empty file")));
+    }
+
+    @PostMapping(value = "/file", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public Mono<ResponseEntity<Void>> uploadFileStream(
+            @RequestParam("filename") String filename,
+            @RequestHeader(value = HttpHeaders.CONTENT_LENGTH, required = false) Long contentLength,
+            @RequestHeader(value = ContentDigest.REPR_DIGEST, required = false) String reprDigest,
+            @RequestHeader(value = ContentDigest.CONTENT_DIGEST, required = false) String contentDigest,
+            @RequestBody Flux<DataBuffer> body) {
+
+        if (contentLength != null && contentLength > maxStreamUploadSize) {
+            return Mono.error(new MaxUploadSizeExceededException(maxStreamUploadSize));
+        }
+        ContentDigest digest = FileController.requestDigest(reprDigest, contentDigest);
+        if (digest == null || digest.getSha256() == null) {
+            return store(body, filename, digest).thenReturn(ResponseEntity.ok().build());
+        }
+        // Content the user already stores is not read again, the unread body is discarded by the server
+        return blocking(() -> fileStorageService.storeExistingFile(digest.getSha256(), filename))
+                .flatMap(existing -> existing.isPresent() ? Mono.<Void>empty() : store(body, filename, digest))
+                .thenReturn(ResponseEntity.ok().build());
+    }
+
+    @GetMapping("/file")
+    public Mono<ResponseEntity<Resource>> downloadFile(
+            @RequestParam("filename") String filename,
+            @RequestParam(value = "version", required = false) Integer version,
+            ServerWebExchange exchange) {
+
+        HttpHeaders requestHeaders = exchange.getRequest().getHeaders();
+        return blocking(() -> fileStorageService.loadStoredFile(filename, version))
+                .map(file -> {
+                    if (file.getEncoded() != null) {
+                        exchange.getResponse().getHeaders().set(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+                    }
+                    return file.negotiate(requestHeaders.getFirst(HttpHeaders.ACCEPT_ENCODING),
+                            requestHeaders.containsKey(HttpHeaders.RANGE));
+                })
+                .flatMap(file -> file.getPath() != null
+                        // Conditional requests, ranges and zero-copy transfer are handled by the writers
+                        ? Mono.just(ResponseEntity.ok()
+                                .headers(fileHeaders(file))
+                                .body(new FileSystemResource(file.getPath())))
+                        : writeRemote(file, exchange).then(Mono.empty()));
+    }
+
+    @GetMapping("/archive")
+    public Mono<Void> downloadArchive(
+            @RequestParam(value = "filename", required = false) List<String> filenames,
+            @RequestParam(value = "prefix", required = false) String prefix,
+            @RequestParam(value = "compression", required = false) String compression,
+            ServerWebExchange exchange) {
+
+        return writeArchive(filenames, prefix, compression, exchange);
+    }
+
+    @PostMapping("/archive")
+    public Mono<Void> downloadArchive(
+            @RequestBody ArchiveDto archiveDto,
+            ServerWebExchange exchange) {
+
+        return writeArchive(archiveDto.getFilenames(), archiveDto.getPrefix(), archiveDto.getCompression(), exchange);
+    }
+
+    /**
+     * The archive is written by a blocking worker into buffers that are sent as the
+     * client reads them; the worker waits while the client falls behind.
+     */
+    private Mono<Void> writeArchive(List<String> filenames, String prefix, String compression,
+                                    ServerWebExchange exchange) {
+        return Mono.fromCallable(() -> ArchiveWriter.parseMethod(compression))
+                .zipWith(blocking(() -> fileStorageService.loadArchiveEntries(filenames, prefix)))
+                .flatMap(archive -> {
+                    ZipStreamWriter.Method method = archive.getT1();
+                    List<ArchiveEntry> entries = archive.getT2();
+                    ServerHttpResponse response = exchange.getResponse();
+                    HttpHeaders headers = response.getHeaders();
+                    headers.set(HttpHeaders.CONTENT_TYPE, ArchiveWriter.APPLICATION_ZIP_VALUE);
+                    headers.set(HttpHeaders.CONTENT_DISPOSITION, ArchiveWriter.contentDisposition(prefix));
+                    headers.setCacheControl(CacheControl.noCache().cachePrivate());
+                    return response.writeWith(DataBufferUtils.outputStreamPublisher(out -> {
+                        try {
+                            // Every write to the publisher's stream becomes a buffer of its own
+                            archiveWriter.write(entries, method, new BufferedOutputStream(out, remoteBufferSize));
+                        } catch (IOException ex) {
+                            throw new UncheckedIOException(ex);
+                        }
+                    }, response.bufferFactory(), blockingScheduler::schedule, remoteBufferSize));
+                });
+    }
+
+    @DeleteMapping("/file")
+    public Mono<ResponseEntity<Void>> deleteFile(@RequestParam("filename") String filename) {
+        return blocking(() -> {
+            fileStorageService.deleteFile(filename);
+            return ResponseEntity.ok().<Void>build();
+        });
+    }
+
+    @PutMapping("/file")
+    public Mono<ResponseEntity<Void>> renameFile(
+            @RequestParam("filename") String filename,
+            @RequestBody RenameFileDto renameFileDto) {
+
+        return blocking(() -> {
+            fileStorageService.renameFile(filename, renameFileDto.getName());
+            return ResponseEntity.ok().<Void>build();
+        });
+    }
+
+    @GetMapping("/file/versions")
+    public Mono<ResponseEntity<List<FileVersionDto>>> getVersions(@RequestParam("filename") String filename) {
+        return blocking(() -> ResponseEntity.ok(fileVersionService.getVersions(filename)));
+    }
+
+    @PostMapping("/file/versions/restore")
+    public Mono<ResponseEntity<Void>> restoreVersion(
+            @RequestParam("filename") String filename,
+            @RequestParam("version") int version) {
+
+        return blocking(() -> {
+            fileVersionService.restoreVersion(filename, version);
+            return ResponseEntity.ok().<Void>build();
+        });
+    }
+
+    @PutMapping("/file/versioning")
+    public Mono<ResponseEntity<Void>> setVersioning(
+            @RequestParam("filename") String filename,
+            @RequestBody VersioningDto versioningDto) {
+
+        return blocking(() -> {
+            fileVersionService.setVersioning(filename, Boolean.TRUE.equals(versioningDto.getEnabled()));
+            return ResponseEntity.ok().<Void>build();
+        });
+    }
+
+    @GetMapping("/file/signature")
+    public Mono<Void> downloadSignature(
+            @RequestParam("filename") String filename,
+            @RequestParam(value = "blockSize", required = false) Integer blockSize,
+            ServerWebExchange exchange) {
+
+        return blocking(() -> deltaSyncService.loadSignature(filename, blockSize))
+                .flatMap(signature -> {
+                    ServerHttpResponse response = exchange.getResponse();
+                    HttpHeaders headers = response.getHeaders();
+                    headers.set(HttpHeaders.CONTENT_TYPE, BlockSignatures.MEDIA_TYPE);
+                    headers.setETag(signature.getEtag());
+                    headers.setCacheControl(CacheControl.noCache().cachePrivate());
+                    return response.writeWith(DataBufferUtils.outputStreamPublisher(out -> {
+                        try {
+                            signature.writeTo(new BufferedOutputStream(out, remoteBufferSize));
+                        } catch (IOException ex) {
+                            throw new UncheckedIOException(ex);
+                        }
+                    }, response.bufferFactory(), blockingScheduler::schedule, remoteBufferSize));
+                });
+    }
+
+    /**
+     * The delta is staged like an upload before it is applied, so a slow client does
+     * not hold a blocking worker.
+     */
+    @PostMapping(value = "/file/delta", consumes = DeltaInputStream.MEDIA_TYPE)
+    public Mono<ResponseEntity<Void>> uploadDelta(
+            @RequestParam("filename") String filename,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @RequestHeader(value = ContentDigest.REPR_DIGEST, required = false) String reprDigest,
+            @RequestBody Flux<DataBuffer> body) {
+
+        Path stagingFile = blobService.newStagingFile();
+        return stage(body, stagingFile, filename)
+                .flatMap(staged -> blocking(() -> {
+                    try (InputStream delta = Files.newInputStream(stagingFile)) {
+                        deltaSyncService.applyDelta(filename, ifMatch, delta, ContentDigest.parse(reprDigest));
+                    }
+                    return ResponseEntity.ok().<Void>build();
+                }))
+                .doFinally(signal -> blockingScheduler.schedule(() -> deleteQuietly(stagingFile)));
+    }
+
+    @PostMapping(value = "/batch/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public Mono<ResponseEntity<BatchResultDto>> uploadFiles(@RequestBody Flux<PartEvent> parts) {
+        return Mono.defer(() -> {
+            List<Path> stagingFiles = Collections.synchronizedList(new ArrayList<>());
+
+            // Every "file" part is staged as it arrives, then the batch is stored in one transaction
+            return parts.windowUntil(PartEvent::isLast)
+                    .concatMap(part -> part.switchOnFirst((first, events) -> {
+                        if (first.get() instanceof FilePartEvent fileEvent && "file".equals(fileEvent.name())) {
+                            Path stagingFile = blobService.newStagingFile();
+                            stagingFiles.add(stagingFile);
+                            return stage(events.map(PartEvent::content), stagingFile, fileEvent.filename());
+                        }
+                        return events.doOnNext(event -> DataBufferUtils.release(event.content()))
+                                .then(Mono.<StagedFile>empty());
+                    }))
+                    .collectList()
+                    .flatMap(files -> files.isEmpty()
+                            ? Mono.error(new FileStorageException("Failed to store empty file"))
+                            : blocking(() -> fileBatchService.storeStagedFiles(files)))
+                    .map(ResponseEntity::ok)
+                    .doFinally(signal -> blockingScheduler.schedule(() -> stagingFiles.forEach(
+                            ReactiveFileController::deleteQuietly)));
+        });
+    }
+
+    @PostMapping("/batch/delete")
+    public Mono<ResponseEntity<BatchResultDto>> deleteFiles(@RequestBody BatchDeleteDto batchDeleteDto) {
+        return blocking(() -> ResponseEntity.ok(fileBatchService.deleteFiles(batchDeleteDto.getFilenames())));
+    }
+
+    @PostMapping("/batch/rename")
+    public Mono<ResponseEntity<BatchResultDto>> renameFiles(@RequestBody BatchRenameDto batchRenameDto) {
+        return blocking(() -> ResponseEntity.ok(fileBatchService.renameFiles(batchRenameDto.getRenames())));
+    }
+
+    @GetMapping("/usage")
+    public Mono<ResponseEntity<UsageDto>> getUsage() {
+        return blocking(() -> ResponseEntity.ok(quotaService.getUsage()));
+    }
+
+    @GetMapping("/list")
+    public Mono<ResponseEntity<List<FileDto>>> getFileList(
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @RequestParam(value = "sort", required = false) String sort,
+            @RequestParam(value = "order", required = false) String order,
+            @RequestParam(value = "cursor", required = false) String cursor) {
+
+        return blocking(() -> fileStorageService.getFilesList(limit, sort, order, cursor))
+                .map(page -> {
+                    ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+                    if (page.getNextCursor() != null) {
+                        response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+                    }
+                    return response.body(page.getFiles());
+                });
+    }
+
+    @GetMapping(value = "/list", params = "stream=true", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Flux<FileDto> streamFileList(
+            @RequestParam(value = "sort", required = false) String sort,
+            @RequestParam(value = "order", required = false) String order) {
+
+        return listAllFiles(sort, order);
+    }
+
+    @GetMapping(value = "/list", produces = APPLICATION_NDJSON_VALUE)
+    public Flux<FileDto> streamFileListAsNdjson(
+            @RequestParam(value = "sort", required = false) String sort,
+            @RequestParam(value = "order", required = false) String order) {
+
+        return listAllFiles(sort, order);
+    }
+
+    /**
+     * Walks the whole listing page by page as the client consumes it. Unlike the
+     * servlet stream this does not keep a transaction open, so a slow reader holds
+     * no thread or connection between pages.
+     */
+    private Flux<FileDto> listAllFiles(String sort, String order) {
+        return blocking(() -> fileStorageService.getFilesList(listPageSize, sort, order, null))
+                .expand(page -> page.getNextCursor() == null
+                        ? Mono.empty()
+                        : blocking(() -> fileStorageService.getFilesList(listPageSize, sort, order, page.getNextCursor())))
+                .concatMapIterable(FilePage::getFiles, 1);
+    }
+
+    private Mono<Void> store(Flux<DataBuffer> content, String filename, ContentDigest expected) {
+        Path stagingFile = blobService.newStagingFile();
+        return stage(content, stagingFile, filename)
+                .flatMap(staged -> blocking(() -> fileStorageService.storeStagedFile(staged, expected)))
+                .then()
+                // Already moved into the blob store on success
+                .doFinally(signal -> blockingScheduler.schedule(() -> deleteQuietly(stagingFile)));
+    }
+
+    /**
+     * Writes content to the staging file while computing its SHA-256 and CRC32C.
+     */
+    private Mono<StagedFile> stage(Flux<DataBuffer> content, Path stagingFile, String filename) {
+        MessageDigest digest = sha256();
+        CRC32C crc = new CRC32C();
+        AtomicLong size = new AtomicLong();
+
+        Flux<DataBuffer> hashed = content.doOnNext(buffer -> {
+            if (size.addAndGet(buffer.readableByteCount()) > maxStreamUploadSize) {
+                DataBufferUtils.release(buffer);
+                throw new MaxUploadSizeExceededException(maxStreamUploadSize);
+            }
+            try (DataBuffer.ByteBufferIterator byteBuffers = buffer.readableByteBuffers()) {
+                byteBuffers.forEachRemaining(byteBuffer -> {
+                    crc.update(byteBuffer.duplicate());
+                    digest.update(byteBuffer);
+                });
+            }
+        });
+
+        return DataBufferUtils.write(hashed, stagingFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)
+                .then(Mono.fromSupplier(() -> new StagedFile(
+                        filename, stagingFile, HexFormat.of().formatHex(digest.digest()), crc.getValue(), size.get())));
+    }
+
+    private static HttpHeaders fileHeaders(StoredFile file) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag(file.getEtag());
+        headers.setLastModified(file.getLastModified());
+        headers.setCacheControl(CacheControl.noCache().cachePrivate());
+        headers.set(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + file.getFilename() + "\"");
+        headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+        if (file.getContentEncoding() != null) {
+            headers.set(HttpHeaders.CONTENT_ENCODING, file.getContentEncoding());
+        }
+        if (file.getDigest() != null) {
+            headers.set(ContentDigest.REPR_DIGEST, file.getDigest());
+        }
+        return headers;
+    }
+
+    /**
+     * Content that is not on the local disk is read on the blocking scheduler, one
+     * buffer per request from the client. A single byte range is served; multiple
+     * ranges fall back to the whole file.
+     */
+    private Mono<Void> writeRemote(StoredFile file, ServerWebExchange exchange) {
+        ServerHttpResponse response = exchange.getResponse();
+        if (exchange.checkNotModified(file.getEtag(), Instant.ofEpochMilli(file.getLastModified()))) {
+            return response.setComplete();
+        }
+
+        HttpHeaders headers = response.getHeaders();
+        headers.putAll(fileHeaders(file));
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        long start = 0;
+        long length = file.getSize();
+        List<HttpRange> ranges = exchange.getRequest().getHeaders().getRange();
+        if (ranges.size() == 1) {
+            start = ranges.get(0).getRangeStart(file.getSize());
+            long end = ranges.get(0).getRangeEnd(file.getSize());
+            if (start >= file.getSize() || start > end) {
+                response.setStatusCode(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+                headers.set(HttpHeaders.CONTENT_RANGE, "bytes */" + file.getSize());
+                return response.setComplete();
+            }
+            length = end - start + 1;
+            response.setStatusCode(HttpStatus.PARTIAL_CONTENT);
+            headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + file.getSize());
+        }
+        headers.setContentLength(length);
+
+        long offset = start;
+        long count = length;
+        return response.writeWith(DataBufferUtils
+                .readInputStream(() -> file.openRange(offset, count), response.bufferFactory(), remoteBufferSize)
+                .subscribeOn(blockingScheduler));
+    }
+
+    /**
+     * Runs a call to the blocking service layer on the bounded scheduler, with the
+     * caller's security context bound to the worker thread for its duration.
+     */
+    private <T> Mono<T> blocking(Callable<T> task) {
+        return ReactiveSecurityContextHolder.getContext()
+                .switchIfEmpty(Mono.error(() -> new BadCredentialsException("User not authenticated")))
+                .flatMap(context -> Mono.fromCallable(() -> callWithContext(context, task)))
+                .subscribeOn(blockingScheduler);
+    }
+
+    private static <T> T callWithContext(SecurityContext context, Callable<T> task) throws Exception {
+        SecurityContextHolder.setContext(context);
+        try {
+            return task.call();
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ignored) {
+            // Nothing else to clean up
+        }
+    }
+}
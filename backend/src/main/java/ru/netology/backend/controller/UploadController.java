@@ -0,0 +1,80 @@
+package ru.netology.backend.controller;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import ru.netology.backend.model.dto.InitUploadDto;
+import ru.netology.backend.model.dto.UploadSessionDto;
+import ru.netology.backend.service.ChunkedUploadService;
+import ru.netology.backend.service.StagedFile;
+import ru.netology.backend.web.ContentDigest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@RequestMapping("/upload")
+public class UploadController {
+
+    private final ChunkedUploadService chunkedUploadService;
+
+    public UploadController(ChunkedUploadService chunkedUploadService) {
+        this.chunkedUploadService = chunkedUploadService;
+    }
+
+    @PostMapping
+    public ResponseEntity<UploadSessionDto> initiateUpload(@RequestBody InitUploadDto initUploadDto) {
+        UploadSessionDto session = chunkedUploadService.initiate(initUploadDto.getFilename(), initUploadDto.getSize());
+        return ResponseEntity.ok(session);
+    }
+
+    @GetMapping("/{uploadId}")
+    public ResponseEntity<UploadSessionDto> getUpload(@PathVariable("uploadId") String uploadId) {
+        return ResponseEntity.ok(chunkedUploadService.getSession(uploadId));
+    }
+
+    @PutMapping(value = "/{uploadId}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<Void> uploadChunk(
+            @PathVariable("uploadId") String uploadId,
+            @RequestParam("offset") long offset,
+            HttpServletRequest request) throws IOException {
+
+        chunkedUploadService.writeChunk(uploadId, offset, request.getInputStream());
+        return ResponseEntity.ok().build();
+    }
+
+    @PostMapping("/{uploadId}/commit")
+    public ResponseEntity<Void> commitUpload(
+            @PathVariable("uploadId") String uploadId,
+            @RequestHeader(value = ContentDigest.REPR_DIGEST, required = false) String reprDigest) {
+
+        // Chunks are assembled before a transaction takes a connection
+        StagedFile staged = chunkedUploadService.stage(uploadId);
+        try {
+            // A digest of the whole file is checked against the assembled content
+            chunkedUploadService.commit(uploadId, staged, ContentDigest.parse(reprDigest));
+        } finally {
+            // Already moved into the blob store on success
+            deleteQuietly(staged.getPath());
+        }
+        return ResponseEntity.ok().build();
+    }
+
+    @DeleteMapping("/{uploadId}")
+    public ResponseEntity<Void> abortUpload(@PathVariable("uploadId") String uploadId) {
+        chunkedUploadService.abort(uploadId);
+        return ResponseEntity.ok().build();
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ignored) {
+            // Removed with other stale staging files later
+        }
+    }
+}
@@ -17,12 +17,30 @@ public class CustomExceptionHandler {
         return new ResponseEntity<>(errorDto, HttpStatus.BAD_REQUEST);
     }
 
+    @ExceptionHandler(BadRequestException.class)
+    public ResponseEntity<ErrorDto> handleBadRequestException(BadRequestException ex) {
+        ErrorDto errorDto = new ErrorDto(ex.getMessage(), 400);
+        return new ResponseEntity<>(errorDto, HttpStatus.BAD_REQUEST);
+    }
+
     @ExceptionHandler(FileStorageException.class)
     public ResponseEntity<ErrorDto> handleFileStorageException(FileStorageException ex) {
         ErrorDto errorDto = new ErrorDto(ex.getMessage(), 500);
         return new ResponseEntity<>(errorDto, HttpStatus.INTERNAL_SERVER_ERROR);
     }
 
+    @ExceptionHandler(PreconditionFailedException.class)
+    public ResponseEntity<ErrorDto> handlePreconditionFailedException(PreconditionFailedException ex) {
+        ErrorDto errorDto = new ErrorDto(ex.getMessage(), 412);
+        return new ResponseEntity<>(errorDto, HttpStatus.PRECONDITION_FAILED);
+    }
+
+    @ExceptionHandler(QuotaExceededException.class)
+    public ResponseEntity<ErrorDto> handleQuotaExceededException(QuotaExceededException ex) {
+        ErrorDto errorDto = new ErrorDto(ex.getMessage(), 413);
+        return new ResponseEntity<>(errorDto, HttpStatus.PAYLOAD_TOO_LARGE);
+    }
+
     @ExceptionHandler(MaxUploadSizeExceededException.class)
     public ResponseEntity<ErrorDto> handleMaxUploadSizeExceededException(MaxUploadSizeExceededException ex) {
         ErrorDto errorDto = new ErrorDto("File size exceeds the maximum allowed size", 400);
@@ -0,0 +1,16 @@
+package ru.netology.backend.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ArchiveDto {
+    private List<String> filenames;
+    private String prefix;
+    private String compression;  // store | deflate
+}
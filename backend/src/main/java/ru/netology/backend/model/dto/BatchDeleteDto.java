@@ -0,0 +1,14 @@
+package ru.netology.backend.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchDeleteDto {
+    private List<String> filenames;
+}
@@ -0,0 +1,32 @@
+package ru.netology.backend.model.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Outcome of a batch request, one result per requested item and in request order.
+ * Status is 200 for items that were applied, 400 for invalid ones, 404 for missing
+ * files and 409 for name conflicts.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchResultDto {
+    private int succeeded;
+    private int failed;
+    private List<Item> results;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Item {
+        private String filename;
+        private int status;
+        private String message;
+    }
+}
@@ -0,0 +1,13 @@
+package ru.netology.backend.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ByteRangeDto {
+    private Long offset;
+    private Long length;
+}
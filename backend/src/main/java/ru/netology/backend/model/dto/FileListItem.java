@@ -0,0 +1,20 @@
+package ru.netology.backend.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Row of the file list: the listed columns plus the keys needed to continue after it.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FileListItem {
+    private Long id;
+    private String filename;
+    private Long size;
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,17 @@
+package ru.netology.backend.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FileVersionDto {
+    private Integer version;
+    private Long size;
+    private LocalDateTime createdAt;
+    private boolean current;
+}
@@ -0,0 +1,13 @@
+package ru.netology.backend.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UsageDto {
+    private long used;
+    private Long quota;  // null if the user has no quota
+}
@@ -0,0 +1,68 @@
+package ru.netology.backend.model.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import ru.netology.backend.storage.BlobCodec;
+
+import java.time.LocalDateTime;
+
+/**
+ * Stored content shared by all files with the same bytes. The storage key is the
+ * SHA-256 of the content; refCount is the number of files pointing at it. Size is
+ * that of the original content, also when the blob is stored compressed.
+ *
+ * <p>A blob left without references is not deleted right away: deletedAt marks it
+ * as a tombstone, and the {@code BlobCollector} unlinks the content and the row
+ * later. Uploading the same content again before that takes the blob back.
+ *
+ * <p>The {@code BlobScrubber} reads every blob again from time to time and checks it
+ * against its key; corruptedAt marks content that no longer matches, which the next
+ * upload of the same content replaces.
+ */
+@Entity
+@Table(name = "blobs", indexes = {
+        // Tombstones in the order the collector takes them
+        @Index(name = "idx_blobs_deleted_at", columnList = "deleted_at"),
+        // Blobs in the order the scrubber verifies them
+        @Index(name = "idx_blobs_scrubbed_at", columnList = "scrubbed_at")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BlobEntity {
+
+    @Id
+    @Column(name = "storage_key", length = 64)
+    private String storageKey;
+
+    @Column(nullable = false)
+    private Long size;
+
+    @Column(name = "ref_count", nullable = false)
+    private Integer refCount;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    // Null for blobs stored before compression was introduced
+    @Enumerated(EnumType.STRING)
+    @Column(length = 8)
+    private BlobCodec codec;
+
+    @Column(name = "deleted_at")
+    private LocalDateTime deletedAt;
+
+    // Null for blobs stored before checksums were introduced, until the scrubber reads them
+    @Column(name = "crc32c")
+    private Long crc32c;
+
+    // Content is hashed as it is written; existing rows are scrubbed first
+    @Column(name = "scrubbed_at", nullable = false,
+            columnDefinition = "timestamp(6) not null default 'epoch'")
+    private LocalDateTime scrubbedAt;
+
+    @Column(name = "corrupted_at")
+    private LocalDateTime corruptedAt;
+}
@@ -3,11 +3,23 @@ package ru.netology.backend.model.entity;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
+import ru.netology.backend.storage.BlobCodec;
+
+import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "files", uniqueConstraints = {
         @UniqueConstraint(columnNames = {"filename", "user_id"})
+}, indexes = {
+        // Keyset pagination of /list, one index per sort order
+        @Index(name = "idx_files_user_filename", columnList = "user_id, filename"),
+        @Index(name = "idx_files_user_size", columnList = "user_id, size, id"),
+        @Index(name = "idx_files_user_created_at", columnList = "user_id, created_at, id"),
+        // Content stored before deduplication is found by the file pointing at it
+        @Index(name = "idx_files_storage_filename", columnList = "storage_filename")
 })
 @Data
 @NoArgsConstructor
@@ -27,7 +39,43 @@ public class FileEntity {
     @Column(nullable = false)
     private Long size;
 
-    @ManyToOne
+    // SHA-256 of the content, hex encoded
+    @Column(length = 64)
+    private String checksum;
+
+    // CRC32C of the content, null for files uploaded before it was recorded
+    @Column(name = "crc32c")
+    private Long crc32c;
+
+    // How the blob is stored, null for files uploaded before compression was introduced
+    @Enumerated(EnumType.STRING)
+    @Column(length = 8)
+    private BlobCodec codec;
+
+    // When the current content was stored; existing rows get the time of the schema update
+    @Column(name = "created_at", nullable = false,
+            columnDefinition = "timestamp(6) not null default current_timestamp")
+    private LocalDateTime createdAt;
+
+    // Number of the current content, counted up each time it is replaced
+    @Column(nullable = false, columnDefinition = "integer not null default 1")
+    private int version;
+
+    // Whether replaced content is kept as a FileVersionEntity
+    @Column(nullable = false, columnDefinition = "boolean not null default false")
+    private boolean versioned;
+
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", nullable = false)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
     private UserEntity user;
+
+    public FileEntity(Long id, String filename, String storageFilename, Long size, UserEntity user) {
+        this.id = id;
+        this.filename = filename;
+        this.storageFilename = storageFilename;
+        this.size = size;
+        this.user = user;
+    }
 }
@@ -0,0 +1,73 @@
+package ru.netology.backend.model.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+import ru.netology.backend.storage.BlobCodec;
+
+import java.time.LocalDateTime;
+
+/**
+ * Earlier content of a versioned file. The current content stays on the
+ * {@link FileEntity}, so listing files never touches this table; replacing it moves
+ * the old columns here together with their reference to the blob, which is shared
+ * with every other version and file of the same content.
+ */
+@Entity
+@Table(name = "file_versions", uniqueConstraints = {
+        @UniqueConstraint(columnNames = {"file_id", "version"})
+}, indexes = {
+        // Retention by age
+        @Index(name = "idx_file_versions_replaced_at", columnList = "replaced_at"),
+        // Content stored before deduplication is found by the versions pointing at it
+        @Index(name = "idx_file_versions_storage_key", columnList = "storage_key")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FileVersionEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // Versions go with the file when it is deleted
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "file_id", nullable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private FileEntity file;
+
+    @Column(nullable = false)
+    private int version;
+
+    @Column(name = "storage_key", nullable = false)
+    private String storageKey;
+
+    @Column(nullable = false)
+    private Long size;
+
+    @Column(length = 64)
+    private String checksum;
+
+    @Column(name = "crc32c")
+    private Long crc32c;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 8)
+    private BlobCodec codec;
+
+    // When this content was stored
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    // When newer content replaced it
+    @Column(name = "replaced_at", nullable = false)
+    private LocalDateTime replacedAt;
+}
@@ -0,0 +1,29 @@
+package ru.netology.backend.model.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Entity
+@Table(name = "upload_chunks", uniqueConstraints = {
+        @UniqueConstraint(columnNames = {"session_id", "chunk_offset", "chunk_length"})
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadChunkEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "session_id", nullable = false, length = 36)
+    private String sessionId;
+
+    @Column(name = "chunk_offset", nullable = false)
+    private Long offset;
+
+    @Column(name = "chunk_length", nullable = false)
+    private Long length;
+}
@@ -0,0 +1,32 @@
+package ru.netology.backend.model.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Bytes stored by a user, kept apart from the users row so that uploads do not
+ * update the row every login reads. usedBytes is the sum of the sizes of the user's
+ * files and the versions they keep; the {@code QuotaService} keeps it in memory and
+ * writes changes back in the background, so it may lag the tables by a few seconds
+ * until the next flush and be off by changes counted twice until the next recount.
+ */
+@Entity
+@Table(name = "user_usage")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserUsageEntity {
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Column(name = "used_bytes", nullable = false)
+    private Long usedBytes;
+
+    // Null for the default quota, 0 or less for none
+    @Column(name = "quota_bytes")
+    private Long quotaBytes;
+}
@@ -0,0 +1,97 @@
+package ru.netology.backend.repository;
+
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import ru.netology.backend.model.entity.BlobEntity;
+import ru.netology.backend.storage.BlobCodec;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface BlobRepository extends JpaRepository<BlobEntity, String> {
+
+    // Creates the blob or adds a reference to it, reviving a tombstone; the row stays locked until commit
+    @Modifying
+    @Query(value = "INSERT INTO blobs (storage_key, size, ref_count, created_at, crc32c, scrubbed_at) "
+            + "VALUES (:storageKey, :size, 1, now(), :crc32c, now()) "
+            + "ON CONFLICT (storage_key) DO UPDATE SET ref_count = blobs.ref_count + 1, deleted_at = NULL, "
+            + "crc32c = COALESCE(blobs.crc32c, EXCLUDED.crc32c)",
+            nativeQuery = true)
+    void acquire(String storageKey, long size, long crc32c);
+
+    // Adds a reference to content that is already stored intact, without uploading it again
+    @Modifying
+    @Query("UPDATE BlobEntity b SET b.refCount = b.refCount + 1, b.deletedAt = NULL "
+            + "WHERE b.storageKey = :storageKey AND b.corruptedAt IS NULL")
+    int acquireExisting(String storageKey);
+
+    // Blobs stored before compression are kept as they are; empty if the content must be written again
+    @Query("SELECT COALESCE(b.codec, ru.netology.backend.storage.BlobCodec.NONE) FROM BlobEntity b "
+            + "WHERE b.storageKey = :storageKey AND b.corruptedAt IS NULL")
+    Optional<BlobCodec> findCodec(String storageKey);
+
+    @Modifying
+    @Query("UPDATE BlobEntity b SET b.codec = :codec, b.corruptedAt = NULL, b.scrubbedAt = LOCAL DATETIME "
+            + "WHERE b.storageKey = :storageKey")
+    int updateContent(String storageKey, BlobCodec codec);
+
+    @Modifying
+    @Query("UPDATE BlobEntity b SET b.refCount = b.refCount - 1 WHERE b.storageKey = :storageKey")
+    int release(String storageKey);
+
+    @Modifying
+    @Query("UPDATE BlobEntity b SET b.deletedAt = LOCAL DATETIME WHERE b.storageKey = :storageKey AND b.refCount <= 0")
+    int tombstoneIfUnreferenced(String storageKey);
+
+    // Content stored before deduplication has no row yet; it gets a tombstone from the file pointing at it
+    @Modifying
+    @Query(value = "INSERT INTO blobs (storage_key, size, ref_count, created_at, deleted_at) "
+            + "SELECT f.storage_filename, max(f.size), 0, now(), now() FROM files f "
+            + "WHERE f.storage_filename IN (:storageKeys) GROUP BY f.storage_filename "
+            + "ON CONFLICT (storage_key) DO NOTHING", nativeQuery = true)
+    int tombstoneLegacy(Collection<String> storageKeys);
+
+    @Modifying
+    @Query(value = "INSERT INTO blobs (storage_key, size, ref_count, created_at, deleted_at) "
+            + "VALUES (:storageKey, :size, 0, now(), now()) ON CONFLICT (storage_key) DO NOTHING", nativeQuery = true)
+    int tombstone(String storageKey, long size);
+
+    // Rows locked by an upload taking the blob back, or by another collector, are left alone
+    @Query(value = "SELECT * FROM blobs WHERE deleted_at < :before AND ref_count <= 0 "
+            + "ORDER BY deleted_at LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<BlobEntity> findTombstonesForUpdate(LocalDateTime before, int limit);
+
+    // Rows taken by another instance's scrubber are left alone
+    @Query(value = "SELECT * FROM blobs WHERE scrubbed_at < :before AND deleted_at IS NULL AND corrupted_at IS NULL "
+            + "ORDER BY scrubbed_at LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<BlobEntity> findUnscrubbedForUpdate(LocalDateTime before, int limit);
+
+    @Modifying
+    @Query("UPDATE BlobEntity b SET b.scrubbedAt = :scrubbedAt WHERE b.storageKey = :storageKey")
+    int updateScrubbedAt(String storageKey, LocalDateTime scrubbedAt);
+
+    @Modifying
+    @Query("UPDATE BlobEntity b SET b.crc32c = :crc32c WHERE b.storageKey = :storageKey AND b.crc32c IS NULL")
+    int updateCrc32c(String storageKey, long crc32c);
+
+    // A blob collected while it was being read is gone, not corrupt
+    @Modifying
+    @Query("UPDATE BlobEntity b SET b.corruptedAt = LOCAL DATETIME "
+            + "WHERE b.storageKey = :storageKey AND b.deletedAt IS NULL")
+    int markCorrupted(String storageKey);
+
+    @Query("SELECT b.storageKey FROM BlobEntity b WHERE b.storageKey IN :storageKeys")
+    List<String> findExistingKeys(Collection<String> storageKeys);
+
+    // Locks in key order, the order every batch takes its blob locks in
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT b FROM BlobEntity b WHERE b.storageKey IN :storageKeys ORDER BY b.storageKey")
+    List<BlobEntity> findAllForUpdate(Collection<String> storageKeys);
+}
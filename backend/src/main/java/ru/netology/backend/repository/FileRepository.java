@@ -1,18 +1,53 @@
 package ru.netology.backend.repository;
 
 
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 import ru.netology.backend.model.entity.FileEntity;
 import ru.netology.backend.model.entity.UserEntity;
-import org.springframework.data.domain.Pageable;
+import ru.netology.backend.storage.BlobCodec;
 import org.springframework.data.jpa.repository.JpaRepository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface FileRepository extends JpaRepository<FileEntity, Long> {
-    List<FileEntity> findByUser(UserEntity user, Pageable pageable);
+public interface FileRepository extends JpaRepository<FileEntity, Long>, FileRepositoryCustom {
+    // Declared queries: derived ones build their criteria query under a shared lock on every call
+    @Query("SELECT f FROM FileEntity f WHERE f.filename = :filename AND f.user = :user")
     Optional<FileEntity> findByFilenameAndUser(String filename, UserEntity user);
+
+    @Query("SELECT COUNT(f) > 0 FROM FileEntity f WHERE f.filename = :filename AND f.user = :user")
     boolean existsByFilenameAndUser(String filename, UserEntity user);
+
+    @Query("SELECT f FROM FileEntity f WHERE f.user = :user AND f.filename IN :filenames")
+    List<FileEntity> findAllByUserAndFilenameIn(UserEntity user, Collection<String> filenames);
+
+    @Query("SELECT f.filename FROM FileEntity f WHERE f.user = :user AND f.filename IN :filenames")
+    List<String> findExistingFilenames(UserEntity user, Collection<String> filenames);
+
+    @Query("SELECT f FROM FileEntity f WHERE f.user = :user AND f.filename LIKE :pattern ESCAPE '\\' ORDER BY f.filename")
+    List<FileEntity> findAllByUserAndFilenameLike(UserEntity user, String pattern, Limit limit);
+
+    @Query("SELECT COUNT(f) > 0 FROM FileEntity f WHERE f.storageFilename = :storageFilename AND f.user = :user")
+    boolean existsByStorageFilenameAndUser(String storageFilename, UserEntity user);
+
+    // Only while the file still has the version the caller read; the read entity is detached
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE FileEntity f SET f.storageFilename = :storageKey, f.checksum = :storageKey, f.size = :size, "
+            + "f.crc32c = :crc32c, f.codec = :codec, f.createdAt = :createdAt, f.version = f.version + 1 "
+            + "WHERE f.id = :id AND f.version = :version")
+    int replaceContent(Long id, int version, String storageKey, Long size, Long crc32c, BlobCodec codec,
+                       LocalDateTime createdAt);
+
+    // Read once per user; from then on usage is kept by the QuotaService
+    @Query("SELECT COALESCE(SUM(f.size), 0) FROM FileEntity f WHERE f.user.id = :userId")
+    long sumSizeByUserId(Long userId);
+
+    @Query("SELECT DISTINCT f.storageFilename FROM FileEntity f WHERE f.storageFilename IN :storageKeys")
+    List<String> findExistingStorageFilenames(Collection<String> storageKeys);
 }
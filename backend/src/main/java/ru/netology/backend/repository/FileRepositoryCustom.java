@@ -0,0 +1,29 @@
+package ru.netology.backend.repository;
+
+import ru.netology.backend.model.dto.FileDto;
+import ru.netology.backend.model.dto.FileListItem;
+import ru.netology.backend.model.entity.FileEntity;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+public interface FileRepositoryCustom {
+
+    /**
+     * Returns up to {@code limit} files of the user in the given order, starting right
+     * after {@code after} (keyset pagination), or from the beginning when it is null.
+     */
+    List<FileListItem> findPage(Long userId, FileSort sort, boolean descending, FileListItem after, int limit);
+
+    /**
+     * Streams all files of the user from a database cursor, {@code fetchSize} rows at a
+     * time. Must be consumed and closed inside a transaction.
+     */
+    Stream<FileDto> streamAll(Long userId, FileSort sort, boolean descending, int fetchSize);
+
+    /**
+     * Inserts new files with one JDBC batch. The entities are not attached to the
+     * persistence context and do not get their ids.
+     */
+    void insertAll(List<FileEntity> files);
+}
@@ -0,0 +1,107 @@
+package ru.netology.backend.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import org.hibernate.Session;
+import org.hibernate.jpa.HibernateHints;
+import ru.netology.backend.model.dto.FileDto;
+import ru.netology.backend.model.dto.FileListItem;
+import ru.netology.backend.model.entity.FileEntity;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Keyset pagination over the (user_id, sort column, id) indexes: each page continues
+ * with a row-value comparison against the last row of the previous one instead of an
+ * OFFSET, so deep pages cost the same as the first. Full listings are streamed from a
+ * database cursor instead of being materialized.
+ */
+public class FileRepositoryImpl implements FileRepositoryCustom {
+
+    private static final String INSERT_FILE = "INSERT INTO files "
+            + "(filename, storage_filename, size, checksum, crc32c, codec, created_at, version, versioned, user_id) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<FileListItem> findPage(Long userId, FileSort sort, boolean descending, FileListItem after, int limit) {
+        String select = "select new ru.netology.backend.model.dto.FileListItem(f.id, f.filename, f.size, f.createdAt)";
+        TypedQuery<FileListItem> query = entityManager
+                .createQuery(listQuery(select, sort, descending, after != null), FileListItem.class)
+                .setParameter("userId", userId)
+                .setMaxResults(limit);
+        if (after != null) {
+            if (sort == FileSort.NAME) {
+                query.setParameter("filename", after.getFilename());
+            } else {
+                query.setParameter("value", sort == FileSort.SIZE ? after.getSize() : after.getCreatedAt());
+                query.setParameter("id", after.getId());
+            }
+        }
+        return query.getResultList();
+    }
+
+    @Override
+    public Stream<FileDto> streamAll(Long userId, FileSort sort, boolean descending, int fetchSize) {
+        String select = "select new ru.netology.backend.model.dto.FileDto(f.filename, f.size)";
+        return entityManager.createQuery(listQuery(select, sort, descending, false), FileDto.class)
+                .setParameter("userId", userId)
+                .setHint(HibernateHints.HINT_FETCH_SIZE, fetchSize)
+                .setHint(HibernateHints.HINT_READ_ONLY, true)
+                .getResultStream();
+    }
+
+    @Override
+    public void insertAll(List<FileEntity> files) {
+        if (files.isEmpty()) {
+            return;
+        }
+        // Identity ids keep Hibernate from batching inserts, so the batch is sent through JDBC
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_FILE)) {
+                for (FileEntity file : files) {
+                    statement.setString(1, file.getFilename());
+                    statement.setString(2, file.getStorageFilename());
+                    statement.setLong(3, file.getSize());
+                    statement.setString(4, file.getChecksum());
+                    statement.setObject(5, file.getCrc32c(), Types.BIGINT);
+                    statement.setString(6, file.getCodec() != null ? file.getCodec().name() : null);
+                    statement.setTimestamp(7, Timestamp.valueOf(file.getCreatedAt()));
+                    statement.setInt(8, file.getVersion());
+                    statement.setBoolean(9, file.isVersioned());
+                    statement.setLong(10, file.getUser().getId());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+        });
+    }
+
+    private static String listQuery(String select, FileSort sort, boolean descending, boolean afterRow) {
+        String property = "f." + sort.getProperty();
+        String comparison = descending ? " < " : " > ";
+        String direction = descending ? " desc" : " asc";
+
+        StringBuilder hql = new StringBuilder(select)
+                .append(" from FileEntity f where f.user.id = :userId");
+
+        // Filenames are unique per user, other columns need the id as a tie-breaker
+        if (afterRow) {
+            hql.append(sort == FileSort.NAME
+                    ? " and f.filename" + comparison + ":filename"
+                    : " and (" + property + ", f.id)" + comparison + "(:value, :id)");
+        }
+        hql.append(" order by ").append(property).append(direction);
+        if (sort != FileSort.NAME) {
+            hql.append(", f.id").append(direction);
+        }
+        return hql.toString();
+    }
+}
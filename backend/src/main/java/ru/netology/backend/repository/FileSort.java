@@ -0,0 +1,26 @@
+package ru.netology.backend.repository;
+
+import java.util.Locale;
+
+/**
+ * Sort orders supported by the file list, with the entity property each one uses.
+ */
+public enum FileSort {
+    NAME("filename"),
+    SIZE("size"),
+    DATE("createdAt");
+
+    private final String property;
+
+    FileSort(String property) {
+        this.property = property;
+    }
+
+    public String getProperty() {
+        return property;
+    }
+
+    public static FileSort fromParameter(String value) {
+        return valueOf(value.toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,44 @@
+package ru.netology.backend.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import ru.netology.backend.model.entity.FileEntity;
+import ru.netology.backend.model.entity.FileVersionEntity;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface FileVersionRepository extends JpaRepository<FileVersionEntity, Long> {
+
+    @Query("SELECT v FROM FileVersionEntity v WHERE v.file = :file ORDER BY v.version DESC")
+    List<FileVersionEntity> findAllByFile(FileEntity file);
+
+    @Query("SELECT v FROM FileVersionEntity v WHERE v.file = :file AND v.version = :version")
+    Optional<FileVersionEntity> findByFileAndVersion(FileEntity file, int version);
+
+    @Query("SELECT v.storageKey FROM FileVersionEntity v WHERE v.file.id IN :fileIds")
+    List<String> findStorageKeysByFileIdIn(Collection<Long> fileIds);
+
+    @Query("SELECT COALESCE(SUM(v.size), 0) FROM FileVersionEntity v WHERE v.file.id IN :fileIds")
+    long sumSizeByFileIdIn(Collection<Long> fileIds);
+
+    // Read once per user together with the files; from then on usage is kept by the QuotaService
+    @Query("SELECT COALESCE(SUM(v.size), 0) FROM FileVersionEntity v WHERE v.file.user.id = :userId")
+    long sumSizeByUserId(Long userId);
+
+    @Query("SELECT DISTINCT v.storageKey FROM FileVersionEntity v WHERE v.storageKey IN :storageKeys")
+    List<String> findExistingStorageKeys(Collection<String> storageKeys);
+
+    // Versions beyond the newest maxVersions of their file or replaced before the cutoff;
+    // rows taken by another instance's pruner are left alone
+    @Query(value = "SELECT * FROM file_versions WHERE id IN ("
+            + "SELECT id FROM (SELECT id, replaced_at, "
+            + "row_number() OVER (PARTITION BY file_id ORDER BY version DESC) AS position FROM file_versions) ranked "
+            + "WHERE position > :maxVersions OR replaced_at < :before LIMIT :limit) "
+            + "FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<FileVersionEntity> findExpiredForUpdate(LocalDateTime before, int maxVersions, int limit);
+}
@@ -1,5 +1,6 @@
 package ru.netology.backend.repository;
 
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 import ru.netology.backend.model.entity.TokenEntity;
 import ru.netology.backend.model.entity.UserEntity;
@@ -9,6 +10,7 @@ import java.util.Optional;
 
 @Repository
 public interface TokenRepository extends JpaRepository<TokenEntity, Long> {
+    @Query("SELECT t FROM TokenEntity t WHERE t.token = :token AND t.active = true")
     Optional<TokenEntity> findByTokenAndActiveTrue(String token);
     void deleteByUser(UserEntity user);
 }
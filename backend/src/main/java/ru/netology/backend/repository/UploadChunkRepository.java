@@ -0,0 +1,27 @@
+package ru.netology.backend.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.netology.backend.model.entity.UploadChunkEntity;
+
+import java.util.List;
+
+@Repository
+public interface UploadChunkRepository extends JpaRepository<UploadChunkEntity, Long> {
+    List<UploadChunkEntity> findBySessionIdOrderByOffsetAscLengthDesc(String sessionId);
+    boolean existsBySessionIdAndOffsetAndLength(String sessionId, Long offset, Long length);
+
+    // Records nothing once the session is gone; waits for a commit or abort that holds its lock
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO upload_chunks (session_id, chunk_offset, chunk_length) "
+            + "SELECT id, :offset, :length FROM upload_sessions WHERE id = :sessionId FOR SHARE", nativeQuery = true)
+    int insertIfSessionExists(String sessionId, long offset, long length);
+
+    @Modifying
+    @Query("DELETE FROM UploadChunkEntity c WHERE c.sessionId = :sessionId")
+    void deleteBySessionId(String sessionId);
+}
@@ -0,0 +1,30 @@
+package ru.netology.backend.repository;
+
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import ru.netology.backend.model.entity.UploadSessionEntity;
+import ru.netology.backend.model.entity.UserEntity;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface UploadSessionRepository extends JpaRepository<UploadSessionEntity, String> {
+    Optional<UploadSessionEntity> findByIdAndUser(String id, UserEntity user);
+
+    // Held while the session is deleted, so a chunk recorded meanwhile waits and then finds it gone
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM UploadSessionEntity s WHERE s.id = :id AND s.user = :user")
+    Optional<UploadSessionEntity> findByIdAndUserForUpdate(String id, UserEntity user);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    List<UploadSessionEntity> findByExpiresAtBefore(LocalDateTime time);
+
+    @Query("SELECT s.id FROM UploadSessionEntity s WHERE s.id IN :ids")
+    List<String> findExistingIds(Collection<String> ids);
+}
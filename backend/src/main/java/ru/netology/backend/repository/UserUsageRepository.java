@@ -0,0 +1,36 @@
+package ru.netology.backend.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.netology.backend.model.entity.UserUsageEntity;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface UserUsageRepository extends JpaRepository<UserUsageEntity, Long> {
+
+    // Adds a change to the usage, creating the row with the full usage if this is the first change written
+    @Modifying
+    @Query(value = "INSERT INTO user_usage (user_id, used_bytes) VALUES (:userId, :usedBytes) "
+            + "ON CONFLICT (user_id) DO UPDATE SET used_bytes = user_usage.used_bytes + :delta",
+            nativeQuery = true)
+    void addUsedBytes(Long userId, long usedBytes, long delta);
+
+    @Query(value = "SELECT user_id FROM user_usage WHERE user_id > :after ORDER BY user_id LIMIT :limit",
+            nativeQuery = true)
+    List<Long> findUserIdsAfter(long after, int limit);
+
+    // Sets the usage to what the files and versions of the users hold, one short transaction per batch
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE user_usage u SET used_bytes = "
+            + "(SELECT COALESCE(SUM(f.size), 0) FROM files f WHERE f.user_id = u.user_id) + "
+            + "(SELECT COALESCE(SUM(v.size), 0) FROM file_versions v JOIN files f ON f.id = v.file_id "
+            + "WHERE f.user_id = u.user_id) "
+            + "WHERE u.user_id IN :userIds", nativeQuery = true)
+    int recount(Collection<Long> userIds);
+}
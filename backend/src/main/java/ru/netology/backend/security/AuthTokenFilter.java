@@ -1,13 +1,12 @@
 package ru.netology.backend.security;
 
-import ru.netology.backend.model.entity.TokenEntity;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
@@ -15,10 +14,10 @@ import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
 import java.util.Optional;
 
 @Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class AuthTokenFilter extends OncePerRequestFilter {
 
     private final TokenService tokenService;
@@ -36,20 +35,16 @@ public class AuthTokenFilter extends OncePerRequestFilter {
         try {
             String jwt = parseToken(request);
             if (jwt != null) {
-                Optional<TokenEntity> tokenOpt = tokenService.findByToken(jwt);
+                Optional<ResolvedToken> tokenOpt = tokenService.findByToken(jwt);
 
                 if (tokenOpt.isPresent()) {
-                    TokenEntity token = tokenOpt.get();
+                    ResolvedToken token = tokenOpt.get();
 
                     // Check if token is expired
                     if (LocalDateTime.now().isAfter(token.getExpiryDate())) {
                         tokenService.deactivateToken(jwt);
                     } else {
-                        UserDetails userDetails = new User(
-                                token.getUser().getLogin(),
-                                token.getUser().getPassword(),
-                                new ArrayList<>()
-                        );
+                        UserDetails userDetails = new AuthenticatedUser(token.getUser());
 
                         UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
                                 userDetails, null, userDetails.getAuthorities());
@@ -0,0 +1,42 @@
+package ru.netology.backend.security;
+
+import lombok.Getter;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+import ru.netology.backend.model.entity.UserEntity;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Principal set by {@link AuthTokenFilter}. Carries the user already resolved
+ * from the token, so services do not have to look it up again.
+ */
+@Getter
+public class AuthenticatedUser implements UserDetails {
+
+    private final UserEntity user;
+
+    public AuthenticatedUser(UserEntity user) {
+        this.user = user;
+    }
+
+    public Long getId() {
+        return user.getId();
+    }
+
+    @Override
+    public String getUsername() {
+        return user.getLogin();
+    }
+
+    @Override
+    public String getPassword() {
+        return user.getPassword();
+    }
+
+    @Override
+    public Collection<? extends GrantedAuthority> getAuthorities() {
+        return Collections.emptyList();
+    }
+}
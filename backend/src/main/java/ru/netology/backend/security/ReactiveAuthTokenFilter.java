@@ -0,0 +1,74 @@
+package ru.netology.backend.security;
+
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * WebFlux counterpart of {@link AuthTokenFilter}. Tokens found in {@link TokenCache}
+ * are accepted on the event loop; only cache misses go to the database, on the
+ * blocking scheduler.
+ */
+public class ReactiveAuthTokenFilter implements WebFilter {
+
+    private final TokenService tokenService;
+    private final TokenCache tokenCache;
+    private final Scheduler blockingScheduler;
+
+    public ReactiveAuthTokenFilter(TokenService tokenService, TokenCache tokenCache, Scheduler blockingScheduler) {
+        this.tokenService = tokenService;
+        this.tokenCache = tokenCache;
+        this.blockingScheduler = blockingScheduler;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        String token = parseToken(exchange.getRequest());
+        if (token == null || "/login".equals(exchange.getRequest().getPath().value())) {
+            return chain.filter(exchange);
+        }
+
+        // Cached tokens are never past their expiry date
+        ResolvedToken cached = tokenCache.get(token);
+        Mono<Optional<ResolvedToken>> resolved = cached != null
+                ? Mono.just(Optional.of(cached))
+                : Mono.fromCallable(() -> resolve(token)).subscribeOn(blockingScheduler);
+
+        return resolved.flatMap(activeToken -> activeToken
+                .map(t -> chain.filter(exchange)
+                        .contextWrite(ReactiveSecurityContextHolder.withAuthentication(authentication(t))))
+                .orElseGet(() -> chain.filter(exchange)));
+    }
+
+    private Optional<ResolvedToken> resolve(String token) {
+        Optional<ResolvedToken> resolved = tokenService.findByToken(token);
+        if (resolved.isPresent() && LocalDateTime.now().isAfter(resolved.get().getExpiryDate())) {
+            tokenService.deactivateToken(token);
+            return Optional.empty();
+        }
+        return resolved;
+    }
+
+    private static Authentication authentication(ResolvedToken token) {
+        UserDetails userDetails = new AuthenticatedUser(token.getUser());
+        return new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
+    }
+
+    private static String parseToken(ServerHttpRequest request) {
+        String headerAuth = request.getHeaders().getFirst("auth-token");
+        if (headerAuth != null && headerAuth.startsWith("Bearer ")) {
+            return headerAuth.substring(7);
+        }
+        return headerAuth;
+    }
+}
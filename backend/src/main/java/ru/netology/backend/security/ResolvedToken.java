@@ -0,0 +1,17 @@
+package ru.netology.backend.security;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import ru.netology.backend.model.entity.UserEntity;
+
+import java.time.LocalDateTime;
+
+/**
+ * Active token resolved to its owner, as kept in {@link TokenCache}.
+ */
+@Getter
+@AllArgsConstructor
+public class ResolvedToken {
+    private final UserEntity user;
+    private final LocalDateTime expiryDate;
+}
@@ -0,0 +1,90 @@
+package ru.netology.backend.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Bounded in-memory cache of active tokens, so that authenticated requests do not
+ * hit the database on every call. An entry lives for at most the configured TTL and
+ * never past the token's own expiry date. Hit rate and size are published as the
+ * {@code auth.tokens} cache metrics.
+ */
+@Component
+public class TokenCache implements MeterBinder {
+
+    private final Cache<String, ResolvedToken> cache;
+
+    public TokenCache(
+            @Value("${app.security.token-cache.max-size:10000}") long maxSize,
+            @Value("${app.security.token-cache.ttl:60s}") Duration ttl) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new TokenExpiry(ttl))
+                .recordStats()
+                .build();
+    }
+
+    public ResolvedToken get(String token) {
+        return cache.getIfPresent(token);
+    }
+
+    public void put(String token, ResolvedToken resolvedToken) {
+        cache.put(token, resolvedToken);
+    }
+
+    public void invalidate(String token) {
+        cache.invalidate(token);
+    }
+
+    public void invalidateUser(Long userId) {
+        cache.asMap().values().removeIf(resolved -> userId.equals(resolved.getUser().getId()));
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "auth.tokens");
+    }
+
+    private static class TokenExpiry implements Expiry<String, ResolvedToken> {
+
+        private final long ttlNanos;
+
+        TokenExpiry(Duration ttl) {
+            this.ttlNanos = ttl.toNanos();
+        }
+
+        @Override
+        public long expireAfterCreate(String token, ResolvedToken resolved, long currentTime) {
+            long untilExpiry = Duration.between(LocalDateTime.now(), resolved.getExpiryDate()).toNanos();
+            return Math.max(0, Math.min(ttlNanos, untilExpiry));
+        }
+
+        @Override
+        public long expireAfterUpdate(String token, ResolvedToken resolved, long currentTime, long currentDuration) {
+            return expireAfterCreate(token, resolved, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String token, ResolvedToken resolved, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -1,11 +1,15 @@
 package ru.netology.backend.security;
 
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
 import ru.netology.backend.model.entity.TokenEntity;
 import ru.netology.backend.model.entity.UserEntity;
 import ru.netology.backend.repository.TokenRepository;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.LocalDateTime;
 import java.util.Optional;
@@ -15,12 +19,16 @@ import java.util.UUID;
 public class TokenService {
 
     private final TokenRepository tokenRepository;
+    private final TokenCache tokenCache;
+    private final ObservationRegistry observationRegistry;
 
     @Value("${app.security.token-validity}")
     private long tokenValidityInMilliseconds;
 
-    public TokenService(TokenRepository tokenRepository) {
+    public TokenService(TokenRepository tokenRepository, TokenCache tokenCache, ObservationRegistry observationRegistry) {
         this.tokenRepository = tokenRepository;
+        this.tokenCache = tokenCache;
+        this.observationRegistry = observationRegistry;
     }
 
     public TokenEntity createToken(UserEntity user) {
@@ -36,12 +44,30 @@ public class TokenService {
         return tokenRepository.save(token);
     }
 
-    public Optional<TokenEntity> findByToken(String token) {
-        return tokenRepository.findByTokenAndActiveTrue(token);
+    // Both the servlet and the reactive filter resolve tokens here, so one observation covers them
+    public Optional<ResolvedToken> findByToken(String token) {
+        Observation observation = Observation.createNotStarted("auth.token.lookup", observationRegistry);
+        return observation.observe(() -> {
+            ResolvedToken cached = tokenCache.get(token);
+            if (cached != null) {
+                observation.lowCardinalityKeyValue("source", "cache").lowCardinalityKeyValue("result", "found");
+                return Optional.of(cached);
+            }
+
+            observation.lowCardinalityKeyValue("source", "database").lowCardinalityKeyValue("result", "missing");
+            Optional<ResolvedToken> resolved = tokenRepository.findByTokenAndActiveTrue(token)
+                    .map(t -> new ResolvedToken(t.getUser(), t.getExpiryDate()));
+            resolved.ifPresent(r -> {
+                tokenCache.put(token, r);
+                observation.lowCardinalityKeyValue("result", "found");
+            });
+            return resolved;
+        });
     }
 
     @Transactional
     public void deactivateToken(String token) {
+        invalidate(() -> tokenCache.invalidate(token));
         tokenRepository.findByTokenAndActiveTrue(token).ifPresent(t -> {
             t.setActive(false);
             tokenRepository.save(t);
@@ -50,9 +76,26 @@ public class TokenService {
 
     @Transactional
     public void deactivateAllUserTokens(UserEntity user) {
+        invalidate(() -> tokenCache.invalidateUser(user.getId()));
         tokenRepository.deleteByUser(user);
     }
 
+    /**
+     * Evicts now and again after commit: a lookup that misses the cache before the
+     * change commits still reads the token as active and would cache it again.
+     */
+    private static void invalidate(Runnable eviction) {
+        eviction.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    eviction.run();
+                }
+            });
+        }
+    }
+
     private String generateTokenString() {
         return UUID.randomUUID().toString();
     }
@@ -0,0 +1,26 @@
+package ru.netology.backend.service;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A file to be written into an archive. The content is only opened when the entry
+ * is written, so an archive of many files holds one blob open at a time.
+ */
+@Getter
+@AllArgsConstructor
+public class ArchiveEntry {
+    private final String filename;
+    private final long size;
+    private final long lastModified;
+    @Getter(AccessLevel.NONE)
+    private final StoredFile.RangeReader rangeReader;
+
+    public InputStream open() throws IOException {
+        return rangeReader.open(0, size);
+    }
+}
@@ -0,0 +1,166 @@
+package ru.netology.backend.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.netology.backend.exception.FileStorageException;
+import ru.netology.backend.repository.BlobRepository;
+import ru.netology.backend.repository.FileRepository;
+import ru.netology.backend.repository.FileVersionRepository;
+import ru.netology.backend.storage.BlobStat;
+import ru.netology.backend.storage.BlobStore;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Physically deletes content in the background, so that deleting a file only
+ * changes metadata. Tombstoned blobs are unlinked in batches, one transaction each,
+ * and every instance can run the collector: rows taken by one are skipped by the
+ * others.
+ *
+ * <p>An orphan sweep finds content that no row points at, such as a blob written by
+ * an upload whose transaction then rolled back, and gives it a tombstone, so that it
+ * is unlinked under the same row lock as any other blob and an upload of the same
+ * content can still take it back. It also removes stale staging files. Only content
+ * older than {@code orphan-min-age} is touched, which keeps it clear of uploads
+ * still in flight.
+ *
+ * <p>Both are limited to {@code max-deletes-per-second}, so a large cleanup does not
+ * compete with requests for the disk or the bucket.
+ */
+@Slf4j
+@Component
+public class BlobCollector {
+
+    private final BlobService blobService;
+    private final BlobStore blobStore;
+    private final BlobRepository blobRepository;
+    private final FileRepository fileRepository;
+    private final FileVersionRepository fileVersionRepository;
+    private final Duration delay;
+    private final int batchSize;
+    private final int maxDeletesPerSecond;
+    private final Duration orphanMinAge;
+
+    public BlobCollector(
+            BlobService blobService,
+            BlobStore blobStore,
+            BlobRepository blobRepository,
+            FileRepository fileRepository,
+            FileVersionRepository fileVersionRepository,
+            @Value("${app.storage.gc.delay:PT1M}") Duration delay,
+            @Value("${app.storage.gc.batch-size:500}") int batchSize,
+            @Value("${app.storage.gc.max-deletes-per-second:500}") int maxDeletesPerSecond,
+            @Value("${app.storage.gc.orphan-min-age:24h}") Duration orphanMinAge) {
+        this.blobService = blobService;
+        this.blobStore = blobStore;
+        this.blobRepository = blobRepository;
+        this.fileRepository = fileRepository;
+        this.fileVersionRepository = fileVersionRepository;
+        this.delay = delay;
+        this.batchSize = batchSize;
+        this.maxDeletesPerSecond = maxDeletesPerSecond;
+        this.orphanMinAge = orphanMinAge;
+    }
+
+    @Scheduled(fixedDelayString = "${app.storage.gc.interval:PT1M}")
+    public void collectGarbage() {
+        long collected = 0;
+        boolean more = true;
+        while (more) {
+            long started = System.nanoTime();
+            int batch = blobService.collectGarbage(LocalDateTime.now().minus(delay), batchSize);
+            collected += batch;
+            more = batch == batchSize && throttle(batch, started);
+        }
+
+        if (collected > 0) {
+            log.info("Deleted {} unreferenced blobs", collected);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.storage.gc.orphan-sweep-interval:PT24H}",
+            initialDelayString = "${app.storage.gc.orphan-sweep-initial-delay:PT10M}")
+    public void sweepOrphans() {
+        Instant before = Instant.now().minus(orphanMinAge);
+        long orphans = 0;
+
+        try (Stream<String> keys = blobStore.listKeys()) {
+            Iterator<String> iterator = keys.iterator();
+            List<String> batch = new ArrayList<>(batchSize);
+            boolean running = true;
+            while (running && iterator.hasNext()) {
+                batch.add(iterator.next());
+                if (batch.size() == batchSize || !iterator.hasNext()) {
+                    long started = System.nanoTime();
+                    int found = tombstoneOrphans(batch, before);
+                    orphans += found;
+                    batch.clear();
+                    running = throttle(found, started);
+                }
+            }
+        }
+        int staging = blobService.deleteStaleStagingFiles(before);
+
+        if (orphans > 0 || staging > 0) {
+            log.info("Found {} orphaned blobs and deleted {} stale staging files", orphans, staging);
+        }
+    }
+
+    private int tombstoneOrphans(List<String> keys, Instant before) {
+        Set<String> referenced = new HashSet<>(blobRepository.findExistingKeys(keys));
+        List<String> unknown = keys.stream().filter(key -> !referenced.contains(key)).toList();
+        if (unknown.isEmpty()) {
+            return 0;
+        }
+        // Content stored before deduplication has no blob row, only the files and versions pointing at it
+        referenced.addAll(fileRepository.findExistingStorageFilenames(unknown));
+        referenced.addAll(fileVersionRepository.findExistingStorageKeys(unknown));
+
+        int found = 0;
+        for (String key : unknown) {
+            if (referenced.contains(key)) {
+                continue;
+            }
+            try {
+                Optional<BlobStat> stat = blobStore.stat(key);
+                if (stat.isPresent() && stat.get().getLastModified() < before.toEpochMilli()
+                        && blobService.tombstone(key, stat.get().getSize())) {
+                    found++;
+                }
+            } catch (FileStorageException ex) {
+                log.warn("Could not check orphaned blob {}", key, ex);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Waits long enough for {@code deletes} started at {@code started} to stay within
+     * the rate limit; false if the thread was interrupted, on shutdown.
+     */
+    private boolean throttle(int deletes, long started) {
+        long minNanos = TimeUnit.SECONDS.toNanos(deletes) / maxDeletesPerSecond;
+        long remaining = minNanos - (System.nanoTime() - started);
+        if (remaining > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(remaining);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,129 @@
+package ru.netology.backend.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import ru.netology.backend.exception.FileStorageException;
+import ru.netology.backend.storage.BlobCodec;
+import ru.netology.backend.storage.BlobStat;
+import ru.netology.backend.storage.BlobStore;
+import ru.netology.backend.storage.SeekableCompression;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Compression of blobs at rest. {@code app.storage.compression.codec} is either a
+ * fixed codec ({@code none}, {@code zstd}, {@code lz4}) or {@code auto}, which
+ * compresses the first frame with zstd and keeps content that hardly shrinks, such as
+ * media or archives, as it is. Content that does not get smaller is never stored
+ * compressed.
+ *
+ * <p>Seek tables of compressed blobs are cached: content under a storage key never
+ * changes, so ranges are read without fetching the table again.
+ */
+@Component
+public class BlobCompressor {
+
+    private static final String AUTO = "auto";
+
+    private final BlobStore blobStore;
+    private final BlobCodec codec;
+    private final boolean sniff;
+    private final long minSize;
+    private final int minSavingsPercent;
+    private final Cache<String, SeekableCompression.SeekTable> seekTables;
+
+    public BlobCompressor(
+            BlobStore blobStore,
+            @Value("${app.storage.compression.codec:auto}") String codec,
+            @Value("${app.storage.compression.min-size:4KB}") DataSize minSize,
+            @Value("${app.storage.compression.min-savings:10}") int minSavingsPercent,
+            @Value("${app.storage.compression.seek-table-cache-frames:1000000}") long seekTableCacheFrames) {
+        this.blobStore = blobStore;
+        this.sniff = AUTO.equalsIgnoreCase(codec);
+        this.codec = sniff ? BlobCodec.ZSTD : BlobCodec.valueOf(codec.toUpperCase(Locale.ROOT));
+        this.minSize = minSize.toBytes();
+        this.minSavingsPercent = minSavingsPercent;
+        this.seekTables = Caffeine.newBuilder()
+                .maximumWeight(seekTableCacheFrames)
+                .<String, SeekableCompression.SeekTable>weigher((key, table) -> table.getFrameCount() + 1)
+                .build();
+    }
+
+    /**
+     * Compresses {@code source} into {@code target} and returns the codec used, or
+     * {@link BlobCodec#NONE} if the content should be stored as it is.
+     */
+    public BlobCodec compress(Path source, long size, Path target) {
+        if (codec == BlobCodec.NONE || size < minSize) {
+            return BlobCodec.NONE;
+        }
+
+        try (InputStream in = Files.newInputStream(source);
+             OutputStream out = new BufferedOutputStream(Files.newOutputStream(target))) {
+            SeekableCompression.Writer writer = new SeekableCompression.Writer(codec, out);
+            byte[] frame = new byte[SeekableCompression.FRAME_SIZE];
+            boolean first = true;
+            int length;
+            while ((length = in.readNBytes(frame, 0, frame.length)) > 0) {
+                int compressedLength = writer.writeFrame(frame, length);
+                if (first && sniff && compressedLength * 100L > length * (100L - minSavingsPercent)) {
+                    return BlobCodec.NONE;
+                }
+                first = false;
+            }
+            long compressedSize = writer.finish();
+            return compressedSize < size ? codec : BlobCodec.NONE;
+        } catch (IOException ex) {
+            throw new FileStorageException("Could not compress content", ex);
+        }
+    }
+
+    /**
+     * Reads a range of the original content of a compressed blob.
+     */
+    public InputStream getRange(String storageKey, BlobCodec codec, long offset, long length) {
+        try {
+            return SeekableCompression.openRange(codec, seekTable(storageKey, codec),
+                    (start, count) -> blobStore.getRange(storageKey, start, count), offset, length);
+        } catch (IOException ex) {
+            throw new FileStorageException("Could not read blob " + storageKey, ex);
+        }
+    }
+
+    public void evict(String storageKey) {
+        for (BlobCodec blobCodec : BlobCodec.values()) {
+            seekTables.invalidate(cacheKey(storageKey, blobCodec));
+        }
+    }
+
+    private SeekableCompression.SeekTable seekTable(String storageKey, BlobCodec codec) {
+        try {
+            return seekTables.get(cacheKey(storageKey, codec), key -> {
+                BlobStat stat = blobStore.stat(storageKey)
+                        .orElseThrow(() -> new FileStorageException("Blob not found: " + storageKey));
+                try {
+                    return SeekableCompression.readSeekTable(
+                            (start, count) -> blobStore.getRange(storageKey, start, count), stat.getSize());
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+        } catch (UncheckedIOException ex) {
+            throw new FileStorageException("Could not read the seek table of blob " + storageKey, ex.getCause());
+        }
+    }
+
+    private static String cacheKey(String storageKey, BlobCodec codec) {
+        return codec + ":" + storageKey;
+    }
+}
@@ -0,0 +1,196 @@
+package ru.netology.backend.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import ru.netology.backend.exception.FileStorageException;
+import ru.netology.backend.model.entity.BlobEntity;
+import ru.netology.backend.storage.CorruptBlobException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+/**
+ * Reads every blob back once per {@code period} and checks it against its key, its
+ * size and its CRC32C, so that content damaged at rest is found before a client
+ * downloads it. A corrupted blob is logged and no longer shared with new uploads,
+ * and the next upload of the same content replaces it; downloads carry the digest the
+ * content was stored with, so a client can tell. Blobs stored before checksums were
+ * recorded get their CRC32C on the first pass. A blob that cannot be read for other
+ * reasons, such as a timeout of the store, is not flagged but left for the next run.
+ *
+ * <p>Reading is limited to {@code bytes-per-second}, so a pass over a large store is
+ * spread out instead of competing with downloads. Every instance can run the
+ * scrubber: blobs claimed by one are skipped by the others.
+ */
+@Slf4j
+@Component
+public class BlobScrubber {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final BlobService blobService;
+    private final Duration period;
+    private final int batchSize;
+    private final long bytesPerSecond;
+
+    public BlobScrubber(
+            BlobService blobService,
+            @Value("${app.storage.scrub.period:P30D}") Duration period,
+            @Value("${app.storage.scrub.batch-size:100}") int batchSize,
+            @Value("${app.storage.scrub.bytes-per-second:10MB}") DataSize bytesPerSecond) {
+        this.blobService = blobService;
+        this.period = period;
+        this.batchSize = batchSize;
+        this.bytesPerSecond = bytesPerSecond.toBytes();
+    }
+
+    @Scheduled(fixedDelayString = "${app.storage.scrub.interval:PT1H}",
+            initialDelayString = "${app.storage.scrub.initial-delay:PT10M}")
+    public void scrub() {
+        long started = System.nanoTime();
+        Budget budget = new Budget(started);
+        int checked = 0;
+        int corrupted = 0;
+        int unreadable = 0;
+
+        boolean more = true;
+        while (more) {
+            LocalDateTime before = LocalDateTime.now().minus(period);
+            List<BlobEntity> blobs = blobService.claimForScrubbing(before, batchSize);
+            for (BlobEntity blob : blobs) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                switch (verify(blob, budget)) {
+                    case INTACT -> checked++;
+                    case CORRUPTED -> {
+                        blobService.markCorrupted(blob.getStorageKey());
+                        corrupted++;
+                        checked++;
+                    }
+                    case UNREADABLE -> {
+                        blobService.unclaimForScrubbing(blob.getStorageKey(), before);
+                        unreadable++;
+                    }
+                }
+            }
+            // Unreadable blobs would be claimed again at once; the store gets until the next run to recover
+            more = blobs.size() == batchSize && unreadable == 0;
+        }
+
+        if (checked + unreadable > 0) {
+            log.info("Scrubbed {} blobs, {} MB in {} s, {} corrupted, {} left for the next run",
+                    checked, budget.bytes / (1024 * 1024),
+                    TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - started), corrupted, unreadable);
+        }
+    }
+
+    /**
+     * Reads a blob through and tells whether it still holds the content it was
+     * stored with. Only content that is missing or differs counts as corrupted; a
+     * read that fails on its way, such as a timeout, says nothing about the blob.
+     */
+    private Result verify(BlobEntity blob, Budget budget) {
+        String key = blob.getStorageKey();
+        MessageDigest digest = sha256();
+        CRC32C crc = new CRC32C();
+        long size = 0;
+
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = blobService.getRange(key, blob.getCodec(), 0, blob.getSize())) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+                crc.update(buffer, 0, read);
+                size += read;
+                budget.spend(read);
+            }
+        } catch (IOException | FileStorageException ex) {
+            if (isCorrupt(ex) || isMissing(key)) {
+                log.error("Blob {} could not be read back", key, ex);
+                return Result.CORRUPTED;
+            }
+            log.warn("Blob {} could not be read back, retrying on the next run", key, ex);
+            return Result.UNREADABLE;
+        }
+
+        if (size != blob.getSize() || !HexFormat.of().formatHex(digest.digest()).equals(key)) {
+            log.error("Blob {} does not match its key: {} bytes read, {} expected", key, size, blob.getSize());
+            return Result.CORRUPTED;
+        }
+        if (blob.getCrc32c() == null) {
+            blobService.recordCrc32c(key, crc.getValue());
+        } else if (blob.getCrc32c() != crc.getValue()) {
+            log.error("Blob {} does not match its CRC32C", key);
+            return Result.CORRUPTED;
+        }
+        return Result.INTACT;
+    }
+
+    private static boolean isCorrupt(Throwable ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof CorruptBlobException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isMissing(String key) {
+        try {
+            return blobService.stat(key).isEmpty();
+        } catch (FileStorageException ex) {
+            // The store is not answering either
+            return false;
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private enum Result {
+        INTACT, CORRUPTED, UNREADABLE
+    }
+
+    /**
+     * Bytes read so far in a run, paced to {@code bytes-per-second}.
+     */
+    private class Budget {
+
+        private final long started;
+        private long bytes;
+
+        Budget(long started) {
+            this.started = started;
+        }
+
+        void spend(int read) {
+            bytes += read;
+            long ahead = (long) (bytes * 1e9 / bytesPerSecond) - (System.nanoTime() - started);
+            if (ahead > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(ahead);
+                } catch (InterruptedException ex) {
+                    // The run stops before the next blob
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+}
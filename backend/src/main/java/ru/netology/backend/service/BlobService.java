@@ -0,0 +1,445 @@
+package ru.netology.backend.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.commons.io.input.ProxyInputStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+import ru.netology.backend.exception.BadRequestException;
+import ru.netology.backend.exception.FileStorageException;
+import ru.netology.backend.model.entity.BlobEntity;
+import ru.netology.backend.repository.BlobRepository;
+import ru.netology.backend.storage.BlobCodec;
+import ru.netology.backend.storage.BlobStat;
+import ru.netology.backend.storage.BlobStore;
+import ru.netology.backend.web.ContentDigest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * Content-addressed blob storage. Uploads are staged on the local disk while their
+ * SHA-256 is computed, then either become a new blob in the {@link BlobStore} keyed by
+ * the hash or are dropped in favour of the existing blob with the same content.
+ *
+ * <p>Reference counts live in the blobs table. Both acquiring and releasing a
+ * reference lock the blob row until commit. Releasing only touches metadata: the
+ * last release turns the row into a tombstone, and {@link #collectGarbage} unlinks
+ * the content later while holding the row lock, so a concurrent upload of the same
+ * content either takes the tombstone back or waits and then recreates the blob.
+ *
+ * <p>New blobs may be stored compressed by the {@link BlobCompressor}; the codec is
+ * kept on the blob row, so later uploads of the same content learn how it is stored.
+ * The row also keeps a CRC32C computed in the same pass as the hash, for clients
+ * that check downloads with a cheaper checksum.
+ */
+@Service
+public class BlobService {
+
+    private final Path stagingLocation;
+    private final BlobRepository blobRepository;
+    private final BlobStore blobStore;
+    private final BlobCompressor blobCompressor;
+    private final ObservationRegistry observationRegistry;
+    private final Counter bytesWritten;
+    private final Counter bytesRead;
+
+    public BlobService(
+            @Value("${app.storage.location}") String uploadDir,
+            BlobRepository blobRepository,
+            BlobStore blobStore,
+            BlobCompressor blobCompressor,
+            MeterRegistry meterRegistry,
+            ObservationRegistry observationRegistry) {
+        this.stagingLocation = Paths.get(uploadDir).toAbsolutePath().normalize().resolve(".staging");
+        this.blobRepository = blobRepository;
+        this.blobStore = blobStore;
+        this.blobCompressor = blobCompressor;
+        this.observationRegistry = observationRegistry;
+        this.bytesWritten = Counter.builder("storage.blob.bytes")
+                .description("Bytes of content written to and read from the blob store, before compression")
+                .baseUnit(BaseUnits.BYTES)
+                .tag("direction", "written")
+                .register(meterRegistry);
+        this.bytesRead = Counter.builder("storage.blob.bytes")
+                .description("Bytes of content written to and read from the blob store, before compression")
+                .baseUnit(BaseUnits.BYTES)
+                .tag("direction", "read")
+                .register(meterRegistry);
+
+        try {
+            Files.createDirectories(this.stagingLocation);
+        } catch (IOException ex) {
+            throw new FileStorageException("Could not create the directory for staged uploads.", ex);
+        }
+    }
+
+    @Transactional
+    public StoredBlob store(InputStream content, long maxSize) {
+        return store(content, null, maxSize);
+    }
+
+    /**
+     * Stores content, rejecting it unless it matches the {@code expected} digest sent
+     * by the client, if any.
+     */
+    @Transactional
+    public StoredBlob store(InputStream content, ContentDigest expected, long maxSize) {
+        StagedFile staged = stage(content, null, maxSize);
+        try {
+            return storeStaged(staged, expected, maxSize);
+        } finally {
+            deleteQuietly(staged.getPath());
+        }
+    }
+
+    /**
+     * Writes content to a new staging file while computing its SHA-256 and CRC32C in
+     * the same pass. At most one byte more than {@code maxSize} is read, enough for
+     * {@link #storeStaged} to reject it.
+     */
+    public StagedFile stage(InputStream content, String filename, long maxSize) {
+        Path stagingFile = newStagingFile();
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            CRC32C crc32c = new CRC32C();
+            InputStream bounded = new BoundedInputStream(
+                    new CheckedInputStream(new DigestInputStream(content, digest), crc32c), maxSize + 1);
+            long size = Files.copy(bounded, stagingFile);
+            return new StagedFile(filename, stagingFile, HexFormat.of().formatHex(digest.digest()),
+                    crc32c.getValue(), size);
+        } catch (IOException | NoSuchAlgorithmException ex) {
+            deleteQuietly(stagingFile);
+            throw new FileStorageException("Could not store content", ex);
+        } catch (RuntimeException ex) {
+            // Content rejected while it was read, such as an invalid delta
+            deleteQuietly(stagingFile);
+            throw ex;
+        }
+    }
+
+    /**
+     * Location for content that a caller writes itself before handing it to
+     * {@link #storeStaged}; it is on the same file system as the local blob store.
+     */
+    public Path newStagingFile() {
+        return stagingLocation.resolve(UUID.randomUUID().toString());
+    }
+
+    @Transactional
+    public StoredBlob storeStaged(StagedFile staged, long maxSize) {
+        return storeStaged(staged, null, maxSize);
+    }
+
+    /**
+     * Stores staged content under its SHA-256. The staging file is moved or deleted.
+     */
+    @Transactional
+    public StoredBlob storeStaged(StagedFile staged, ContentDigest expected, long maxSize) {
+        String sha256 = staged.getSha256();
+        long size = staged.getSize();
+        try {
+            if (size == 0) {
+                throw new FileStorageException("Failed to store empty file");
+            }
+            if (size > maxSize) {
+                throw new MaxUploadSizeExceededException(maxSize);
+            }
+            if (expected != null && !expected.matches(sha256, staged.getCrc32c())) {
+                throw new BadRequestException("Content does not match the digest sent with it");
+            }
+
+            blobRepository.acquire(sha256, size, staged.getCrc32c());
+
+            // Same content may already be stored; corrupted content is replaced by the upload
+            Optional<BlobCodec> existing = blobStore.stat(sha256).isPresent()
+                    ? blobRepository.findCodec(sha256)
+                    : Optional.empty();
+            BlobCodec codec;
+            if (existing.isEmpty()) {
+                codec = put(sha256, staged.getPath(), size);
+                blobCompressor.evict(sha256);
+                blobRepository.updateContent(sha256, codec);
+            } else {
+                codec = existing.get();
+            }
+            return new StoredBlob(sha256, size, codec, staged.getCrc32c());
+        } finally {
+            deleteQuietly(staged.getPath());
+        }
+    }
+
+    /**
+     * Adds a reference to content already stored intact under {@code sha256}, so that
+     * it need not be uploaded; empty if there is no such blob.
+     */
+    @Transactional
+    public Optional<StoredBlob> acquireExisting(String sha256) {
+        if (blobRepository.acquireExisting(sha256) == 0) {
+            return Optional.empty();
+        }
+        return blobRepository.findById(sha256).map(blob -> new StoredBlob(
+                blob.getStorageKey(),
+                blob.getSize(),
+                blob.getCodec() != null ? blob.getCodec() : BlobCodec.NONE,
+                blob.getCrc32c()));
+    }
+
+    private BlobCodec put(String storageKey, Path stagingFile, long size) {
+        Path compressed = newStagingFile();
+        try {
+            BlobCodec codec = Observation.createNotStarted("storage.blob.write", observationRegistry)
+                    .highCardinalityKeyValue("bytes", Long.toString(size))
+                    .observe(() -> {
+                        BlobCodec chosen = blobCompressor.compress(stagingFile, size, compressed);
+                        blobStore.put(storageKey, chosen == BlobCodec.NONE ? stagingFile : compressed);
+                        return chosen;
+                    });
+            bytesWritten.increment(size);
+            return codec;
+        } finally {
+            deleteQuietly(compressed);
+        }
+    }
+
+    /**
+     * Drops a reference. Must be called while the file pointing at the blob still
+     * exists, which is how content stored before deduplication is found.
+     */
+    @Transactional
+    public void release(String storageKey) {
+        // Files stored before deduplication have no blob row and are not shared
+        if (blobRepository.release(storageKey) == 0) {
+            blobRepository.tombstoneLegacy(List.of(storageKey));
+        } else {
+            blobRepository.tombstoneIfUnreferenced(storageKey);
+        }
+    }
+
+    /**
+     * Drops one reference per listed key, a key listed twice losing two, like
+     * {@link #release}. The blob rows are locked in key order, so batches touching
+     * the same blobs cannot deadlock.
+     */
+    @Transactional
+    public void releaseAll(List<String> storageKeys) {
+        Map<String, Long> references = storageKeys.stream()
+                .collect(Collectors.groupingBy(Function.identity(), TreeMap::new, Collectors.counting()));
+        if (references.isEmpty()) {
+            return;
+        }
+
+        Set<String> legacy = new TreeSet<>(references.keySet());
+        LocalDateTime now = LocalDateTime.now();
+        for (BlobEntity blob : blobRepository.findAllForUpdate(references.keySet())) {
+            legacy.remove(blob.getStorageKey());
+            blob.setRefCount((int) (blob.getRefCount() - references.get(blob.getStorageKey())));
+            if (blob.getRefCount() <= 0) {
+                blob.setDeletedAt(now);
+            }
+        }
+        if (!legacy.isEmpty()) {
+            blobRepository.tombstoneLegacy(legacy);
+        }
+    }
+
+    /**
+     * Gives content without a row a tombstone, unless a row was created for it
+     * meanwhile; returns whether it did.
+     */
+    @Transactional
+    public boolean tombstone(String storageKey, long size) {
+        return blobRepository.tombstone(storageKey, size) > 0;
+    }
+
+    /**
+     * Unlinks up to {@code limit} blobs that lost their last reference before
+     * {@code before} and deletes their rows; returns how many. Tombstones locked by
+     * an upload taking them back or by another instance's collector are skipped.
+     */
+    @Transactional
+    public int collectGarbage(LocalDateTime before, int limit) {
+        List<BlobEntity> tombstones = blobRepository.findTombstonesForUpdate(before, limit);
+        // A rollback after this leaves the tombstones for the next run; deleting twice is harmless
+        for (BlobEntity blob : tombstones) {
+            blobStore.delete(blob.getStorageKey());
+            blobCompressor.evict(blob.getStorageKey());
+        }
+        blobRepository.deleteAllInBatch(tombstones);
+        return tombstones.size();
+    }
+
+    /**
+     * Takes up to {@code limit} live blobs last scrubbed before {@code before} and
+     * marks them scrubbed now, so that other instances move on to the next ones
+     * while these are read.
+     */
+    @Transactional
+    public List<BlobEntity> claimForScrubbing(LocalDateTime before, int limit) {
+        List<BlobEntity> blobs = blobRepository.findUnscrubbedForUpdate(before, limit);
+        LocalDateTime now = LocalDateTime.now();
+        blobs.forEach(blob -> blob.setScrubbedAt(now));
+        return blobs;
+    }
+
+    /**
+     * Gives back a claimed blob that could not be read, dating its last scrub to
+     * {@code scrubbedAt} so that a later run takes it again.
+     */
+    @Transactional
+    public void unclaimForScrubbing(String storageKey, LocalDateTime scrubbedAt) {
+        blobRepository.updateScrubbedAt(storageKey, scrubbedAt);
+    }
+
+    /**
+     * Keeps a blob whose content no longer matches its key from being shared with new
+     * uploads; an upload of the same content replaces it.
+     */
+    @Transactional
+    public void markCorrupted(String storageKey) {
+        blobRepository.markCorrupted(storageKey);
+    }
+
+    /**
+     * Stores the CRC32C of a blob written before checksums were recorded.
+     */
+    @Transactional
+    public void recordCrc32c(String storageKey, long crc32c) {
+        blobRepository.updateCrc32c(storageKey, crc32c);
+    }
+
+    /**
+     * Deletes staging files last written before {@code before}, left behind by
+     * uploads that never finished; returns how many.
+     */
+    public int deleteStaleStagingFiles(Instant before) {
+        int deleted = 0;
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(stagingLocation, Files::isRegularFile)) {
+            for (Path stagingFile : entries) {
+                try {
+                    if (Files.getLastModifiedTime(stagingFile).toInstant().isBefore(before)
+                            && Files.deleteIfExists(stagingFile)) {
+                        deleted++;
+                    }
+                } catch (NoSuchFileException ex) {
+                    // Stored or removed meanwhile
+                }
+            }
+        } catch (IOException ex) {
+            throw new FileStorageException("Could not clean up " + stagingLocation, ex);
+        }
+        return deleted;
+    }
+
+    public Optional<BlobStat> stat(String storageKey) {
+        return blobStore.stat(storageKey);
+    }
+
+    public Optional<Path> localPath(String storageKey) {
+        return blobStore.localPath(storageKey);
+    }
+
+    public InputStream get(String storageKey) {
+        return read(() -> blobStore.get(storageKey));
+    }
+
+    public InputStream getRange(String storageKey, long offset, long length) {
+        return read(() -> blobStore.getRange(storageKey, offset, length));
+    }
+
+    /**
+     * Reads a range of the original content, decompressing it if the blob is stored
+     * with a codec. Offsets refer to the uncompressed content.
+     */
+    public InputStream getRange(String storageKey, BlobCodec codec, long offset, long length) {
+        if (codec == null || codec == BlobCodec.NONE) {
+            return read(() -> blobStore.getRange(storageKey, offset, length));
+        }
+        return read(() -> blobCompressor.getRange(storageKey, codec, offset, length));
+    }
+
+    /**
+     * Opens content and observes it until the stream is closed, so the read shows up
+     * as one span with the bytes read from it. Zero-copy downloads of local files do
+     * not go through here.
+     */
+    private InputStream read(Supplier<InputStream> open) {
+        Observation observation = Observation.start("storage.blob.read", observationRegistry);
+        InputStream content;
+        try (Observation.Scope scope = observation.openScope()) {
+            content = open.get();
+        } catch (RuntimeException ex) {
+            observation.error(ex);
+            observation.stop();
+            throw ex;
+        }
+
+        return new ProxyInputStream(content) {
+            private long count;
+            private boolean closed;
+
+            @Override
+            protected void afterRead(int n) {
+                if (n > 0) {
+                    count += n;
+                    bytesRead.increment(n);
+                }
+            }
+
+            @Override
+            protected void handleIOException(IOException ex) throws IOException {
+                observation.error(ex);
+                throw ex;
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    if (!closed) {
+                        closed = true;
+                        observation.highCardinalityKeyValue("bytes", Long.toString(count)).stop();
+                    }
+                }
+            }
+        };
+    }
+
+    private void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ignored) {
+            // Nothing else to clean up
+        }
+    }
+}
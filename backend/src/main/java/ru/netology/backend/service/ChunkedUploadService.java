@@ -0,0 +1,16 @@
+package ru.netology.backend.service;
+
+import ru.netology.backend.model.dto.UploadSessionDto;
+import ru.netology.backend.model.entity.FileEntity;
+import ru.netology.backend.web.ContentDigest;
+
+import java.io.InputStream;
+
+public interface ChunkedUploadService {
+    UploadSessionDto initiate(String filename, Long size);
+    UploadSessionDto getSession(String uploadId);
+    void writeChunk(String uploadId, long offset, InputStream content);
+    StagedFile stage(String uploadId);
+    FileEntity commit(String uploadId, StagedFile staged, ContentDigest expected);
+    void abort(String uploadId);
+}
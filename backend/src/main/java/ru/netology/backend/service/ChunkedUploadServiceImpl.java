@@ -0,0 +1,338 @@
+package ru.netology.backend.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.unit.DataSize;
+import ru.netology.backend.exception.FileStorageException;
+import ru.netology.backend.model.dto.ByteRangeDto;
+import ru.netology.backend.model.dto.UploadSessionDto;
+import ru.netology.backend.model.entity.FileEntity;
+import ru.netology.backend.model.entity.UploadChunkEntity;
+import ru.netology.backend.model.entity.UploadSessionEntity;
+import ru.netology.backend.model.entity.UserEntity;
+import ru.netology.backend.repository.FileRepository;
+import ru.netology.backend.repository.UploadChunkRepository;
+import ru.netology.backend.repository.UploadSessionRepository;
+import ru.netology.backend.storage.BlobStore;
+import ru.netology.backend.web.ContentDigest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Resumable uploads: every chunk is stored as its own blob under
+ * {@code .uploads/<uploadId>/}, so chunks can arrive in any order, in parallel and
+ * on any backend instance. The chunks are staged in offset order before the commit,
+ * which then stores the staged file through
+ * {@link FileStorageService#storeStagedFile(StagedFile, ContentDigest)} with the same
+ * checks as a regular upload.
+ *
+ * <p>A chunk is recorded only while its session exists, and commit, abort and expiry
+ * lock the session row while they delete it, so no chunk is recorded for a session
+ * that is gone. Chunk blobs left behind by a request that stopped in between are
+ * removed by {@link #deleteOrphanedChunks()}.
+ */
+@Slf4j
+@Service
+public class ChunkedUploadServiceImpl implements ChunkedUploadService {
+
+    private static final String UPLOADS_PREFIX = ".uploads/";
+
+    private final Path stagingLocation;
+    private final long maxChunkSize;
+    private final long maxFileSize;
+    private final Duration sessionTtl;
+    private final UploadSessionRepository sessionRepository;
+    private final UploadChunkRepository chunkRepository;
+    private final FileRepository fileRepository;
+    private final FileStorageService fileStorageService;
+    private final UserService userService;
+    private final BlobStore blobStore;
+    private final BlobService blobService;
+    private final QuotaService quotaService;
+
+    public ChunkedUploadServiceImpl(
+            @Value("${app.storage.location}") String uploadDir,
+            @Value("${app.upload.max-chunk-size:64MB}") DataSize maxChunkSize,
+            @Value("${app.storage.max-stream-upload-size:10GB}") DataSize maxFileSize,
+            @Value("${app.upload.session-ttl:24h}") Duration sessionTtl,
+            UploadSessionRepository sessionRepository,
+            UploadChunkRepository chunkRepository,
+            FileRepository fileRepository,
+            FileStorageService fileStorageService,
+            UserService userService,
+            BlobStore blobStore,
+            BlobService blobService,
+            QuotaService quotaService) {
+        this.stagingLocation = Paths.get(uploadDir).toAbsolutePath().normalize().resolve(".staging");
+        this.maxChunkSize = maxChunkSize.toBytes();
+        this.maxFileSize = maxFileSize.toBytes();
+        this.sessionTtl = sessionTtl;
+        this.sessionRepository = sessionRepository;
+        this.chunkRepository = chunkRepository;
+        this.fileRepository = fileRepository;
+        this.fileStorageService = fileStorageService;
+        this.userService = userService;
+        this.blobStore = blobStore;
+        this.blobService = blobService;
+        this.quotaService = quotaService;
+    }
+
+    @Override
+    @Transactional
+    public UploadSessionDto initiate(String filename, Long size) {
+        if (size == null || size <= 0) {
+            throw new FileStorageException("Failed to store empty file");
+        }
+        if (size > maxFileSize) {
+            throw new FileStorageException("File size exceeds the maximum allowed size");
+        }
+
+        UserEntity currentUser = userService.getCurrentUser();
+        String normalizedFilename = FileStorageServiceImpl.normalizeFilename(filename);
+
+        // Fail early instead of after the whole file has been sent
+        if (fileRepository.existsByFilenameAndUser(normalizedFilename, currentUser)) {
+            throw new FileStorageException("A file with this name already exists");
+        }
+        quotaService.checkAvailable(currentUser, size);
+
+        LocalDateTime now = LocalDateTime.now();
+        UploadSessionEntity session = new UploadSessionEntity(
+                UUID.randomUUID().toString(), normalizedFilename, size, currentUser, now, now.plus(sessionTtl));
+        sessionRepository.save(session);
+
+        return toDto(session, List.of());
+    }
+
+    @Override
+    public UploadSessionDto getSession(String uploadId) {
+        UploadSessionEntity session = findSession(uploadId);
+        return toDto(session, chunkRepository.findBySessionIdOrderByOffsetAscLengthDesc(uploadId));
+    }
+
+    @Override
+    public void writeChunk(String uploadId, long offset, InputStream content) {
+        UploadSessionEntity session = findSession(uploadId);
+
+        if (offset < 0 || offset >= session.getSize()) {
+            throw new FileStorageException("Chunk offset " + offset + " is outside of the file");
+        }
+        long maxLength = Math.min(maxChunkSize, session.getSize() - offset);
+
+        Path tempFile = stagingLocation.resolve(UUID.randomUUID() + ".part");
+        try {
+            Files.createDirectories(stagingLocation);
+            long length = Files.copy(new BoundedInputStream(content, maxLength + 1), tempFile);
+
+            if (length == 0 || length > maxLength) {
+                throw new FileStorageException(length == 0
+                        ? "Failed to store empty chunk"
+                        : "Chunk at offset " + offset + " is larger than " + maxLength + " bytes");
+            }
+
+            // A retransmitted chunk simply replaces the previous copy
+            String chunkKey = chunkKey(uploadId, offset, length);
+            blobStore.put(chunkKey, tempFile);
+
+            if (!chunkRepository.existsBySessionIdAndOffsetAndLength(uploadId, offset, length)
+                    && chunkRepository.insertIfSessionExists(uploadId, offset, length) == 0) {
+                // Committed or aborted while the chunk was being written
+                deleteChunks(List.of(chunkKey));
+                throw new FileStorageException("Upload not found: " + uploadId);
+            }
+        } catch (DataIntegrityViolationException ex) {
+            // The same chunk was recorded by a concurrent request
+        } catch (IOException ex) {
+            throw new FileStorageException("Could not store chunk at offset " + offset, ex);
+        } finally {
+            FileUtils.deleteQuietly(tempFile.toFile());
+        }
+    }
+
+    @Override
+    public StagedFile stage(String uploadId) {
+        UploadSessionEntity session = findSession(uploadId);
+        List<ChunkSlice> slices = planAssembly(session,
+                chunkRepository.findBySessionIdOrderByOffsetAscLengthDesc(uploadId));
+
+        try (InputStream content = openSlices(slices)) {
+            return blobService.stage(content, session.getFilename(), maxFileSize);
+        } catch (IOException ex) {
+            throw new FileStorageException("Could not assemble upload " + uploadId, ex);
+        }
+    }
+
+    @Override
+    @Transactional
+    public FileEntity commit(String uploadId, StagedFile staged, ContentDigest expected) {
+        UploadSessionEntity session = findSessionForUpdate(uploadId);
+        FileEntity fileEntity = fileStorageService.storeStagedFile(staged, expected);
+        deleteSession(session);
+        return fileEntity;
+    }
+
+    @Override
+    @Transactional
+    public void abort(String uploadId) {
+        deleteSession(findSessionForUpdate(uploadId));
+    }
+
+    @Scheduled(fixedDelayString = "${app.upload.cleanup-interval:PT1H}")
+    @Transactional
+    public void deleteExpiredSessions() {
+        sessionRepository.findByExpiresAtBefore(LocalDateTime.now()).forEach(this::deleteSession);
+    }
+
+    @Scheduled(fixedDelayString = "${app.upload.cleanup-interval:PT1H}")
+    public void deleteOrphanedChunks() {
+        Map<String, List<String>> chunkKeys;
+        try (Stream<String> keys = blobStore.listKeys(UPLOADS_PREFIX)) {
+            chunkKeys = keys
+                    .filter(key -> key.indexOf('/', UPLOADS_PREFIX.length()) > 0)
+                    .collect(Collectors.groupingBy(key ->
+                            key.substring(UPLOADS_PREFIX.length(), key.indexOf('/', UPLOADS_PREFIX.length()))));
+        }
+        if (chunkKeys.isEmpty()) {
+            return;
+        }
+
+        // Session ids are never reused, so chunks of a missing session cannot belong to a new one
+        Set<String> existing = new HashSet<>(sessionRepository.findExistingIds(chunkKeys.keySet()));
+        List<String> orphans = chunkKeys.entrySet().stream()
+                .filter(entry -> !existing.contains(entry.getKey()))
+                .flatMap(entry -> entry.getValue().stream())
+                .toList();
+        deleteChunks(orphans);
+
+        if (!orphans.isEmpty()) {
+            log.info("Deleted {} chunks of uploads that no longer exist", orphans.size());
+        }
+    }
+
+    private UploadSessionEntity findSession(String uploadId) {
+        UserEntity currentUser = userService.getCurrentUser();
+        return sessionRepository.findByIdAndUser(uploadId, currentUser)
+                .orElseThrow(() -> new FileStorageException("Upload not found: " + uploadId));
+    }
+
+    private UploadSessionEntity findSessionForUpdate(String uploadId) {
+        UserEntity currentUser = userService.getCurrentUser();
+        return sessionRepository.findByIdAndUserForUpdate(uploadId, currentUser)
+                .orElseThrow(() -> new FileStorageException("Upload not found: " + uploadId));
+    }
+
+    private void deleteSession(UploadSessionEntity session) {
+        List<String> chunkKeys = chunkRepository.findBySessionIdOrderByOffsetAscLengthDesc(session.getId()).stream()
+                .map(chunk -> chunkKey(session.getId(), chunk.getOffset(), chunk.getLength()))
+                .toList();
+        chunkRepository.deleteBySessionId(session.getId());
+        sessionRepository.delete(session);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    deleteChunks(chunkKeys);
+                }
+            });
+        } else {
+            deleteChunks(chunkKeys);
+        }
+    }
+
+    private void deleteChunks(List<String> chunkKeys) {
+        for (String chunkKey : chunkKeys) {
+            try {
+                blobStore.delete(chunkKey);
+            } catch (FileStorageException ignored) {
+                // The session is gone either way
+            }
+        }
+    }
+
+    private List<ChunkSlice> planAssembly(UploadSessionEntity session, List<UploadChunkEntity> chunks) {
+        // Chunks are ordered by offset, longest first; overlapping parts are read only once
+        List<ChunkSlice> slices = new ArrayList<>();
+        long position = 0;
+        for (UploadChunkEntity chunk : chunks) {
+            long chunkEnd = chunk.getOffset() + chunk.getLength();
+            if (chunkEnd <= position) {
+                continue;
+            }
+            if (chunk.getOffset() > position) {
+                break;
+            }
+            String chunkKey = chunkKey(session.getId(), chunk.getOffset(), chunk.getLength());
+            slices.add(new ChunkSlice(chunkKey, position - chunk.getOffset(), chunkEnd - position));
+            position = chunkEnd;
+        }
+
+        if (position < session.getSize()) {
+            throw new FileStorageException("Upload is incomplete: missing data at offset " + position);
+        }
+        return slices;
+    }
+
+    private InputStream openSlices(List<ChunkSlice> slices) {
+        Iterator<ChunkSlice> iterator = slices.iterator();
+        return new SequenceInputStream(new Enumeration<>() {
+            @Override
+            public boolean hasMoreElements() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                ChunkSlice slice = iterator.next();
+                return blobStore.getRange(slice.chunkKey(), slice.skip(), slice.length());
+            }
+        });
+    }
+
+    private static String chunkKey(String uploadId, long offset, long length) {
+        return UPLOADS_PREFIX + uploadId + "/" + offset + "-" + length;
+    }
+
+    private static UploadSessionDto toDto(UploadSessionEntity session, List<UploadChunkEntity> chunks) {
+        // Merge chunks into the contiguous ranges received so far
+        List<ByteRangeDto> received = new ArrayList<>();
+        for (UploadChunkEntity chunk : chunks) {
+            ByteRangeDto last = received.isEmpty() ? null : received.get(received.size() - 1);
+            long chunkEnd = chunk.getOffset() + chunk.getLength();
+            if (last != null && chunk.getOffset() <= last.getOffset() + last.getLength()) {
+                last.setLength(Math.max(last.getLength(), chunkEnd - last.getOffset()));
+            } else {
+                received.add(new ByteRangeDto(chunk.getOffset(), chunk.getLength()));
+            }
+        }
+        return new UploadSessionDto(session.getId(), session.getFilename(), session.getSize(), received);
+    }
+
+    private record ChunkSlice(String chunkKey, long skip, long length) {
+    }
+}
@@ -0,0 +1,145 @@
+package ru.netology.backend.service;
+
+import ru.netology.backend.exception.BadRequestException;
+import ru.netology.backend.exception.FileStorageException;
+import ru.netology.backend.web.BlockSignatures;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The new content of a file, rebuilt as it is read from a delta against the blocks
+ * of its current content. A delta is a list of commands, all numbers big-endian:
+ *
+ * <pre>
+ * "RDL1"  u32 block size of the signatures it was computed from
+ * 0x01  u32 first block, u32 block count   copy blocks of the current content
+ * 0x02  u32 length, bytes                  literal data
+ * 0x00                                     end
+ * </pre>
+ *
+ * A run of copied blocks is read as one range, and nothing is buffered beyond the
+ * caller's reads. A delta that stops before its end command is rejected, so a
+ * dropped connection never yields a shortened file.
+ */
+public class DeltaInputStream extends InputStream {
+
+    public static final String MEDIA_TYPE = "application/vnd.cloud.delta";
+
+    static final int MAGIC = 0x52444C31;
+    static final int END = 0x00;
+    static final int COPY = 0x01;
+    static final int LITERAL = 0x02;
+
+    private final DataInputStream delta;
+    private final StoredFile.RangeReader base;
+    private final long baseSize;
+    private int blockSize;
+
+    // Source of the command being read and the bytes it still owes
+    private InputStream current;
+    private long remaining;
+    private boolean finished;
+
+    public DeltaInputStream(InputStream delta, StoredFile.RangeReader base, long baseSize) {
+        this.delta = new DataInputStream(delta);
+        this.base = base;
+        this.baseSize = baseSize;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        while (remaining == 0) {
+            if (finished || !nextCommand()) {
+                return -1;
+            }
+        }
+        int read = current.read(buffer, offset, (int) Math.min(length, remaining));
+        if (read == -1) {
+            if (current == delta) {
+                throw new BadRequestException("Delta ends inside literal data");
+            }
+            throw new FileStorageException("Current content ended before a copied block");
+        }
+        remaining -= read;
+        if (remaining == 0) {
+            closeCurrent();
+        }
+        return read;
+    }
+
+    private boolean nextCommand() throws IOException {
+        try {
+            if (blockSize == 0) {
+                readHeader();
+            }
+            int command = delta.read();
+            switch (command) {
+                case END -> {
+                    finished = true;
+                    return false;
+                }
+                case COPY -> copy(Integer.toUnsignedLong(delta.readInt()), Integer.toUnsignedLong(delta.readInt()));
+                case LITERAL -> {
+                    current = delta;
+                    remaining = Integer.toUnsignedLong(delta.readInt());
+                }
+                case -1 -> throw new BadRequestException("Delta ends without an end command");
+                default -> throw new BadRequestException("Unknown delta command " + command);
+            }
+            return true;
+        } catch (EOFException ex) {
+            throw new BadRequestException("Delta ends inside a command", ex);
+        }
+    }
+
+    private void readHeader() throws IOException {
+        if (delta.readInt() != MAGIC) {
+            throw new BadRequestException("Not a delta");
+        }
+        blockSize = delta.readInt();
+        if (blockSize < BlockSignatures.MIN_BLOCK_SIZE || blockSize > BlockSignatures.MAX_BLOCK_SIZE) {
+            throw new BadRequestException("Invalid delta block size " + blockSize);
+        }
+    }
+
+    private void copy(long firstBlock, long blockCount) throws IOException {
+        long offset = firstBlock * blockSize;
+        if (blockCount == 0 || offset >= baseSize) {
+            throw new BadRequestException("Delta copies blocks outside the current content");
+        }
+        // Only the last block of the content is short
+        long length = Math.min(blockCount * blockSize, baseSize - offset);
+        current = base.open(offset, length);
+        remaining = length;
+    }
+
+    private void closeCurrent() throws IOException {
+        if (current != delta) {
+            current.close();
+        }
+        current = null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (current != null) {
+                closeCurrent();
+            }
+        } finally {
+            delta.close();
+        }
+    }
+}
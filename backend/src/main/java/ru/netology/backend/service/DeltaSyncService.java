@@ -0,0 +1,10 @@
+package ru.netology.backend.service;
+
+import ru.netology.backend.web.ContentDigest;
+
+import java.io.InputStream;
+
+public interface DeltaSyncService {
+    FileSignature loadSignature(String filename, Integer blockSize);
+    void applyDelta(String filename, String ifMatch, InputStream delta, ContentDigest expected);
+}
@@ -0,0 +1,84 @@
+package ru.netology.backend.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import ru.netology.backend.exception.BadRequestException;
+import ru.netology.backend.exception.PreconditionFailedException;
+import ru.netology.backend.web.BlockSignatures;
+import ru.netology.backend.web.ContentDigest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Incremental re-upload in the manner of rsync. A client reads the block signatures
+ * of a file, finds the blocks it still has at any offset of its new content, and
+ * sends a delta of copied blocks and literal data. The new content is rebuilt into a
+ * staging file while the delta is read, then replaces the file's content like an
+ * upload would, so an edit of a few pages costs about that much upload.
+ *
+ * <p>The delta is applied only while the file still has the ETag the signatures were
+ * read with; otherwise the copied blocks would come from other content.
+ */
+@Service
+public class DeltaSyncServiceImpl implements DeltaSyncService {
+
+    private final long maxStreamUploadSize;
+    private final FileStorageService fileStorageService;
+    private final BlobService blobService;
+
+    public DeltaSyncServiceImpl(
+            @Value("${app.storage.max-stream-upload-size:10GB}") DataSize maxStreamUploadSize,
+            FileStorageService fileStorageService,
+            BlobService blobService) {
+        this.maxStreamUploadSize = maxStreamUploadSize.toBytes();
+        this.fileStorageService = fileStorageService;
+        this.blobService = blobService;
+    }
+
+    @Override
+    public FileSignature loadSignature(String filename, Integer blockSize) {
+        StoredFile file = fileStorageService.loadStoredFile(filename);
+        int size = blockSize != null ? blockSize : BlockSignatures.defaultBlockSize(file.getSize());
+        if (size < BlockSignatures.MIN_BLOCK_SIZE || size > BlockSignatures.MAX_BLOCK_SIZE) {
+            throw new BadRequestException("Block size must be between " + BlockSignatures.MIN_BLOCK_SIZE
+                    + " and " + BlockSignatures.MAX_BLOCK_SIZE);
+        }
+        return new FileSignature(file.getEtag(), file.getSize(), size, file::openRange);
+    }
+
+    @Override
+    public void applyDelta(String filename, String ifMatch, InputStream delta, ContentDigest expected) {
+        if (ifMatch == null) {
+            throw new BadRequestException("If-Match with the ETag of the signatures is required");
+        }
+        StoredFile base = fileStorageService.loadStoredFile(filename);
+        if (!base.getEtag().equals(ifMatch.trim())) {
+            throw new PreconditionFailedException("File has changed since its signatures were read");
+        }
+
+        StagedFile staged = blobService.stage(
+                new DeltaInputStream(delta, base::openRange, base.getSize()), base.getFilename(), maxStreamUploadSize);
+        try {
+            fileStorageService.replaceFileContent(base.getFilename(), storageKey(base.getEtag()), staged, expected);
+        } finally {
+            deleteQuietly(staged.getPath());
+        }
+    }
+
+    // The ETag of a stored file is its quoted storage key
+    private static String storageKey(String etag) {
+        return etag.substring(1, etag.length() - 1);
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ignored) {
+            // Removed with other stale staging files later
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package ru.netology.backend.service;
+
+import ru.netology.backend.model.dto.BatchRenameDto;
+import ru.netology.backend.model.dto.BatchResultDto;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.List;
+
+public interface FileBatchService {
+    List<StagedFile> stageFiles(List<MultipartFile> files);
+    BatchResultDto storeStagedFiles(List<StagedFile> files);
+    BatchResultDto deleteFiles(List<String> filenames);
+    BatchResultDto renameFiles(List<BatchRenameDto.Item> renames);
+}
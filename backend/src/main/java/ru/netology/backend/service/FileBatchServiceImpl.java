@@ -0,0 +1,332 @@
+package ru.netology.backend.service;
+
+import ru.netology.backend.exception.BadRequestException;
+import ru.netology.backend.exception.FileStorageException;
+import ru.netology.backend.model.dto.BatchRenameDto;
+import ru.netology.backend.model.dto.BatchResultDto;
+import ru.netology.backend.model.entity.FileEntity;
+import ru.netology.backend.model.entity.UserEntity;
+import ru.netology.backend.repository.FileRepository;
+import ru.netology.backend.repository.FileVersionRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Applies many file operations in one transaction with set-based SQL: the files of a
+ * batch are looked up with one IN query, deleted with one statement and inserted with
+ * one JDBC batch, instead of a lookup and a transaction per file.
+ *
+ * <p>Items are checked before anything is written, and the ones that would fail on
+ * their own (invalid or duplicate names, missing files, names taken by files that keep no versions) are
+ * reported in the result while the rest of the batch goes ahead. A storage failure
+ * fails the whole batch.
+ */
+@Service
+public class FileBatchServiceImpl implements FileBatchService {
+
+    private final long maxStreamUploadSize;
+    private final int maxItems;
+    private final FileRepository fileRepository;
+    private final UserService userService;
+    private final BlobService blobService;
+    private final FileVersionService fileVersionService;
+    private final FileVersionRepository fileVersionRepository;
+    private final QuotaService quotaService;
+
+    public FileBatchServiceImpl(
+            @Value("${app.storage.max-stream-upload-size:10GB}") DataSize maxStreamUploadSize,
+            @Value("${app.batch.max-items:1000}") int maxItems,
+            FileRepository fileRepository,
+            UserService userService,
+            BlobService blobService,
+            FileVersionService fileVersionService,
+            FileVersionRepository fileVersionRepository,
+            QuotaService quotaService) {
+        this.maxStreamUploadSize = maxStreamUploadSize.toBytes();
+        this.maxItems = maxItems;
+        this.fileRepository = fileRepository;
+        this.userService = userService;
+        this.blobService = blobService;
+        this.fileVersionService = fileVersionService;
+        this.fileVersionRepository = fileVersionRepository;
+        this.quotaService = quotaService;
+    }
+
+    /**
+     * Stages the uploaded files without a transaction, so no connection is held while
+     * they are hashed and copied; the caller passes them on to {@link #storeStagedFiles}.
+     */
+    @Override
+    public List<StagedFile> stageFiles(List<MultipartFile> files) {
+        checkBatchSize(files);
+
+        List<StagedFile> stagedFiles = new ArrayList<>();
+        try {
+            for (MultipartFile file : files) {
+                try (InputStream content = file.getInputStream()) {
+                    stagedFiles.add(blobService.stage(content, file.getOriginalFilename(), maxStreamUploadSize));
+                } catch (IOException ex) {
+                    throw new FileStorageException("Could not store file " + file.getOriginalFilename(), ex);
+                }
+            }
+            return stagedFiles;
+        } catch (RuntimeException ex) {
+            stagedFiles.forEach(FileBatchServiceImpl::deleteQuietly);
+            throw ex;
+        }
+    }
+
+    @Override
+    @Transactional
+    public BatchResultDto storeStagedFiles(List<StagedFile> files) {
+        checkBatchSize(files);
+        Results results = new Results(files.size());
+
+        Map<String, Integer> names = new LinkedHashMap<>();
+        for (int i = 0; i < files.size(); i++) {
+            StagedFile file = files.get(i);
+            String normalizedFilename;
+            try {
+                normalizedFilename = FileStorageServiceImpl.normalizeFilename(file.getFilename());
+            } catch (FileStorageException ex) {
+                results.fail(i, file.getFilename(), 400, ex.getMessage());
+                continue;
+            }
+            if (file.getSize() == 0) {
+                results.fail(i, normalizedFilename, 400, "Failed to store empty file");
+            } else if (file.getSize() > maxStreamUploadSize) {
+                results.fail(i, normalizedFilename, 400, "File size exceeds the maximum allowed size");
+            } else if (names.putIfAbsent(normalizedFilename, i) != null) {
+                results.fail(i, normalizedFilename, 409, "Another file in the batch has this name");
+            }
+        }
+        if (names.isEmpty()) {
+            return results.toDto();
+        }
+
+        UserEntity currentUser = userService.getCurrentUser();
+        Set<String> taken = new HashSet<>(fileRepository.findExistingFilenames(currentUser, names.keySet()));
+        // Files that keep versions get the upload as new content
+        Map<String, FileEntity> versioned = taken.isEmpty() ? Map.of() : byFilename(
+                fileRepository.findAllByUserAndFilenameIn(currentUser, taken).stream()
+                        .filter(FileEntity::isVersioned)
+                        .toList());
+        names.keySet().removeIf(filename -> {
+            if (taken.contains(filename) && !versioned.containsKey(filename)) {
+                results.fail(names.get(filename), filename, 409, "A file with this name already exists");
+                return true;
+            }
+            return false;
+        });
+
+        // Files past the quota are refused in the order they were sent
+        long available = quotaService.getAvailable(currentUser);
+        Iterator<Map.Entry<String, Integer>> it = names.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Integer> name = it.next();
+            // New content of a versioned file adds to its kept versions
+            long added = files.get(name.getValue()).getSize();
+            if (added > available) {
+                results.fail(name.getValue(), name.getKey(), 413, "Storage quota exceeded");
+                it.remove();
+            } else {
+                available -= added;
+            }
+        }
+
+        // Blob rows are locked as they are acquired, in hash order like every batch takes them
+        List<Map.Entry<String, Integer>> uploads = new ArrayList<>(names.entrySet());
+        uploads.sort(Comparator.comparing(upload -> files.get(upload.getValue()).getSha256()));
+
+        List<FileEntity> newFiles = new ArrayList<>();
+        for (Map.Entry<String, Integer> upload : uploads) {
+            StagedFile file = files.get(upload.getValue());
+            StoredBlob blob = blobService.storeStaged(file, maxStreamUploadSize);
+            FileEntity existing = versioned.get(upload.getKey());
+            if (existing != null) {
+                fileVersionService.replaceContent(existing, blob);
+            } else {
+                newFiles.add(FileStorageServiceImpl.newFileEntity(upload.getKey(), blob, currentUser));
+            }
+            results.succeed(upload.getValue(), upload.getKey());
+        }
+        fileRepository.insertAll(newFiles);
+        quotaService.recordChange(currentUser, newFiles.stream().mapToLong(FileEntity::getSize).sum());
+        return results.toDto();
+    }
+
+    @Override
+    @Transactional
+    public BatchResultDto deleteFiles(List<String> filenames) {
+        checkBatchSize(filenames);
+        Results results = new Results(filenames.size());
+
+        Set<String> requested = new LinkedHashSet<>();
+        for (String filename : filenames) {
+            if (filename != null) {
+                requested.add(filename);
+            }
+        }
+        UserEntity currentUser = userService.getCurrentUser();
+        Map<String, FileEntity> files = requested.isEmpty()
+                ? Map.of()
+                : byFilename(fileRepository.findAllByUserAndFilenameIn(currentUser, requested));
+
+        for (int i = 0; i < filenames.size(); i++) {
+            String filename = filenames.get(i);
+            if (filename == null) {
+                results.fail(i, null, 400, "Filename cannot be empty");
+            } else if (files.containsKey(filename)) {
+                results.succeed(i, filename);
+            } else {
+                results.fail(i, filename, 404, "File not found: " + filename);
+            }
+        }
+        if (files.isEmpty()) {
+            return results.toDto();
+        }
+
+        // Drop the references of all files and their versions at once; the collector deletes content left without any
+        List<Long> fileIds = files.values().stream().map(FileEntity::getId).toList();
+        List<String> storageKeys = new ArrayList<>(fileVersionRepository.findStorageKeysByFileIdIn(fileIds));
+        long versionsSize = storageKeys.isEmpty() ? 0 : fileVersionRepository.sumSizeByFileIdIn(fileIds);
+        files.values().forEach(fileEntity -> storageKeys.add(fileEntity.getStorageFilename()));
+        blobService.releaseAll(storageKeys);
+        fileRepository.deleteAllByIdInBatch(fileIds);
+        quotaService.recordChange(currentUser,
+                -files.values().stream().mapToLong(FileEntity::getSize).sum() - versionsSize);
+        return results.toDto();
+    }
+
+    @Override
+    @Transactional
+    public BatchResultDto renameFiles(List<BatchRenameDto.Item> renames) {
+        checkBatchSize(renames);
+        Results results = new Results(renames.size());
+
+        Map<String, Integer> sources = new LinkedHashMap<>();
+        Map<String, String> targets = new HashMap<>();
+        Set<String> newFilenames = new HashSet<>();
+        for (int i = 0; i < renames.size(); i++) {
+            BatchRenameDto.Item rename = renames.get(i);
+            String filename = rename != null ? rename.getFilename() : null;
+            if (filename == null) {
+                results.fail(i, null, 400, "Filename cannot be empty");
+                continue;
+            }
+            if (rename.getName() == null || rename.getName().trim().isEmpty()) {
+                results.fail(i, filename, 400, "New filename cannot be empty");
+                continue;
+            }
+            String normalizedNewFilename;
+            try {
+                normalizedNewFilename = FileStorageServiceImpl.normalizeFilename(rename.getName());
+            } catch (FileStorageException ex) {
+                results.fail(i, filename, 400, ex.getMessage());
+                continue;
+            }
+            if (sources.containsKey(filename)) {
+                results.fail(i, filename, 409, "The file is renamed more than once in the batch");
+            } else if (!newFilenames.add(normalizedNewFilename)) {
+                results.fail(i, filename, 409, "Another file in the batch is renamed to " + normalizedNewFilename);
+            } else {
+                sources.put(filename, i);
+                targets.put(filename, normalizedNewFilename);
+            }
+        }
+        if (sources.isEmpty()) {
+            return results.toDto();
+        }
+
+        UserEntity currentUser = userService.getCurrentUser();
+        Map<String, FileEntity> files = byFilename(fileRepository.findAllByUserAndFilenameIn(currentUser, sources.keySet()));
+        Set<String> taken = new HashSet<>(fileRepository.findExistingFilenames(currentUser, newFilenames));
+
+        // Names in use are refused even if the batch renames them away, as a single rename would be
+        List<FileEntity> renamed = new ArrayList<>();
+        for (Map.Entry<String, Integer> source : sources.entrySet()) {
+            String filename = source.getKey();
+            String normalizedNewFilename = targets.get(filename);
+            FileEntity fileEntity = files.get(filename);
+            if (fileEntity == null) {
+                results.fail(source.getValue(), filename, 404, "File not found: " + filename);
+            } else if (taken.contains(normalizedNewFilename)) {
+                results.fail(source.getValue(), filename, 409,
+                        "A file with name " + normalizedNewFilename + " already exists");
+            } else {
+                fileEntity.setFilename(normalizedNewFilename);
+                renamed.add(fileEntity);
+                results.succeed(source.getValue(), filename);
+            }
+        }
+        // Flushed as JDBC batches of updates
+        fileRepository.saveAll(renamed);
+        return results.toDto();
+    }
+
+    private void checkBatchSize(List<?> items) {
+        if (items == null || items.isEmpty()) {
+            throw new BadRequestException("Batch is empty");
+        }
+        if (items.size() > maxItems) {
+            throw new BadRequestException("Batch exceeds " + maxItems + " items");
+        }
+    }
+
+    private static Map<String, FileEntity> byFilename(List<FileEntity> files) {
+        return files.stream().collect(Collectors.toMap(FileEntity::getFilename, Function.identity()));
+    }
+
+    private static void deleteQuietly(StagedFile stagedFile) {
+        try {
+            Files.deleteIfExists(stagedFile.getPath());
+        } catch (IOException ignored) {
+            // Nothing else to clean up
+        }
+    }
+
+    /**
+     * Per-item results in request order.
+     */
+    private static final class Results {
+
+        private final BatchResultDto.Item[] items;
+
+        Results(int size) {
+            this.items = new BatchResultDto.Item[size];
+        }
+
+        void succeed(int index, String filename) {
+            items[index] = new BatchResultDto.Item(filename, 200, null);
+        }
+
+        void fail(int index, String filename, int status, String message) {
+            items[index] = new BatchResultDto.Item(filename, status, message);
+        }
+
+        BatchResultDto toDto() {
+            int succeeded = (int) Arrays.stream(items).filter(item -> item.getStatus() == 200).count();
+            return new BatchResultDto(succeeded, items.length - succeeded, Arrays.asList(items));
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package ru.netology.backend.service;
+
+import ru.netology.backend.exception.BadRequestException;
+import ru.netology.backend.model.dto.FileListItem;
+import ru.netology.backend.repository.FileSort;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+/**
+ * Opaque next-page token of the file list. It carries the sort order and the sort key
+ * of the last returned row, so the next page starts right after it.
+ */
+final class FileListCursor {
+
+    private static final String VERSION = "v1";
+
+    private FileListCursor() {
+    }
+
+    static String encode(FileListItem last, FileSort sort, boolean descending) {
+        String value = switch (sort) {
+            case NAME -> last.getFilename();
+            case SIZE -> String.valueOf(last.getSize());
+            case DATE -> last.getCreatedAt().toString();
+        };
+        String token = String.join("|", VERSION, sort.name(), direction(descending), String.valueOf(last.getId()), value);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static FileListItem decode(String cursor, FileSort sort, boolean descending) {
+        String[] parts;
+        try {
+            // The filename is last and may itself contain the separator
+            parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|", 5);
+        } catch (IllegalArgumentException ex) {
+            throw new BadRequestException("Invalid cursor", ex);
+        }
+        if (parts.length != 5 || !VERSION.equals(parts[0])) {
+            throw new BadRequestException("Invalid cursor");
+        }
+        if (!sort.name().equals(parts[1]) || !direction(descending).equals(parts[2])) {
+            throw new BadRequestException("Cursor does not match the requested sort order");
+        }
+
+        try {
+            FileListItem after = new FileListItem();
+            after.setId(Long.parseLong(parts[3]));
+            switch (sort) {
+                case NAME -> after.setFilename(parts[4]);
+                case SIZE -> after.setSize(Long.parseLong(parts[4]));
+                case DATE -> after.setCreatedAt(LocalDateTime.parse(parts[4]));
+            }
+            return after;
+        } catch (RuntimeException ex) {
+            throw new BadRequestException("Invalid cursor", ex);
+        }
+    }
+
+    private static String direction(boolean descending) {
+        return descending ? "desc" : "asc";
+    }
+}
@@ -0,0 +1,17 @@
+package ru.netology.backend.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import ru.netology.backend.model.dto.FileDto;
+
+import java.util.List;
+
+/**
+ * One page of the file list; {@code nextCursor} is null on the last page.
+ */
+@Getter
+@AllArgsConstructor
+public class FilePage {
+    private final List<FileDto> files;
+    private final String nextCursor;
+}
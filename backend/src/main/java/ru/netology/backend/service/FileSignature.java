@@ -0,0 +1,30 @@
+package ru.netology.backend.service;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import ru.netology.backend.web.BlockSignatures;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The block signatures of a file's current content, computed as they are written.
+ * A delta against them is only applied while the file still has this {@code etag}.
+ */
+@Getter
+@AllArgsConstructor
+public class FileSignature {
+    private final String etag;
+    private final long size;
+    private final int blockSize;
+    @Getter(AccessLevel.NONE)
+    private final StoredFile.RangeReader rangeReader;
+
+    public void writeTo(OutputStream out) throws IOException {
+        try (InputStream content = rangeReader.open(0, size)) {
+            BlockSignatures.write(content, blockSize, size, out);
+        }
+    }
+}
@@ -2,15 +2,28 @@ package ru.netology.backend.service;
 
 import ru.netology.backend.model.dto.FileDto;
 import ru.netology.backend.model.entity.FileEntity;
+import ru.netology.backend.web.ContentDigest;
 import org.springframework.core.io.Resource;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.InputStream;
 import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
 
 public interface FileStorageService {
-    FileEntity storeFile(MultipartFile file, String filename);
+    StagedFile stageFile(MultipartFile file, String filename);
+    FileEntity storeFile(InputStream content, String filename);
+    FileEntity storeFile(InputStream content, String filename, ContentDigest expected);
+    FileEntity storeStagedFile(StagedFile stagedFile, ContentDigest expected);
+    Optional<FileEntity> storeExistingFile(String sha256, String filename);
+    void replaceFileContent(String filename, String baseStorageKey, StagedFile stagedFile, ContentDigest expected);
     Resource loadFileAsResource(String filename);
-    List<FileDto> getFilesList(Integer limit);
+    StoredFile loadStoredFile(String filename);
+    StoredFile loadStoredFile(String filename, Integer version);
+    List<ArchiveEntry> loadArchiveEntries(List<String> filenames, String prefix);
+    FilePage getFilesList(Integer limit, String sort, String order, String cursor);
+    void streamFilesList(String sort, String order, Consumer<FileDto> consumer);
     void deleteFile(String filename);
     void renameFile(String oldFilename, String newFilename);
 }
\ No newline at end of file
@@ -1,129 +1,445 @@
 package ru.netology.backend.service;
 
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import ru.netology.backend.exception.BadRequestException;
 import ru.netology.backend.exception.FileStorageException;
+import ru.netology.backend.exception.PreconditionFailedException;
 import ru.netology.backend.model.dto.FileDto;
+import ru.netology.backend.model.dto.FileListItem;
 import ru.netology.backend.model.entity.FileEntity;
+import ru.netology.backend.model.entity.FileVersionEntity;
 import ru.netology.backend.model.entity.UserEntity;
 import ru.netology.backend.repository.FileRepository;
+import ru.netology.backend.repository.FileSort;
+import ru.netology.backend.repository.FileVersionRepository;
+import ru.netology.backend.storage.BlobCodec;
+import ru.netology.backend.storage.BlobStat;
+import ru.netology.backend.web.ContentDigest;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.InputStreamResource;
 import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
-import java.net.MalformedURLException;
-import java.nio.file.Files;
+import java.io.InputStream;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Objects;
-import java.util.UUID;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class FileStorageServiceImpl implements FileStorageService {
 
-    private final Path fileStorageLocation;
+    private final long maxStreamUploadSize;
+    private final int maxListLimit;
+    private final int streamFetchSize;
+    private final int maxArchiveFiles;
     private final FileRepository fileRepository;
+    private final FileVersionRepository fileVersionRepository;
     private final UserService userService;
+    private final BlobService blobService;
+    private final FileVersionService fileVersionService;
+    private final QuotaService quotaService;
+    private final ObservationRegistry observationRegistry;
 
     public FileStorageServiceImpl(
-            @Value("${app.storage.location}") String uploadDir,
+            @Value("${app.storage.max-stream-upload-size:10GB}") DataSize maxStreamUploadSize,
+            @Value("${app.list.max-limit:1000}") int maxListLimit,
+            @Value("${app.list.stream-fetch-size:500}") int streamFetchSize,
+            @Value("${app.archive.max-files:10000}") int maxArchiveFiles,
             FileRepository fileRepository,
-            UserService userService) {
-        this.fileStorageLocation = Paths.get(uploadDir).toAbsolutePath().normalize();
+            FileVersionRepository fileVersionRepository,
+            UserService userService,
+            BlobService blobService,
+            FileVersionService fileVersionService,
+            QuotaService quotaService,
+            ObservationRegistry observationRegistry) {
+        this.maxStreamUploadSize = maxStreamUploadSize.toBytes();
+        this.maxListLimit = maxListLimit;
+        this.streamFetchSize = streamFetchSize;
+        this.maxArchiveFiles = maxArchiveFiles;
         this.fileRepository = fileRepository;
+        this.fileVersionRepository = fileVersionRepository;
         this.userService = userService;
+        this.blobService = blobService;
+        this.fileVersionService = fileVersionService;
+        this.quotaService = quotaService;
+        this.observationRegistry = observationRegistry;
+    }
 
-        try {
-            Files.createDirectories(this.fileStorageLocation);
-        } catch (Exception ex) {
-            throw new FileStorageException("Could not create the directory where the uploaded files will be stored.", ex);
+    @Override
+    public StagedFile stageFile(MultipartFile file, String filename) {
+        if (file.isEmpty()) {
+            throw new FileStorageException("Failed to store empty file");
+        }
+
+        String normalizedFilename = normalizeFilename(
+                filename != null && !filename.isEmpty() ? filename : file.getOriginalFilename());
+
+        try (InputStream content = file.getInputStream()) {
+            return blobService.stage(content, normalizedFilename, maxStreamUploadSize);
+        } catch (IOException ex) {
+            throw new FileStorageException("Could not store file " + normalizedFilename, ex);
         }
     }
 
     @Override
     @Transactional
-    public FileEntity storeFile(MultipartFile file, String filename) {
-        if (file.isEmpty()) {
-            throw new FileStorageException("Failed to store empty file");
+    public FileEntity storeFile(InputStream content, String filename) {
+        return storeContent(content, normalizeFilename(filename), null);
+    }
+
+    @Override
+    @Transactional
+    public FileEntity storeFile(InputStream content, String filename, ContentDigest expected) {
+        return storeContent(content, normalizeFilename(filename), expected);
+    }
+
+    @Override
+    @Transactional
+    public FileEntity storeStagedFile(StagedFile stagedFile, ContentDigest expected) {
+        String normalizedFilename = normalizeFilename(stagedFile.getFilename());
+        UserEntity currentUser = userService.getCurrentUser();
+        Optional<FileEntity> existing = findReplaceableFile(normalizedFilename, currentUser);
+
+        StoredBlob blob = blobService.storeStaged(stagedFile, expected, maxStreamUploadSize);
+        return saveFile(normalizedFilename, blob, currentUser, existing);
+    }
+
+    @Override
+    @Transactional
+    public Optional<FileEntity> storeExistingFile(String sha256, String filename) {
+        String normalizedFilename = normalizeFilename(filename);
+        UserEntity currentUser = userService.getCurrentUser();
+        Optional<FileEntity> existing = findReplaceableFile(normalizedFilename, currentUser);
+
+        // Only content the user already has: a hash alone must not give access to other users' files
+        if (!fileRepository.existsByStorageFilenameAndUser(sha256, currentUser)) {
+            return Optional.empty();
         }
+        return blobService.acquireExisting(sha256)
+                .map(blob -> saveFile(normalizedFilename, blob, currentUser, existing));
+    }
 
+    @Override
+    @Transactional
+    public void replaceFileContent(String filename, String baseStorageKey, StagedFile stagedFile, ContentDigest expected) {
         UserEntity currentUser = userService.getCurrentUser();
 
-        // Normalize filename
-        String normalizedFilename = StringUtils.cleanPath(Objects.requireNonNull(
-                filename != null && !filename.isEmpty() ? filename : file.getOriginalFilename()));
+        FileEntity fileEntity = fileRepository.findByFilenameAndUser(filename, currentUser)
+                .orElseThrow(() -> new FileStorageException("File not found: " + filename));
+        if (!fileEntity.getStorageFilename().equals(baseStorageKey)) {
+            throw new PreconditionFailedException("File has changed since its signatures were read");
+        }
+
+        StoredBlob blob = blobService.storeStaged(stagedFile, expected, maxStreamUploadSize);
+        fileVersionService.replaceContent(fileEntity, blob);
+    }
+
+    private FileEntity storeContent(InputStream content, String normalizedFilename, ContentDigest expected) {
+        return Observation.createNotStarted("file.store", observationRegistry).observe(() -> {
+            UserEntity currentUser = userService.getCurrentUser();
+            Optional<FileEntity> existing = findReplaceableFile(normalizedFilename, currentUser);
+
+            // Store content under its hash, sharing it with identical files
+            StoredBlob blob = blobService.store(content, expected, maxStreamUploadSize);
+            return saveFile(normalizedFilename, blob, currentUser, existing);
+        });
+    }
+
+    /**
+     * The file an upload under this name replaces: none if the name is free, the file
+     * if it keeps versions. A name taken by an unversioned file is refused.
+     */
+    private Optional<FileEntity> findReplaceableFile(String normalizedFilename, UserEntity currentUser) {
+        // Check if file with this name already exists for this user
+        if (!fileRepository.existsByFilenameAndUser(normalizedFilename, currentUser)) {
+            return Optional.empty();
+        }
+        FileEntity fileEntity = fileRepository.findByFilenameAndUser(normalizedFilename, currentUser)
+                .filter(FileEntity::isVersioned)
+                .orElseThrow(() -> new FileStorageException("A file with this name already exists"));
+        return Optional.of(fileEntity);
+    }
+
+    private FileEntity saveFile(String normalizedFilename, StoredBlob blob, UserEntity currentUser,
+                                Optional<FileEntity> existing) {
+        if (existing.isPresent()) {
+            return fileVersionService.replaceContent(existing.get(), blob);
+        }
+        quotaService.checkAvailable(currentUser, blob.getSize());
+        // Save file metadata in database
+        FileEntity fileEntity = fileRepository.save(newFileEntity(normalizedFilename, blob, currentUser));
+        quotaService.recordChange(currentUser, blob.getSize());
+        return fileEntity;
+    }
+
+    static FileEntity newFileEntity(String normalizedFilename, StoredBlob blob, UserEntity currentUser) {
+        FileEntity fileEntity = new FileEntity();
+        fileEntity.setFilename(normalizedFilename);
+        fileEntity.setStorageFilename(blob.getStorageKey());
+        fileEntity.setSize(blob.getSize());
+        fileEntity.setChecksum(blob.getStorageKey());
+        fileEntity.setCrc32c(blob.getCrc32c());
+        fileEntity.setCodec(blob.getCodec());
+        fileEntity.setCreatedAt(LocalDateTime.now());
+        fileEntity.setVersion(1);
+        fileEntity.setUser(currentUser);
+        return fileEntity;
+    }
+
+    static String normalizeFilename(String filename) {
+        if (filename == null || filename.trim().isEmpty()) {
+            throw new FileStorageException("Filename cannot be empty");
+        }
+
+        String normalizedFilename = StringUtils.cleanPath(filename);
 
         // Check if the filename contains invalid characters
         if (normalizedFilename.contains("..")) {
             throw new FileStorageException("Filename contains invalid path sequence " + normalizedFilename);
         }
+        return normalizedFilename;
+    }
 
-        // Check if file with this name already exists for this user
-        if (fileRepository.existsByFilenameAndUser(normalizedFilename, currentUser)) {
-            throw new FileStorageException("A file with this name already exists");
-        }
+    @Override
+    public Resource loadFileAsResource(String filename) {
+        UserEntity currentUser = userService.getCurrentUser();
 
-        // Generate a unique filename for storage
-        String storageFilename = UUID.randomUUID().toString();
+        FileEntity fileEntity = fileRepository.findByFilenameAndUser(filename, currentUser)
+                .orElseThrow(() -> new FileStorageException("File not found: " + filename));
 
-        try {
-            // Copy file to the target location
-            Path targetLocation = this.fileStorageLocation.resolve(storageFilename);
-            Files.copy(file.getInputStream(), targetLocation, StandardCopyOption.REPLACE_EXISTING);
-
-            // Save file metadata in database
-            FileEntity fileEntity = new FileEntity();
-            fileEntity.setFilename(normalizedFilename);
-            fileEntity.setStorageFilename(storageFilename);
-            fileEntity.setSize(file.getSize());
-            fileEntity.setUser(currentUser);
-
-            return fileRepository.save(fileEntity);
-        } catch (IOException ex) {
-            throw new FileStorageException("Could not store file " + normalizedFilename, ex);
+        String storageKey = fileEntity.getStorageFilename();
+        if (isCompressed(fileEntity.getCodec())) {
+            return new InputStreamResource(
+                    blobService.getRange(storageKey, fileEntity.getCodec(), 0, fileEntity.getSize()));
         }
+        return blobService.localPath(storageKey)
+                .<Resource>map(FileSystemResource::new)
+                .orElseGet(() -> new InputStreamResource(blobService.get(storageKey)));
     }
 
     @Override
-    public Resource loadFileAsResource(String filename) {
+    public StoredFile loadStoredFile(String filename) {
+        return loadStoredFile(filename, null);
+    }
+
+    @Override
+    public StoredFile loadStoredFile(String filename, Integer version) {
+        // Covers the metadata lookups; reading the content is observed by BlobService
+        return Observation.createNotStarted("file.load", observationRegistry)
+                .observe(() -> findStoredFile(filename, version));
+    }
+
+    private StoredFile findStoredFile(String filename, Integer version) {
         UserEntity currentUser = userService.getCurrentUser();
 
         FileEntity fileEntity = fileRepository.findByFilenameAndUser(filename, currentUser)
                 .orElseThrow(() -> new FileStorageException("File not found: " + filename));
+        if (version == null || version == fileEntity.getVersion()) {
+            return storedFile(fileEntity.getFilename(), fileEntity.getStorageFilename(), fileEntity.getSize(),
+                    fileEntity.getChecksum(), fileEntity.getCrc32c(), fileEntity.getCodec());
+        }
 
-        try {
-            Path filePath = this.fileStorageLocation.resolve(fileEntity.getStorageFilename()).normalize();
-            Resource resource = new UrlResource(filePath.toUri());
+        FileVersionEntity fileVersion = fileVersionRepository.findByFileAndVersion(fileEntity, version)
+                .orElseThrow(() -> new FileStorageException("Version " + version + " of " + filename + " not found"));
+        return storedFile(fileEntity.getFilename(), fileVersion.getStorageKey(), fileVersion.getSize(),
+                fileVersion.getChecksum(), fileVersion.getCrc32c(), fileVersion.getCodec());
+    }
+
+    private StoredFile storedFile(String filename, String storageKey, long size, String checksum, Long crc32c,
+                                  BlobCodec codec) {
+        BlobStat stat = blobService.stat(storageKey)
+                .orElseThrow(() -> new FileStorageException("File not found: " + filename));
+
+        // Content never changes under a storage key, so it is a strong validator
+        String etag = "\"" + storageKey + "\"";
+        // Describes the original content, not the stored encoding of it
+        String digest = checksum != null ? new ContentDigest(checksum, crc32c).toFieldValue() : null;
+        Path localPath = blobService.localPath(storageKey).orElse(null);
+        if (!isCompressed(codec)) {
+            return new StoredFile(
+                    filename,
+                    localPath,
+                    stat.getSize(),
+                    stat.getLastModified(),
+                    etag,
+                    (offset, length) -> blobService.getRange(storageKey, offset, length),
+                    null,
+                    null,
+                    digest);
+        }
+
+        // Compressed blobs are decompressed on the fly, or sent as they are if their codec is a content coding
+        StoredFile encoded = null;
+        if (codec.getContentEncoding() != null) {
+            encoded = new StoredFile(
+                    filename,
+                    localPath,
+                    stat.getSize(),
+                    stat.getLastModified(),
+                    "\"" + storageKey + "-" + codec.getContentEncoding() + "\"",
+                    (offset, length) -> blobService.getRange(storageKey, offset, length),
+                    codec.getContentEncoding(),
+                    null);
+        }
+        return new StoredFile(
+                filename,
+                null,
+                size,
+                stat.getLastModified(),
+                etag,
+                (offset, length) -> blobService.getRange(storageKey, codec, offset, length),
+                null,
+                encoded,
+                digest);
+    }
+
+    @Override
+    public List<ArchiveEntry> loadArchiveEntries(List<String> filenames, String prefix) {
+        boolean byFilename = filenames != null && !filenames.isEmpty();
+        if (byFilename == (prefix != null)) {
+            throw new BadRequestException("Either filenames or a prefix must be given");
+        }
+
+        UserEntity currentUser = userService.getCurrentUser();
 
-            if (resource.exists()) {
-                return resource;
-            } else {
-                throw new FileStorageException("File not found: " + filename);
+        // All rows are read up front, so no transaction stays open while the archive is sent
+        List<FileEntity> files;
+        if (byFilename) {
+            Set<String> requested = new LinkedHashSet<>(filenames);
+            if (requested.size() > maxArchiveFiles) {
+                throw new BadRequestException("Archive exceeds " + maxArchiveFiles + " files");
+            }
+            Map<String, FileEntity> found = fileRepository.findAllByUserAndFilenameIn(currentUser, requested).stream()
+                    .collect(Collectors.toMap(FileEntity::getFilename, Function.identity()));
+            files = new ArrayList<>(requested.size());
+            for (String filename : requested) {
+                FileEntity fileEntity = found.get(filename);
+                if (fileEntity == null) {
+                    throw new FileStorageException("File not found: " + filename);
+                }
+                files.add(fileEntity);
+            }
+        } else {
+            files = fileRepository.findAllByUserAndFilenameLike(
+                    currentUser, escapeLike(prefix) + "%", Limit.of(maxArchiveFiles + 1));
+            if (files.size() > maxArchiveFiles) {
+                throw new BadRequestException("Archive exceeds " + maxArchiveFiles + " files");
             }
-        } catch (MalformedURLException ex) {
-            throw new FileStorageException("File not found: " + filename, ex);
         }
+
+        return files.stream()
+                .map(fileEntity -> {
+                    String storageKey = fileEntity.getStorageFilename();
+                    BlobCodec codec = fileEntity.getCodec();
+                    return new ArchiveEntry(
+                            fileEntity.getFilename(),
+                            fileEntity.getSize(),
+                            fileEntity.getCreatedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli(),
+                            (offset, length) -> blobService.getRange(storageKey, codec, offset, length));
+                })
+                .toList();
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    private static boolean isCompressed(BlobCodec codec) {
+        return codec != null && codec != BlobCodec.NONE;
     }
 
     @Override
-    public List<FileDto> getFilesList(Integer limit) {
+    public FilePage getFilesList(Integer limit, String sort, String order, String cursor) {
+        if (limit != null && limit <= 0) {
+            throw new BadRequestException("Limit must be positive");
+        }
+        FileSort fileSort = parseSort(sort);
+        boolean descending = parseDescending(order);
+        FileListItem after = cursor != null ? FileListCursor.decode(cursor, fileSort, descending) : null;
+
         UserEntity currentUser = userService.getCurrentUser();
 
-        Pageable pageable = limit != null ? PageRequest.of(0, limit) : Pageable.unpaged();
+        // Without limit or cursor the whole listing is returned, as it always was
+        if (limit == null && cursor == null) {
+            return new FilePage(toFileDtos(fileRepository.findPage(
+                    currentUser.getId(), fileSort, descending, null, Integer.MAX_VALUE)), null);
+        }
+        // Pages are capped, so a client that pages never reads a large account in one go
+        int pageSize = limit != null ? Math.min(limit, maxListLimit) : maxListLimit;
+
+        // One extra row tells whether there is a next page
+        List<FileListItem> items = fileRepository.findPage(
+                currentUser.getId(), fileSort, descending, after, pageSize + 1);
+
+        String nextCursor = null;
+        if (items.size() > pageSize) {
+            items = items.subList(0, pageSize);
+            nextCursor = FileListCursor.encode(items.get(pageSize - 1), fileSort, descending);
+        }
 
-        return fileRepository.findByUser(currentUser, pageable).stream()
-                .map(fileEntity -> new FileDto(fileEntity.getFilename(), fileEntity.getSize()))
+        return new FilePage(toFileDtos(items), nextCursor);
+    }
+
+    private static List<FileDto> toFileDtos(List<FileListItem> items) {
+        return items.stream()
+                .map(item -> new FileDto(item.getFilename(), item.getSize()))
                 .collect(Collectors.toList());
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public void streamFilesList(String sort, String order, Consumer<FileDto> consumer) {
+        FileSort fileSort = parseSort(sort);
+        boolean descending = parseDescending(order);
+
+        UserEntity currentUser = userService.getCurrentUser();
+
+        // Rows are fetched from a server-side cursor as the consumer writes them out
+        try (Stream<FileDto> files = fileRepository.streamAll(
+                currentUser.getId(), fileSort, descending, streamFetchSize)) {
+            files.forEach(consumer);
+        }
+    }
+
+    private static FileSort parseSort(String sort) {
+        if (sort == null) {
+            return FileSort.NAME;
+        }
+        try {
+            return FileSort.fromParameter(sort);
+        } catch (IllegalArgumentException ex) {
+            throw new BadRequestException("Unsupported sort: " + sort);
+        }
+    }
+
+    private static boolean parseDescending(String order) {
+        if (order == null || "asc".equalsIgnoreCase(order)) {
+            return false;
+        }
+        if ("desc".equalsIgnoreCase(order)) {
+            return true;
+        }
+        throw new BadRequestException("Unsupported order: " + order);
+    }
+
     @Override
     @Transactional
     public void deleteFile(String filename) {
@@ -132,16 +448,19 @@ public class FileStorageServiceImpl implements FileStorageService {
         FileEntity fileEntity = fileRepository.findByFilenameAndUser(filename, currentUser)
                 .orElseThrow(() -> new FileStorageException("File not found: " + filename));
 
-        try {
-            // Delete file from storage
-            Path filePath = this.fileStorageLocation.resolve(fileEntity.getStorageFilename());
-            Files.deleteIfExists(filePath);
-
-            // Delete file metadata from database
-            fileRepository.delete(fileEntity);
-        } catch (IOException ex) {
-            throw new FileStorageException("Error deleting file: " + filename, ex);
+        // Drop this file's reference; the collector deletes the content after the last one
+        blobService.release(fileEntity.getStorageFilename());
+        List<String> versionKeys = fileVersionRepository.findStorageKeysByFileIdIn(List.of(fileEntity.getId()));
+        if (!versionKeys.isEmpty()) {
+            blobService.releaseAll(versionKeys);
         }
+
+        long versionsSize = versionKeys.isEmpty()
+                ? 0 : fileVersionRepository.sumSizeByFileIdIn(List.of(fileEntity.getId()));
+
+        // Delete file metadata from database
+        fileRepository.delete(fileEntity);
+        quotaService.recordChange(currentUser, -fileEntity.getSize() - versionsSize);
     }
 
     @Override
@@ -151,22 +470,18 @@ public class FileStorageServiceImpl implements FileStorageService {
             throw new FileStorageException("New filename cannot be empty");
         }
 
-        String normalizedNewFilename = StringUtils.cleanPath(newFilename);
-
-        if (normalizedNewFilename.contains("..")) {
-            throw new FileStorageException("New filename contains invalid path sequence " + normalizedNewFilename);
-        }
+        String normalizedNewFilename = normalizeFilename(newFilename);
 
         UserEntity currentUser = userService.getCurrentUser();
 
+        FileEntity fileEntity = fileRepository.findByFilenameAndUser(oldFilename, currentUser)
+                .orElseThrow(() -> new FileStorageException("File not found: " + oldFilename));
+
         // Check if a file with the new name already exists
         if (fileRepository.existsByFilenameAndUser(normalizedNewFilename, currentUser)) {
             throw new FileStorageException("A file with name " + normalizedNewFilename + " already exists");
         }
 
-        FileEntity fileEntity = fileRepository.findByFilenameAndUser(oldFilename, currentUser)
-                .orElseThrow(() -> new FileStorageException("File not found: " + oldFilename));
-
         fileEntity.setFilename(normalizedNewFilename);
         fileRepository.save(fileEntity);
     }
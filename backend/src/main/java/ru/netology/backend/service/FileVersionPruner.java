@@ -0,0 +1,53 @@
+package ru.netology.backend.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Removes versions beyond the newest {@code max-versions} of each file and versions
+ * replaced more than {@code max-age} ago, in batches of one transaction each. Their
+ * blobs lose a reference and are deleted by the {@link BlobCollector} once no file or
+ * version points at them. Every instance can run the pruner: versions taken by one
+ * are skipped by the others.
+ */
+@Slf4j
+@Component
+public class FileVersionPruner {
+
+    private final FileVersionService fileVersionService;
+    private final int maxVersions;
+    private final Duration maxAge;
+    private final int batchSize;
+
+    public FileVersionPruner(
+            FileVersionService fileVersionService,
+            @Value("${app.versioning.max-versions:10}") int maxVersions,
+            @Value("${app.versioning.max-age:P90D}") Duration maxAge,
+            @Value("${app.versioning.batch-size:500}") int batchSize) {
+        this.fileVersionService = fileVersionService;
+        this.maxVersions = maxVersions;
+        this.maxAge = maxAge;
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(fixedDelayString = "${app.versioning.prune-interval:PT1H}")
+    public void pruneVersions() {
+        LocalDateTime before = LocalDateTime.now().minus(maxAge);
+        long pruned = 0;
+        boolean more = true;
+        while (more && !Thread.currentThread().isInterrupted()) {
+            int batch = fileVersionService.pruneVersions(before, maxVersions, batchSize);
+            pruned += batch;
+            more = batch == batchSize;
+        }
+
+        if (pruned > 0) {
+            log.info("Pruned {} file versions", pruned);
+        }
+    }
+}
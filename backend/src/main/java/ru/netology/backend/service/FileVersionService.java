@@ -0,0 +1,15 @@
+package ru.netology.backend.service;
+
+import ru.netology.backend.model.dto.FileVersionDto;
+import ru.netology.backend.model.entity.FileEntity;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface FileVersionService {
+    List<FileVersionDto> getVersions(String filename);
+    void setVersioning(String filename, boolean enabled);
+    void restoreVersion(String filename, int version);
+    FileEntity replaceContent(FileEntity fileEntity, StoredBlob blob);
+    int pruneVersions(LocalDateTime before, int maxVersions, int limit);
+}
@@ -0,0 +1,160 @@
+package ru.netology.backend.service;
+
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ru.netology.backend.exception.FileStorageException;
+import ru.netology.backend.exception.PreconditionFailedException;
+import ru.netology.backend.model.dto.FileVersionDto;
+import ru.netology.backend.model.entity.FileEntity;
+import ru.netology.backend.model.entity.FileVersionEntity;
+import ru.netology.backend.model.entity.UserEntity;
+import ru.netology.backend.repository.FileRepository;
+import ru.netology.backend.repository.FileVersionRepository;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Copy-on-write history of files. Content is never copied: replacing the content of a
+ * versioned file moves its reference to the old blob into a version row, and
+ * restoring a version takes one more reference to that blob. A file that does not
+ * keep versions drops the reference instead, as it always did.
+ *
+ * <p>Every replacement checks the version it was based on, so of two concurrent
+ * uploads to the same file one fails with 412 instead of losing the other's content
+ * without a trace.
+ */
+@Service
+public class FileVersionServiceImpl implements FileVersionService {
+
+    private final FileRepository fileRepository;
+    private final FileVersionRepository fileVersionRepository;
+    private final UserService userService;
+    private final BlobService blobService;
+    private final QuotaService quotaService;
+
+    public FileVersionServiceImpl(
+            FileRepository fileRepository,
+            FileVersionRepository fileVersionRepository,
+            UserService userService,
+            BlobService blobService,
+            QuotaService quotaService) {
+        this.fileRepository = fileRepository;
+        this.fileVersionRepository = fileVersionRepository;
+        this.userService = userService;
+        this.blobService = blobService;
+        this.quotaService = quotaService;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<FileVersionDto> getVersions(String filename) {
+        FileEntity fileEntity = findFile(filename);
+
+        List<FileVersionDto> versions = new ArrayList<>();
+        versions.add(new FileVersionDto(fileEntity.getVersion(), fileEntity.getSize(), fileEntity.getCreatedAt(), true));
+        for (FileVersionEntity fileVersion : fileVersionRepository.findAllByFile(fileEntity)) {
+            versions.add(new FileVersionDto(
+                    fileVersion.getVersion(), fileVersion.getSize(), fileVersion.getCreatedAt(), false));
+        }
+        return versions;
+    }
+
+    @Override
+    @Transactional
+    public void setVersioning(String filename, boolean enabled) {
+        // Versions kept so far stay until they expire
+        findFile(filename).setVersioned(enabled);
+    }
+
+    @Override
+    @Transactional
+    public void restoreVersion(String filename, int version) {
+        FileEntity fileEntity = findFile(filename);
+        if (version == fileEntity.getVersion()) {
+            return;
+        }
+
+        FileVersionEntity fileVersion = fileVersionRepository.findByFileAndVersion(fileEntity, version)
+                .orElseThrow(() -> new FileStorageException("Version " + version + " of " + filename + " not found"));
+        // The restored content becomes the newest version, so the current one is kept as well
+        StoredBlob blob = blobService.acquireExisting(fileVersion.getStorageKey())
+                .orElseThrow(() -> new FileStorageException(
+                        "Content of version " + version + " of " + filename + " is not available"));
+        replaceContent(fileEntity, blob);
+    }
+
+    @Override
+    @Transactional
+    public FileEntity replaceContent(FileEntity fileEntity, StoredBlob blob) {
+        // Usage counts the versions a file keeps, so keeping the old content frees nothing
+        long delta = fileEntity.isVersioned() ? blob.getSize() : blob.getSize() - fileEntity.getSize();
+        quotaService.checkAvailable(fileEntity.getUser(), delta);
+
+        LocalDateTime now = LocalDateTime.now();
+        if (fileEntity.isVersioned()) {
+            try {
+                fileVersionRepository.saveAndFlush(new FileVersionEntity(
+                        null,
+                        fileEntity,
+                        fileEntity.getVersion(),
+                        fileEntity.getStorageFilename(),
+                        fileEntity.getSize(),
+                        fileEntity.getChecksum(),
+                        fileEntity.getCrc32c(),
+                        fileEntity.getCodec(),
+                        fileEntity.getCreatedAt(),
+                        now));
+            } catch (DataIntegrityViolationException ex) {
+                throw new PreconditionFailedException("File was changed by another request");
+            }
+        } else {
+            // Blob rows are locked before the file row, in the order deleting a file takes them
+            blobService.release(fileEntity.getStorageFilename());
+        }
+
+        if (fileRepository.replaceContent(fileEntity.getId(), fileEntity.getVersion(), blob.getStorageKey(),
+                blob.getSize(), blob.getCrc32c(), blob.getCodec(), now) == 0) {
+            throw new PreconditionFailedException("File was changed by another request");
+        }
+
+        fileEntity.setStorageFilename(blob.getStorageKey());
+        fileEntity.setChecksum(blob.getStorageKey());
+        fileEntity.setSize(blob.getSize());
+        fileEntity.setCrc32c(blob.getCrc32c());
+        fileEntity.setCodec(blob.getCodec());
+        fileEntity.setCreatedAt(now);
+        fileEntity.setVersion(fileEntity.getVersion() + 1);
+        quotaService.recordChange(fileEntity.getUser(), delta);
+        return fileEntity;
+    }
+
+    @Override
+    @Transactional
+    public int pruneVersions(LocalDateTime before, int maxVersions, int limit) {
+        List<FileVersionEntity> expired = fileVersionRepository.findExpiredForUpdate(before, maxVersions, limit);
+        if (expired.isEmpty()) {
+            return 0;
+        }
+        blobService.releaseAll(expired.stream().map(FileVersionEntity::getStorageKey).toList());
+        fileVersionRepository.deleteAllInBatch(expired);
+
+        // Versions of many users' files expire together; each user gets back what theirs held
+        Map<Long, Long> sizes = new HashMap<>();
+        expired.forEach(fileVersion -> sizes.merge(fileVersion.getFile().getId(), fileVersion.getSize(), Long::sum));
+        for (FileEntity fileEntity : fileRepository.findAllById(sizes.keySet())) {
+            quotaService.recordChange(fileEntity.getUser(), -sizes.get(fileEntity.getId()));
+        }
+        return expired.size();
+    }
+
+    private FileEntity findFile(String filename) {
+        UserEntity currentUser = userService.getCurrentUser();
+        return fileRepository.findByFilenameAndUser(filename, currentUser)
+                .orElseThrow(() -> new FileStorageException("File not found: " + filename));
+    }
+}
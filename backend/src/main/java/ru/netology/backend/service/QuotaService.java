@@ -0,0 +1,13 @@
+package ru.netology.backend.service;
+
+import ru.netology.backend.model.dto.UsageDto;
+import ru.netology.backend.model.entity.UserEntity;
+
+public interface QuotaService {
+    UsageDto getUsage();
+    long getAvailable(UserEntity user);
+    void checkAvailable(UserEntity user, long bytes);
+    void recordChange(UserEntity user, long delta);
+    void flush();
+    void reconcile();
+}
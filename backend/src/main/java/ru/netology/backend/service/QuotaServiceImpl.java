@@ -0,0 +1,245 @@
+package ru.netology.backend.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.unit.DataSize;
+import ru.netology.backend.exception.QuotaExceededException;
+import ru.netology.backend.model.dto.UsageDto;
+import ru.netology.backend.model.entity.UserEntity;
+import ru.netology.backend.model.entity.UserUsageEntity;
+import ru.netology.backend.repository.FileRepository;
+import ru.netology.backend.repository.FileVersionRepository;
+import ru.netology.backend.repository.UserUsageRepository;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Per-user storage quotas, counting the current content of files and the versions they
+ * keep until those are pruned. Usage is held in memory as the value last read from the
+ * database plus the changes committed on this instance since, so reading it never
+ * sums the files table and recording a change takes no lock. The {@link UsageFlusher}
+ * adds the pending changes to the user_usage rows and reads back what other instances
+ * wrote; users idle for {@code idle-timeout} are dropped from memory once nothing of
+ * theirs is pending.
+ *
+ * <p>A sum read from the tables may already hold changes another instance has not
+ * written yet, which that instance then adds a second time. The flusher therefore
+ * recounts the rows from the tables every {@code reconcile-interval}, so such an
+ * error lasts until the next recount instead of for good.
+ *
+ * <p>The quota is checked against this counter before content is stored, so uploads
+ * running at the same time on one or several instances can together go past it by
+ * what they add.
+ */
+@Service
+public class QuotaServiceImpl implements QuotaService {
+
+    private static final int BATCH_SIZE = 1000;
+
+    private final long defaultQuota;
+    private final long idleMillis;
+    private final UserUsageRepository userUsageRepository;
+    private final FileRepository fileRepository;
+    private final FileVersionRepository fileVersionRepository;
+    private final UserService userService;
+    private final Map<Long, Usage> usages = new ConcurrentHashMap<>();
+
+    public QuotaServiceImpl(
+            @Value("${app.quota.default:10GB}") DataSize defaultQuota,
+            @Value("${app.quota.idle-timeout:PT1H}") Duration idleTimeout,
+            UserUsageRepository userUsageRepository,
+            FileRepository fileRepository,
+            FileVersionRepository fileVersionRepository,
+            UserService userService) {
+        this.defaultQuota = defaultQuota.toBytes();
+        this.idleMillis = idleTimeout.toMillis();
+        this.userUsageRepository = userUsageRepository;
+        this.fileRepository = fileRepository;
+        this.fileVersionRepository = fileVersionRepository;
+        this.userService = userService;
+    }
+
+    @Override
+    public UsageDto getUsage() {
+        State state = usage(userService.getCurrentUser().getId()).state.get();
+        return new UsageDto(state.used(), state.quota > 0 ? state.quota : null);
+    }
+
+    @Override
+    public long getAvailable(UserEntity user) {
+        State state = usage(user.getId()).state.get();
+        return state.quota > 0 ? Math.max(0, state.quota - state.used()) : Long.MAX_VALUE;
+    }
+
+    @Override
+    public void checkAvailable(UserEntity user, long bytes) {
+        if (bytes > 0 && bytes > getAvailable(user)) {
+            throw new QuotaExceededException("Storage quota exceeded");
+        }
+    }
+
+    @Override
+    public void recordChange(UserEntity user, long delta) {
+        if (delta == 0) {
+            return;
+        }
+        Long userId = user.getId();
+        // Counted once the files are there for everyone else as well
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    addPending(userId, delta);
+                }
+            });
+        } else {
+            addPending(userId, delta);
+        }
+    }
+
+    @Override
+    @Transactional
+    public void flush() {
+        if (usages.isEmpty()) {
+            return;
+        }
+
+        Map<Long, Long> flushed = new HashMap<>();
+        usages.forEach((userId, usage) -> {
+            State state = usage.state.get();
+            if (state.pending != 0 || !state.persisted) {
+                userUsageRepository.addUsedBytes(userId, state.stored + state.pending, state.pending);
+                flushed.put(userId, state.pending);
+            }
+        });
+
+        List<UserUsageEntity> rows = new ArrayList<>();
+        for (List<Long> ids : partition(new ArrayList<>(usages.keySet()), BATCH_SIZE)) {
+            rows.addAll(userUsageRepository.findAllById(ids));
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                for (UserUsageEntity row : rows) {
+                    Usage usage = usages.get(row.getUserId());
+                    if (usage != null) {
+                        // The written changes are part of the stored value now
+                        long written = flushed.getOrDefault(row.getUserId(), 0L);
+                        usage.state.updateAndGet(state -> state.evicted ? state
+                                : new State(row.getUsedBytes(), state.pending - written, quotaOf(row), true, false));
+                    }
+                }
+                evictIdle();
+            }
+        });
+    }
+
+    @Override
+    public void reconcile() {
+        long after = 0;
+        List<Long> userIds;
+        do {
+            userIds = userUsageRepository.findUserIdsAfter(after, BATCH_SIZE);
+            if (!userIds.isEmpty()) {
+                userUsageRepository.recount(userIds);
+                after = userIds.get(userIds.size() - 1);
+            }
+        } while (userIds.size() == BATCH_SIZE);
+    }
+
+    private Usage usage(Long userId) {
+        Usage usage = usages.get(userId);
+        if (usage == null) {
+            usage = usages.computeIfAbsent(userId, this::load);
+        }
+        usage.lastUsed = System.currentTimeMillis();
+        return usage;
+    }
+
+    private void addPending(Long userId, long delta) {
+        while (true) {
+            AtomicReference<State> state = usage(userId).state;
+            State current = state.get();
+            // An evicted entry is on its way out of the map; the next lookup loads the user again
+            if (!current.evicted && state.compareAndSet(current, current.add(delta))) {
+                return;
+            }
+        }
+    }
+
+    private void evictIdle() {
+        long idleSince = System.currentTimeMillis() - idleMillis;
+        usages.forEach((userId, usage) -> {
+            State state = usage.state.get();
+            if (usage.lastUsed < idleSince && state.pending == 0 && state.persisted && !state.evicted
+                    && usage.state.compareAndSet(state, state.evict())) {
+                usages.remove(userId, usage);
+            }
+        });
+    }
+
+    // The files and their versions are summed only for a user whose usage was never written
+    private Usage load(Long userId) {
+        State state = userUsageRepository.findById(userId)
+                .map(row -> new State(row.getUsedBytes(), 0, quotaOf(row), true, false))
+                .orElseGet(() -> new State(
+                        fileRepository.sumSizeByUserId(userId) + fileVersionRepository.sumSizeByUserId(userId),
+                        0, defaultQuota, false, false));
+        return new Usage(state);
+    }
+
+    private long quotaOf(UserUsageEntity row) {
+        return row.getQuotaBytes() != null ? row.getQuotaBytes() : defaultQuota;
+    }
+
+    private static <T> List<List<T>> partition(List<T> items, int size) {
+        List<List<T>> parts = new ArrayList<>();
+        for (int i = 0; i < items.size(); i += size) {
+            parts.add(items.subList(i, Math.min(items.size(), i + size)));
+        }
+        return parts;
+    }
+
+    private static final class Usage {
+
+        final AtomicReference<State> state;
+        volatile long lastUsed;
+
+        Usage(State state) {
+            this.state = new AtomicReference<>(state);
+        }
+    }
+
+    /**
+     * Usage of one user, replaced as a whole so that the stored value and the changes
+     * pending on top of it are always read together.
+     *
+     * @param stored    usage last read from the database
+     * @param pending   changes committed on this instance that are not in the database yet
+     * @param persisted whether the user_usage row exists
+     * @param evicted   dropped from memory; changes go to a freshly loaded entry instead
+     */
+    private record State(long stored, long pending, long quota, boolean persisted, boolean evicted) {
+
+        long used() {
+            return stored + pending;
+        }
+
+        State add(long delta) {
+            return new State(stored, pending + delta, quota, persisted, false);
+        }
+
+        State evict() {
+            return new State(stored, pending, quota, persisted, true);
+        }
+    }
+}
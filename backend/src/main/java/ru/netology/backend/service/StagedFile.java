@@ -0,0 +1,20 @@
+package ru.netology.backend.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.nio.file.Path;
+
+/**
+ * Upload content written to the staging area, with its hex SHA-256 and CRC32C,
+ * waiting to be stored under {@code filename}.
+ */
+@Getter
+@AllArgsConstructor
+public class StagedFile {
+    private final String filename;
+    private final Path path;
+    private final String sha256;
+    private final long crc32c;
+    private final long size;
+}
@@ -0,0 +1,14 @@
+package ru.netology.backend.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import ru.netology.backend.storage.BlobCodec;
+
+@Getter
+@AllArgsConstructor
+public class StoredBlob {
+    private final String storageKey;
+    private final long size;
+    private final BlobCodec codec;
+    private final Long crc32c;
+}
@@ -0,0 +1,78 @@
+package ru.netology.backend.service;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.apache.commons.io.input.BoundedInputStream;
+import ru.netology.backend.web.AcceptEncoding;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Everything needed to serve a stored file: its content and the validators used for
+ * conditional and range requests. {@code path} is only set when the content is
+ * available as a local file; otherwise it is read through {@link #openRange}.
+ *
+ * <p>Files stored compressed may also offer {@code encoded}: the stored bytes as they
+ * are, to be sent with {@code contentEncoding} to clients that accept it.
+ *
+ * <p>{@code digest} is the {@code Repr-Digest} field value of this representation,
+ * null when its checksums are not known.
+ */
+@Getter
+@AllArgsConstructor
+public class StoredFile {
+    private final String filename;
+    private final Path path;
+    private final long size;
+    private final long lastModified;
+    private final String etag;
+    @Getter(AccessLevel.NONE)
+    private final RangeReader rangeReader;
+    private final String contentEncoding;
+    private final StoredFile encoded;
+    private final String digest;
+
+    public StoredFile(String filename, Path path, long size, long lastModified, String etag) {
+        this(filename, path, size, lastModified, etag, (offset, length) -> {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+            channel.position(offset);
+            return new BoundedInputStream(Channels.newInputStream(channel), length);
+        });
+    }
+
+    public StoredFile(String filename, Path path, long size, long lastModified, String etag,
+                      RangeReader rangeReader) {
+        this(filename, path, size, lastModified, etag, rangeReader, null, null);
+    }
+
+    public StoredFile(String filename, Path path, long size, long lastModified, String etag,
+                      RangeReader rangeReader, String contentEncoding, StoredFile encoded) {
+        this(filename, path, size, lastModified, etag, rangeReader, contentEncoding, encoded, null);
+    }
+
+    public InputStream openRange(long offset, long length) throws IOException {
+        return rangeReader.open(offset, length);
+    }
+
+    /**
+     * Representation to send: the encoded one if the client accepts its content coding
+     * and asks for the whole file, since ranges refer to the original content.
+     */
+    public StoredFile negotiate(String acceptEncoding, boolean rangeRequest) {
+        if (encoded == null || rangeRequest) {
+            return this;
+        }
+        return AcceptEncoding.parse(acceptEncoding).accepts(encoded.getContentEncoding()) ? encoded : this;
+    }
+
+    @FunctionalInterface
+    public interface RangeReader {
+        InputStream open(long offset, long length) throws IOException;
+    }
+}
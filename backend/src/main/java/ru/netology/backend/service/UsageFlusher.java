@@ -0,0 +1,39 @@
+package ru.netology.backend.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Writes the usage changes counted in memory by the {@link QuotaService} to the
+ * database, and once more on shutdown so that a restart does not lose them. An
+ * instance that is killed loses at most the changes of its last interval, which the
+ * next recount from the files and versions tables puts right.
+ */
+@Component
+public class UsageFlusher {
+
+    private final QuotaService quotaService;
+
+    public UsageFlusher(QuotaService quotaService) {
+        this.quotaService = quotaService;
+    }
+
+    @Scheduled(fixedDelayString = "${app.quota.flush-interval:PT10S}")
+    public synchronized void flush() {
+        quotaService.flush();
+    }
+
+    // Right after a flush, so that this instance's own changes are not counted twice
+    @Scheduled(fixedDelayString = "${app.quota.reconcile-interval:PT1H}",
+            initialDelayString = "${app.quota.reconcile-interval:PT1H}")
+    public synchronized void reconcile() {
+        quotaService.flush();
+        quotaService.reconcile();
+    }
+
+    @PreDestroy
+    public synchronized void flushOnShutdown() {
+        quotaService.flush();
+    }
+}
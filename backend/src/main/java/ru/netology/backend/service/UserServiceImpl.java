@@ -4,6 +4,7 @@ import ru.netology.backend.model.dto.LoginDto;
 import ru.netology.backend.model.entity.TokenEntity;
 import ru.netology.backend.model.entity.UserEntity;
 import ru.netology.backend.repository.UserRepository;
+import ru.netology.backend.security.AuthenticatedUser;
 import ru.netology.backend.security.TokenService;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.core.Authentication;
@@ -37,7 +38,6 @@ public class UserServiceImpl implements UserService {
 //        UserEntity user = userRepository.findByLogin(loginDto.getLogin())
 //                .orElseThrow(() -> new BadCredentialsException("Invalid login or password"));
         Optional<UserEntity> userOptional = userRepository.findByLogin(loginDto.getLogin());
-        System.out.println("User Optional: " + userOptional);
         UserEntity user = userOptional.orElseThrow(() -> new BadCredentialsException("Invalid login or password"));
 
         String userPassedEncodedPassword = passwordEncoder.encode(loginDto.getPassword());
@@ -65,6 +65,10 @@ public class UserServiceImpl implements UserService {
             throw new BadCredentialsException("User not authenticated");
         }
 
+        if (authentication.getPrincipal() instanceof AuthenticatedUser authenticatedUser) {
+            return authenticatedUser.getUser();
+        }
+
         UserDetails userDetails = (UserDetails) authentication.getPrincipal();
         return userRepository.findByLogin(userDetails.getUsername())
                 .orElseThrow(() -> new BadCredentialsException("User not found"));
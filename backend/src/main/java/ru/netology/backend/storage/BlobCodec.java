@@ -0,0 +1,45 @@
+package ru.netology.backend.storage;
+
+import io.airlift.compress.Compressor;
+import io.airlift.compress.Decompressor;
+import io.airlift.compress.lz4.Lz4Compressor;
+import io.airlift.compress.lz4.Lz4Decompressor;
+import io.airlift.compress.zstd.ZstdCompressor;
+import io.airlift.compress.zstd.ZstdDecompressor;
+
+/**
+ * How the bytes of a blob are stored. Compressed blobs use the
+ * {@link SeekableCompression} layout.
+ */
+public enum BlobCodec {
+    NONE(null),
+    ZSTD("zstd"),
+    LZ4(null);
+
+    // HTTP content coding the stored bytes can be sent with as they are, if any
+    private final String contentEncoding;
+
+    BlobCodec(String contentEncoding) {
+        this.contentEncoding = contentEncoding;
+    }
+
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    Compressor newCompressor() {
+        return switch (this) {
+            case ZSTD -> new ZstdCompressor();
+            case LZ4 -> new Lz4Compressor();
+            case NONE -> throw new UnsupportedOperationException("Content is stored uncompressed");
+        };
+    }
+
+    Decompressor newDecompressor() {
+        return switch (this) {
+            case ZSTD -> new ZstdDecompressor();
+            case LZ4 -> new Lz4Decompressor();
+            case NONE -> throw new UnsupportedOperationException("Content is stored uncompressed");
+        };
+    }
+}
@@ -0,0 +1,11 @@
+package ru.netology.backend.storage;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class BlobStat {
+    private final long size;
+    private final long lastModified;
+}
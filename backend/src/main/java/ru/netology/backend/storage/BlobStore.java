@@ -0,0 +1,67 @@
+package ru.netology.backend.storage;
+
+import ru.netology.backend.exception.FileStorageException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Storage engine for file content. Keys are relative, slash-separated names chosen by
+ * the caller; a blob is written once under its key and read back as a stream or as a
+ * byte range. Failures are reported as {@link FileStorageException}.
+ */
+public interface BlobStore {
+
+    /**
+     * Streams exactly {@code length} bytes from {@code content} into the blob,
+     * replacing any previous content under the same key.
+     */
+    void put(String key, InputStream content, long length);
+
+    /**
+     * Stores the content of a local file. Implementations may move the file instead
+     * of copying it, so callers must not rely on it still existing afterwards.
+     */
+    default void put(String key, Path source) {
+        try (InputStream content = Files.newInputStream(source)) {
+            put(key, content, Files.size(source));
+        } catch (IOException ex) {
+            throw new FileStorageException("Could not store blob " + key, ex);
+        }
+    }
+
+    InputStream get(String key);
+
+    InputStream getRange(String key, long offset, long length);
+
+    Optional<BlobStat> stat(String key);
+
+    /**
+     * Removes the blob; deleting a missing key is not an error.
+     */
+    void delete(String key);
+
+    /**
+     * Keys of all top-level blobs. Nested keys and keys starting with a dot, which
+     * belong to uploads in progress, are left out. The stream must be closed.
+     */
+    Stream<String> listKeys();
+
+    /**
+     * Keys of all blobs below {@code prefix}, nested ones included, such as the chunks
+     * of uploads in progress under {@code .uploads/}. The stream must be closed.
+     */
+    Stream<String> listKeys(String prefix);
+
+    /**
+     * Local file holding the blob, for stores that keep content on this node's disk.
+     * Lets downloads use zero-copy transfers.
+     */
+    default Optional<Path> localPath(String key) {
+        return Optional.empty();
+    }
+}
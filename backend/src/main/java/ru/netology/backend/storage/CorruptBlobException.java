@@ -0,0 +1,18 @@
+package ru.netology.backend.storage;
+
+import java.io.IOException;
+
+/**
+ * Stored bytes that cannot be what was written, as opposed to a read that failed
+ * on its way to them.
+ */
+public class CorruptBlobException extends IOException {
+
+    public CorruptBlobException(String message) {
+        super(message);
+    }
+
+    public CorruptBlobException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,322 @@
+package ru.netology.backend.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.input.BoundedInputStream;
+import ru.netology.backend.exception.FileStorageException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Keeps blobs as plain files below a root directory. New content is written to a
+ * temporary file next to its target and renamed into place, so readers never see a
+ * partially written blob.
+ *
+ * <p>Top-level keys are fanned out into {@code shardLevels} directories named after
+ * two-character prefixes of the key ({@code ab/cd/abcd...}), which keeps directories
+ * small with millions of blobs. Blobs written before sharding was enabled still sit
+ * directly under the root: lookups fall back to that flat location, and
+ * {@link #reshard()} moves them over while the store is in use.
+ */
+@Slf4j
+public class LocalBlobStore implements BlobStore {
+
+    private final Path root;
+    private final int shardLevels;
+
+    public LocalBlobStore(Path root) {
+        this(root, 0);
+    }
+
+    public LocalBlobStore(Path root, int shardLevels) {
+        this.root = root.toAbsolutePath().normalize();
+        this.shardLevels = shardLevels;
+        try {
+            Files.createDirectories(this.root);
+        } catch (IOException ex) {
+            throw new FileStorageException("Could not create the directory where the uploaded files will be stored.", ex);
+        }
+    }
+
+    @Override
+    public void put(String key, InputStream content, long length) {
+        Path target = resolve(key);
+        Path tempFile = null;
+        try {
+            Files.createDirectories(target.getParent());
+            tempFile = Files.createTempFile(target.getParent(), ".", ".part");
+            long copied = Files.copy(new BoundedInputStream(content, length), tempFile, StandardCopyOption.REPLACE_EXISTING);
+            if (copied != length) {
+                throw new FileStorageException("Expected " + length + " bytes for blob " + key + " but got " + copied);
+            }
+            Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ex) {
+            throw new FileStorageException("Could not store blob " + key, ex);
+        } finally {
+            deleteQuietly(tempFile);
+        }
+    }
+
+    @Override
+    public void put(String key, Path source) {
+        Path target = resolve(key);
+        try {
+            Files.createDirectories(target.getParent());
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException ex) {
+            // Source is on another file system, fall back to copying
+            BlobStore.super.put(key, source);
+        } catch (IOException ex) {
+            throw new FileStorageException("Could not store blob " + key, ex);
+        }
+    }
+
+    @Override
+    public InputStream get(String key) {
+        try {
+            return withExistingPath(key, Files::newInputStream);
+        } catch (NoSuchFileException ex) {
+            throw new FileStorageException("Blob not found: " + key, ex);
+        } catch (IOException ex) {
+            throw new FileStorageException("Could not read blob " + key, ex);
+        }
+    }
+
+    @Override
+    public InputStream getRange(String key, long offset, long length) {
+        try {
+            FileChannel channel = withExistingPath(key, path -> FileChannel.open(path, StandardOpenOption.READ));
+            try {
+                channel.position(offset);
+            } catch (IOException ex) {
+                channel.close();
+                throw ex;
+            }
+            return new BoundedInputStream(Channels.newInputStream(channel), length);
+        } catch (NoSuchFileException ex) {
+            throw new FileStorageException("Blob not found: " + key, ex);
+        } catch (IOException ex) {
+            throw new FileStorageException("Could not read blob " + key, ex);
+        }
+    }
+
+    @Override
+    public Optional<BlobStat> stat(String key) {
+        try {
+            BasicFileAttributes attributes = withExistingPath(key,
+                    path -> Files.readAttributes(path, BasicFileAttributes.class));
+            return Optional.of(new BlobStat(attributes.size(), attributes.lastModifiedTime().toMillis()));
+        } catch (NoSuchFileException ex) {
+            return Optional.empty();
+        } catch (IOException ex) {
+            throw new FileStorageException("Could not read blob " + key, ex);
+        }
+    }
+
+    @Override
+    public void delete(String key) {
+        Path path = resolve(key);
+        try {
+            // Flat copy first: if resharding moves it meanwhile, the sharded delete still catches it
+            Files.deleteIfExists(flatPath(key));
+            Files.deleteIfExists(path);
+
+            // Remove directories left empty by nested keys; shard directories are kept
+            if (key.contains("/")) {
+                for (Path dir = path.getParent(); !dir.equals(root); dir = dir.getParent()) {
+                    Files.deleteIfExists(dir);
+                }
+            }
+        } catch (DirectoryNotEmptyException ex) {
+            // Still used by other blobs
+        } catch (IOException ex) {
+            throw new FileStorageException("Error deleting blob " + key, ex);
+        }
+    }
+
+    @Override
+    public Optional<Path> localPath(String key) {
+        try {
+            return Optional.of(withExistingPath(key, path -> {
+                if (!Files.exists(path)) {
+                    throw new NoSuchFileException(path.toString());
+                }
+                return path;
+            }));
+        } catch (IOException ex) {
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public Stream<String> listKeys() {
+        try {
+            // Flat and sharded blobs alike; the staging area, chunked uploads and partial writes start with a dot
+            return Files.walk(root, shardLevels + 1)
+                    .filter(path -> !path.equals(root) && !isHidden(root.relativize(path)))
+                    .filter(Files::isRegularFile)
+                    .map(path -> path.getFileName().toString());
+        } catch (IOException ex) {
+            throw new FileStorageException("Could not list blobs in " + root, ex);
+        }
+    }
+
+    @Override
+    public Stream<String> listKeys(String prefix) {
+        Path dir = flatPath(prefix);
+        List<String> keys = new ArrayList<>();
+        try {
+            Files.walkFileTree(dir, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                    // Partial writes start with a dot
+                    if (attributes.isRegularFile() && !file.getFileName().toString().startsWith(".")) {
+                        keys.add(root.relativize(file).toString().replace(File.separatorChar, '/'));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException ex) throws IOException {
+                    // Directories of nested keys go away with their last blob
+                    if (ex instanceof NoSuchFileException) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    throw ex;
+                }
+            });
+        } catch (IOException ex) {
+            throw new FileStorageException("Could not list blobs in " + dir, ex);
+        }
+        return keys.stream();
+    }
+
+    /**
+     * Moves blobs still stored directly under the root into the sharded layout. Safe
+     * to run while the store is serving requests; returns the number of moved blobs.
+     */
+    public long reshard() {
+        if (shardLevels == 0) {
+            return 0;
+        }
+
+        long moved = 0;
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(root, Files::isRegularFile)) {
+            for (Path flat : entries) {
+                String key = flat.getFileName().toString();
+                if (key.startsWith(".") || !isSharded(key)) {
+                    continue;
+                }
+
+                Path sharded = resolve(key);
+                try {
+                    Files.createDirectories(sharded.getParent());
+                    // A link fails if the key was written to the sharded location meanwhile, where a rename would replace it
+                    Files.createLink(sharded, flat);
+                    Files.delete(flat);
+                    moved++;
+                } catch (FileAlreadyExistsException ex) {
+                    // Same key was written again after sharding was enabled
+                    Files.deleteIfExists(flat);
+                } catch (NoSuchFileException ex) {
+                    // Deleted meanwhile
+                }
+
+                if (moved > 0 && moved % 10_000 == 0) {
+                    log.info("Resharded {} blobs in {}", moved, root);
+                }
+            }
+        } catch (IOException ex) {
+            throw new FileStorageException("Could not reshard " + root, ex);
+        }
+
+        log.info("Resharding of {} finished, {} blobs moved", root, moved);
+        return moved;
+    }
+
+    private Path resolve(String key) {
+        if (!isSharded(key)) {
+            return flatPath(key);
+        }
+        Path dir = root;
+        for (int level = 0; level < shardLevels; level++) {
+            dir = dir.resolve(key.substring(level * 2, level * 2 + 2));
+        }
+        return dir.resolve(key);
+    }
+
+    private Path flatPath(String key) {
+        Path path = root.resolve(key).normalize();
+        if (!path.startsWith(root) || path.equals(root)) {
+            throw new FileStorageException("Invalid blob key " + key);
+        }
+        return path;
+    }
+
+    private static boolean isHidden(Path relativePath) {
+        for (Path name : relativePath) {
+            if (name.toString().startsWith(".")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isSharded(String key) {
+        // Nested keys already group themselves into directories
+        return shardLevels > 0 && !key.contains("/") && key.length() > shardLevels * 2;
+    }
+
+    private <T> T withExistingPath(String key, PathOperation<T> operation) throws IOException {
+        Path path = resolve(key);
+        try {
+            return operation.apply(path);
+        } catch (NoSuchFileException ex) {
+            if (!isSharded(key)) {
+                throw ex;
+            }
+        }
+
+        try {
+            return operation.apply(flatPath(key));
+        } catch (NoSuchFileException ex) {
+            // Resharding may have moved it between the two lookups
+            return operation.apply(path);
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ignored) {
+            // Nothing else to clean up
+        }
+    }
+
+    @FunctionalInterface
+    private interface PathOperation<T> {
+        T apply(Path path) throws IOException;
+    }
+}
@@ -0,0 +1,209 @@
+package ru.netology.backend.storage;
+
+import org.apache.commons.io.input.BoundedInputStream;
+import ru.netology.backend.exception.FileStorageException;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Keeps blobs as objects in an S3-compatible bucket (AWS S3, MinIO, Ceph RGW, ...).
+ * Content larger than the part size is sent as a multipart upload, so a blob never
+ * has to fit in memory; parts of a local file are re-read from disk if the SDK
+ * retries them.
+ */
+public class S3BlobStore implements BlobStore {
+
+    private static final String CONTENT_TYPE = "application/octet-stream";
+
+    private final S3Client s3;
+    private final String bucket;
+    private final String prefix;
+    private final long partSize;
+
+    public S3BlobStore(S3Client s3, String bucket, String prefix, long partSize) {
+        this.s3 = s3;
+        this.bucket = bucket;
+        this.prefix = prefix.isEmpty() || prefix.endsWith("/") ? prefix : prefix + "/";
+        this.partSize = partSize;
+    }
+
+    @Override
+    public void put(String key, InputStream content, long length) {
+        upload(key, length, (offset, size) -> {
+            if (length <= partSize) {
+                return RequestBody.fromInputStream(content, size);
+            }
+            // Buffer one part at a time so the SDK can retry it
+            byte[] part = content.readNBytes((int) size);
+            if (part.length != size) {
+                throw new FileStorageException("Expected " + length + " bytes for blob " + key
+                        + " but got " + (offset + part.length));
+            }
+            return RequestBody.fromBytes(part);
+        });
+    }
+
+    @Override
+    public void put(String key, Path source) {
+        try {
+            upload(key, Files.size(source), (offset, size) -> RequestBody.fromContentProvider(
+                    () -> openRange(source, offset, size), size, CONTENT_TYPE));
+        } catch (IOException ex) {
+            throw new FileStorageException("Could not store blob " + key, ex);
+        }
+    }
+
+    @Override
+    public InputStream get(String key) {
+        try {
+            return s3.getObject(request -> request.bucket(bucket).key(objectKey(key)));
+        } catch (NoSuchKeyException ex) {
+            throw new FileStorageException("Blob not found: " + key, ex);
+        } catch (SdkException ex) {
+            throw new FileStorageException("Could not read blob " + key, ex);
+        }
+    }
+
+    @Override
+    public InputStream getRange(String key, long offset, long length) {
+        if (length == 0) {
+            return InputStream.nullInputStream();
+        }
+        try {
+            return s3.getObject(request -> request.bucket(bucket).key(objectKey(key))
+                    .range("bytes=" + offset + "-" + (offset + length - 1)));
+        } catch (NoSuchKeyException ex) {
+            throw new FileStorageException("Blob not found: " + key, ex);
+        } catch (SdkException ex) {
+            throw new FileStorageException("Could not read blob " + key, ex);
+        }
+    }
+
+    @Override
+    public Optional<BlobStat> stat(String key) {
+        try {
+            HeadObjectResponse head = s3.headObject(request -> request.bucket(bucket).key(objectKey(key)));
+            return Optional.of(new BlobStat(head.contentLength(), head.lastModified().toEpochMilli()));
+        } catch (NoSuchKeyException ex) {
+            return Optional.empty();
+        } catch (S3Exception ex) {
+            // HEAD responses have no body, so a missing key may not be mapped to NoSuchKeyException
+            if (ex.statusCode() == 404) {
+                return Optional.empty();
+            }
+            throw new FileStorageException("Could not read blob " + key, ex);
+        } catch (SdkException ex) {
+            throw new FileStorageException("Could not read blob " + key, ex);
+        }
+    }
+
+    @Override
+    public void delete(String key) {
+        try {
+            s3.deleteObject(request -> request.bucket(bucket).key(objectKey(key)));
+        } catch (SdkException ex) {
+            throw new FileStorageException("Error deleting blob " + key, ex);
+        }
+    }
+
+    @Override
+    public Stream<String> listKeys() {
+        try {
+            // The delimiter leaves out nested keys, such as chunks of uploads in progress
+            return s3.listObjectsV2Paginator(request -> request.bucket(bucket).prefix(prefix).delimiter("/"))
+                    .contents().stream()
+                    .map(object -> object.key().substring(prefix.length()))
+                    .filter(key -> !key.startsWith("."));
+        } catch (SdkException ex) {
+            throw new FileStorageException("Could not list blobs in " + bucket, ex);
+        }
+    }
+
+    @Override
+    public Stream<String> listKeys(String keyPrefix) {
+        try {
+            return s3.listObjectsV2Paginator(request -> request.bucket(bucket).prefix(prefix + keyPrefix))
+                    .contents().stream()
+                    .map(object -> object.key().substring(prefix.length()));
+        } catch (SdkException ex) {
+            throw new FileStorageException("Could not list blobs in " + bucket, ex);
+        }
+    }
+
+    private void upload(String key, long length, PartBody partBody) {
+        String objectKey = objectKey(key);
+        try {
+            if (length <= partSize) {
+                s3.putObject(request -> request.bucket(bucket).key(objectKey).contentLength(length),
+                        partBody.get(0, length));
+                return;
+            }
+
+            String uploadId = s3.createMultipartUpload(request -> request.bucket(bucket).key(objectKey)
+                    .contentType(CONTENT_TYPE)).uploadId();
+            try {
+                List<CompletedPart> parts = new ArrayList<>();
+                for (long offset = 0; offset < length; offset += partSize) {
+                    int partNumber = parts.size() + 1;
+                    long size = Math.min(partSize, length - offset);
+                    String etag = s3.uploadPart(request -> request.bucket(bucket).key(objectKey)
+                                    .uploadId(uploadId).partNumber(partNumber).contentLength(size),
+                            partBody.get(offset, size)).eTag();
+                    parts.add(CompletedPart.builder().partNumber(partNumber).eTag(etag).build());
+                }
+                s3.completeMultipartUpload(request -> request.bucket(bucket).key(objectKey)
+                        .uploadId(uploadId).multipartUpload(upload -> upload.parts(parts)));
+            } catch (IOException | RuntimeException ex) {
+                abortQuietly(objectKey, uploadId, ex);
+                throw ex;
+            }
+        } catch (IOException | UncheckedIOException | SdkException ex) {
+            throw new FileStorageException("Could not store blob " + key, ex);
+        }
+    }
+
+    private void abortQuietly(String objectKey, String uploadId, Exception cause) {
+        try {
+            s3.abortMultipartUpload(request -> request.bucket(bucket).key(objectKey).uploadId(uploadId));
+        } catch (SdkException ex) {
+            cause.addSuppressed(ex);
+        }
+    }
+
+    private String objectKey(String key) {
+        return prefix + key;
+    }
+
+    private static InputStream openRange(Path file, long offset, long length) {
+        try {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+            channel.position(offset);
+            return new BoundedInputStream(Channels.newInputStream(channel), length);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @FunctionalInterface
+    private interface PartBody {
+        RequestBody get(long offset, long size) throws IOException;
+    }
+}
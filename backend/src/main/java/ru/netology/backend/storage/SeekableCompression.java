@@ -0,0 +1,297 @@
+package ru.netology.backend.storage;
+
+import io.airlift.compress.Compressor;
+import io.airlift.compress.Decompressor;
+import io.airlift.compress.MalformedInputException;
+import org.apache.commons.io.input.BoundedInputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Layout of compressed blobs, following the zstd seekable format: the content is cut
+ * into frames of {@link #FRAME_SIZE} bytes that are compressed independently, and a
+ * seek table with the compressed and original size of every frame is appended in a
+ * skippable frame. With zstd the blob as a whole is therefore a regular zstd stream,
+ * while a byte range is read by decompressing only the frames that overlap it.
+ */
+public final class SeekableCompression {
+
+    public static final int FRAME_SIZE = 256 * 1024;
+
+    private static final int SKIPPABLE_MAGIC = 0x184D2A5E;
+    private static final int SEEKABLE_MAGIC = 0x8F92EAB1;
+    private static final int SKIPPABLE_HEADER_SIZE = 8;
+    private static final int FOOTER_SIZE = 9;
+    private static final int ENTRY_SIZE = 8;
+    private static final int CHECKSUM_FLAG = 0x80;
+
+    private SeekableCompression() {
+    }
+
+    /**
+     * Compresses content frame by frame into the seekable layout. Call
+     * {@link #writeFrame} with up to {@link #FRAME_SIZE} bytes at a time, then
+     * {@link #finish}.
+     */
+    public static class Writer {
+
+        private final Compressor compressor;
+        private final OutputStream out;
+        private final byte[] compressed;
+        private final ByteArrayOutputStream entries = new ByteArrayOutputStream();
+        private long written;
+
+        public Writer(BlobCodec codec, OutputStream out) {
+            this.compressor = codec.newCompressor();
+            this.out = out;
+            this.compressed = new byte[compressor.maxCompressedLength(FRAME_SIZE)];
+        }
+
+        /**
+         * Writes one frame and returns its compressed size.
+         */
+        public int writeFrame(byte[] data, int length) throws IOException {
+            if (length <= 0 || length > FRAME_SIZE) {
+                throw new IllegalArgumentException("Frame size must be between 1 and " + FRAME_SIZE);
+            }
+            int compressedLength = compressor.compress(data, 0, length, compressed, 0, compressed.length);
+            out.write(compressed, 0, compressedLength);
+            written += compressedLength;
+
+            ByteBuffer entry = littleEndian(ENTRY_SIZE).putInt(compressedLength).putInt(length);
+            entries.write(entry.array());
+            return compressedLength;
+        }
+
+        /**
+         * Appends the seek table and returns the total size of the blob.
+         */
+        public long finish() throws IOException {
+            int frames = entries.size() / ENTRY_SIZE;
+            ByteBuffer header = littleEndian(SKIPPABLE_HEADER_SIZE)
+                    .putInt(SKIPPABLE_MAGIC)
+                    .putInt(entries.size() + FOOTER_SIZE);
+            ByteBuffer footer = littleEndian(FOOTER_SIZE)
+                    .putInt(frames)
+                    .put((byte) 0)
+                    .putInt(SEEKABLE_MAGIC);
+
+            out.write(header.array());
+            entries.writeTo(out);
+            out.write(footer.array());
+            out.flush();
+            return written + SKIPPABLE_HEADER_SIZE + entries.size() + FOOTER_SIZE;
+        }
+    }
+
+    /**
+     * Frame boundaries of a compressed blob, in compressed and original offsets.
+     */
+    public static class SeekTable {
+
+        private final long[] compressedOffsets;
+        private final long[] offsets;
+
+        SeekTable(long[] compressedOffsets, long[] offsets) {
+            this.compressedOffsets = compressedOffsets;
+            this.offsets = offsets;
+        }
+
+        public int getFrameCount() {
+            return offsets.length - 1;
+        }
+
+        // Original size of the content
+        public long getSize() {
+            return offsets[offsets.length - 1];
+        }
+
+        int frameAt(long offset) {
+            int index = Arrays.binarySearch(offsets, offset);
+            // An exact match is the start of that frame, otherwise the offset is inside the previous one
+            return index >= 0 ? index : -index - 2;
+        }
+    }
+
+    @FunctionalInterface
+    public interface RangeSource {
+        InputStream open(long offset, long length) throws IOException;
+    }
+
+    /**
+     * Reads the seek table from the end of a blob of {@code blobSize} bytes.
+     */
+    public static SeekTable readSeekTable(RangeSource source, long blobSize) throws IOException {
+        if (blobSize < SKIPPABLE_HEADER_SIZE + FOOTER_SIZE) {
+            throw new CorruptBlobException("Blob is too small to hold a seek table");
+        }
+
+        ByteBuffer footer = read(source, blobSize - FOOTER_SIZE, FOOTER_SIZE);
+        long frames = Integer.toUnsignedLong(footer.getInt());
+        byte descriptor = footer.get();
+        if (footer.getInt() != SEEKABLE_MAGIC) {
+            throw new CorruptBlobException("Blob has no seek table");
+        }
+
+        // Tables written by other tools may carry a checksum per frame
+        int entrySize = (descriptor & CHECKSUM_FLAG) != 0 ? ENTRY_SIZE + 4 : ENTRY_SIZE;
+        long tableSize = SKIPPABLE_HEADER_SIZE + frames * entrySize + FOOTER_SIZE;
+        if (tableSize > blobSize) {
+            throw new CorruptBlobException("Seek table of " + frames + " frames does not fit in the blob");
+        }
+
+        ByteBuffer table = read(source, blobSize - tableSize, (int) (tableSize - FOOTER_SIZE));
+        if (table.getInt() != SKIPPABLE_MAGIC) {
+            throw new CorruptBlobException("Seek table is not in a skippable frame");
+        }
+        table.getInt();
+
+        long[] compressedOffsets = new long[(int) frames + 1];
+        long[] offsets = new long[(int) frames + 1];
+        for (int frame = 0; frame < frames; frame++) {
+            compressedOffsets[frame + 1] = compressedOffsets[frame] + Integer.toUnsignedLong(table.getInt());
+            offsets[frame + 1] = offsets[frame] + Integer.toUnsignedLong(table.getInt());
+            table.position(table.position() + entrySize - ENTRY_SIZE);
+        }
+        if (compressedOffsets[(int) frames] != blobSize - tableSize) {
+            throw new CorruptBlobException("Seek table does not match the blob size");
+        }
+        return new SeekTable(compressedOffsets, offsets);
+    }
+
+    /**
+     * Opens {@code length} bytes of the original content starting at {@code offset},
+     * reading and decompressing only the frames that contain them.
+     */
+    public static InputStream openRange(BlobCodec codec, SeekTable table, RangeSource source,
+                                        long offset, long length) throws IOException {
+        if (offset < 0 || length < 0 || offset + length > table.getSize()) {
+            throw new IllegalArgumentException("Range " + offset + "+" + length
+                    + " is outside of content of " + table.getSize() + " bytes");
+        }
+        if (length == 0) {
+            return InputStream.nullInputStream();
+        }
+
+        int first = table.frameAt(offset);
+        int last = table.frameAt(offset + length - 1);
+        long start = table.compressedOffsets[first];
+        InputStream compressed = source.open(start, table.compressedOffsets[last + 1] - start);
+
+        FrameInputStream frames = new FrameInputStream(codec.newDecompressor(), compressed, table, first, last);
+        frames.skipNBytes(offset - table.offsets[first]);
+        return new BoundedInputStream(frames, length);
+    }
+
+    private static ByteBuffer read(RangeSource source, long offset, int length) throws IOException {
+        try (InputStream in = source.open(offset, length)) {
+            byte[] bytes = in.readNBytes(length);
+            if (bytes.length != length) {
+                throw new CorruptBlobException("Blob ended before its seek table");
+            }
+            return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    private static ByteBuffer littleEndian(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Decompresses consecutive frames of a compressed range, one frame at a time.
+     */
+    private static class FrameInputStream extends InputStream {
+
+        private final Decompressor decompressor;
+        private final InputStream in;
+        private final SeekTable table;
+        private final int last;
+        private int frame;
+        private byte[] compressed = new byte[0];
+        private byte[] buffer = new byte[0];
+        private int position;
+        private int limit;
+
+        FrameInputStream(Decompressor decompressor, InputStream in, SeekTable table, int first, int last) {
+            this.decompressor = decompressor;
+            this.in = in;
+            this.table = table;
+            this.frame = first;
+            this.last = last;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (position == limit && !nextFrame()) {
+                return -1;
+            }
+            return buffer[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (position == limit && !nextFrame()) {
+                return -1;
+            }
+            int count = Math.min(len, limit - position);
+            System.arraycopy(buffer, position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = 0;
+            while (skipped < n && (position < limit || nextFrame())) {
+                int count = (int) Math.min(n - skipped, limit - position);
+                position += count;
+                skipped += count;
+            }
+            return skipped;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private boolean nextFrame() throws IOException {
+            if (frame > last) {
+                return false;
+            }
+            int compressedLength = (int) (table.compressedOffsets[frame + 1] - table.compressedOffsets[frame]);
+            int length = (int) (table.offsets[frame + 1] - table.offsets[frame]);
+            if (compressed.length < compressedLength) {
+                compressed = new byte[compressedLength];
+            }
+            if (buffer.length < length) {
+                buffer = new byte[length];
+            }
+
+            if (in.readNBytes(compressed, 0, compressedLength) != compressedLength) {
+                throw new CorruptBlobException("Compressed blob ended inside frame " + frame);
+            }
+            try {
+                if (decompressor.decompress(compressed, 0, compressedLength, buffer, 0, length) != length) {
+                    throw new CorruptBlobException("Frame " + frame + " does not match the seek table");
+                }
+            } catch (MalformedInputException ex) {
+                throw new CorruptBlobException("Frame " + frame + " is corrupt", ex);
+            }
+
+            position = 0;
+            limit = length;
+            frame++;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package ru.netology.backend.web;
+
+import org.springframework.util.StringUtils;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Parsed {@code Accept-Encoding} request header: the quality the client gives each
+ * content coding, with {@code *} standing for every coding it does not list.
+ */
+public final class AcceptEncoding {
+
+    private static final String ANY = "*";
+
+    private final Map<String, Double> qualities;
+
+    private AcceptEncoding(Map<String, Double> qualities) {
+        this.qualities = qualities;
+    }
+
+    public static AcceptEncoding parse(String header) {
+        Map<String, Double> qualities = new HashMap<>();
+        if (header != null) {
+            for (String element : StringUtils.tokenizeToStringArray(header, ",")) {
+                String[] parameters = StringUtils.tokenizeToStringArray(element, ";");
+                if (parameters.length > 0) {
+                    qualities.put(parameters[0].toLowerCase(Locale.ROOT), quality(parameters));
+                }
+            }
+        }
+        return new AcceptEncoding(qualities);
+    }
+
+    public double quality(String coding) {
+        Double quality = qualities.get(coding.toLowerCase(Locale.ROOT));
+        if (quality == null) {
+            quality = qualities.get(ANY);
+        }
+        return quality != null ? quality : 0;
+    }
+
+    public boolean accepts(String coding) {
+        return quality(coding) > 0;
+    }
+
+    private static double quality(String[] parameters) {
+        for (int i = 1; i < parameters.length; i++) {
+            String parameter = parameters[i].replace(" ", "");
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2));
+                } catch (NumberFormatException ex) {
+                    // A malformed weight does not make the coding acceptable
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+}
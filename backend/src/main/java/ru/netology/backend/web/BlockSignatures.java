@@ -0,0 +1,68 @@
+package ru.netology.backend.web;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Writes the block signatures of a file, which a client compares with its new
+ * content to send a delta instead of the whole file. The content is cut into blocks
+ * of {@code blockSize} bytes, the last one possibly shorter, and each block gets a
+ * {@link RollingChecksum} and the first 16 bytes of its SHA-256. All numbers are
+ * big-endian:
+ *
+ * <pre>
+ * "RSG1"  u32 block size  u64 content size
+ * per block: u32 rolling checksum, 16 bytes SHA-256 prefix
+ * </pre>
+ */
+public final class BlockSignatures {
+
+    public static final String MEDIA_TYPE = "application/vnd.cloud.signature";
+    public static final int MIN_BLOCK_SIZE = 512;
+    public static final int MAX_BLOCK_SIZE = 1024 * 1024;
+    public static final int STRONG_LENGTH = 16;
+
+    static final int MAGIC = 0x52534731;
+
+    private BlockSignatures() {
+    }
+
+    /**
+     * The block size for content of {@code size} bytes when the client does not ask for
+     * one: about the square root of the size, as rsync picks it, so that neither the
+     * signatures nor the literal data of a small edit grow large.
+     */
+    public static int defaultBlockSize(long size) {
+        long kilobytes = ((long) Math.sqrt(size) + 1023) / 1024;
+        return (int) Math.min(64, Math.max(2, kilobytes)) * 1024;
+    }
+
+    public static void write(InputStream content, int blockSize, long size, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(blockSize);
+        data.writeLong(size);
+
+        MessageDigest sha256 = sha256();
+        byte[] block = new byte[blockSize];
+        int length;
+        while ((length = content.readNBytes(block, 0, blockSize)) > 0) {
+            data.writeInt(RollingChecksum.of(block, 0, length));
+            sha256.update(block, 0, length);
+            data.write(sha256.digest(), 0, STRONG_LENGTH);
+        }
+        data.flush();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
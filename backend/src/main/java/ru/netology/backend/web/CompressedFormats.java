@@ -0,0 +1,125 @@
+package ru.netology.backend.web;
+
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+
+import java.util.List;
+
+/**
+ * Recognizes content that is already compressed, where another compression pass only
+ * costs CPU: by media type where the response declares one, and otherwise by the
+ * magic number at the start of the body or, for formats without one and encrypted
+ * data, by the byte entropy of its first kilobyte.
+ */
+public final class CompressedFormats {
+
+    /**
+     * Bytes of the body needed by {@link #looksCompressed}.
+     */
+    public static final int SNIFF_LENGTH = 1024;
+
+    // Text stays well below this, compressed or encrypted data comes close to 8 bits per byte
+    private static final double MAX_ENTROPY_BITS = 7.5;
+    private static final int MIN_ENTROPY_SAMPLE = 512;
+
+    private static final List<MediaType> COMPRESSED_MEDIA_TYPES = List.of(
+            MediaType.parseMediaType("image/*"),
+            MediaType.parseMediaType("video/*"),
+            MediaType.parseMediaType("audio/*"),
+            MediaType.parseMediaType("font/woff"),
+            MediaType.parseMediaType("font/woff2"),
+            MediaType.parseMediaType("application/zip"),
+            MediaType.parseMediaType("application/gzip"),
+            MediaType.parseMediaType("application/zstd"),
+            MediaType.parseMediaType("application/x-7z-compressed"),
+            MediaType.parseMediaType("application/x-bzip2"),
+            MediaType.parseMediaType("application/x-xz"),
+            MediaType.parseMediaType("application/vnd.rar"));
+
+    // Vector images are text
+    private static final MediaType SVG = MediaType.parseMediaType("image/svg+xml");
+
+    private static final byte[][] MAGIC_NUMBERS = {
+            {0x1F, (byte) 0x8B},                                   // gzip
+            {0x28, (byte) 0xB5, 0x2F, (byte) 0xFD},                // zstd
+            {0x04, 0x22, 0x4D, 0x18},                              // lz4 frame
+            {'P', 'K', 0x03, 0x04},                                // zip, docx, xlsx, jar
+            {'P', 'K', 0x05, 0x06},                                // empty zip
+            {'7', 'z', (byte) 0xBC, (byte) 0xAF, 0x27, 0x1C},      // 7z
+            {'B', 'Z', 'h'},                                       // bzip2
+            {(byte) 0xFD, '7', 'z', 'X', 'Z', 0x00},               // xz
+            {'R', 'a', 'r', '!', 0x1A, 0x07},                      // rar
+            {(byte) 0x89, 'P', 'N', 'G'},                          // png
+            {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF},               // jpeg
+            {'G', 'I', 'F', '8'},                                  // gif
+            {'I', 'D', '3'},                                       // mp3
+            {'O', 'g', 'g', 'S'},                                  // ogg
+            {'f', 'L', 'a', 'C'},                                  // flac
+            {0x1A, 0x45, (byte) 0xDF, (byte) 0xA3},                // mkv, webm
+            {'w', 'O', 'F', 'F'},                                  // woff
+            {'w', 'O', 'F', '2'},                                  // woff2
+    };
+
+    private CompressedFormats() {
+    }
+
+    public static boolean isCompressedMediaType(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        try {
+            MediaType mediaType = MediaType.parseMediaType(contentType);
+            if (SVG.includes(mediaType)) {
+                return false;
+            }
+            return COMPRESSED_MEDIA_TYPES.stream().anyMatch(type -> type.includes(mediaType));
+        } catch (InvalidMediaTypeException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Checks the first bytes of a body, up to {@link #SNIFF_LENGTH}.
+     */
+    public static boolean looksCompressed(byte[] head, int length) {
+        for (byte[] magic : MAGIC_NUMBERS) {
+            if (startsWith(head, length, 0, magic)) {
+                return true;
+            }
+        }
+        // webp, and the ISO media family (mp4, mov, heic) with its box type at offset 4
+        if (startsWith(head, length, 0, new byte[]{'R', 'I', 'F', 'F'})
+                && startsWith(head, length, 8, new byte[]{'W', 'E', 'B', 'P'})
+                || startsWith(head, length, 4, new byte[]{'f', 't', 'y', 'p'})) {
+            return true;
+        }
+        return length >= MIN_ENTROPY_SAMPLE && entropy(head, Math.min(length, SNIFF_LENGTH)) > MAX_ENTROPY_BITS;
+    }
+
+    private static double entropy(byte[] data, int length) {
+        int[] counts = new int[256];
+        for (int i = 0; i < length; i++) {
+            counts[data[i] & 0xFF]++;
+        }
+        double bits = 0;
+        for (int count : counts) {
+            if (count > 0) {
+                double p = (double) count / length;
+                bits -= p * Math.log(p) / Math.log(2);
+            }
+        }
+        return bits;
+    }
+
+    private static boolean startsWith(byte[] head, int length, int offset, byte[] magic) {
+        if (length < offset + magic.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if (head[offset + i] != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,70 @@
+package ru.netology.backend.web;
+
+import com.aayushatharva.brotli4j.Brotli4jLoader;
+import com.aayushatharva.brotli4j.encoder.BrotliOutputStream;
+import com.aayushatharva.brotli4j.encoder.Encoder;
+import io.airlift.compress.zstd.ZstdOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Content codings responses can be compressed with. Levels favour speed: responses
+ * are compressed on every request, not once like blobs at rest.
+ */
+public enum ContentCoding {
+    ZSTD("zstd"),
+    BROTLI("br"),
+    GZIP("gzip");
+
+    private static final int BROTLI_QUALITY = 4;
+    private static final int BUFFER_SIZE = 8192;
+
+    private final String token;
+
+    ContentCoding(String token) {
+        this.token = token;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public static ContentCoding fromToken(String token) {
+        for (ContentCoding coding : values()) {
+            if (coding.token.equalsIgnoreCase(token)) {
+                return coding;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported content coding: " + token);
+    }
+
+    /**
+     * Brotli is only available where its native library loads, which excludes musl
+     * based images such as Alpine.
+     */
+    public boolean isAvailable() {
+        if (this != BROTLI) {
+            return true;
+        }
+        try {
+            return Brotli4jLoader.isAvailable();
+        } catch (LinkageError ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Wraps {@code out} in an encoder; closing the encoder writes the end of the
+     * stream and closes {@code out}.
+     */
+    public OutputStream encode(OutputStream out) throws IOException {
+        return switch (this) {
+            case ZSTD -> new ZstdOutputStream(out);
+            case BROTLI -> new BrotliOutputStream(out, new Encoder.Parameters().setQuality(BROTLI_QUALITY));
+            // Sync flush lets streamed listings reach the client as they are flushed
+            case GZIP -> new GZIPOutputStream(out, BUFFER_SIZE, true);
+        };
+    }
+}
@@ -0,0 +1,99 @@
+package ru.netology.backend.web;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import ru.netology.backend.exception.BadRequestException;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * SHA-256 and CRC32C of a file's content as carried by the {@code Repr-Digest} and
+ * {@code Content-Digest} fields of RFC 9530: a dictionary of algorithm names and
+ * base64 byte sequences, such as {@code sha-256=:X48E9q...=:, crc32c=:yZRlqg==:}.
+ * The CRC32C is the big-endian bytes of the checksum. Either value may be missing;
+ * other algorithms are ignored.
+ */
+@Getter
+@AllArgsConstructor
+public class ContentDigest {
+
+    public static final String REPR_DIGEST = "Repr-Digest";
+    public static final String CONTENT_DIGEST = "Content-Digest";
+
+    private static final String SHA_256 = "sha-256";
+    private static final String CRC32C = "crc32c";
+
+    // Hex encoded
+    private final String sha256;
+    private final Long crc32c;
+
+    /**
+     * Parses a digest field; null if the field is absent or names neither algorithm.
+     */
+    public static ContentDigest parse(String field) {
+        if (field == null || field.isBlank()) {
+            return null;
+        }
+        String sha256 = null;
+        Long crc32c = null;
+        for (String member : field.split(",")) {
+            int equals = member.indexOf('=');
+            if (equals < 0) {
+                continue;
+            }
+            String algorithm = member.substring(0, equals).trim().toLowerCase(Locale.ROOT);
+            if (!algorithm.equals(SHA_256) && !algorithm.equals(CRC32C)) {
+                continue;
+            }
+            byte[] value = decode(algorithm, member.substring(equals + 1).trim());
+            if (algorithm.equals(SHA_256)) {
+                if (value.length != 32) {
+                    throw new BadRequestException("Invalid sha-256 digest");
+                }
+                sha256 = HexFormat.of().formatHex(value);
+            } else {
+                if (value.length != 4) {
+                    throw new BadRequestException("Invalid crc32c digest");
+                }
+                crc32c = Integer.toUnsignedLong(ByteBuffer.wrap(value).getInt());
+            }
+        }
+        return sha256 != null || crc32c != null ? new ContentDigest(sha256, crc32c) : null;
+    }
+
+    private static byte[] decode(String algorithm, String value) {
+        if (value.length() < 2 || value.charAt(0) != ':' || value.charAt(value.length() - 1) != ':') {
+            throw new BadRequestException("Invalid " + algorithm + " digest");
+        }
+        try {
+            return Base64.getDecoder().decode(value.substring(1, value.length() - 1));
+        } catch (IllegalArgumentException ex) {
+            throw new BadRequestException("Invalid " + algorithm + " digest");
+        }
+    }
+
+    /**
+     * Whether content with these checksums is what the digest describes.
+     */
+    public boolean matches(String sha256, long crc32c) {
+        return (this.sha256 == null || this.sha256.equalsIgnoreCase(sha256))
+                && (this.crc32c == null || this.crc32c == crc32c);
+    }
+
+    public String toFieldValue() {
+        List<String> members = new ArrayList<>(2);
+        if (sha256 != null) {
+            members.add(SHA_256 + "=:" + Base64.getEncoder().encodeToString(HexFormat.of().parseHex(sha256)) + ":");
+        }
+        if (crc32c != null) {
+            byte[] bytes = ByteBuffer.allocate(4).putInt((int) crc32c.longValue()).array();
+            members.add(CRC32C + "=:" + Base64.getEncoder().encodeToString(bytes) + ":");
+        }
+        return String.join(", ", members);
+    }
+}
@@ -0,0 +1,71 @@
+package ru.netology.backend.web;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import ru.netology.backend.security.AuthenticatedUser;
+import ru.netology.backend.service.QuotaService;
+
+/**
+ * Reactive counterpart of {@link UploadQuotaFilter}: refuses an upload by its
+ * Content-Length before the body is subscribed to. The usage of a user seen for the
+ * first time is read from the database, so the check runs on the blocking scheduler.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveUploadQuotaFilter implements WebFilter {
+
+    private final QuotaService quotaService;
+    private final ObjectMapper objectMapper;
+    private final Scheduler blockingScheduler;
+
+    public ReactiveUploadQuotaFilter(QuotaService quotaService, ObjectMapper objectMapper,
+                                     Scheduler blockingScheduler) {
+        this.quotaService = quotaService;
+        this.objectMapper = objectMapper;
+        this.blockingScheduler = blockingScheduler;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        long contentLength = request.getHeaders().getContentLength();
+        if (contentLength <= 0 || !UploadQuotaFilter.isUpload(
+                request.getMethod().name(), request.getHeaders().getFirst("Content-Type"))) {
+            return chain.filter(exchange);
+        }
+
+        return ReactiveSecurityContextHolder.getContext()
+                .mapNotNull(context -> context.getAuthentication() != null
+                        && context.getAuthentication().getPrincipal() instanceof AuthenticatedUser user ? user : null)
+                .flatMap(user -> Mono.fromCallable(() -> contentLength > quotaService.getAvailable(user.getUser()))
+                        .subscribeOn(blockingScheduler))
+                .defaultIfEmpty(false)
+                .flatMap(exceeded -> exceeded ? reject(exchange.getResponse()) : chain.filter(exchange));
+    }
+
+    private Mono<Void> reject(ServerHttpResponse response) {
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(UploadQuotaFilter.quotaExceeded());
+        } catch (JsonProcessingException ex) {
+            return Mono.error(ex);
+        }
+        response.setStatusCode(HttpStatus.PAYLOAD_TOO_LARGE);
+        response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        DataBuffer buffer = response.bufferFactory().wrap(body);
+        return response.writeWith(Mono.just(buffer));
+    }
+}
@@ -0,0 +1,355 @@
+package ru.netology.backend.web;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.List;
+
+/**
+ * Compresses response bodies with the content coding the client weighs highest in
+ * {@code Accept-Encoding}, ties going to the order of {@code app.response-compression.codings}.
+ *
+ * <p>The decision waits for the start of the body. Bodies are sent as they are when
+ * the status is not 200, when they already have a Content-Encoding (such as files
+ * stored as zstd) or a Content-Range, when they are smaller than the minimum size, and
+ * when their media type or leading bytes show compressed content. The negotiated
+ * coding is left in {@link #CODING_ATTRIBUTE}, so that writers bypassing the output
+ * stream, like sendfile, know when their body would be compressed.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty(name = "app.response-compression.enabled", havingValue = "true", matchIfMissing = true)
+public class ResponseCompressionFilter extends OncePerRequestFilter {
+
+    public static final String CODING_ATTRIBUTE = ResponseCompressionFilter.class.getName() + ".coding";
+
+    private static final int MAX_BUFFER_SIZE = 64 * 1024;
+
+    private final List<ContentCoding> codings;
+    private final int minSize;
+
+    public ResponseCompressionFilter(
+            @Value("${app.response-compression.codings:zstd,br,gzip}") List<String> codings,
+            @Value("${app.response-compression.min-size:1KB}") DataSize minSize) {
+        this.codings = codings.stream()
+                .map(ContentCoding::fromToken)
+                .filter(ContentCoding::isAvailable)
+                .toList();
+        this.minSize = (int) Math.min(minSize.toBytes(), MAX_BUFFER_SIZE);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        ContentCoding coding = negotiate(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+        if (coding == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        request.setAttribute(CODING_ATTRIBUTE, coding);
+        CompressingResponse compressingResponse = new CompressingResponse(response, coding);
+        chain.doFilter(request, compressingResponse);
+        compressingResponse.finish();
+    }
+
+    ContentCoding negotiate(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        AcceptEncoding accepted = AcceptEncoding.parse(acceptEncoding);
+        ContentCoding best = null;
+        double bestQuality = 0;
+        for (ContentCoding coding : codings) {
+            double quality = accepted.quality(coding.getToken());
+            if (quality > bestQuality) {
+                best = coding;
+                bestQuality = quality;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Holds back the Content-Length, the Repr-Digest and the start of the body until
+     * it is known whether the body gets compressed. Both fields describe the bytes as
+     * sent, so a compressed body goes out without them.
+     */
+    private final class CompressingResponse extends HttpServletResponseWrapper {
+
+        private final ContentCoding coding;
+        private long contentLength = -1;
+        private String reprDigest;
+        private Boolean compress;
+        private BodyOutputStream outputStream;
+        private PrintWriter writer;
+
+        CompressingResponse(HttpServletResponse response, ContentCoding coding) {
+            super(response);
+            this.coding = coding;
+        }
+
+        @Override
+        public void setContentLength(int len) {
+            setContentLengthLong(len);
+        }
+
+        @Override
+        public void setContentLengthLong(long len) {
+            if (compress == null) {
+                contentLength = len;
+            } else if (!compress) {
+                super.setContentLengthLong(len);
+            }
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                setContentLengthLong(value != null ? Long.parseLong(value) : -1);
+            } else if (ContentDigest.REPR_DIGEST.equalsIgnoreCase(name)) {
+                setReprDigest(value);
+            } else {
+                super.setHeader(name, value);
+            }
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                setContentLengthLong(Long.parseLong(value));
+            } else if (ContentDigest.REPR_DIGEST.equalsIgnoreCase(name)) {
+                setReprDigest(value);
+            } else {
+                super.addHeader(name, value);
+            }
+        }
+
+        private void setReprDigest(String value) {
+            if (compress == null) {
+                reprDigest = value;
+            } else if (!compress) {
+                super.setHeader(ContentDigest.REPR_DIGEST, value);
+            }
+        }
+
+        @Override
+        public void setIntHeader(String name, int value) {
+            setHeader(name, String.valueOf(value));
+        }
+
+        @Override
+        public void addIntHeader(String name, int value) {
+            addHeader(name, String.valueOf(value));
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            if (writer != null) {
+                throw new IllegalStateException("getWriter() has already been called for this response");
+            }
+            if (outputStream == null) {
+                outputStream = new BodyOutputStream();
+            }
+            return outputStream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                if (outputStream != null) {
+                    throw new IllegalStateException("getOutputStream() has already been called for this response");
+                }
+                outputStream = new BodyOutputStream();
+                writer = new PrintWriter(new OutputStreamWriter(outputStream, getCharacterEncoding()));
+            }
+            return writer;
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (outputStream != null) {
+                outputStream.flush();
+            }
+            // Committing the headers now would settle the decision before there is a body to look at
+            if (compress != null) {
+                super.flushBuffer();
+            }
+        }
+
+        @Override
+        public void resetBuffer() {
+            if (compress == null && outputStream != null) {
+                outputStream.count = 0;
+            }
+            super.resetBuffer();
+        }
+
+        @Override
+        public void reset() {
+            super.reset();
+            if (compress == null) {
+                contentLength = -1;
+                if (outputStream != null) {
+                    outputStream.count = 0;
+                }
+            }
+        }
+
+        @Override
+        public void sendError(int sc, String msg) throws IOException {
+            compress = false;
+            super.sendError(sc, msg);
+        }
+
+        @Override
+        public void sendError(int sc) throws IOException {
+            compress = false;
+            super.sendError(sc);
+        }
+
+        @Override
+        public void sendRedirect(String location) throws IOException {
+            compress = false;
+            super.sendRedirect(location);
+        }
+
+        void finish() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (outputStream != null) {
+                outputStream.close();
+            } else if (compress == null) {
+                decide(new byte[0], 0);
+            }
+        }
+
+        private void decide(byte[] head, int length) {
+            compress = length > 0
+                    && getStatus() == HttpServletResponse.SC_OK
+                    && !containsHeader(HttpHeaders.CONTENT_ENCODING)
+                    && !containsHeader(HttpHeaders.CONTENT_RANGE)
+                    && (contentLength < 0 || contentLength >= minSize)
+                    && !CompressedFormats.isCompressedMediaType(getContentType())
+                    && !CompressedFormats.looksCompressed(head, length);
+
+            if (compress) {
+                super.setHeader(HttpHeaders.CONTENT_ENCODING, coding.getToken());
+                if (!containsHeader(HttpHeaders.VARY)) {
+                    super.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+                }
+            } else {
+                if (contentLength >= 0) {
+                    super.setContentLengthLong(contentLength);
+                }
+                if (reprDigest != null) {
+                    super.setHeader(ContentDigest.REPR_DIGEST, reprDigest);
+                }
+            }
+        }
+
+        /**
+         * Buffers the start of the body, enough to sniff it and to leave bodies below
+         * the minimum size alone even when they come without a Content-Length.
+         */
+        private final class BodyOutputStream extends ServletOutputStream {
+
+            private final byte[] buffer = new byte[Math.max(minSize, CompressedFormats.SNIFF_LENGTH)];
+            private int count;
+            private OutputStream target;
+            private boolean closed;
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                if (closed) {
+                    throw new IOException("Response body is already closed");
+                }
+                if (target == null) {
+                    int buffered = Math.min(len, buffer.length - count);
+                    System.arraycopy(b, off, buffer, count, buffered);
+                    count += buffered;
+                    off += buffered;
+                    len -= buffered;
+                    if (count < buffer.length) {
+                        return;
+                    }
+                    open();
+                }
+                if (len > 0) {
+                    target.write(b, off, len);
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                // Until the decision a flush only means that more is coming
+                if (target != null) {
+                    target.flush();
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (closed) {
+                    return;
+                }
+                if (target == null) {
+                    // The whole body is in the buffer
+                    if (compress == null && contentLength < 0) {
+                        contentLength = count;
+                    }
+                    open();
+                }
+                closed = true;
+                // Ends the compressed stream and closes the response body
+                target.close();
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+                throw new UnsupportedOperationException("Compressed responses are written blocking");
+            }
+
+            private void open() throws IOException {
+                if (compress == null) {
+                    decide(buffer, count);
+                }
+                OutputStream out = CompressingResponse.super.getOutputStream();
+                target = compress ? coding.encode(out) : out;
+                if (count > 0) {
+                    target.write(buffer, 0, count);
+                }
+            }
+        }
+    }
+}
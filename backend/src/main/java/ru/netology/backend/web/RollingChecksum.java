@@ -0,0 +1,46 @@
+package ru.netology.backend.web;
+
+/**
+ * The weak checksum of rsync over a window of bytes: two 16-bit sums, one of the
+ * bytes and one of the running first sum. The window can be moved forward by one
+ * byte in constant time, which lets a client look up every offset of its new
+ * content in the block signatures of the old one.
+ */
+public class RollingChecksum {
+
+    private int a;
+    private int b;
+    private int length;
+
+    public void update(byte[] buffer, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            a += buffer[i] & 0xFF;
+            b += a;
+        }
+        this.length += length;
+    }
+
+    /**
+     * Moves the window forward by one byte: {@code out} leaves it, {@code in} enters.
+     */
+    public void roll(byte out, byte in) {
+        a += (in & 0xFF) - (out & 0xFF);
+        b += a - length * (out & 0xFF);
+    }
+
+    public void reset() {
+        a = 0;
+        b = 0;
+        length = 0;
+    }
+
+    public int getValue() {
+        return (a & 0xFFFF) | (b << 16);
+    }
+
+    public static int of(byte[] buffer, int offset, int length) {
+        RollingChecksum checksum = new RollingChecksum();
+        checksum.update(buffer, offset, length);
+        return checksum.getValue();
+    }
+}
@@ -0,0 +1,78 @@
+package ru.netology.backend.web;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import ru.netology.backend.model.dto.ErrorDto;
+import ru.netology.backend.security.AuthenticatedUser;
+import ru.netology.backend.service.QuotaService;
+
+import java.io.IOException;
+
+/**
+ * Refuses uploads whose Content-Length is more than the user has left of their quota
+ * before the body is read, so nothing of it is parsed or staged on disk. Runs after
+ * Spring Security has authenticated the request. Uploads without a Content-Length,
+ * and replacements that end up adding less than they send, are checked by the
+ * services once the size of the content is known.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class UploadQuotaFilter extends OncePerRequestFilter {
+
+    private final QuotaService quotaService;
+    private final ObjectMapper objectMapper;
+
+    public UploadQuotaFilter(QuotaService quotaService, ObjectMapper objectMapper) {
+        this.quotaService = quotaService;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !isUpload(request.getMethod(), request.getContentType());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long contentLength = request.getContentLengthLong();
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (contentLength > 0 && authentication != null
+                && authentication.getPrincipal() instanceof AuthenticatedUser authenticatedUser
+                && contentLength > quotaService.getAvailable(authenticatedUser.getUser())) {
+            response.setStatus(HttpStatus.PAYLOAD_TOO_LARGE.value());
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            objectMapper.writeValue(response.getOutputStream(), quotaExceeded());
+            return;
+        }
+        chain.doFilter(request, response);
+    }
+
+    static boolean isUpload(String method, String contentType) {
+        if (contentType == null || !("POST".equals(method) || "PUT".equals(method))) {
+            return false;
+        }
+        try {
+            MediaType mediaType = MediaType.parseMediaType(contentType);
+            return MediaType.MULTIPART_FORM_DATA.includes(mediaType)
+                    || MediaType.APPLICATION_OCTET_STREAM.includes(mediaType);
+        } catch (InvalidMediaTypeException ex) {
+            return false;
+        }
+    }
+
+    static ErrorDto quotaExceeded() {
+        return new ErrorDto("Storage quota exceeded", HttpStatus.PAYLOAD_TOO_LARGE.value());
+    }
+}
@@ -0,0 +1,322 @@
+package ru.netology.backend.web;
+
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes a ZIP archive to a stream one entry at a time, without knowing the CRC or
+ * the compressed size of an entry before its content has gone out. Every entry is
+ * followed by a data descriptor carrying them, and the central directory at the end
+ * repeats them, which is where unzip tools and {@link java.util.zip.ZipFile} read
+ * them from. Only {@link java.util.zip.ZipInputStream} and other readers that never
+ * look at the central directory cannot extract stored entries written this way.
+ *
+ * <p>Entries, offsets and entry counts too large for the classic format switch to
+ * ZIP64, so archives and files beyond 4GB work. Only the central directory records,
+ * a few dozen bytes per entry, are kept in memory.
+ */
+public class ZipStreamWriter implements Closeable {
+
+    public enum Method {
+        STORE,
+        DEFLATE;
+
+        public static Method fromParameter(String value) {
+            return valueOf(value.toUpperCase(Locale.ROOT));
+        }
+    }
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+
+    private static final int VERSION = 20;
+    private static final int VERSION_ZIP64 = 45;
+    // Sizes follow the content in a data descriptor; names are UTF-8
+    private static final int FLAGS = 0x0008 | 0x0800;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+
+    private static final long MAX_32 = 0xFFFFFFFFL;
+    private static final int MAX_16 = 0xFFFF;
+    // Leaves room for the few bytes deflate adds to content that does not shrink
+    private static final long ZIP64_ENTRY_SIZE = 0xF0000000L;
+    private static final long MIN_DOS_TIME = LocalDateTime.of(1980, 1, 1, 0, 0)
+            .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+
+    private final CountingOutputStream out;
+    private final Method method;
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    private final byte[] buffer = new byte[64 * 1024];
+    private final List<CentralRecord> records = new ArrayList<>();
+    private boolean finished;
+
+    public ZipStreamWriter(OutputStream out, Method method, int deflateLevel) {
+        this.out = new CountingOutputStream(out);
+        this.method = method;
+        this.deflater = method == Method.DEFLATE ? new Deflater(deflateLevel, true) : null;
+    }
+
+    /**
+     * Writes an entry with the whole of {@code content}. {@code size} only decides
+     * whether the entry needs ZIP64; the sizes recorded are the ones actually read.
+     * Content that already looks compressed is stored even in deflate mode.
+     */
+    public void putEntry(String name, long size, long lastModified, InputStream content) throws IOException {
+        if (finished) {
+            throw new IllegalStateException("Archive already finished");
+        }
+        byte[] head = content.readNBytes(CompressedFormats.SNIFF_LENGTH);
+        boolean deflate = method == Method.DEFLATE && !CompressedFormats.looksCompressed(head, head.length);
+
+        byte[] nameBytes = entryName(name).getBytes(StandardCharsets.UTF_8);
+        CentralRecord record = new CentralRecord(nameBytes, deflate ? Deflater.DEFLATED : 0,
+                dosTime(lastModified), out.count, size >= ZIP64_ENTRY_SIZE);
+        writeLocalHeader(record);
+        if (records.isEmpty()) {
+            // Gets the response going before the first entry is read in full
+            out.flush();
+        }
+
+        crc.reset();
+        if (deflate) {
+            deflater.reset();
+            DeflaterOutputStream deflated = new DeflaterOutputStream(out, deflater, buffer.length);
+            copy(head, content, deflated);
+            deflated.finish();
+            record.compressedSize = deflater.getBytesWritten();
+            record.size = deflater.getBytesRead();
+        } else {
+            long start = out.count;
+            record.size = copy(head, content, out);
+            record.compressedSize = out.count - start;
+        }
+        record.crc = crc.getValue();
+        if (!record.zip64 && (record.size > MAX_32 || record.compressedSize > MAX_32)) {
+            throw new IOException("Entry " + name + " is larger than its declared size of " + size + " bytes");
+        }
+        writeDataDescriptor(record);
+        records.add(record);
+    }
+
+    /**
+     * Writes the central directory. The archive is complete once this returns.
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+
+        long directoryOffset = out.count;
+        for (CentralRecord record : records) {
+            writeCentralHeader(record);
+        }
+        long directorySize = out.count - directoryOffset;
+
+        boolean zip64 = records.size() >= MAX_16 || directoryOffset >= MAX_32 || directorySize >= MAX_32;
+        if (zip64) {
+            long zip64EndOffset = out.count;
+            writeInt(ZIP64_END_SIGNATURE);
+            writeLong(44);
+            writeShort(VERSION_ZIP64);
+            writeShort(VERSION_ZIP64);
+            writeInt(0);
+            writeInt(0);
+            writeLong(records.size());
+            writeLong(records.size());
+            writeLong(directorySize);
+            writeLong(directoryOffset);
+
+            writeInt(ZIP64_LOCATOR_SIGNATURE);
+            writeInt(0);
+            writeLong(zip64EndOffset);
+            writeInt(1);
+        }
+
+        writeInt(END_SIGNATURE);
+        writeShort(0);
+        writeShort(0);
+        writeShort(Math.min(records.size(), MAX_16));
+        writeShort(Math.min(records.size(), MAX_16));
+        writeInt(Math.min(directorySize, MAX_32));
+        writeInt(Math.min(directoryOffset, MAX_32));
+        writeShort(0);
+        out.flush();
+    }
+
+    /**
+     * Releases the deflater. Does not close the underlying stream.
+     */
+    @Override
+    public void close() {
+        if (deflater != null) {
+            deflater.end();
+        }
+    }
+
+    private long copy(byte[] head, InputStream content, OutputStream target) throws IOException {
+        crc.update(head);
+        target.write(head);
+        long copied = head.length;
+        int read;
+        while ((read = content.read(buffer)) != -1) {
+            crc.update(buffer, 0, read);
+            target.write(buffer, 0, read);
+            copied += read;
+        }
+        return copied;
+    }
+
+    private void writeLocalHeader(CentralRecord record) throws IOException {
+        writeInt(LOCAL_HEADER_SIGNATURE);
+        writeShort(record.zip64 ? VERSION_ZIP64 : VERSION);
+        writeShort(FLAGS);
+        writeShort(record.method);
+        writeInt(record.dosTime);
+        // CRC and sizes are in the data descriptor
+        writeInt(0);
+        writeInt(record.zip64 ? MAX_32 : 0);
+        writeInt(record.zip64 ? MAX_32 : 0);
+        writeShort(record.name.length);
+        writeShort(record.zip64 ? 20 : 0);
+        out.write(record.name);
+        if (record.zip64) {
+            // Tells readers that the data descriptor has 8-byte sizes
+            writeShort(ZIP64_EXTRA_ID);
+            writeShort(16);
+            writeLong(0);
+            writeLong(0);
+        }
+    }
+
+    private void writeDataDescriptor(CentralRecord record) throws IOException {
+        writeInt(DATA_DESCRIPTOR_SIGNATURE);
+        writeInt(record.crc);
+        if (record.zip64) {
+            writeLong(record.compressedSize);
+            writeLong(record.size);
+        } else {
+            writeInt(record.compressedSize);
+            writeInt(record.size);
+        }
+    }
+
+    private void writeCentralHeader(CentralRecord record) throws IOException {
+        boolean zip64 = record.zip64 || record.offset >= MAX_32;
+        writeInt(CENTRAL_HEADER_SIGNATURE);
+        writeShort(zip64 ? VERSION_ZIP64 : VERSION);
+        writeShort(zip64 ? VERSION_ZIP64 : VERSION);
+        writeShort(FLAGS);
+        writeShort(record.method);
+        writeInt(record.dosTime);
+        writeInt(record.crc);
+        writeInt(zip64 ? MAX_32 : record.compressedSize);
+        writeInt(zip64 ? MAX_32 : record.size);
+        writeShort(record.name.length);
+        writeShort(zip64 ? 28 : 0);
+        writeShort(0);
+        writeShort(0);
+        writeShort(0);
+        writeInt(0);
+        writeInt(zip64 ? MAX_32 : record.offset);
+        out.write(record.name);
+        if (zip64) {
+            writeShort(ZIP64_EXTRA_ID);
+            writeShort(24);
+            writeLong(record.size);
+            writeLong(record.compressedSize);
+            writeLong(record.offset);
+        }
+    }
+
+    private static String entryName(String filename) {
+        // Entry names are relative
+        int start = 0;
+        while (start < filename.length() && filename.charAt(start) == '/') {
+            start++;
+        }
+        return filename.substring(start);
+    }
+
+    private static long dosTime(long epochMillis) {
+        LocalDateTime time = LocalDateTime.ofInstant(
+                Instant.ofEpochMilli(Math.max(epochMillis, MIN_DOS_TIME)), ZoneId.systemDefault());
+        return (long) (time.getYear() - 1980) << 25
+                | (long) time.getMonthValue() << 21
+                | (long) time.getDayOfMonth() << 16
+                | (long) time.getHour() << 11
+                | (long) time.getMinute() << 5
+                | time.getSecond() >> 1;
+    }
+
+    private void writeShort(int value) throws IOException {
+        out.write(value & 0xFF);
+        out.write((value >>> 8) & 0xFF);
+    }
+
+    private void writeInt(long value) throws IOException {
+        writeShort((int) (value & 0xFFFF));
+        writeShort((int) ((value >>> 16) & 0xFFFF));
+    }
+
+    private void writeLong(long value) throws IOException {
+        writeInt(value & MAX_32);
+        writeInt(value >>> 32);
+    }
+
+    private static final class CentralRecord {
+        private final byte[] name;
+        private final int method;
+        private final long dosTime;
+        private final long offset;
+        private final boolean zip64;
+        private long crc;
+        private long size;
+        private long compressedSize;
+
+        CentralRecord(byte[] name, int method, long dosTime, long offset, boolean zip64) {
+            this.name = name;
+            this.method = method;
+            this.dosTime = dosTime;
+            this.offset = offset;
+            this.zip64 = zip64;
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
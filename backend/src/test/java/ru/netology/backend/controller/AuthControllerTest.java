@@ -1,6 +1,11 @@
 package ru.netology.backend.controller;
 
+import ru.netology.backend.config.SecurityConfig;
 import ru.netology.backend.model.dto.LoginDto;
+import ru.netology.backend.model.entity.UserEntity;
+import ru.netology.backend.security.ResolvedToken;
+import ru.netology.backend.security.TokenService;
+import ru.netology.backend.service.QuotaService;
 import ru.netology.backend.service.UserService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Test;
@@ -8,11 +13,15 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.time.LocalDateTime;
+import java.util.Optional;
+
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
@@ -20,6 +29,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 
 @ExtendWith(SpringExtension.class)
 @WebMvcTest(AuthController.class)
+@Import(SecurityConfig.class)
 class AuthControllerTest {
 
     @Autowired
@@ -31,6 +41,12 @@ class AuthControllerTest {
     @MockBean
     private UserService userService;
 
+    @MockBean
+    private TokenService tokenService;
+
+    @MockBean
+    private QuotaService quotaService;
+
     @Test
     void loginShouldReturnTokenWhenCredentialsAreValid() throws Exception {
         // Given
@@ -66,7 +82,10 @@ class AuthControllerTest {
     void logoutShouldDeactivateToken() throws Exception {
         // Given
         String token = "valid-token";
+        UserEntity user = new UserEntity(1L, "user", "password");
 
+        when(tokenService.findByToken(token))
+                .thenReturn(Optional.of(new ResolvedToken(user, LocalDateTime.now().plusHours(1))));
         doNothing().when(userService).logout(token);
 
         // When & Then
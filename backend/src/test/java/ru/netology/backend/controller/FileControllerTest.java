@@ -0,0 +1,204 @@
+package ru.netology.backend.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.util.unit.DataSize;
+import ru.netology.backend.exception.CustomExceptionHandler;
+import ru.netology.backend.model.dto.BatchResultDto;
+import ru.netology.backend.model.dto.FileDto;
+import ru.netology.backend.model.entity.FileEntity;
+import ru.netology.backend.repository.BlobRepository;
+import ru.netology.backend.service.BlobCompressor;
+import ru.netology.backend.service.BlobService;
+import ru.netology.backend.service.DeltaSyncService;
+import ru.netology.backend.service.FileBatchService;
+import ru.netology.backend.service.FileStorageService;
+import ru.netology.backend.service.FileVersionService;
+import ru.netology.backend.service.QuotaService;
+import ru.netology.backend.service.StagedFile;
+import ru.netology.backend.storage.BlobStore;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+class FileControllerTest {
+
+    private static final String CONTENT = "0123456789abcdefghij";
+
+    @TempDir
+    Path uploadDir;
+
+    private FileStorageService fileStorageService;
+    private FileBatchService fileBatchService;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        fileStorageService = mock(FileStorageService.class);
+        fileBatchService = mock(FileBatchService.class);
+        BlobService blobService = new BlobService(uploadDir.toString(), mock(BlobRepository.class),
+                mock(BlobStore.class), mock(BlobCompressor.class), new SimpleMeterRegistry(), ObservationRegistry.NOOP);
+        FileController controller = new FileController(fileStorageService, fileBatchService,
+                mock(DeltaSyncService.class), mock(FileVersionService.class), mock(QuotaService.class), blobService,
+                mock(FileDownloadWriter.class), new ArchiveWriter(1), DataSize.ofBytes(CONTENT.length()),
+                new ObjectMapper());
+
+        mockMvc = MockMvcBuilders.standaloneSetup(controller)
+                .setControllerAdvice(new CustomExceptionHandler())
+                .build();
+    }
+
+    @Test
+    void uploadStreamShouldStageBodyBeforeStoringIt() throws Exception {
+        // Given
+        byte[] bytes = CONTENT.getBytes(StandardCharsets.UTF_8);
+        when(fileStorageService.storeStagedFile(any(StagedFile.class), isNull()))
+                .thenAnswer(invocation -> {
+                    StagedFile staged = invocation.getArgument(0);
+                    assertEquals(CONTENT, Files.readString(staged.getPath()));
+                    return new FileEntity();
+                });
+
+        // When
+        mockMvc.perform(post("/file")
+                        .param("filename", "test.txt")
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .content(bytes))
+                .andExpect(status().isOk());
+
+        // Then
+        ArgumentCaptor<StagedFile> staged = ArgumentCaptor.forClass(StagedFile.class);
+        verify(fileStorageService).storeStagedFile(staged.capture(), isNull());
+        assertEquals("test.txt", staged.getValue().getFilename());
+        assertEquals(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes)),
+                staged.getValue().getSha256());
+        assertEquals(bytes.length, staged.getValue().getSize());
+        assertFalse(Files.exists(staged.getValue().getPath()));
+    }
+
+    @Test
+    void multipartUploadShouldStageFileBeforeStoringIt() throws Exception {
+        // Given
+        Path stagingFile = Files.writeString(uploadDir.resolve("staged"), CONTENT);
+        StagedFile staged = new StagedFile("test.txt", stagingFile, "sha256", 0, CONTENT.length());
+        when(fileStorageService.stageFile(any(), eq("test.txt"))).thenReturn(staged);
+
+        // When
+        mockMvc.perform(multipart("/file")
+                        .file(new MockMultipartFile("file", "a.txt", "text/plain", CONTENT.getBytes(StandardCharsets.UTF_8)))
+                        .param("filename", "test.txt"))
+                .andExpect(status().isOk());
+
+        // Then
+        InOrder inOrder = inOrder(fileStorageService);
+        inOrder.verify(fileStorageService).stageFile(any(), eq("test.txt"));
+        inOrder.verify(fileStorageService).storeStagedFile(staged, null);
+        assertFalse(Files.exists(stagingFile));
+    }
+
+    @Test
+    void uploadStreamShouldRejectContentLengthAboveTheLimit() throws Exception {
+        // When
+        mockMvc.perform(post("/file")
+                        .param("filename", "test.txt")
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .content((CONTENT + "!").getBytes(StandardCharsets.UTF_8)))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("File size exceeds the maximum allowed size"));
+
+        // Then
+        verifyNoInteractions(fileStorageService);
+        try (var staged = Files.list(uploadDir.resolve(".staging"))) {
+            assertEquals(0, staged.count());
+        }
+    }
+
+    @Test
+    void uploadStreamShouldNotReadContentThatIsAlreadyStored() throws Exception {
+        // Given
+        String sha256 = HexFormat.of().formatHex(new byte[32]);
+        when(fileStorageService.storeExistingFile(sha256, "test.txt")).thenReturn(Optional.of(new FileEntity()));
+
+        // When
+        mockMvc.perform(post("/file")
+                        .param("filename", "test.txt")
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .header("Repr-Digest", "sha-256=:" + Base64.getEncoder().encodeToString(new byte[32]) + ":")
+                        .content(CONTENT.getBytes(StandardCharsets.UTF_8)))
+                .andExpect(status().isOk());
+
+        // Then
+        verify(fileStorageService, never()).storeStagedFile(any(), any());
+    }
+
+    @Test
+    void batchUploadShouldStageFilesBeforeStoringThem() throws Exception {
+        // Given
+        Path stagingFile = Files.writeString(uploadDir.resolve("staged"), CONTENT);
+        List<StagedFile> stagedFiles = List.of(new StagedFile("a.txt", stagingFile, "sha256", 0, CONTENT.length()));
+        when(fileBatchService.stageFiles(anyList())).thenReturn(stagedFiles);
+        when(fileBatchService.storeStagedFiles(stagedFiles)).thenReturn(new BatchResultDto(1, 0, List.of()));
+
+        // When
+        mockMvc.perform(multipart("/batch/upload")
+                        .file(new MockMultipartFile("file", "a.txt", "text/plain", CONTENT.getBytes(StandardCharsets.UTF_8))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.succeeded").value(1));
+
+        // Then
+        InOrder inOrder = inOrder(fileBatchService);
+        inOrder.verify(fileBatchService).stageFiles(anyList());
+        inOrder.verify(fileBatchService).storeStagedFiles(stagedFiles);
+        assertFalse(Files.exists(stagingFile));
+    }
+
+    @Test
+    void ndjsonListShouldEndEveryRecordWithNewline() throws Exception {
+        // Given
+        doAnswer(invocation -> {
+            Consumer<FileDto> consumer = invocation.getArgument(2);
+            consumer.accept(new FileDto("a.txt", 1L));
+            consumer.accept(new FileDto("b.txt", 2L));
+            return null;
+        }).when(fileStorageService).streamFilesList(isNull(), isNull(), any());
+
+        // When / Then
+        mockMvc.perform(get("/list").accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(status().isOk())
+                .andExpect(content().string(
+                        "{\"filename\":\"a.txt\",\"size\":1}\n{\"filename\":\"b.txt\",\"size\":2}\n"));
+    }
+
+    @Test
+    void ndjsonListShouldBeEmptyWhenThereAreNoFiles() throws Exception {
+        // When / Then
+        mockMvc.perform(get("/list").accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(status().isOk())
+                .andExpect(content().string(""));
+    }
+}
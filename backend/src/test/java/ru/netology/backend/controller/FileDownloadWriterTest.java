@@ -0,0 +1,201 @@
+package ru.netology.backend.controller;
+
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.unit.DataSize;
+import ru.netology.backend.service.StoredFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileDownloadWriterTest {
+
+    private static final String CONTENT = "0123456789abcdefghij";
+
+    private FileDownloadWriter writer;
+    private StoredFile storedFile;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        writer = new FileDownloadWriter(DataSize.ofBytes(4), ObservationRegistry.NOOP);
+
+        Path path = Files.createTempFile("download", ".txt");
+        Files.writeString(path, CONTENT);
+        storedFile = new StoredFile("test.txt", path, CONTENT.length(),
+                Files.getLastModifiedTime(path).toMillis(), "\"etag-1\"");
+    }
+
+    @Test
+    void shouldWriteWholeFile() throws IOException {
+        // Given
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/file");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // When
+        writer.write(storedFile, request, response);
+
+        // Then
+        assertEquals(200, response.getStatus());
+        assertEquals(CONTENT, response.getContentAsString());
+        assertEquals(CONTENT.length(), response.getContentLengthLong());
+        assertEquals("\"etag-1\"", response.getHeader("ETag"));
+        assertEquals("attachment; filename=\"test.txt\"", response.getHeader("Content-Disposition"));
+    }
+
+    @Test
+    void shouldWriteSingleRange() throws IOException {
+        // Given
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/file");
+        request.addHeader("Range", "bytes=5-9");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // When
+        writer.write(storedFile, request, response);
+
+        // Then
+        assertEquals(206, response.getStatus());
+        assertEquals("56789", response.getContentAsString());
+        assertEquals("bytes 5-9/20", response.getHeader("Content-Range"));
+    }
+
+    @Test
+    void shouldWriteMultipleRanges() throws IOException {
+        // Given
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/file");
+        request.addHeader("Range", "bytes=0-1,-3");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // When
+        writer.write(storedFile, request, response);
+
+        // Then
+        assertEquals(206, response.getStatus());
+        assertTrue(response.getContentType().startsWith("multipart/byteranges; boundary="));
+        String body = response.getContentAsString();
+        assertTrue(body.contains("Content-Range: bytes 0-1/20\r\n\r\n01"));
+        assertTrue(body.contains("Content-Range: bytes 17-19/20\r\n\r\nhij"));
+    }
+
+    @Test
+    void shouldRejectUnsatisfiableRange() throws IOException {
+        // Given
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/file");
+        request.addHeader("Range", "bytes=100-200");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // When
+        writer.write(storedFile, request, response);
+
+        // Then
+        assertEquals(416, response.getStatus());
+        assertEquals("bytes */20", response.getHeader("Content-Range"));
+    }
+
+    @Test
+    void shouldIgnoreRangeWhenIfRangeDoesNotMatch() throws IOException {
+        // Given
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/file");
+        request.addHeader("Range", "bytes=5-9");
+        request.addHeader("If-Range", "\"other\"");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // When
+        writer.write(storedFile, request, response);
+
+        // Then
+        assertEquals(200, response.getStatus());
+        assertEquals(CONTENT, response.getContentAsString());
+    }
+
+    @Test
+    void shouldReturnNotModifiedForMatchingEtag() throws IOException {
+        // Given
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/file");
+        request.addHeader("If-None-Match", "\"etag-1\"");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // When
+        writer.write(storedFile, request, response);
+
+        // Then
+        assertEquals(304, response.getStatus());
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    @Test
+    void shouldHandOverToSendfileWhenSupported() throws IOException {
+        // Given
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/file");
+        request.setAttribute(FileDownloadWriter.SENDFILE_SUPPORT_ATTRIBUTE, Boolean.TRUE);
+        request.addHeader("Range", "bytes=10-");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // When
+        writer.write(storedFile, request, response);
+
+        // Then
+        assertEquals(206, response.getStatus());
+        assertEquals(storedFile.getPath().toAbsolutePath().toString(),
+                request.getAttribute(FileDownloadWriter.SENDFILE_FILENAME_ATTRIBUTE));
+        assertEquals(10L, request.getAttribute(FileDownloadWriter.SENDFILE_START_ATTRIBUTE));
+        assertEquals(20L, request.getAttribute(FileDownloadWriter.SENDFILE_END_ATTRIBUTE));
+        assertEquals(0, response.getContentAsString(StandardCharsets.UTF_8).length());
+    }
+
+    @Test
+    void shouldStreamRangeOfRemoteContent() throws IOException {
+        // Given
+        StoredFile remoteFile = new StoredFile("test.txt", null, CONTENT.length(), storedFile.getLastModified(),
+                "\"etag-1\"", (offset, length) -> new ByteArrayInputStream(
+                        CONTENT.substring((int) offset, (int) (offset + length)).getBytes(StandardCharsets.UTF_8)));
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/file");
+        request.setAttribute(FileDownloadWriter.SENDFILE_SUPPORT_ATTRIBUTE, Boolean.TRUE);
+        request.addHeader("Range", "bytes=10-");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // When
+        writer.write(remoteFile, request, response);
+
+        // Then
+        assertEquals(206, response.getStatus());
+        assertNull(request.getAttribute(FileDownloadWriter.SENDFILE_FILENAME_ATTRIBUTE));
+        assertEquals("abcdefghij", response.getContentAsString());
+    }
+
+    @Test
+    void shouldSendEncodedContentOnlyToClientsAcceptingIt() throws IOException {
+        // Given
+        StoredFile encoded = new StoredFile("test.txt", storedFile.getPath(), CONTENT.length(),
+                storedFile.getLastModified(), "\"etag-1-zstd\"", null, "zstd", null);
+        StoredFile compressedFile = new StoredFile("test.txt", null, CONTENT.length(), storedFile.getLastModified(),
+                "\"etag-1\"", (offset, length) -> new ByteArrayInputStream(
+                        CONTENT.substring((int) offset, (int) (offset + length)).getBytes(StandardCharsets.UTF_8)),
+                null, encoded);
+        MockHttpServletRequest accepting = new MockHttpServletRequest("GET", "/file");
+        accepting.addHeader("Accept-Encoding", "gzip, zstd");
+        MockHttpServletRequest other = new MockHttpServletRequest("GET", "/file");
+        other.addHeader("Accept-Encoding", "gzip, zstd;q=0");
+        MockHttpServletResponse encodedResponse = new MockHttpServletResponse();
+        MockHttpServletResponse plainResponse = new MockHttpServletResponse();
+
+        // When
+        writer.write(compressedFile, accepting, encodedResponse);
+        writer.write(compressedFile, other, plainResponse);
+
+        // Then
+        assertEquals("zstd", encodedResponse.getHeader("Content-Encoding"));
+        assertEquals("\"etag-1-zstd\"", encodedResponse.getHeader("ETag"));
+        assertEquals("Accept-Encoding", encodedResponse.getHeader("Vary"));
+        assertNull(plainResponse.getHeader("Content-Encoding"));
+        assertEquals("\"etag-1\"", plainResponse.getHeader("ETag"));
+        assertEquals(CONTENT, plainResponse.getContentAsString());
+    }
+}
@@ -0,0 +1,157 @@
+package ru.netology.backend.controller;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.MediaType;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.util.unit.DataSize;
+import reactor.core.scheduler.Schedulers;
+import ru.netology.backend.model.dto.FileDto;
+import ru.netology.backend.model.entity.FileEntity;
+import ru.netology.backend.service.BlobService;
+import ru.netology.backend.service.DeltaSyncService;
+import ru.netology.backend.service.FileBatchService;
+import ru.netology.backend.service.FilePage;
+import ru.netology.backend.service.FileStorageService;
+import ru.netology.backend.service.FileVersionService;
+import ru.netology.backend.service.QuotaService;
+import ru.netology.backend.service.StagedFile;
+import ru.netology.backend.service.StoredFile;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.CRC32C;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ReactiveFileControllerTest {
+
+    private static final String CONTENT = "0123456789abcdefghij";
+
+    @TempDir
+    Path stagingDir;
+
+    private FileStorageService fileStorageService;
+    private BlobService blobService;
+    private WebTestClient client;
+
+    @BeforeEach
+    void setUp() {
+        fileStorageService = mock(FileStorageService.class);
+        blobService = mock(BlobService.class);
+        ReactiveFileController controller = new ReactiveFileController(fileStorageService,
+                mock(FileBatchService.class), mock(DeltaSyncService.class), mock(FileVersionService.class), mock(QuotaService.class), blobService, new ArchiveWriter(1),
+                Schedulers.boundedElastic(), DataSize.ofMegabytes(1), 2, DataSize.ofBytes(4));
+
+        client = WebTestClient.bindToController(controller)
+                .webFilter((exchange, chain) -> chain.filter(exchange)
+                        .contextWrite(ReactiveSecurityContextHolder.withAuthentication(
+                                new TestingAuthenticationToken("user", null, "ROLE_USER"))))
+                .build();
+    }
+
+    @Test
+    void uploadShouldStageContentWithItsHash() throws Exception {
+        // Given
+        Path stagingFile = stagingDir.resolve("staged");
+        when(blobService.newStagingFile()).thenReturn(stagingFile);
+        when(fileStorageService.storeStagedFile(any(StagedFile.class), isNull()))
+                .thenAnswer(invocation -> {
+                    assertEquals(CONTENT, Files.readString(stagingFile));
+                    return null;
+                });
+
+        // When
+        client.post().uri("/file?filename=test.txt")
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .bodyValue(CONTENT.getBytes(StandardCharsets.UTF_8))
+                .exchange()
+                .expectStatus().isOk();
+
+        // Then
+        byte[] bytes = CONTENT.getBytes(StandardCharsets.UTF_8);
+        CRC32C crc = new CRC32C();
+        crc.update(bytes);
+        ArgumentCaptor<StagedFile> staged = ArgumentCaptor.forClass(StagedFile.class);
+        verify(fileStorageService).storeStagedFile(staged.capture(), isNull());
+        assertEquals(stagingFile, staged.getValue().getPath());
+        assertEquals("test.txt", staged.getValue().getFilename());
+        assertEquals(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes)),
+                staged.getValue().getSha256());
+        assertEquals(crc.getValue(), staged.getValue().getCrc32c());
+        assertEquals(bytes.length, staged.getValue().getSize());
+    }
+
+    @Test
+    void uploadShouldNotReadContentThatIsAlreadyStored() {
+        // Given
+        String sha256 = HexFormat.of().formatHex(new byte[32]);
+        when(fileStorageService.storeExistingFile(sha256, "test.txt")).thenReturn(Optional.of(new FileEntity()));
+
+        // When
+        client.post().uri("/file?filename=test.txt")
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .header("Repr-Digest", "sha-256=:" + Base64.getEncoder().encodeToString(new byte[32]) + ":")
+                .bodyValue(CONTENT.getBytes(StandardCharsets.UTF_8))
+                .exchange()
+                .expectStatus().isOk();
+
+        // Then
+        verify(blobService, never()).newStagingFile();
+        verify(fileStorageService, never()).storeStagedFile(any(), any());
+    }
+
+    @Test
+    void downloadShouldServeSingleRangeOfRemoteContent() {
+        // Given
+        StoredFile remoteFile = new StoredFile("test.txt", null, CONTENT.length(), 0, "\"etag-1\"",
+                (offset, length) -> new ByteArrayInputStream(
+                        CONTENT.substring((int) offset, (int) (offset + length)).getBytes(StandardCharsets.UTF_8)));
+        when(fileStorageService.loadStoredFile("test.txt", null)).thenReturn(remoteFile);
+
+        // When & Then
+        client.get().uri("/file?filename=test.txt")
+                .header("Range", "bytes=5-14")
+                .exchange()
+                .expectStatus().isEqualTo(206)
+                .expectHeader().valueEquals("Content-Range", "bytes 5-14/20")
+                .expectHeader().valueEquals("ETag", "\"etag-1\"")
+                .expectBody(String.class).isEqualTo("56789abcde");
+    }
+
+    @Test
+    void streamedListShouldWalkAllPages() {
+        // Given
+        when(fileStorageService.getFilesList(2, null, null, null)).thenReturn(new FilePage(
+                List.of(new FileDto("a.txt", 1L), new FileDto("b.txt", 2L)), "next"));
+        when(fileStorageService.getFilesList(2, null, null, "next")).thenReturn(new FilePage(
+                List.of(new FileDto("c.txt", 3L)), null));
+
+        // When
+        List<FileDto> files = client.get().uri("/list")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(FileDto.class)
+                .getResponseBody()
+                .collectList()
+                .block();
+
+        // Then
+        assertNotNull(files);
+        assertEquals(List.of("a.txt", "b.txt", "c.txt"), files.stream().map(FileDto::getFilename).toList());
+    }
+}
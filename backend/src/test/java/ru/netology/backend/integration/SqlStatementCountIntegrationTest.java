@@ -0,0 +1,145 @@
+package ru.netology.backend.integration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import ru.netology.backend.model.dto.LoginDto;
+import ru.netology.backend.model.dto.LoginResponseDto;
+import ru.netology.backend.model.dto.RenameFileDto;
+import ru.netology.backend.model.entity.UserEntity;
+import ru.netology.backend.repository.TokenRepository;
+import ru.netology.backend.repository.UserRepository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Counts the SQL statements issued by each file endpoint and checks that none of
+ * them goes back to the users or tokens table: the user resolved from the cached
+ * token is reused. A change in a count is either a regression or a deliberate
+ * change to that endpoint's queries, to be reflected here.
+ */
+@SpringBootTest(properties = {
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+                + "ru.netology.backend.integration.SqlStatementCounter"
+})
+@AutoConfigureMockMvc
+@Testcontainers
+class SqlStatementCountIntegrationTest {
+
+    @Container
+    static PostgreSQLContainer<?> postgresContainer = new PostgreSQLContainer<>("postgres:14-alpine")
+            .withDatabaseName("testdb")
+            .withUsername("test")
+            .withPassword("test");
+
+    @DynamicPropertySource
+    static void registerPgProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgresContainer::getJdbcUrl);
+        registry.add("spring.datasource.username", postgresContainer::getUsername);
+        registry.add("spring.datasource.password", postgresContainer::getPassword);
+    }
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TokenRepository tokenRepository;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private String authToken;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        UserEntity user = new UserEntity();
+        user.setLogin("sqlcountuser");
+        user.setPassword(passwordEncoder.encode("password"));
+        userRepository.save(user);
+
+        LoginDto loginDto = new LoginDto("sqlcountuser", "password");
+        MvcResult result = mockMvc.perform(post("/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(loginDto)))
+                .andExpect(status().isOk())
+                .andReturn();
+        authToken = objectMapper.readValue(
+                result.getResponse().getContentAsString(),
+                LoginResponseDto.class).getAuthToken();
+
+        // Warm up the token cache so only the endpoint's own statements are counted
+        mockMvc.perform(get("/list").header("auth-token", authToken))
+                .andExpect(status().isOk());
+    }
+
+    @AfterEach
+    void tearDown() {
+        tokenRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void fileEndpointsShouldIssueTheExpectedStatements() throws Exception {
+        MockMultipartFile file = new MockMultipartFile(
+                "file", "count.txt", MediaType.TEXT_PLAIN_VALUE, "content".getBytes());
+
+        // Includes the three statements that load the usage of a user seen for the first time
+        assertStatements("upload", 7, multipart("/file")
+                .file(file)
+                .param("filename", "count.txt")
+                .header("auth-token", authToken));
+
+        assertStatements("list", 1, get("/list")
+                .header("auth-token", authToken));
+
+        assertStatements("rename", 3, put("/file")
+                .param("filename", "count.txt")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(new RenameFileDto("renamed.txt")))
+                .header("auth-token", authToken));
+
+        assertStatements("download", 1, get("/file")
+                .param("filename", "renamed.txt")
+                .header("auth-token", authToken));
+
+        assertStatements("delete", 5, delete("/file")
+                .param("filename", "renamed.txt")
+                .header("auth-token", authToken));
+    }
+
+    private void assertStatements(String endpoint, long expected, RequestBuilder request) throws Exception {
+        SqlStatementCounter.reset();
+
+        mockMvc.perform(request).andExpect(status().isOk());
+
+        assertEquals(expected, SqlStatementCounter.count(),
+                endpoint + " should issue " + expected + " statements: " + SqlStatementCounter.statements());
+        assertEquals(0, SqlStatementCounter.countReferencing("users"),
+                endpoint + " should reuse the authenticated user: " + SqlStatementCounter.statements());
+        assertEquals(0, SqlStatementCounter.countReferencing("tokens"),
+                endpoint + " should resolve the token from the cache: " + SqlStatementCounter.statements());
+    }
+}
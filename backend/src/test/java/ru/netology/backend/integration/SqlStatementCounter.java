@@ -0,0 +1,47 @@
+package ru.netology.backend.integration;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Records the SQL statements Hibernate prepares on the thread that last called
+ * {@link #reset()}, which is the one MockMvc runs requests on; scheduled tasks running
+ * meanwhile are left out. Registered through
+ * {@code hibernate.session_factory.statement_inspector}.
+ */
+public class SqlStatementCounter implements StatementInspector {
+
+    private static final List<String> STATEMENTS = new CopyOnWriteArrayList<>();
+    private static volatile Thread recording;
+
+    @Override
+    public String inspect(String sql) {
+        if (Thread.currentThread() == recording) {
+            STATEMENTS.add(sql);
+        }
+        return sql;
+    }
+
+    public static void reset() {
+        recording = Thread.currentThread();
+        STATEMENTS.clear();
+    }
+
+    public static List<String> statements() {
+        return List.copyOf(STATEMENTS);
+    }
+
+    public static long count() {
+        return STATEMENTS.size();
+    }
+
+    public static long countReferencing(String table) {
+        String pattern = ".*\\b(from|join)\\s+" + table + "\\b.*";
+        return STATEMENTS.stream()
+                .map(sql -> sql.toLowerCase().replaceAll("\\s+", " "))
+                .filter(sql -> sql.matches(pattern))
+                .count();
+    }
+}
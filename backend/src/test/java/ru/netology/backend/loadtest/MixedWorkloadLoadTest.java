@@ -0,0 +1,397 @@
+package ru.netology.backend.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Sustained throughput and tail latency of the API under a mix of logins, listings,
+ * uploads, downloads, renames and deletes from concurrent users. Runs against an
+ * already started backend and its Postgres with {@code mvn test -Ploadtest}:
+ *
+ * <pre>
+ * docker compose up -d postgres
+ * java -jar backend.jar
+ * mvn test -Ploadtest -Dtest=MixedWorkloadLoadTest -Dloadtest.users=50 -Dloadtest.duration-seconds=120 \
+ *     -Dloadtest.mix=list:40,download:30,upload:15,rename:5,delete:5,login:5
+ * </pre>
+ *
+ * Every user works on its own files, seeded before the run, and picks each
+ * operation at random by the weights of the mix. Users run closed-loop by default;
+ * with {@code loadtest.rate} each one starts an operation at that many per second,
+ * and latency counts from when an operation was due, so a stalled server is not
+ * hidden by users that stop sending (coordinated omission). Operations during the
+ * warm-up are not recorded.
+ *
+ * <p>Latencies go into HdrHistograms, and the report gives p50, p99, p99.9 and max
+ * per operation together with throughput in operations and MB per second. It is
+ * printed and written as CSV to {@code loadtest.report}.
+ */
+class MixedWorkloadLoadTest {
+
+    private static final Pattern TOKEN = Pattern.compile("\"auth-token\"\\s*:\\s*\"([^\"]+)\"");
+    // Bytes at the start of each upload that make its content unique
+    private static final int UNIQUE_PREFIX = 16;
+
+    private final URI baseUrl = URI.create(System.getProperty("loadtest.base-url", "http://localhost:8080"));
+    private final String login = System.getProperty("loadtest.login", "user");
+    private final String password = System.getProperty("loadtest.password", "password");
+    private final int users = Integer.getInteger("loadtest.users", 20);
+    private final int warmupSeconds = Integer.getInteger("loadtest.warmup-seconds", 10);
+    private final int durationSeconds = Integer.getInteger("loadtest.duration-seconds", 60);
+    private final String mixProperty = System.getProperty("loadtest.mix",
+            "list:40,download:30,upload:15,rename:5,delete:5,login:5");
+    private final String fileSizesProperty = System.getProperty("loadtest.file-sizes", "4KB,256KB,4MB");
+    private final int initialFiles = Integer.getInteger("loadtest.initial-files", 10);
+    private final int listLimit = Integer.getInteger("loadtest.list-limit", 100);
+    private final double rate = Double.parseDouble(System.getProperty("loadtest.rate", "0"));
+    private final int thinkTimeMillis = Integer.getInteger("loadtest.think-time-ms", 0);
+    private final double maxErrorRate = Double.parseDouble(System.getProperty("loadtest.max-error-rate", "0.01"));
+    private final Path report = Path.of(System.getProperty("loadtest.report", "target/mixed-workload.csv"));
+
+    private final String runId = Long.toString(System.currentTimeMillis(), 36);
+    private final HttpClient http = HttpClient.newHttpClient();
+    private Map<Operation, Integer> mix;
+    private int totalWeight;
+    private long[] fileSizes;
+    private byte[] content;
+
+    private enum Operation {
+        LOGIN, LIST, UPLOAD, DOWNLOAD, RENAME, DELETE
+    }
+
+    @Test
+    void mixedWorkload() throws Exception {
+        mix = parseMix(mixProperty);
+        totalWeight = mix.values().stream().mapToInt(Integer::intValue).sum();
+        fileSizes = Arrays.stream(fileSizesProperty.split(",")).mapToLong(size -> DataSize.parse(size.trim()).toBytes()).toArray();
+        content = new byte[(int) Arrays.stream(fileSizes).max().orElseThrow()];
+        new Random(42).nextBytes(content);
+
+        List<VirtualUser> virtualUsers = new ArrayList<>();
+        for (int i = 0; i < users; i++) {
+            virtualUsers.add(new VirtualUser(i));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(users);
+        try {
+            runAll(executor, virtualUsers, user -> user::setUp);
+            long warmupEnd = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmupSeconds);
+            long end = warmupEnd + TimeUnit.SECONDS.toNanos(durationSeconds);
+            runAll(executor, virtualUsers, user -> () -> user.run(warmupEnd, end));
+            runAll(executor, virtualUsers, user -> user::tearDown);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long total = 0;
+        long errors = 0;
+        for (VirtualUser user : virtualUsers) {
+            for (Operation operation : Operation.values()) {
+                total += user.histograms.get(operation).getTotalCount() + user.errors.get(operation)[0];
+                errors += user.errors.get(operation)[0];
+            }
+        }
+        report(virtualUsers);
+        assertTrue(total > 0, "No operations completed");
+        assertTrue(errors <= total * maxErrorRate, errors + " of " + total + " operations failed");
+    }
+
+    private interface Task {
+        void run() throws Exception;
+    }
+
+    private interface TaskFactory {
+        Task of(VirtualUser user);
+    }
+
+    private static void runAll(ExecutorService executor, List<VirtualUser> users, TaskFactory tasks) throws Exception {
+        List<Callable<Void>> callables = new ArrayList<>();
+        for (VirtualUser user : users) {
+            Task task = tasks.of(user);
+            callables.add(() -> {
+                task.run();
+                return null;
+            });
+        }
+        for (Future<Void> future : executor.invokeAll(callables)) {
+            future.get();
+        }
+    }
+
+    /**
+     * One client with its own session and files.
+     */
+    private class VirtualUser {
+
+        private final Random random;
+        private final String prefix;
+        private final List<String> files = new ArrayList<>();
+        private final Map<Operation, Histogram> histograms = new EnumMap<>(Operation.class);
+        // Errors and bytes per operation, single-element arrays so they can be bumped in place
+        private final Map<Operation, long[]> errors = new EnumMap<>(Operation.class);
+        private final Map<Operation, long[]> bytes = new EnumMap<>(Operation.class);
+        private String token;
+        private int counter;
+
+        VirtualUser(int index) {
+            this.random = new Random(index);
+            this.prefix = "loadtest-" + runId + "/user-" + index + "/";
+            for (Operation operation : Operation.values()) {
+                histograms.put(operation, new Histogram(3));
+                errors.put(operation, new long[1]);
+                bytes.put(operation, new long[1]);
+            }
+        }
+
+        void setUp() throws IOException, InterruptedException {
+            token = login();
+            for (int i = 0; i < initialFiles; i++) {
+                upload();
+            }
+        }
+
+        void run(long warmupEnd, long end) throws InterruptedException {
+            long interval = rate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / rate) : 0;
+            long next = System.nanoTime();
+            while (System.nanoTime() < end) {
+                Operation operation = pick();
+                long due = System.nanoTime();
+                if (interval > 0) {
+                    TimeUnit.NANOSECONDS.sleep(next - due);
+                    due = next;
+                    next += interval;
+                }
+
+                long transferred = -1;
+                try {
+                    transferred = perform(operation);
+                } catch (IOException ex) {
+                    // Counted below
+                }
+                long latency = System.nanoTime() - due;
+                if (due >= warmupEnd) {
+                    if (transferred < 0) {
+                        errors.get(operation)[0]++;
+                    } else {
+                        histograms.get(operation).recordValue(TimeUnit.NANOSECONDS.toMicros(latency));
+                        bytes.get(operation)[0] += transferred;
+                    }
+                }
+                if (thinkTimeMillis > 0) {
+                    Thread.sleep(thinkTimeMillis);
+                }
+            }
+        }
+
+        void tearDown() throws IOException, InterruptedException {
+            for (String filename : files) {
+                send(HttpRequest.newBuilder(fileUri(filename)).DELETE());
+            }
+            logout(token);
+        }
+
+        private Operation pick() {
+            int ticket = random.nextInt(totalWeight);
+            for (Map.Entry<Operation, Integer> entry : mix.entrySet()) {
+                ticket -= entry.getValue();
+                if (ticket < 0) {
+                    return entry.getKey();
+                }
+            }
+            throw new IllegalStateException();
+        }
+
+        /**
+         * Performs one operation and returns the bytes it sent or received.
+         */
+        private long perform(Operation operation) throws IOException, InterruptedException {
+            return switch (operation) {
+                case LOGIN -> {
+                    logout(login());
+                    yield 0;
+                }
+                case LIST -> send(HttpRequest.newBuilder(baseUrl.resolve("/list?limit=" + listLimit)).GET());
+                case UPLOAD -> upload();
+                case DOWNLOAD -> files.isEmpty() ? upload() : send(HttpRequest.newBuilder(fileUri(randomFile())).GET());
+                case RENAME -> files.isEmpty() ? upload() : rename();
+                // Never runs a user out of files to work on
+                case DELETE -> files.size() <= 1 ? upload() : delete();
+            };
+        }
+
+        private long upload() throws IOException, InterruptedException {
+            String filename = prefix + "file-" + counter++;
+            int size = (int) fileSizes[random.nextInt(fileSizes.length)];
+            byte[] unique = ByteBuffer.allocate(UNIQUE_PREFIX).putLong(random.nextLong()).putLong(System.nanoTime()).array();
+            send(HttpRequest.newBuilder(fileUri(filename))
+                    .header("Content-Type", "application/octet-stream")
+                    .POST(HttpRequest.BodyPublishers.concat(
+                            HttpRequest.BodyPublishers.ofByteArray(unique, 0, Math.min(size, UNIQUE_PREFIX)),
+                            HttpRequest.BodyPublishers.ofByteArray(content, 0, Math.max(size - UNIQUE_PREFIX, 0)))));
+            files.add(filename);
+            return size;
+        }
+
+        private long rename() throws IOException, InterruptedException {
+            int index = random.nextInt(files.size());
+            String newFilename = prefix + "file-" + counter++;
+            send(HttpRequest.newBuilder(fileUri(files.get(index)))
+                    .header("Content-Type", "application/json")
+                    .PUT(HttpRequest.BodyPublishers.ofString("{\"name\":\"" + newFilename + "\"}")));
+            files.set(index, newFilename);
+            return 0;
+        }
+
+        private long delete() throws IOException, InterruptedException {
+            String filename = files.remove(random.nextInt(files.size()));
+            send(HttpRequest.newBuilder(fileUri(filename)).DELETE());
+            return 0;
+        }
+
+        private String randomFile() {
+            return files.get(random.nextInt(files.size()));
+        }
+
+        /**
+         * Sends a request with this user's token and reads the response through;
+         * returns the length of its body.
+         */
+        private long send(HttpRequest.Builder request) throws IOException, InterruptedException {
+            HttpResponse<InputStream> response = http.send(
+                    request.header("auth-token", "Bearer " + token).build(), HttpResponse.BodyHandlers.ofInputStream());
+            try (InputStream body = response.body()) {
+                long length = body.transferTo(OutputStream.nullOutputStream());
+                if (response.statusCode() != 200) {
+                    throw new IOException(response.request().method() + " " + response.uri().getPath()
+                            + " returned " + response.statusCode());
+                }
+                return length;
+            }
+        }
+    }
+
+    private String login() throws IOException, InterruptedException {
+        String body = "{\"login\":\"" + login + "\",\"password\":\"" + password + "\"}";
+        HttpResponse<String> response = http.send(HttpRequest.newBuilder(baseUrl.resolve("/login"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        Matcher matcher = TOKEN.matcher(response.body());
+        if (!matcher.find()) {
+            throw new IOException("Login failed: " + response.body());
+        }
+        return matcher.group(1);
+    }
+
+    private void logout(String token) throws IOException, InterruptedException {
+        http.send(HttpRequest.newBuilder(baseUrl.resolve("/logout"))
+                .header("auth-token", "Bearer " + token)
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build(), HttpResponse.BodyHandlers.discarding());
+    }
+
+    private URI fileUri(String filename) {
+        return baseUrl.resolve("/file?filename=" + URLEncoder.encode(filename, StandardCharsets.UTF_8));
+    }
+
+    private void report(List<VirtualUser> virtualUsers) throws IOException {
+        Map<String, Histogram> histograms = new LinkedHashMap<>();
+        Map<String, long[]> totals = new LinkedHashMap<>();
+        Histogram all = new Histogram(3);
+        long[] allTotals = new long[2];
+        for (Operation operation : mix.keySet()) {
+            Histogram histogram = new Histogram(3);
+            long[] operationTotals = new long[2];
+            for (VirtualUser user : virtualUsers) {
+                histogram.add(user.histograms.get(operation));
+                operationTotals[0] += user.errors.get(operation)[0];
+                operationTotals[1] += user.bytes.get(operation)[0];
+            }
+            histograms.put(operation.name().toLowerCase(Locale.ROOT), histogram);
+            totals.put(operation.name().toLowerCase(Locale.ROOT), operationTotals);
+            all.add(histogram);
+            allTotals[0] += operationTotals[0];
+            allTotals[1] += operationTotals[1];
+        }
+        histograms.put("all", all);
+        totals.put("all", allTotals);
+
+        System.out.printf("users=%d duration=%ds rate=%s mix=%s file-sizes=%s%n", users, durationSeconds,
+                rate > 0 ? rate + "/s per user" : "closed-loop", mixProperty, fileSizesProperty);
+        String format = "%-10s %9s %7s %9s %9s %9s %9s %9s %8s%n";
+        System.out.printf(format, "operation", "count", "errors", "ops/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms", "MB/s");
+        Files.createDirectories(report.toAbsolutePath().getParent());
+        try (PrintWriter csv = new PrintWriter(Files.newBufferedWriter(report))) {
+            csv.println("operation,count,errors,ops_per_second,p50_ms,p99_ms,p999_ms,max_ms,mb_per_second");
+            for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+                Histogram histogram = entry.getValue();
+                long[] operationTotals = totals.get(entry.getKey());
+                String[] row = {
+                        entry.getKey(),
+                        Long.toString(histogram.getTotalCount()),
+                        Long.toString(operationTotals[0]),
+                        String.format(Locale.ROOT, "%.1f", (double) histogram.getTotalCount() / durationSeconds),
+                        millis(histogram.getValueAtPercentile(50)),
+                        millis(histogram.getValueAtPercentile(99)),
+                        millis(histogram.getValueAtPercentile(99.9)),
+                        millis(histogram.getMaxValue()),
+                        String.format(Locale.ROOT, "%.2f", operationTotals[1] / 1e6 / durationSeconds)
+                };
+                System.out.printf(format, (Object[]) row);
+                csv.println(String.join(",", row));
+            }
+        }
+        System.out.println("Report written to " + report.toAbsolutePath());
+    }
+
+    private static String millis(long micros) {
+        return String.format(Locale.ROOT, "%.2f", micros / 1000.0);
+    }
+
+    private static Map<Operation, Integer> parseMix(String mix) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split(":");
+            int weight = Integer.parseInt(parts[1].trim());
+            if (weight > 0) {
+                weights.put(Operation.valueOf(parts[0].trim().toUpperCase(Locale.ROOT)), weight);
+            }
+        }
+        if (weights.isEmpty()) {
+            throw new IllegalArgumentException("Empty mix: " + mix);
+        }
+        return weights;
+    }
+}
@@ -0,0 +1,152 @@
+package ru.netology.backend.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import ru.netology.backend.model.dto.FileDto;
+import ru.netology.backend.web.CompressedFormats;
+import ru.netology.backend.web.ContentCoding;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Bytes on the wire and CPU time per response for each content coding, on payloads
+ * shaped like /list pages and typical documents. Runs in process, without a backend:
+ *
+ * <pre>
+ * mvn test -Ploadtest -Dtest=ResponseCompressionBenchmark
+ * </pre>
+ *
+ * CPU time is that of the encoding thread, averaged after a warm-up; it is the cost
+ * a compressed response adds to a request.
+ */
+class ResponseCompressionBenchmark {
+
+    private final int iterations = Integer.getInteger("benchmark.iterations", 200);
+    private final Random random = new Random(42);
+
+    @Test
+    void compressionPerResponse() throws IOException {
+        Map<String, byte[]> payloads = new LinkedHashMap<>();
+        payloads.put("list, 1000 files (JSON)", listing(1000, false));
+        payloads.put("list, 1000 files (NDJSON)", listing(1000, true));
+        payloads.put("CSV export, 1MB", csv(1024 * 1024));
+        payloads.put("JSON export, 1MB", jsonExport(1024 * 1024));
+        payloads.put("DOCX-like zip, 256KB", zip(csv(256 * 1024)));
+        payloads.put("random binary, 1MB", randomBytes(1024 * 1024));
+
+        List<ContentCoding> codings = new ArrayList<>();
+        for (ContentCoding coding : ContentCoding.values()) {
+            if (coding.isAvailable()) {
+                codings.add(coding);
+            }
+        }
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        System.out.printf("%-28s %-8s %12s %8s %12s %10s%n", "payload", "coding", "bytes", "ratio", "cpu/resp", "MB/s");
+        for (Map.Entry<String, byte[]> payload : payloads.entrySet()) {
+            byte[] body = payload.getValue();
+            boolean sniffedCompressed = CompressedFormats.looksCompressed(body, Math.min(body.length, CompressedFormats.SNIFF_LENGTH));
+            System.out.printf("%-28s %-8s %12d %8s %12s %10s%n", payload.getKey(), "identity", body.length, "1.00", "-",
+                    sniffedCompressed ? "(skipped)" : "");
+
+            for (ContentCoding coding : codings) {
+                // Warm up the encoder before measuring
+                for (int i = 0; i < iterations; i++) {
+                    encode(coding, body);
+                }
+                long cpuStart = threads.getCurrentThreadCpuTime();
+                int encodedLength = 0;
+                for (int i = 0; i < iterations; i++) {
+                    encodedLength = encode(coding, body);
+                }
+                long cpuNanos = (threads.getCurrentThreadCpuTime() - cpuStart) / iterations;
+
+                System.out.printf("%-28s %-8s %12d %8.2f %10.0fus %10.0f%n", "", coding.getToken(), encodedLength,
+                        (double) body.length / encodedLength, cpuNanos / 1000.0, body.length / (cpuNanos / 1e9) / 1e6);
+                assertTrue(encodedLength > 0);
+            }
+        }
+    }
+
+    private static int encode(ContentCoding coding, byte[] body) throws IOException {
+        ByteArrayOutputStream wire = new ByteArrayOutputStream(body.length / 4);
+        try (OutputStream out = coding.encode(wire)) {
+            out.write(body);
+        }
+        return wire.size();
+    }
+
+    private byte[] listing(int files, boolean ndjson) throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        List<FileDto> page = new ArrayList<>();
+        String[] extensions = {"pdf", "docx", "csv", "jpg", "txt", "xlsx", "png", "log"};
+        for (int i = 0; i < files; i++) {
+            String name = "project-" + random.nextInt(50) + "/report-" + Integer.toHexString(random.nextInt())
+                    + "." + extensions[random.nextInt(extensions.length)];
+            page.add(new FileDto(name, (long) random.nextInt(50_000_000)));
+        }
+        if (!ndjson) {
+            return mapper.writeValueAsBytes(page);
+        }
+        StringBuilder lines = new StringBuilder();
+        for (FileDto file : page) {
+            lines.append(mapper.writeValueAsString(file)).append('\n');
+        }
+        return lines.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] csv(int size) {
+        StringBuilder csv = new StringBuilder("id,timestamp,customer,country,amount,status\n");
+        String[] countries = {"RU", "DE", "US", "FR", "KZ", "BR"};
+        String[] statuses = {"paid", "pending", "refunded"};
+        for (int row = 1; csv.length() < size; row++) {
+            csv.append(row).append(",2025-0").append(1 + random.nextInt(9)).append('-').append(10 + random.nextInt(18))
+                    .append("T12:").append(10 + random.nextInt(50)).append(":00Z,customer-").append(random.nextInt(10_000))
+                    .append(',').append(countries[random.nextInt(countries.length)])
+                    .append(',').append(random.nextInt(100_000) / 100.0)
+                    .append(',').append(statuses[random.nextInt(statuses.length)]).append('\n');
+        }
+        return csv.substring(0, size).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private byte[] jsonExport(int size) {
+        StringBuilder json = new StringBuilder("[");
+        while (json.length() < size - 200) {
+            json.append("{\"id\":").append(random.nextInt(1_000_000))
+                    .append(",\"event\":\"file.uploaded\",\"user\":\"user-").append(random.nextInt(500))
+                    .append("\",\"bytes\":").append(random.nextInt(10_000_000))
+                    .append(",\"tags\":[\"finance\",\"q").append(1 + random.nextInt(4)).append("\"]},");
+        }
+        return json.append("{}]").toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] zip(byte[] content) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            zip.putNextEntry(new ZipEntry("word/document.xml"));
+            zip.write(content);
+            zip.closeEntry();
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+}
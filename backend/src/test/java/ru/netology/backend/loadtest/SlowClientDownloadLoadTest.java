@@ -0,0 +1,182 @@
+package ru.netology.backend.loadtest;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Opens many concurrent downloads that read slowly through a small receive window,
+ * so every response keeps a request thread busy for as long as the client takes.
+ * Runs against an already started backend with {@code mvn test -Ploadtest}:
+ *
+ * <pre>
+ * java -jar backend.jar --app.download.sendfile-threshold=1TB
+ * java -Djdk.virtualThreadScheduler.maxPoolSize=1024 -jar backend.jar \
+ *      --app.download.sendfile-threshold=1TB --spring.threads.virtual.enabled=true
+ * mvn test -Ploadtest -Dloadtest.clients=400
+ * </pre>
+ *
+ * The sendfile threshold is raised so downloads are copied by the request thread
+ * instead of being handed to the connector. Clients that get their first byte within
+ * {@code loadtest.ttfb-limit-ms} were served right away; the rest queued for a thread.
+ */
+class SlowClientDownloadLoadTest {
+
+    private static final Pattern TOKEN = Pattern.compile("\"auth-token\"\\s*:\\s*\"([^\"]+)\"");
+
+    private final URI baseUrl = URI.create(System.getProperty("loadtest.base-url", "http://localhost:8080"));
+    private final int clients = Integer.getInteger("loadtest.clients", 400);
+    private final int fileSize = Integer.getInteger("loadtest.file-size", 4 * 1024 * 1024);
+    private final int readChunk = Integer.getInteger("loadtest.read-chunk", 8 * 1024);
+    private final int readDelayMillis = Integer.getInteger("loadtest.read-delay-ms", 100);
+    private final int ttfbLimitMillis = Integer.getInteger("loadtest.ttfb-limit-ms", 2000);
+    private final int timeoutSeconds = Integer.getInteger("loadtest.timeout-seconds", 600);
+
+    @Test
+    void slowClientDownloads() throws Exception {
+        HttpClient http = HttpClient.newHttpClient();
+        String token = login(http);
+        String filename = "loadtest-" + System.nanoTime() + ".bin";
+        upload(http, token, filename);
+
+        List<Long> firstByteMillis = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger completed = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(clients);
+        long started = System.nanoTime();
+        try {
+            for (int i = 0; i < clients; i++) {
+                executor.execute(() -> {
+                    try {
+                        firstByteMillis.add(download(token, filename));
+                        completed.incrementAndGet();
+                    } catch (IOException | InterruptedException ex) {
+                        failed.incrementAndGet();
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(timeoutSeconds, TimeUnit.SECONDS), "Downloads did not finish in time");
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+
+        List<Long> sorted = new ArrayList<>(firstByteMillis);
+        Collections.sort(sorted);
+        long servedRightAway = sorted.stream().filter(millis -> millis <= ttfbLimitMillis).count();
+        System.out.printf("clients=%d completed=%d failed=%d servedWithin%dms=%d elapsed=%dms "
+                        + "ttfb p50=%dms p99=%dms max=%dms%n",
+                clients, completed.get(), failed.get(), ttfbLimitMillis, servedRightAway, elapsedMillis,
+                percentile(sorted, 50), percentile(sorted, 99), percentile(sorted, 100));
+
+        deleteFile(http, token, filename);
+        assertEquals(clients, completed.get() + failed.get());
+    }
+
+    /**
+     * Downloads the file through a raw socket and returns the time to the first byte.
+     */
+    private long download(String token, String filename) throws IOException, InterruptedException {
+        try (Socket socket = new Socket()) {
+            // Set before connecting so the advertised window stays small
+            socket.setReceiveBufferSize(readChunk);
+            socket.connect(new InetSocketAddress(baseUrl.getHost(), baseUrl.getPort()));
+            socket.setSoTimeout(timeoutSeconds * 1000);
+
+            long requested = System.nanoTime();
+            OutputStream out = socket.getOutputStream();
+            out.write(("GET /file?filename=" + URLEncoder.encode(filename, StandardCharsets.UTF_8) + " HTTP/1.1\r\n"
+                    + "Host: " + baseUrl.getHost() + "\r\n"
+                    + "auth-token: Bearer " + token + "\r\n"
+                    + "Connection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+
+            InputStream in = socket.getInputStream();
+            byte[] buffer = new byte[readChunk];
+            int read = in.read(buffer);
+            if (read < 0) {
+                throw new IOException("Connection closed without a response");
+            }
+            long firstByte = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - requested);
+            if (!new String(buffer, 0, Math.min(read, 12), StandardCharsets.US_ASCII).endsWith("200")) {
+                throw new IOException("Unexpected response");
+            }
+
+            long total = read;
+            while ((read = in.read(buffer)) >= 0) {
+                total += read;
+                Thread.sleep(readDelayMillis);
+            }
+            if (total < fileSize) {
+                throw new IOException("Truncated response: " + total + " bytes");
+            }
+            return firstByte;
+        }
+    }
+
+    private String login(HttpClient http) throws IOException, InterruptedException {
+        String body = "{\"login\":\"" + System.getProperty("loadtest.login", "user")
+                + "\",\"password\":\"" + System.getProperty("loadtest.password", "password") + "\"}";
+        HttpResponse<String> response = http.send(HttpRequest.newBuilder(baseUrl.resolve("/login"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        Matcher matcher = TOKEN.matcher(response.body());
+        assertTrue(matcher.find(), "Login failed: " + response.body());
+        return matcher.group(1);
+    }
+
+    private void upload(HttpClient http, String token, String filename) throws IOException, InterruptedException {
+        byte[] content = new byte[fileSize];
+        new Random(42).nextBytes(content);
+        HttpResponse<Void> response = http.send(HttpRequest.newBuilder(fileUri(filename))
+                .header("auth-token", "Bearer " + token)
+                .header("Content-Type", "application/octet-stream")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(content))
+                .build(), HttpResponse.BodyHandlers.discarding());
+        assertEquals(200, response.statusCode());
+    }
+
+    private void deleteFile(HttpClient http, String token, String filename) throws IOException, InterruptedException {
+        http.send(HttpRequest.newBuilder(fileUri(filename))
+                .header("auth-token", "Bearer " + token)
+                .DELETE()
+                .build(), HttpResponse.BodyHandlers.discarding());
+    }
+
+    private URI fileUri(String filename) {
+        return baseUrl.resolve("/file?filename=" + URLEncoder.encode(filename, StandardCharsets.UTF_8));
+    }
+
+    private static long percentile(List<Long> sorted, int percentile) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1;
+        return sorted.get(Math.max(index, 0));
+    }
+}
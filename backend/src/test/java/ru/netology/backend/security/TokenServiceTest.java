@@ -0,0 +1,149 @@
+package ru.netology.backend.security;
+
+import io.micrometer.core.instrument.observation.DefaultMeterObservationHandler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.netology.backend.model.entity.TokenEntity;
+import ru.netology.backend.model.entity.UserEntity;
+import ru.netology.backend.repository.TokenRepository;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TokenServiceTest {
+
+    @Mock
+    private TokenRepository tokenRepository;
+
+    private TokenCache tokenCache;
+    private SimpleMeterRegistry meterRegistry;
+    private TokenService tokenService;
+    private TokenEntity tokenEntity;
+
+    @BeforeEach
+    void setUp() {
+        tokenCache = new TokenCache(100, Duration.ofMinutes(1));
+        meterRegistry = new SimpleMeterRegistry();
+        ObservationRegistry observationRegistry = ObservationRegistry.create();
+        observationRegistry.observationConfig().observationHandler(new DefaultMeterObservationHandler(meterRegistry));
+        tokenService = new TokenService(tokenRepository, tokenCache, observationRegistry);
+
+        UserEntity user = new UserEntity(1L, "testuser", "password");
+        tokenEntity = new TokenEntity(1L, "token", user, LocalDateTime.now().plusHours(1), true);
+    }
+
+    @Test
+    void findByTokenShouldQueryRepositoryOnlyOnce() {
+        // Given
+        when(tokenRepository.findByTokenAndActiveTrue("token")).thenReturn(Optional.of(tokenEntity));
+
+        // When
+        Optional<ResolvedToken> first = tokenService.findByToken("token");
+        Optional<ResolvedToken> second = tokenService.findByToken("token");
+
+        // Then
+        assertTrue(first.isPresent());
+        assertTrue(second.isPresent());
+        assertEquals("testuser", second.get().getUser().getLogin());
+        verify(tokenRepository, times(1)).findByTokenAndActiveTrue("token");
+        assertEquals(1, tokenCache.stats().hitCount());
+        assertEquals(1, tokenCache.stats().missCount());
+        assertEquals(1, meterRegistry.get("auth.token.lookup").tags("source", "cache", "result", "found").timer().count());
+        assertEquals(1, meterRegistry.get("auth.token.lookup").tags("source", "database", "result", "found").timer().count());
+    }
+
+    @Test
+    void findByTokenShouldNotCacheUnknownToken() {
+        // Given
+        when(tokenRepository.findByTokenAndActiveTrue("unknown")).thenReturn(Optional.empty());
+
+        // When
+        tokenService.findByToken("unknown");
+        tokenService.findByToken("unknown");
+
+        // Then
+        verify(tokenRepository, times(2)).findByTokenAndActiveTrue("unknown");
+        assertEquals(0, tokenCache.size());
+    }
+
+    @Test
+    void deactivateTokenShouldEvictCachedToken() {
+        // Given
+        when(tokenRepository.findByTokenAndActiveTrue("token")).thenReturn(Optional.of(tokenEntity));
+        tokenService.findByToken("token");
+
+        // When
+        tokenService.deactivateToken("token");
+
+        // Then
+        assertNull(tokenCache.get("token"));
+        verify(tokenRepository).save(tokenEntity);
+    }
+
+    @Test
+    void deactivateAllUserTokensShouldEvictUserTokens() {
+        // Given
+        when(tokenRepository.findByTokenAndActiveTrue("token")).thenReturn(Optional.of(tokenEntity));
+        tokenService.findByToken("token");
+
+        // When
+        tokenService.deactivateAllUserTokens(tokenEntity.getUser());
+
+        // Then
+        assertNull(tokenCache.get("token"));
+        verify(tokenRepository).deleteByUser(tokenEntity.getUser());
+    }
+
+    @Test
+    void deactivateTokenShouldEvictTokenCachedAgainBeforeCommit() {
+        // Given
+        when(tokenRepository.findByTokenAndActiveTrue("token")).thenReturn(Optional.of(tokenEntity));
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            tokenService.deactivateToken("token");
+            // A concurrent lookup still reads the uncommitted row as active
+            tokenService.findByToken("token");
+            assertNotNull(tokenCache.get("token"));
+
+            // When
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        // Then
+        assertNull(tokenCache.get("token"));
+    }
+
+    @Test
+    void deactivateAllUserTokensShouldEvictTokensCachedAgainBeforeCommit() {
+        // Given
+        when(tokenRepository.findByTokenAndActiveTrue("token")).thenReturn(Optional.of(tokenEntity));
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            tokenService.deactivateAllUserTokens(tokenEntity.getUser());
+            tokenService.findByToken("token");
+            assertNotNull(tokenCache.get("token"));
+
+            // When
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        // Then
+        assertNull(tokenCache.get("token"));
+    }
+}
@@ -0,0 +1,120 @@
+package ru.netology.backend.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.util.unit.DataSize;
+import ru.netology.backend.model.entity.BlobEntity;
+import ru.netology.backend.repository.BlobRepository;
+import ru.netology.backend.repository.FileRepository;
+import ru.netology.backend.repository.FileVersionRepository;
+import ru.netology.backend.storage.LocalBlobStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BlobCollectorTest {
+
+    @Mock
+    private BlobRepository blobRepository;
+
+    @Mock
+    private FileRepository fileRepository;
+
+    @Mock
+    private FileVersionRepository fileVersionRepository;
+
+    @TempDir
+    Path storageLocation;
+
+    private BlobCollector blobCollector;
+
+    @BeforeEach
+    void setUp() {
+        LocalBlobStore blobStore = new LocalBlobStore(storageLocation);
+        BlobService blobService = new BlobService(storageLocation.toString(), blobRepository, blobStore,
+                new BlobCompressor(blobStore, "auto", DataSize.ofKilobytes(4), 10, 1000), new SimpleMeterRegistry(), ObservationRegistry.NOOP);
+        blobCollector = new BlobCollector(blobService, blobStore, blobRepository, fileRepository, fileVersionRepository,
+                Duration.ofMinutes(1), 2, 1000, Duration.ofHours(24));
+    }
+
+    @Test
+    void collectGarbageShouldUnlinkTombstonesBatchByBatch() throws IOException {
+        // Given
+        BlobEntity first = tombstone("first");
+        BlobEntity second = tombstone("second");
+        BlobEntity third = tombstone("third");
+        when(blobRepository.findTombstonesForUpdate(any(LocalDateTime.class), eq(2)))
+                .thenReturn(List.of(first, second))
+                .thenReturn(List.of(third));
+
+        // When
+        blobCollector.collectGarbage();
+
+        // Then
+        verify(blobRepository).deleteAllInBatch(List.of(first, second));
+        verify(blobRepository).deleteAllInBatch(List.of(third));
+        assertFalse(Files.exists(storageLocation.resolve("first")));
+        assertFalse(Files.exists(storageLocation.resolve("third")));
+    }
+
+    @Test
+    void sweepOrphansShouldTombstoneOldContentThatNoRowPointsAt() throws IOException {
+        // Given
+        Instant old = Instant.now().minus(Duration.ofDays(2));
+        write("known", old);
+        write("legacy.txt", old);
+        write("orphan", old);
+        write("young", Instant.now());
+        Path staging = storageLocation.resolve(".staging");
+        Path staleUpload = Files.writeString(staging.resolve("stale"), "partial");
+        Files.setLastModifiedTime(staleUpload, FileTime.from(old));
+        Path activeUpload = Files.writeString(staging.resolve("active"), "partial");
+
+        when(blobRepository.findExistingKeys(anyCollection())).thenReturn(List.of("known"));
+        when(fileRepository.findExistingStorageFilenames(anyCollection())).thenReturn(List.of("legacy.txt"));
+        when(blobRepository.tombstone("orphan", 6)).thenReturn(1);
+
+        // When
+        blobCollector.sweepOrphans();
+
+        // Then
+        verify(blobRepository).tombstone("orphan", 6);
+        verify(blobRepository, never()).tombstone(eq("young"), anyLong());
+        verify(blobRepository, never()).tombstone(eq("known"), anyLong());
+        verify(blobRepository, never()).tombstone(eq("legacy.txt"), anyLong());
+        assertTrue(Files.exists(storageLocation.resolve("orphan")), "Orphans are unlinked by the collector");
+        assertFalse(Files.exists(staleUpload));
+        assertTrue(Files.exists(activeUpload));
+    }
+
+    private BlobEntity tombstone(String storageKey) throws IOException {
+        Files.writeString(storageLocation.resolve(storageKey), "content");
+        LocalDateTime deletedAt = LocalDateTime.now().minusHours(1);
+        return new BlobEntity(storageKey, 7L, 0, deletedAt, null, deletedAt, null, deletedAt, null);
+    }
+
+    private void write(String storageKey, Instant lastModified) throws IOException {
+        Path path = Files.writeString(storageLocation.resolve(storageKey), storageKey);
+        Files.setLastModifiedTime(path, FileTime.from(lastModified));
+    }
+}
@@ -0,0 +1,146 @@
+package ru.netology.backend.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.util.unit.DataSize;
+import ru.netology.backend.exception.FileStorageException;
+import ru.netology.backend.model.entity.BlobEntity;
+import ru.netology.backend.repository.BlobRepository;
+import ru.netology.backend.storage.BlobCodec;
+import ru.netology.backend.storage.LocalBlobStore;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BlobScrubberTest {
+
+    @Mock
+    private BlobRepository blobRepository;
+
+    @TempDir
+    Path storageLocation;
+
+    private LocalBlobStore blobStore;
+    private BlobScrubber blobScrubber;
+
+    @BeforeEach
+    void setUp() {
+        blobStore = spy(new LocalBlobStore(storageLocation));
+        BlobService blobService = new BlobService(storageLocation.toString(), blobRepository, blobStore,
+                new BlobCompressor(blobStore, "auto", DataSize.ofKilobytes(4), 10, 1000), new SimpleMeterRegistry(), ObservationRegistry.NOOP);
+        blobScrubber = new BlobScrubber(blobService, Duration.ofDays(30), 2, DataSize.ofMegabytes(100));
+    }
+
+    @Test
+    void scrubShouldMarkBlobsThatNoLongerMatchTheirChecksums() throws Exception {
+        // Given
+        BlobEntity intact = blob("intact content", true);
+        BlobEntity damaged = blob("damaged content", true);
+        Files.writeString(storageLocation.resolve(damaged.getStorageKey()), "damaged c0ntent");
+        BlobEntity missing = blob("missing content", true);
+        Files.delete(storageLocation.resolve(missing.getStorageKey()));
+        when(blobRepository.findUnscrubbedForUpdate(any(LocalDateTime.class), eq(2)))
+                .thenReturn(List.of(intact, damaged))
+                .thenReturn(List.of(missing));
+
+        // When
+        blobScrubber.scrub();
+
+        // Then
+        verify(blobRepository).markCorrupted(damaged.getStorageKey());
+        verify(blobRepository).markCorrupted(missing.getStorageKey());
+        verify(blobRepository, never()).markCorrupted(intact.getStorageKey());
+        verify(blobRepository, never()).updateCrc32c(anyString(), anyLong());
+    }
+
+    @Test
+    void scrubShouldRecordTheChecksumOfBlobsStoredWithoutOne() throws Exception {
+        // Given
+        BlobEntity legacy = blob("stored before checksums", false);
+        when(blobRepository.findUnscrubbedForUpdate(any(LocalDateTime.class), eq(2))).thenReturn(List.of(legacy));
+
+        // When
+        blobScrubber.scrub();
+
+        // Then
+        verify(blobRepository).updateCrc32c(legacy.getStorageKey(), crc32c("stored before checksums"));
+        verify(blobRepository, never()).markCorrupted(anyString());
+    }
+
+    @Test
+    void scrubShouldMarkCompressedBlobsThatCannotBeDecompressed() throws Exception {
+        // Given
+        BlobEntity damaged = blob("compressed content", true);
+        damaged.setCodec(BlobCodec.ZSTD);
+        Files.writeString(storageLocation.resolve(damaged.getStorageKey()), "not a seekable zstd stream");
+        when(blobRepository.findUnscrubbedForUpdate(any(LocalDateTime.class), eq(2))).thenReturn(List.of(damaged));
+
+        // When
+        blobScrubber.scrub();
+
+        // Then
+        verify(blobRepository).markCorrupted(damaged.getStorageKey());
+    }
+
+    @Test
+    void scrubShouldLeaveBlobsThatFailToReadForTheNextRun() throws Exception {
+        // Given
+        BlobEntity unreadable = blob("unreadable content", true);
+        BlobEntity intact = blob("intact content", true);
+        doThrow(new FileStorageException("Could not read blob " + unreadable.getStorageKey(),
+                new SocketTimeoutException("Read timed out")))
+                .when(blobStore).getRange(eq(unreadable.getStorageKey()), anyLong(), anyLong());
+        when(blobRepository.findUnscrubbedForUpdate(any(LocalDateTime.class), eq(2)))
+                .thenReturn(List.of(unreadable, intact));
+
+        // When
+        blobScrubber.scrub();
+
+        // Then
+        verify(blobRepository, never()).markCorrupted(anyString());
+        verify(blobRepository).updateScrubbedAt(eq(unreadable.getStorageKey()),
+                argThat(scrubbedAt -> scrubbedAt.isBefore(LocalDateTime.now().minusDays(29))));
+        verify(blobRepository, never()).updateScrubbedAt(eq(intact.getStorageKey()), any());
+        // Not claimed again in the same run
+        verify(blobRepository, times(1)).findUnscrubbedForUpdate(any(LocalDateTime.class), eq(2));
+    }
+
+    private BlobEntity blob(String content, boolean withCrc32c) throws IOException, NoSuchAlgorithmException {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        String storageKey = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        Files.write(storageLocation.resolve(storageKey), bytes);
+        LocalDateTime createdAt = LocalDateTime.now().minusDays(31);
+        return new BlobEntity(storageKey, (long) bytes.length, 1, createdAt, null, null,
+                withCrc32c ? crc32c(content) : null, createdAt, null);
+    }
+
+    private static long crc32c(String content) {
+        CRC32C crc = new CRC32C();
+        crc.update(content.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+}
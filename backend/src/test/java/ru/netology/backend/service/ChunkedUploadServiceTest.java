@@ -0,0 +1,337 @@
+package ru.netology.backend.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.util.unit.DataSize;
+import ru.netology.backend.exception.BadRequestException;
+import ru.netology.backend.exception.FileStorageException;
+import ru.netology.backend.exception.QuotaExceededException;
+import ru.netology.backend.model.dto.ByteRangeDto;
+import ru.netology.backend.model.dto.UploadSessionDto;
+import ru.netology.backend.model.entity.UploadChunkEntity;
+import ru.netology.backend.model.entity.UploadSessionEntity;
+import ru.netology.backend.model.entity.UserEntity;
+import ru.netology.backend.repository.BlobRepository;
+import ru.netology.backend.repository.FileRepository;
+import ru.netology.backend.repository.UploadChunkRepository;
+import ru.netology.backend.repository.UploadSessionRepository;
+import ru.netology.backend.storage.LocalBlobStore;
+import ru.netology.backend.web.ContentDigest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ChunkedUploadServiceTest {
+
+    private static final String CONTENT = "0123456789abcdefghij";
+    private static final String UPLOAD_ID = "upload-1";
+
+    @TempDir
+    Path uploadDir;
+
+    @Mock
+    private UploadSessionRepository sessionRepository;
+
+    @Mock
+    private UploadChunkRepository chunkRepository;
+
+    @Mock
+    private FileRepository fileRepository;
+
+    @Mock
+    private FileStorageService fileStorageService;
+
+    @Mock
+    private UserService userService;
+
+    @Mock
+    private QuotaService quotaService;
+
+    private LocalBlobStore blobStore;
+    private ChunkedUploadServiceImpl chunkedUploadService;
+    private UserEntity testUser;
+    private UploadSessionEntity session;
+    private List<UploadChunkEntity> chunks;
+
+    @BeforeEach
+    void setUp() {
+        testUser = new UserEntity(1L, "testuser", "password");
+        blobStore = new LocalBlobStore(uploadDir);
+        BlobService blobService = new BlobService(uploadDir.toString(), mock(BlobRepository.class), blobStore,
+                mock(BlobCompressor.class), new SimpleMeterRegistry(), ObservationRegistry.NOOP);
+        chunkedUploadService = new ChunkedUploadServiceImpl(uploadDir.toString(), DataSize.ofBytes(8),
+                DataSize.ofKilobytes(1), Duration.ofHours(1), sessionRepository, chunkRepository, fileRepository,
+                fileStorageService, userService, blobStore, blobService, quotaService);
+
+        LocalDateTime now = LocalDateTime.now();
+        session = new UploadSessionEntity(UPLOAD_ID, "test.txt", (long) CONTENT.length(), testUser,
+                now, now.plusHours(1));
+        lenient().when(userService.getCurrentUser()).thenReturn(testUser);
+        lenient().when(sessionRepository.findByIdAndUser(UPLOAD_ID, testUser)).thenReturn(Optional.of(session));
+        lenient().when(sessionRepository.findByIdAndUserForUpdate(UPLOAD_ID, testUser)).thenReturn(Optional.of(session));
+
+        // Chunk rows are kept in memory, ordered like the repository query orders them
+        chunks = new ArrayList<>();
+        lenient().when(chunkRepository.insertIfSessionExists(eq(UPLOAD_ID), anyLong(), anyLong())).thenAnswer(invocation -> {
+            chunks.add(new UploadChunkEntity(null, UPLOAD_ID, invocation.getArgument(1), invocation.getArgument(2)));
+            return 1;
+        });
+        lenient().when(chunkRepository.existsBySessionIdAndOffsetAndLength(anyString(), anyLong(), anyLong()))
+                .thenAnswer(invocation -> chunks.stream().anyMatch(chunk ->
+                        chunk.getOffset().equals(invocation.getArgument(1))
+                                && chunk.getLength().equals(invocation.getArgument(2))));
+        lenient().when(chunkRepository.findBySessionIdOrderByOffsetAscLengthDesc(UPLOAD_ID)).thenAnswer(invocation ->
+                chunks.stream()
+                        .sorted(Comparator.comparing(UploadChunkEntity::getOffset)
+                                .thenComparing(UploadChunkEntity::getLength, Comparator.reverseOrder()))
+                        .toList());
+    }
+
+    @Test
+    void initiateShouldCreateSession() {
+        // Given
+        when(fileRepository.existsByFilenameAndUser("test.txt", testUser)).thenReturn(false);
+
+        // When
+        UploadSessionDto result = chunkedUploadService.initiate("test.txt", 20L);
+
+        // Then
+        ArgumentCaptor<UploadSessionEntity> saved = ArgumentCaptor.forClass(UploadSessionEntity.class);
+        verify(sessionRepository).save(saved.capture());
+        assertEquals(saved.getValue().getId(), result.getUploadId());
+        assertEquals("test.txt", result.getFilename());
+        assertEquals(20L, result.getSize());
+        assertTrue(result.getReceived().isEmpty());
+        assertEquals(testUser, saved.getValue().getUser());
+        assertTrue(saved.getValue().getExpiresAt().isAfter(saved.getValue().getCreatedAt()));
+        verify(quotaService).checkAvailable(testUser, 20L);
+    }
+
+    @Test
+    void initiateShouldRejectTakenFilename() {
+        // Given
+        when(fileRepository.existsByFilenameAndUser("test.txt", testUser)).thenReturn(true);
+
+        // When & Then
+        assertThrows(FileStorageException.class, () -> chunkedUploadService.initiate("test.txt", 20L));
+        verify(sessionRepository, never()).save(any());
+    }
+
+    @Test
+    void initiateShouldRejectSizeBeyondTheQuota() {
+        // Given
+        doThrow(new QuotaExceededException("Storage quota exceeded"))
+                .when(quotaService).checkAvailable(testUser, 20L);
+
+        // When & Then
+        assertThrows(QuotaExceededException.class, () -> chunkedUploadService.initiate("test.txt", 20L));
+        verify(sessionRepository, never()).save(any());
+    }
+
+    @Test
+    void initiateShouldRejectSizeAboveTheLimit() {
+        // When & Then
+        assertThrows(FileStorageException.class, () -> chunkedUploadService.initiate("test.txt", 2048L));
+        assertThrows(FileStorageException.class, () -> chunkedUploadService.initiate("test.txt", 0L));
+        verify(sessionRepository, never()).save(any());
+    }
+
+    @Test
+    void writeChunkShouldRejectChunkOutsideOfTheFile() {
+        // When & Then
+        assertThrows(FileStorageException.class, () -> writeChunk(20, "x"));
+        assertThrows(FileStorageException.class, () -> writeChunk(-1, "x"));
+        assertTrue(chunks.isEmpty());
+    }
+
+    @Test
+    void writeChunkShouldRejectChunkLargerThanTheLimit() {
+        // When & Then
+        assertThrows(FileStorageException.class, () -> writeChunk(0, CONTENT.substring(0, 9)));
+        assertTrue(chunks.isEmpty());
+    }
+
+    @Test
+    void getSessionShouldMergeChunksReceivedOutOfOrder() {
+        // Given
+        writeChunk(16, CONTENT.substring(16));
+        writeChunk(0, CONTENT.substring(0, 8));
+        writeChunk(4, CONTENT.substring(4, 12));
+
+        // When
+        UploadSessionDto result = chunkedUploadService.getSession(UPLOAD_ID);
+
+        // Then
+        assertEquals(List.of(new ByteRangeDto(0L, 12L), new ByteRangeDto(16L, 4L)), result.getReceived());
+    }
+
+    @Test
+    void writeChunkShouldRecordRetransmittedChunkOnce() {
+        // When
+        writeChunk(0, CONTENT.substring(0, 8));
+        writeChunk(0, CONTENT.substring(0, 8));
+
+        // Then
+        assertEquals(1, chunks.size());
+    }
+
+    @Test
+    void commitShouldReassembleOutOfOrderAndOverlappingChunks() throws IOException {
+        // Given
+        writeChunk(12, CONTENT.substring(12));
+        writeChunk(4, CONTENT.substring(4, 12));
+        writeChunk(0, CONTENT.substring(0, 8));
+        writeChunk(6, CONTENT.substring(6, 10));
+        ContentDigest expected = new ContentDigest("sha256", null);
+
+        // When
+        StagedFile staged = chunkedUploadService.stage(UPLOAD_ID);
+        chunkedUploadService.commit(UPLOAD_ID, staged, expected);
+
+        // Then
+        assertEquals("test.txt", staged.getFilename());
+        assertEquals(CONTENT, Files.readString(staged.getPath()));
+        verify(fileStorageService).storeStagedFile(same(staged), same(expected));
+        verify(sessionRepository).delete(session);
+        verify(chunkRepository).deleteBySessionId(UPLOAD_ID);
+        assertTrue(blobStore.stat(".uploads/" + UPLOAD_ID + "/0-8").isEmpty());
+        assertTrue(blobStore.stat(".uploads/" + UPLOAD_ID + "/12-8").isEmpty());
+    }
+
+    @Test
+    void commitShouldFailWhenUploadIsIncomplete() throws IOException {
+        // Given
+        writeChunk(0, CONTENT.substring(0, 8));
+        writeChunk(12, CONTENT.substring(12));
+
+        // When
+        FileStorageException ex = assertThrows(FileStorageException.class,
+                () -> chunkedUploadService.stage(UPLOAD_ID));
+
+        // Then
+        assertEquals("Upload is incomplete: missing data at offset 8", ex.getMessage());
+        try (var staged = Files.list(uploadDir.resolve(".staging"))) {
+            assertEquals(0, staged.count());
+        }
+        verify(sessionRepository, never()).delete(any());
+    }
+
+    @Test
+    void commitShouldKeepSessionWhenContentDoesNotMatchTheDigest() {
+        // Given
+        writeChunk(0, CONTENT.substring(0, 8));
+        writeChunk(8, CONTENT.substring(8, 16));
+        writeChunk(16, CONTENT.substring(16));
+        ContentDigest expected = new ContentDigest("other", null);
+        StagedFile staged = chunkedUploadService.stage(UPLOAD_ID);
+        when(fileStorageService.storeStagedFile(same(staged), same(expected)))
+                .thenThrow(new BadRequestException("Content does not match the digest sent with it"));
+
+        // When & Then
+        assertThrows(BadRequestException.class, () -> chunkedUploadService.commit(UPLOAD_ID, staged, expected));
+        verify(sessionRepository, never()).delete(any());
+        assertTrue(blobStore.stat(".uploads/" + UPLOAD_ID + "/0-8").isPresent());
+    }
+
+    @Test
+    void commitShouldFailWhenUploadWasAbortedAfterStaging() {
+        // Given
+        writeChunk(0, CONTENT.substring(0, 8));
+        writeChunk(8, CONTENT.substring(8, 16));
+        writeChunk(16, CONTENT.substring(16));
+        StagedFile staged = chunkedUploadService.stage(UPLOAD_ID);
+        when(sessionRepository.findByIdAndUserForUpdate(UPLOAD_ID, testUser)).thenReturn(Optional.empty());
+
+        // When & Then
+        assertThrows(FileStorageException.class, () -> chunkedUploadService.commit(UPLOAD_ID, staged, null));
+        verify(fileStorageService, never()).storeStagedFile(any(), any());
+    }
+
+    @Test
+    void writeChunkShouldDeleteChunkOfAnUploadThatEndedMeanwhile() {
+        // Given
+        doReturn(0).when(chunkRepository).insertIfSessionExists(UPLOAD_ID, 0L, 8L);
+
+        // When & Then
+        assertThrows(FileStorageException.class, () -> writeChunk(0, CONTENT.substring(0, 8)));
+        assertTrue(blobStore.stat(".uploads/" + UPLOAD_ID + "/0-8").isEmpty());
+    }
+
+    @Test
+    void deleteOrphanedChunksShouldDeleteOnlyChunksOfMissingSessions() {
+        // Given
+        writeChunk(0, CONTENT.substring(0, 8));
+        blobStore.put(".uploads/gone/0-5", new ByteArrayInputStream("hello".getBytes(StandardCharsets.UTF_8)), 5);
+        when(sessionRepository.findExistingIds(Set.of(UPLOAD_ID, "gone"))).thenReturn(List.of(UPLOAD_ID));
+
+        // When
+        chunkedUploadService.deleteOrphanedChunks();
+
+        // Then
+        assertTrue(blobStore.stat(".uploads/gone/0-5").isEmpty());
+        assertTrue(blobStore.stat(".uploads/" + UPLOAD_ID + "/0-8").isPresent());
+    }
+
+    @Test
+    void abortShouldDeleteSessionAndChunks() {
+        // Given
+        writeChunk(0, CONTENT.substring(0, 8));
+
+        // When
+        chunkedUploadService.abort(UPLOAD_ID);
+
+        // Then
+        verify(chunkRepository).deleteBySessionId(UPLOAD_ID);
+        verify(sessionRepository).delete(session);
+        assertTrue(blobStore.stat(".uploads/" + UPLOAD_ID + "/0-8").isEmpty());
+    }
+
+    @Test
+    void abortShouldRejectUnknownUpload() {
+        // When & Then
+        assertThrows(FileStorageException.class, () -> chunkedUploadService.abort("unknown"));
+        verify(sessionRepository, never()).delete(any());
+    }
+
+    @Test
+    void deleteExpiredSessionsShouldDeleteSessionsPastTheirExpiry() {
+        // Given
+        writeChunk(0, CONTENT.substring(0, 8));
+        when(sessionRepository.findByExpiresAtBefore(any(LocalDateTime.class))).thenReturn(List.of(session));
+
+        // When
+        chunkedUploadService.deleteExpiredSessions();
+
+        // Then
+        verify(chunkRepository).deleteBySessionId(UPLOAD_ID);
+        verify(sessionRepository).delete(session);
+        assertTrue(blobStore.stat(".uploads/" + UPLOAD_ID + "/0-8").isEmpty());
+    }
+
+    private void writeChunk(long offset, String content) {
+        chunkedUploadService.writeChunk(UPLOAD_ID, offset,
+                new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+    }
+}
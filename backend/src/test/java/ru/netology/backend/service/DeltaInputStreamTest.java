@@ -0,0 +1,165 @@
+package ru.netology.backend.service;
+
+import org.junit.jupiter.api.Test;
+import ru.netology.backend.exception.BadRequestException;
+import ru.netology.backend.web.BlockSignatures;
+import ru.netology.backend.web.RollingChecksum;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeltaInputStreamTest {
+
+    private static final int BLOCK_SIZE = 2048;
+
+    private final byte[] base = "2024-01-01,INFO,request served in 12 ms\n".repeat(5000)
+            .getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void shouldRebuildEditedContentFromADeltaAgainstItsSignatures() throws Exception {
+        // Given
+        byte[] edited = new byte[base.length + 100];
+        System.arraycopy(base, 0, edited, 0, 50_000);
+        Arrays.fill(edited, 50_000, 50_100, (byte) 'x');
+        System.arraycopy(base, 50_000, edited, 50_100, base.length - 50_000);
+        edited[150_000] = '!';
+
+        ByteArrayOutputStream signatures = new ByteArrayOutputStream();
+        BlockSignatures.write(new ByteArrayInputStream(base), BLOCK_SIZE, base.length, signatures);
+        byte[] delta = delta(signatures.toByteArray(), edited);
+
+        // When
+        byte[] rebuilt;
+        try (InputStream in = new DeltaInputStream(new ByteArrayInputStream(delta), this::openBase, base.length)) {
+            rebuilt = in.readAllBytes();
+        }
+
+        // Then
+        assertArrayEquals(edited, rebuilt);
+        assertTrue(delta.length < 5 * BLOCK_SIZE, "delta of " + delta.length + " bytes");
+    }
+
+    @Test
+    void shouldCopyTheShortLastBlockAndRejectDeltasThatAreCutOffOrOutOfRange() throws IOException {
+        // Given
+        long lastBlock = base.length / BLOCK_SIZE;
+        byte[] tail = command(out -> {
+            out.write(DeltaInputStream.COPY);
+            out.writeInt((int) lastBlock);
+            out.writeInt(1);
+            out.write(DeltaInputStream.END);
+        });
+        byte[] cutOff = command(out -> {
+            out.write(DeltaInputStream.LITERAL);
+            out.writeInt(10);
+            out.write(new byte[5]);
+        });
+        byte[] outOfRange = command(out -> {
+            out.write(DeltaInputStream.COPY);
+            out.writeInt((int) lastBlock + 1);
+            out.writeInt(1);
+        });
+
+        // When & Then
+        assertArrayEquals(Arrays.copyOfRange(base, (int) (lastBlock * BLOCK_SIZE), base.length), rebuild(tail));
+        assertThrows(BadRequestException.class, () -> rebuild(cutOff));
+        assertThrows(BadRequestException.class, () -> rebuild(outOfRange));
+        assertThrows(BadRequestException.class, () -> rebuild(command(out -> { })));
+    }
+
+    private InputStream openBase(long offset, long length) {
+        return new ByteArrayInputStream(base, (int) offset, (int) length);
+    }
+
+    private byte[] rebuild(byte[] delta) throws IOException {
+        try (InputStream in = new DeltaInputStream(new ByteArrayInputStream(delta), this::openBase, base.length)) {
+            return in.readAllBytes();
+        }
+    }
+
+    private interface Commands {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private static byte[] command(Commands commands) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(DeltaInputStream.MAGIC);
+        out.writeInt(BLOCK_SIZE);
+        commands.write(out);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * A client's side of the protocol: full blocks of the old content are looked up at
+     * every offset of the new one by their rolling checksum, then by their SHA-256.
+     */
+    private static byte[] delta(byte[] signatures, byte[] content) throws Exception {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(signatures));
+        in.readInt();
+        int blockSize = in.readInt();
+        long fullBlocks = in.readLong() / blockSize;
+        Map<Integer, Integer> blocks = new HashMap<>();
+        Map<Integer, byte[]> strong = new HashMap<>();
+        for (int i = 0; i < fullBlocks; i++) {
+            blocks.putIfAbsent(in.readInt(), i);
+            strong.put(i, in.readNBytes(BlockSignatures.STRONG_LENGTH));
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(DeltaInputStream.MAGIC);
+        out.writeInt(blockSize);
+
+        RollingChecksum rolling = new RollingChecksum();
+        rolling.update(content, 0, blockSize);
+        int position = 0;
+        int literalStart = 0;
+        while (position + blockSize <= content.length) {
+            Integer block = blocks.get(rolling.getValue());
+            if (block != null && Arrays.equals(strong.get(block), sha256Prefix(content, position, blockSize))) {
+                literal(out, content, literalStart, position);
+                out.write(DeltaInputStream.COPY);
+                out.writeInt(block);
+                out.writeInt(1);
+                position += blockSize;
+                literalStart = position;
+                rolling.reset();
+                rolling.update(content, position, Math.min(blockSize, content.length - position));
+            } else {
+                if (position + blockSize < content.length) {
+                    rolling.roll(content[position], content[position + blockSize]);
+                }
+                position++;
+            }
+        }
+        literal(out, content, literalStart, content.length);
+        out.write(DeltaInputStream.END);
+        return bytes.toByteArray();
+    }
+
+    private static void literal(DataOutputStream out, byte[] content, int from, int to) throws IOException {
+        if (to > from) {
+            out.write(DeltaInputStream.LITERAL);
+            out.writeInt(to - from);
+            out.write(content, from, to - from);
+        }
+    }
+
+    private static byte[] sha256Prefix(byte[] content, int offset, int length) throws Exception {
+        MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+        sha256.update(content, offset, length);
+        return Arrays.copyOf(sha256.digest(), BlockSignatures.STRONG_LENGTH);
+    }
+}
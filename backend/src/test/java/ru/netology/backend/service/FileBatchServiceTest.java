@@ -0,0 +1,171 @@
+package ru.netology.backend.service;
+
+import ru.netology.backend.exception.BadRequestException;
+import ru.netology.backend.model.dto.BatchRenameDto;
+import ru.netology.backend.model.dto.BatchResultDto;
+import ru.netology.backend.model.entity.BlobEntity;
+import ru.netology.backend.model.entity.FileEntity;
+import ru.netology.backend.model.entity.UserEntity;
+import ru.netology.backend.repository.BlobRepository;
+import ru.netology.backend.repository.FileRepository;
+import ru.netology.backend.repository.FileVersionRepository;
+import ru.netology.backend.storage.LocalBlobStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class FileBatchServiceTest {
+
+    @Mock
+    private FileRepository fileRepository;
+
+    @Mock
+    private UserService userService;
+
+    @Mock
+    private BlobRepository blobRepository;
+
+    @Mock
+    private FileVersionRepository fileVersionRepository;
+
+    @Mock
+    private QuotaService quotaService;
+
+    @TempDir
+    Path storageLocation;
+
+    private FileBatchServiceImpl fileBatchService;
+    private UserEntity testUser;
+
+    @BeforeEach
+    void setUp() {
+        testUser = new UserEntity();
+        testUser.setId(1L);
+        testUser.setLogin("testuser");
+
+        LocalBlobStore blobStore = new LocalBlobStore(storageLocation);
+        BlobService blobService = new BlobService(storageLocation.toString(), blobRepository, blobStore,
+                new BlobCompressor(blobStore, "auto", DataSize.ofKilobytes(4), 10, 1000), new SimpleMeterRegistry(), ObservationRegistry.NOOP);
+        fileBatchService = new FileBatchServiceImpl(
+                DataSize.ofMegabytes(1), 3, fileRepository, userService, blobService,
+                new FileVersionServiceImpl(fileRepository, fileVersionRepository, userService, blobService, quotaService),
+                fileVersionRepository, quotaService);
+
+        lenient().when(userService.getCurrentUser()).thenReturn(testUser);
+        lenient().when(quotaService.getAvailable(testUser)).thenReturn(Long.MAX_VALUE);
+    }
+
+    @Test
+    void storeFilesShouldInsertValidFilesInOneBatchAndReportTheRest() {
+        // Given
+        List<MultipartFile> files = List.of(
+                new MockMultipartFile("file", "a.txt", "text/plain", "first".getBytes()),
+                new MockMultipartFile("file", "taken.txt", "text/plain", "second".getBytes()),
+                new MockMultipartFile("file", "a.txt", "text/plain", "third".getBytes()));
+        when(fileRepository.findExistingFilenames(eq(testUser), anyCollection())).thenReturn(List.of("taken.txt"));
+
+        // When
+        BatchResultDto result = fileBatchService.storeStagedFiles(fileBatchService.stageFiles(files));
+
+        // Then
+        assertEquals(1, result.getSucceeded());
+        assertEquals(2, result.getFailed());
+        assertEquals(List.of(200, 409, 409), result.getResults().stream().map(BatchResultDto.Item::getStatus).toList());
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<FileEntity>> inserted = ArgumentCaptor.forClass(List.class);
+        verify(fileRepository).insertAll(inserted.capture());
+        verify(fileRepository, never()).save(any(FileEntity.class));
+        assertEquals(1, inserted.getValue().size());
+        assertEquals("a.txt", inserted.getValue().get(0).getFilename());
+    }
+
+    @Test
+    void deleteFilesShouldReleaseBlobsAndDeleteRowsWithOneStatementEach() throws IOException {
+        // Given
+        FileEntity first = file(1L, "a.txt", "shared");
+        FileEntity second = file(2L, "b.txt", "shared");
+        Files.writeString(storageLocation.resolve("shared"), "content");
+        when(fileRepository.findAllByUserAndFilenameIn(eq(testUser), anyCollection())).thenReturn(List.of(first, second));
+        BlobEntity blob = new BlobEntity("shared", 7L, 2, LocalDateTime.now(), null, null, null, LocalDateTime.now(), null);
+        when(blobRepository.findAllForUpdate(Set.of("shared"))).thenReturn(List.of(blob));
+
+        // When
+        BatchResultDto result = fileBatchService.deleteFiles(Arrays.asList("a.txt", "missing.txt", "b.txt"));
+
+        // Then
+        assertEquals(List.of(200, 404, 200), result.getResults().stream().map(BatchResultDto.Item::getStatus).toList());
+        assertEquals(0, blob.getRefCount());
+        assertNotNull(blob.getDeletedAt(), "Unreferenced blob should become a tombstone");
+        verify(fileRepository).deleteAllByIdInBatch(argThatContainsExactly(1L, 2L));
+        verify(quotaService).recordChange(testUser, -14L);
+        assertTrue(Files.exists(storageLocation.resolve("shared")), "Content is left to the collector");
+    }
+
+    @Test
+    void renameFilesShouldRefuseTakenAndConflictingNames() {
+        // Given
+        FileEntity first = file(1L, "a.txt", "key-a");
+        FileEntity second = file(2L, "b.txt", "key-b");
+        when(fileRepository.findAllByUserAndFilenameIn(eq(testUser), anyCollection())).thenReturn(List.of(first, second));
+        when(fileRepository.findExistingFilenames(eq(testUser), anyCollection())).thenReturn(List.of("b.txt"));
+
+        // When
+        BatchResultDto result = fileBatchService.renameFiles(List.of(
+                new BatchRenameDto.Item("a.txt", "renamed.txt"),
+                new BatchRenameDto.Item("c.txt", "renamed.txt"),
+                new BatchRenameDto.Item("b.txt", "../escape.txt")));
+
+        // Then
+        assertEquals(List.of(200, 409, 400), result.getResults().stream().map(BatchResultDto.Item::getStatus).toList());
+        assertEquals("renamed.txt", first.getFilename());
+        assertEquals("b.txt", second.getFilename());
+        verify(fileRepository).saveAll(List.of(first));
+    }
+
+    @Test
+    void batchesShouldBeBoundedInSize() {
+        assertThrows(BadRequestException.class, () -> fileBatchService.deleteFiles(Collections.emptyList()));
+        assertThrows(BadRequestException.class, () ->
+                fileBatchService.deleteFiles(List.of("a.txt", "b.txt", "c.txt", "d.txt")));
+        MultipartFile file = new MockMultipartFile("file", "a.txt", "text/plain", "first".getBytes());
+        assertThrows(BadRequestException.class, () ->
+                fileBatchService.stageFiles(List.of(file, file, file, file)));
+    }
+
+    private FileEntity file(Long id, String filename, String storageKey) {
+        FileEntity fileEntity = new FileEntity(id, filename, storageKey, 7L, testUser);
+        fileEntity.setCreatedAt(LocalDateTime.now());
+        return fileEntity;
+    }
+
+    private static List<Long> argThatContainsExactly(Long... ids) {
+        return argThat(actual -> actual != null && Set.copyOf(actual).equals(Set.of(ids)) && actual.size() == ids.length);
+    }
+}
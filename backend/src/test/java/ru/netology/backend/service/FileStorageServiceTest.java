@@ -1,34 +1,56 @@
 package ru.netology.backend.service;
 
+import ru.netology.backend.exception.BadRequestException;
 import ru.netology.backend.exception.FileStorageException;
+import ru.netology.backend.exception.PreconditionFailedException;
+import ru.netology.backend.exception.QuotaExceededException;
 import ru.netology.backend.model.dto.FileDto;
+import ru.netology.backend.model.dto.FileListItem;
 import ru.netology.backend.model.entity.FileEntity;
+import ru.netology.backend.model.entity.FileVersionEntity;
 import ru.netology.backend.model.entity.UserEntity;
+import ru.netology.backend.repository.BlobRepository;
 import ru.netology.backend.repository.FileRepository;
+import ru.netology.backend.repository.FileSort;
+import ru.netology.backend.repository.FileVersionRepository;
+import ru.netology.backend.storage.BlobCodec;
+import ru.netology.backend.storage.LocalBlobStore;
+import ru.netology.backend.web.ContentDigest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.core.io.Resource;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Limit;
 import org.springframework.mock.web.MockMultipartFile;
-import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -40,7 +62,15 @@ class FileStorageServiceTest {
     @Mock
     private UserService userService;
 
-    @InjectMocks
+    @Mock
+    private BlobRepository blobRepository;
+
+    @Mock
+    private FileVersionRepository fileVersionRepository;
+
+    @Mock
+    private QuotaService quotaService;
+
     private FileStorageServiceImpl fileStorageService;
 
     private UserEntity testUser;
@@ -62,7 +92,13 @@ class FileStorageServiceTest {
 
         // Create temporary directory for tests
         testStorageLocation = Files.createTempDirectory("test-uploads");
-        ReflectionTestUtils.setField(fileStorageService, "fileStorageLocation", testStorageLocation);
+        LocalBlobStore blobStore = new LocalBlobStore(testStorageLocation);
+        BlobService blobService = new BlobService(testStorageLocation.toString(), blobRepository, blobStore,
+                new BlobCompressor(blobStore, "auto", DataSize.ofKilobytes(4), 10, 1000), new SimpleMeterRegistry(), ObservationRegistry.NOOP);
+        fileStorageService = new FileStorageServiceImpl(
+                DataSize.ofMegabytes(1), 1000, 500, 3, fileRepository, fileVersionRepository, userService, blobService,
+                new FileVersionServiceImpl(fileRepository, fileVersionRepository, userService, blobService, quotaService),
+                quotaService, ObservationRegistry.NOOP);
 
         when(userService.getCurrentUser()).thenReturn(testUser);
     }
@@ -71,15 +107,16 @@ class FileStorageServiceTest {
     void getFilesListShouldReturnFilesList() {
         // Given
         Integer limit = 10;
-        Pageable pageable = PageRequest.of(0, limit);
 
-        FileEntity file1 = new FileEntity(1L, "file1.txt", "uuid1", 100L, testUser);
-        FileEntity file2 = new FileEntity(2L, "file2.txt", "uuid2", 200L, testUser);
+        FileListItem file1 = new FileListItem(1L, "file1.txt", 100L, LocalDateTime.now());
+        FileListItem file2 = new FileListItem(2L, "file2.txt", 200L, LocalDateTime.now());
 
-        when(fileRepository.findByUser(testUser, pageable)).thenReturn(Arrays.asList(file1, file2));
+        when(fileRepository.findPage(testUser.getId(), FileSort.NAME, false, null, limit + 1))
+                .thenReturn(Arrays.asList(file1, file2));
 
         // When
-        List<FileDto> result = fileStorageService.getFilesList(limit);
+        FilePage page = fileStorageService.getFilesList(limit, null, null, null);
+        List<FileDto> result = page.getFiles();
 
         // Then
         assertEquals(2, result.size());
@@ -87,6 +124,73 @@ class FileStorageServiceTest {
         assertEquals(100L, result.get(0).getSize());
         assertEquals("file2.txt", result.get(1).getFilename());
         assertEquals(200L, result.get(1).getSize());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void getFilesListWithoutLimitShouldReturnTheWholeListing() {
+        // Given
+        List<FileListItem> items = LongStream.rangeClosed(1, 1001)
+                .mapToObj(id -> new FileListItem(id, "file" + id + ".txt", id, LocalDateTime.now()))
+                .toList();
+        when(fileRepository.findPage(testUser.getId(), FileSort.NAME, false, null, Integer.MAX_VALUE))
+                .thenReturn(items);
+
+        // When
+        FilePage page = fileStorageService.getFilesList(null, null, null, null);
+
+        // Then
+        assertEquals(1001, page.getFiles().size());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void getFilesListShouldContinueAfterCursor() {
+        // Given
+        FileListItem file1 = new FileListItem(7L, "a.txt", 300L, LocalDateTime.now());
+        FileListItem file2 = new FileListItem(3L, "b.txt", 200L, LocalDateTime.now());
+        FileListItem file3 = new FileListItem(5L, "c.txt", 100L, LocalDateTime.now());
+
+        when(fileRepository.findPage(testUser.getId(), FileSort.SIZE, true, null, 3))
+                .thenReturn(Arrays.asList(file1, file2, file3));
+
+        // When
+        FilePage firstPage = fileStorageService.getFilesList(2, "size", "desc", null);
+        fileStorageService.getFilesList(2, "size", "desc", firstPage.getNextCursor());
+
+        // Then
+        assertEquals(2, firstPage.getFiles().size());
+        assertNotNull(firstPage.getNextCursor());
+        verify(fileRepository).findPage(eq(testUser.getId()), eq(FileSort.SIZE), eq(true),
+                argThat(after -> after != null && after.getId() == 3L && after.getSize() == 200L), eq(3));
+    }
+
+    @Test
+    void getFilesListShouldRejectCursorOfAnotherSortOrder() {
+        // Given
+        FileListItem file1 = new FileListItem(1L, "a.txt", 100L, LocalDateTime.now());
+        FileListItem file2 = new FileListItem(2L, "b.txt", 200L, LocalDateTime.now());
+        when(fileRepository.findPage(testUser.getId(), FileSort.NAME, false, null, 2))
+                .thenReturn(Arrays.asList(file1, file2));
+        String cursor = fileStorageService.getFilesList(1, "name", "asc", null).getNextCursor();
+
+        // When & Then
+        assertThrows(BadRequestException.class, () ->
+                fileStorageService.getFilesList(1, "date", "asc", cursor));
+    }
+
+    @Test
+    void streamFilesListShouldPassEveryFileToConsumer() {
+        // Given
+        when(fileRepository.streamAll(testUser.getId(), FileSort.DATE, true, 500))
+                .thenReturn(Stream.of(new FileDto("new.txt", 1L), new FileDto("old.txt", 2L)));
+        List<FileDto> received = new ArrayList<>();
+
+        // When
+        fileStorageService.streamFilesList("date", "desc", received::add);
+
+        // Then
+        assertEquals(List.of(new FileDto("new.txt", 1L), new FileDto("old.txt", 2L)), received);
     }
 
     @Test
@@ -103,7 +207,8 @@ class FileStorageServiceTest {
         when(fileRepository.save(any(FileEntity.class))).thenReturn(testFile);
 
         // When
-        FileEntity result = fileStorageService.storeFile(multipartFile, "test.txt");
+        FileEntity result = fileStorageService.storeStagedFile(
+                fileStorageService.stageFile(multipartFile, "test.txt"), null);
 
         // Then
         assertNotNull(result);
@@ -111,6 +216,118 @@ class FileStorageServiceTest {
         verify(fileRepository).save(any(FileEntity.class));
     }
 
+    @Test
+    void storeFileShouldNotSaveFileBeyondTheQuota() {
+        // Given
+        when(fileRepository.existsByFilenameAndUser(anyString(), any(UserEntity.class))).thenReturn(false);
+        doThrow(new QuotaExceededException("Storage quota exceeded"))
+                .when(quotaService).checkAvailable(testUser, 12L);
+
+        // When & Then
+        assertThrows(QuotaExceededException.class, () -> fileStorageService.storeFile(
+                new ByteArrayInputStream("test content".getBytes()), "test.txt"));
+        verify(fileRepository, never()).save(any());
+        verify(quotaService, never()).recordChange(any(), anyLong());
+    }
+
+    @Test
+    void compressibleContentShouldBeStoredCompressedAndReadBackByRange() throws IOException {
+        // Given
+        String content = "timestamp,level,message\n".repeat(20_000);
+        when(fileRepository.existsByFilenameAndUser(anyString(), any(UserEntity.class))).thenReturn(false);
+        when(fileRepository.save(any(FileEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // When
+        FileEntity saved = fileStorageService.storeFile(
+                new ByteArrayInputStream(content.getBytes()), "log.csv");
+        when(fileRepository.findByFilenameAndUser("log.csv", testUser)).thenReturn(Optional.of(saved));
+        StoredFile storedFile = fileStorageService.loadStoredFile("log.csv");
+
+        // Then
+        assertEquals(BlobCodec.ZSTD, saved.getCodec());
+        assertEquals(content.length(), storedFile.getSize());
+        assertTrue(storedFile.getEncoded().getSize() < content.length() / 10);
+        try (InputStream in = storedFile.openRange(300_000, 24)) {
+            assertEquals(content.substring(300_000, 300_024), new String(in.readAllBytes()));
+        }
+    }
+
+    @Test
+    void storeFileShouldRejectContentThatDoesNotMatchTheDigestSentWithIt() {
+        // Given
+        when(fileRepository.existsByFilenameAndUser("test.txt", testUser)).thenReturn(false);
+        ContentDigest expected = new ContentDigest(null, 0L);
+
+        // When & Then
+        assertThrows(BadRequestException.class, () -> fileStorageService.storeFile(
+                new ByteArrayInputStream("test content".getBytes()), "test.txt", expected));
+        verify(fileRepository, never()).save(any(FileEntity.class));
+        verify(blobRepository, never()).acquire(anyString(), anyLong(), anyLong());
+    }
+
+    @Test
+    void storeExistingFileShouldOnlyShareContentTheUserAlreadyHas() {
+        // Given
+        String sha256 = "a".repeat(64);
+        when(fileRepository.existsByFilenameAndUser(anyString(), eq(testUser))).thenReturn(false);
+        when(fileRepository.existsByStorageFilenameAndUser(sha256, testUser)).thenReturn(false);
+
+        // When
+        Optional<FileEntity> result = fileStorageService.storeExistingFile(sha256, "copy.txt");
+
+        // Then
+        assertTrue(result.isEmpty());
+        verifyNoInteractions(blobRepository);
+        verify(fileRepository, never()).save(any(FileEntity.class));
+    }
+
+    @Test
+    void replaceFileContentShouldFailIfTheFileChangedMeanwhile() throws IOException {
+        // Given
+        Path stagingFile = Files.writeString(testStorageLocation.resolve("staged"), "new content");
+        StagedFile staged = new StagedFile("test.txt", stagingFile, "b".repeat(64), 1L, 11L);
+        testFile.setStorageFilename("a".repeat(64));
+        testFile.setVersion(3);
+        when(fileRepository.findByFilenameAndUser("test.txt", testUser)).thenReturn(Optional.of(testFile));
+        when(fileRepository.replaceContent(eq(1L), eq(3), eq("b".repeat(64)), eq(11L), eq(1L), any(), any()))
+                .thenReturn(0);
+
+        // When & Then
+        assertThrows(PreconditionFailedException.class, () ->
+                fileStorageService.replaceFileContent("test.txt", "a".repeat(64), staged, null));
+        assertThrows(PreconditionFailedException.class, () ->
+                fileStorageService.replaceFileContent("test.txt", "c".repeat(64), staged, null));
+        verify(blobRepository).acquire("b".repeat(64), 11L, 1L);
+    }
+
+    @Test
+    void storeFileShouldKeepTheReplacedContentOfAVersionedFile() {
+        // Given
+        testFile.setStorageFilename("a".repeat(64));
+        testFile.setVersion(2);
+        testFile.setVersioned(true);
+        when(fileRepository.existsByFilenameAndUser("test.txt", testUser)).thenReturn(true);
+        when(fileRepository.findByFilenameAndUser("test.txt", testUser)).thenReturn(Optional.of(testFile));
+        when(fileRepository.replaceContent(eq(1L), eq(2), anyString(), eq(11L), any(), any(), any()))
+                .thenReturn(1);
+
+        // When
+        FileEntity result = fileStorageService.storeFile(
+                new ByteArrayInputStream("new content".getBytes(StandardCharsets.UTF_8)), "test.txt");
+
+        // Then
+        ArgumentCaptor<FileVersionEntity> captor = ArgumentCaptor.forClass(FileVersionEntity.class);
+        verify(fileVersionRepository).saveAndFlush(captor.capture());
+        assertEquals(2, captor.getValue().getVersion());
+        assertEquals("a".repeat(64), captor.getValue().getStorageKey());
+        assertEquals(3, result.getVersion());
+        verify(blobRepository, never()).release(anyString());
+        verify(fileRepository, never()).save(any(FileEntity.class));
+        // The kept content still counts, so the new content adds all of its size
+        verify(quotaService).checkAvailable(testUser, 11L);
+        verify(quotaService).recordChange(testUser, 11L);
+    }
+
     @Test
     void storeFileShouldThrowExceptionIfFileExists() {
         // Given
@@ -125,14 +342,54 @@ class FileStorageServiceTest {
 
         // When & Then
         assertThrows(FileStorageException.class, () ->
-                fileStorageService.storeFile(multipartFile, "test.txt")
+                fileStorageService.storeStagedFile(fileStorageService.stageFile(multipartFile, "test.txt"), null)
         );
 
         verify(fileRepository, never()).save(any(FileEntity.class));
     }
 
     @Test
-    void deleteFileShouldRemoveFile() throws IOException {
+    void loadArchiveEntriesShouldKeepRequestOrderAndOpenContentOnlyWhenRead() throws IOException {
+        // Given
+        FileEntity first = archivedFile("b.txt", "key-b", "second");
+        FileEntity second = archivedFile("a.txt", "key-a", "first");
+        when(fileRepository.findAllByUserAndFilenameIn(eq(testUser), any())).thenReturn(List.of(second, first));
+
+        // When
+        List<ArchiveEntry> entries = fileStorageService.loadArchiveEntries(List.of("b.txt", "a.txt", "b.txt"), null);
+
+        // Then
+        assertEquals(List.of("b.txt", "a.txt"), entries.stream().map(ArchiveEntry::getFilename).toList());
+        Files.delete(testStorageLocation.resolve("key-a"));
+        try (InputStream content = entries.get(0).open()) {
+            assertEquals("second", new String(content.readAllBytes()));
+        }
+        assertThrows(FileStorageException.class, () -> entries.get(1).open().close());
+    }
+
+    @Test
+    void loadArchiveEntriesShouldFailOnMissingFile() {
+        // Given
+        when(fileRepository.findAllByUserAndFilenameIn(eq(testUser), any())).thenReturn(List.of());
+
+        // When & Then
+        assertThrows(FileStorageException.class, () ->
+                fileStorageService.loadArchiveEntries(List.of("missing.txt"), null));
+    }
+
+    @Test
+    void loadArchiveEntriesShouldMatchPrefixLiterallyAndRefuseTooManyFiles() {
+        // Given
+        List<FileEntity> files = List.of(testFile, testFile, testFile, testFile);
+        when(fileRepository.findAllByUserAndFilenameLike(testUser, "50\\%\\_off/%", Limit.of(4))).thenReturn(files);
+
+        // When & Then
+        assertThrows(BadRequestException.class, () ->
+                fileStorageService.loadArchiveEntries(null, "50%_off/"));
+    }
+
+    @Test
+    void deleteFileShouldRemoveMetadataAndLeaveContentToCollector() throws IOException {
         // Given
         String filename = "test.txt";
 
@@ -147,7 +404,22 @@ class FileStorageServiceTest {
 
         // Then
         verify(fileRepository).delete(testFile);
-        assertFalse(Files.exists(testFilePath), "File should be deleted from disk");
+        verify(blobRepository).tombstoneLegacy(List.of(testFile.getStorageFilename()));
+        assertTrue(Files.exists(testFilePath), "File should stay on disk until the collector deletes it");
+    }
+
+    @Test
+    void deleteFileShouldReturnTheSizeOfTheFileAndItsVersions() {
+        // Given
+        when(fileRepository.findByFilenameAndUser("test.txt", testUser)).thenReturn(Optional.of(testFile));
+        when(fileVersionRepository.findStorageKeysByFileIdIn(List.of(1L))).thenReturn(List.of("a".repeat(64)));
+        when(fileVersionRepository.sumSizeByFileIdIn(List.of(1L))).thenReturn(40L);
+
+        // When
+        fileStorageService.deleteFile("test.txt");
+
+        // Then
+        verify(quotaService).recordChange(testUser, -140L);
     }
 
     @Test
@@ -198,4 +470,15 @@ class FileStorageServiceTest {
 
         verify(fileRepository, never()).save(any(FileEntity.class));
     }
-}
\ No newline at end of file
+
+    private FileEntity archivedFile(String filename, String storageKey, String content) throws IOException {
+        Files.writeString(testStorageLocation.resolve(storageKey), content);
+        FileEntity fileEntity = new FileEntity();
+        fileEntity.setFilename(filename);
+        fileEntity.setStorageFilename(storageKey);
+        fileEntity.setSize((long) content.length());
+        fileEntity.setCreatedAt(LocalDateTime.now());
+        fileEntity.setUser(testUser);
+        return fileEntity;
+    }
+}
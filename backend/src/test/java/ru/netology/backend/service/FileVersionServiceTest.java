@@ -0,0 +1,156 @@
+package ru.netology.backend.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import ru.netology.backend.exception.PreconditionFailedException;
+import ru.netology.backend.model.dto.FileVersionDto;
+import ru.netology.backend.model.entity.FileEntity;
+import ru.netology.backend.model.entity.FileVersionEntity;
+import ru.netology.backend.model.entity.UserEntity;
+import ru.netology.backend.repository.FileRepository;
+import ru.netology.backend.repository.FileVersionRepository;
+import ru.netology.backend.storage.BlobCodec;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class FileVersionServiceTest {
+
+    @Mock
+    private FileRepository fileRepository;
+
+    @Mock
+    private FileVersionRepository fileVersionRepository;
+
+    @Mock
+    private UserService userService;
+
+    @Mock
+    private BlobService blobService;
+
+    @Mock
+    private QuotaService quotaService;
+
+    private FileVersionServiceImpl fileVersionService;
+    private UserEntity testUser;
+    private FileEntity testFile;
+
+    @BeforeEach
+    void setUp() {
+        testUser = new UserEntity();
+        testUser.setId(1L);
+
+        testFile = new FileEntity();
+        testFile.setId(1L);
+        testFile.setFilename("report.pdf");
+        testFile.setStorageFilename("c".repeat(64));
+        testFile.setSize(30L);
+        testFile.setCreatedAt(LocalDateTime.now());
+        testFile.setVersion(3);
+        testFile.setVersioned(true);
+        testFile.setUser(testUser);
+
+        fileVersionService = new FileVersionServiceImpl(
+                fileRepository, fileVersionRepository, userService, blobService, quotaService);
+        lenient().when(userService.getCurrentUser()).thenReturn(testUser);
+        lenient().when(fileRepository.findByFilenameAndUser("report.pdf", testUser)).thenReturn(Optional.of(testFile));
+    }
+
+    @Test
+    void restoreVersionShouldShareTheOldBlobAndKeepTheCurrentContent() {
+        // Given
+        FileVersionEntity first = version(1, "a".repeat(64));
+        when(fileVersionRepository.findByFileAndVersion(testFile, 1)).thenReturn(Optional.of(first));
+        when(blobService.acquireExisting("a".repeat(64)))
+                .thenReturn(Optional.of(new StoredBlob("a".repeat(64), 10L, BlobCodec.NONE, 7L)));
+        when(fileRepository.replaceContent(eq(1L), eq(3), eq("a".repeat(64)), eq(10L), eq(7L), eq(BlobCodec.NONE), any()))
+                .thenReturn(1);
+
+        // When
+        fileVersionService.restoreVersion("report.pdf", 1);
+
+        // Then
+        verify(fileVersionRepository).saveAndFlush(argThat(saved ->
+                saved.getVersion() == 3 && saved.getStorageKey().equals("c".repeat(64))));
+        verify(blobService, never()).release(anyString());
+        assertEquals(4, testFile.getVersion());
+        // Both contents are kept now, so the restored one counts in full
+        verify(quotaService).checkAvailable(testUser, 10L);
+        verify(quotaService).recordChange(testUser, 10L);
+    }
+
+    @Test
+    void replaceContentShouldCountOnlyTheDifferenceWhenNoVersionIsKept() {
+        // Given
+        testFile.setVersioned(false);
+        when(fileRepository.replaceContent(eq(1L), eq(3), eq("d".repeat(64)), eq(5L), eq(1L), eq(BlobCodec.NONE), any()))
+                .thenReturn(1);
+
+        // When
+        fileVersionService.replaceContent(testFile, new StoredBlob("d".repeat(64), 5L, BlobCodec.NONE, 1L));
+
+        // Then
+        verify(blobService).release("c".repeat(64));
+        verify(fileVersionRepository, never()).saveAndFlush(any());
+        verify(quotaService).recordChange(testUser, -25L);
+    }
+
+    @Test
+    void replaceContentShouldFailWhenAnotherRequestKeptTheSameVersion() {
+        // Given
+        when(fileVersionRepository.saveAndFlush(any())).thenThrow(new DataIntegrityViolationException("duplicate"));
+
+        // When & Then
+        assertThrows(PreconditionFailedException.class, () -> fileVersionService.replaceContent(
+                testFile, new StoredBlob("d".repeat(64), 5L, BlobCodec.NONE, 1L)));
+        verify(fileRepository, never()).replaceContent(any(), anyInt(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void getVersionsShouldListTheCurrentContentFirst() {
+        // Given
+        when(fileVersionRepository.findAllByFile(testFile))
+                .thenReturn(List.of(version(2, "b".repeat(64)), version(1, "a".repeat(64))));
+
+        // When
+        List<FileVersionDto> versions = fileVersionService.getVersions("report.pdf");
+
+        // Then
+        assertEquals(List.of(3, 2, 1), versions.stream().map(FileVersionDto::getVersion).toList());
+        assertTrue(versions.get(0).isCurrent());
+        assertFalse(versions.get(1).isCurrent());
+    }
+
+    @Test
+    void pruneVersionsShouldReleaseTheirBlobs() {
+        // Given
+        List<FileVersionEntity> expired = List.of(version(1, "a".repeat(64)), version(2, "a".repeat(64)));
+        when(fileVersionRepository.findExpiredForUpdate(any(), eq(10), eq(500))).thenReturn(expired);
+        when(fileRepository.findAllById(Set.of(1L))).thenReturn(List.of(testFile));
+
+        // When
+        int pruned = fileVersionService.pruneVersions(LocalDateTime.now(), 10, 500);
+
+        // Then
+        assertEquals(2, pruned);
+        verify(blobService).releaseAll(List.of("a".repeat(64), "a".repeat(64)));
+        verify(fileVersionRepository).deleteAllInBatch(expired);
+        verify(quotaService).recordChange(testUser, -20L);
+    }
+
+    private FileVersionEntity version(int version, String storageKey) {
+        return new FileVersionEntity(null, testFile, version, storageKey, 10L, storageKey, 7L, BlobCodec.NONE,
+                LocalDateTime.now(), LocalDateTime.now());
+    }
+}
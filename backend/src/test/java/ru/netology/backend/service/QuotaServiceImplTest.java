@@ -0,0 +1,161 @@
+package ru.netology.backend.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.unit.DataSize;
+import ru.netology.backend.exception.QuotaExceededException;
+import ru.netology.backend.model.dto.UsageDto;
+import ru.netology.backend.model.entity.UserEntity;
+import ru.netology.backend.model.entity.UserUsageEntity;
+import ru.netology.backend.repository.FileRepository;
+import ru.netology.backend.repository.FileVersionRepository;
+import ru.netology.backend.repository.UserUsageRepository;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class QuotaServiceImplTest {
+
+    @Mock
+    private UserUsageRepository userUsageRepository;
+
+    @Mock
+    private FileRepository fileRepository;
+
+    @Mock
+    private FileVersionRepository fileVersionRepository;
+
+    @Mock
+    private UserService userService;
+
+    private QuotaServiceImpl quotaService;
+    private UserEntity testUser;
+
+    @BeforeEach
+    void setUp() {
+        testUser = new UserEntity(1L, "user", "password");
+        quotaService = new QuotaServiceImpl(DataSize.ofBytes(100), Duration.ofHours(1), userUsageRepository,
+                fileRepository, fileVersionRepository, userService);
+        lenient().when(userService.getCurrentUser()).thenReturn(testUser);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void usageShouldBeSummedOnceForAUserWithoutAUsageRow() {
+        // Given
+        when(userUsageRepository.findById(1L)).thenReturn(Optional.empty());
+        when(fileRepository.sumSizeByUserId(1L)).thenReturn(40L);
+        when(fileVersionRepository.sumSizeByUserId(1L)).thenReturn(5L);
+
+        // When
+        quotaService.recordChange(testUser, 10L);
+        UsageDto usage = quotaService.getUsage();
+
+        // Then
+        assertEquals(55L, usage.getUsed());
+        assertEquals(100L, usage.getQuota());
+        verify(fileRepository, times(1)).sumSizeByUserId(1L);
+        verify(fileVersionRepository, times(1)).sumSizeByUserId(1L);
+    }
+
+    @Test
+    void checkAvailableShouldRejectMoreThanIsLeft() {
+        // Given
+        when(userUsageRepository.findById(1L)).thenReturn(Optional.of(new UserUsageEntity(1L, 90L, null)));
+
+        // When & Then
+        assertDoesNotThrow(() -> quotaService.checkAvailable(testUser, 10L));
+        assertThrows(QuotaExceededException.class, () -> quotaService.checkAvailable(testUser, 11L));
+    }
+
+    @Test
+    void changesShouldCountOnlyOnceTheTransactionCommits() {
+        // Given
+        when(userUsageRepository.findById(1L)).thenReturn(Optional.of(new UserUsageEntity(1L, 0L, 0L)));
+        TransactionSynchronizationManager.initSynchronization();
+
+        // When
+        quotaService.recordChange(testUser, 30L);
+        long beforeCommit = quotaService.getUsage().getUsed();
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+
+        // Then
+        assertEquals(0L, beforeCommit);
+        assertEquals(30L, quotaService.getUsage().getUsed());
+        assertNull(quotaService.getUsage().getQuota());
+    }
+
+    @Test
+    void flushShouldWritePendingChangesAndTakeTheStoredValue() {
+        // Given
+        when(userUsageRepository.findById(1L)).thenReturn(Optional.of(new UserUsageEntity(1L, 50L, null)));
+        quotaService.recordChange(testUser, 20L);
+        // Another instance added 5 bytes meanwhile
+        when(userUsageRepository.findAllById(List.of(1L))).thenReturn(List.of(new UserUsageEntity(1L, 75L, null)));
+        TransactionSynchronizationManager.initSynchronization();
+
+        // When
+        quotaService.flush();
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+
+        // Then
+        verify(userUsageRepository).addUsedBytes(1L, 70L, 20L);
+        assertEquals(75L, quotaService.getUsage().getUsed());
+    }
+
+    @Test
+    void flushShouldDropUsersThatAreIdleAndFullyWritten() {
+        // Given
+        quotaService = new QuotaServiceImpl(DataSize.ofBytes(100), Duration.ZERO, userUsageRepository,
+                fileRepository, fileVersionRepository, userService);
+        when(userUsageRepository.findById(1L)).thenReturn(Optional.of(new UserUsageEntity(1L, 50L, null)));
+        quotaService.recordChange(testUser, 20L);
+        when(userUsageRepository.findAllById(List.of(1L))).thenReturn(List.of(new UserUsageEntity(1L, 70L, null)));
+        TransactionSynchronizationManager.initSynchronization();
+
+        // When
+        quotaService.flush();
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        when(userUsageRepository.findById(1L)).thenReturn(Optional.of(new UserUsageEntity(1L, 70L, null)));
+        long used = quotaService.getUsage().getUsed();
+
+        // Then
+        assertEquals(70L, used);
+        verify(userUsageRepository, times(2)).findById(1L);
+    }
+
+    @Test
+    void reconcileShouldRecountUsageInBatches() {
+        // Given
+        List<Long> firstBatch = LongStream.rangeClosed(1, 1000).boxed().toList();
+        when(userUsageRepository.findUserIdsAfter(0L, 1000)).thenReturn(firstBatch);
+        when(userUsageRepository.findUserIdsAfter(1000L, 1000)).thenReturn(List.of(1001L));
+
+        // When
+        quotaService.reconcile();
+
+        // Then
+        verify(userUsageRepository).recount(firstBatch);
+        verify(userUsageRepository).recount(List.of(1001L));
+        verify(userUsageRepository, times(2)).findUserIdsAfter(anyLong(), anyInt());
+    }
+}
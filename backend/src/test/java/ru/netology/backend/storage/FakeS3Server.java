@@ -0,0 +1,207 @@
+package ru.netology.backend.storage;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal in-process stand-in for an S3 endpoint with path-style addressing. Supports
+ * the object and multipart upload calls used by {@link S3BlobStore}.
+ */
+class FakeS3Server implements AutoCloseable {
+
+    private final HttpServer server;
+    private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+    private final Map<String, TreeMap<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+    private final AtomicInteger uploadIds = new AtomicInteger();
+    private final AtomicInteger completedMultipartUploads = new AtomicInteger();
+
+    FakeS3Server() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    URI endpoint() {
+        return URI.create("http://localhost:" + server.getAddress().getPort());
+    }
+
+    Map<String, byte[]> objects() {
+        return objects;
+    }
+
+    int completedMultipartUploads() {
+        return completedMultipartUploads.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String key = exchange.getRequestURI().getPath();
+            Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+            String method = exchange.getRequestMethod();
+
+            if ("POST".equals(method) && query.containsKey("uploads")) {
+                String uploadId = "upload-" + uploadIds.incrementAndGet();
+                uploads.put(uploadId, new TreeMap<>());
+                sendXml(exchange, "<InitiateMultipartUploadResult><UploadId>" + uploadId
+                        + "</UploadId></InitiateMultipartUploadResult>");
+            } else if ("PUT".equals(method) && query.containsKey("uploadId")) {
+                byte[] part = readBody(exchange);
+                uploads.get(query.get("uploadId")).put(Integer.parseInt(query.get("partNumber")), part);
+                exchange.getResponseHeaders().add("ETag", etag(part));
+                exchange.sendResponseHeaders(200, -1);
+            } else if ("POST".equals(method) && query.containsKey("uploadId")) {
+                readBody(exchange);
+                ByteArrayOutputStream content = new ByteArrayOutputStream();
+                for (byte[] part : uploads.remove(query.get("uploadId")).values()) {
+                    content.write(part);
+                }
+                objects.put(key, content.toByteArray());
+                completedMultipartUploads.incrementAndGet();
+                sendXml(exchange, "<CompleteMultipartUploadResult><ETag>" + etag(content.toByteArray())
+                        + "</ETag></CompleteMultipartUploadResult>");
+            } else if ("DELETE".equals(method) && query.containsKey("uploadId")) {
+                uploads.remove(query.get("uploadId"));
+                exchange.sendResponseHeaders(204, -1);
+            } else if ("PUT".equals(method)) {
+                byte[] content = readBody(exchange);
+                objects.put(key, content);
+                exchange.getResponseHeaders().add("ETag", etag(content));
+                exchange.sendResponseHeaders(200, -1);
+            } else if ("DELETE".equals(method)) {
+                objects.remove(key);
+                exchange.sendResponseHeaders(204, -1);
+            } else if ("GET".equals(method) || "HEAD".equals(method)) {
+                sendObject(exchange, key, "HEAD".equals(method));
+            } else {
+                exchange.sendResponseHeaders(405, -1);
+            }
+        }
+    }
+
+    private void sendObject(HttpExchange exchange, String key, boolean head) throws IOException {
+        byte[] content = objects.get(key);
+        if (content == null) {
+            if (head) {
+                exchange.sendResponseHeaders(404, -1);
+            } else {
+                sendXml(exchange, 404, "<Error><Code>NoSuchKey</Code><Message>missing</Message></Error>");
+            }
+            return;
+        }
+
+        int status = 200;
+        byte[] body = content;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if (range != null) {
+            String[] bounds = range.substring("bytes=".length()).split("-");
+            int start = Integer.parseInt(bounds[0]);
+            int end = Math.min(Integer.parseInt(bounds[1]), content.length - 1);
+            body = Arrays.copyOfRange(content, start, end + 1);
+            exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + end + "/" + content.length);
+            status = 206;
+        }
+
+        exchange.getResponseHeaders().add("ETag", etag(content));
+        exchange.getResponseHeaders().add("Last-Modified",
+                DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC)));
+        if (head) {
+            exchange.getResponseHeaders().add("Content-Length", String.valueOf(body.length));
+            exchange.sendResponseHeaders(status, -1);
+        } else {
+            exchange.sendResponseHeaders(status, body.length);
+            exchange.getResponseBody().write(body);
+        }
+    }
+
+    private static byte[] readBody(HttpExchange exchange) throws IOException {
+        InputStream in = exchange.getRequestBody();
+        String contentSha256 = exchange.getRequestHeaders().getFirst("x-amz-content-sha256");
+        if (contentSha256 == null || !contentSha256.startsWith("STREAMING-")) {
+            return in.readAllBytes();
+        }
+
+        // aws-chunked: "<hex size>[;chunk-signature=...]\r\n<data>\r\n" ending with a zero-sized chunk
+        DataInputStream chunks = new DataInputStream(in);
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        while (true) {
+            String header = readLine(chunks);
+            int size = Integer.parseInt(header.split(";")[0].trim(), 16);
+            if (size == 0) {
+                in.readAllBytes();
+                return content.toByteArray();
+            }
+            byte[] chunk = new byte[size];
+            chunks.readFully(chunk);
+            content.write(chunk);
+            readLine(chunks);
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1 && c != '\n') {
+            if (c != '\r') {
+                line.append((char) c);
+            }
+        }
+        return line.toString();
+    }
+
+    private static void sendXml(HttpExchange exchange, String xml) throws IOException {
+        sendXml(exchange, 200, xml);
+    }
+
+    private static void sendXml(HttpExchange exchange, int status, String xml) throws IOException {
+        byte[] body = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + xml).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/xml");
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    private static Map<String, String> query(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery != null) {
+            for (String parameter : rawQuery.split("&")) {
+                String[] pair = parameter.split("=", 2);
+                query.put(pair[0], pair.length > 1 ? pair[1] : "");
+            }
+        }
+        return query;
+    }
+
+    private static String etag(byte[] content) {
+        try {
+            // Like S3, the ETag of a single-part object is the MD5 of its content
+            byte[] md5 = MessageDigest.getInstance("MD5").digest(content);
+            return "\"" + HexFormat.of().formatHex(md5) + "\"";
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package ru.netology.backend.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocalBlobStoreTest {
+
+    private static final String KEY = "abcdef0123456789";
+
+    @TempDir
+    Path root;
+
+    private LocalBlobStore blobStore;
+
+    @BeforeEach
+    void setUp() {
+        blobStore = new LocalBlobStore(root, 2);
+    }
+
+    @Test
+    void putShouldStoreBlobInShardDirectories() {
+        // When
+        blobStore.put(KEY, content("hello"), 5);
+
+        // Then
+        assertTrue(Files.exists(root.resolve("ab").resolve("cd").resolve(KEY)));
+        assertFalse(Files.exists(root.resolve(KEY)));
+    }
+
+    @Test
+    void nestedKeysShouldNotBeSharded() {
+        // When
+        blobStore.put(".uploads/id/0-5", content("hello"), 5);
+
+        // Then
+        assertTrue(Files.exists(root.resolve(".uploads").resolve("id").resolve("0-5")));
+    }
+
+    @Test
+    void lookupsShouldFallBackToFlatLayout() throws IOException {
+        // Given
+        Files.writeString(root.resolve(KEY), "legacy");
+
+        // When
+        String content;
+        try (InputStream in = blobStore.get(KEY)) {
+            content = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+
+        // Then
+        assertEquals("legacy", content);
+        assertEquals(6, blobStore.stat(KEY).orElseThrow().getSize());
+        assertEquals(root.resolve(KEY), blobStore.localPath(KEY).orElseThrow());
+    }
+
+    @Test
+    void deleteShouldRemoveFlatBlob() throws IOException {
+        // Given
+        Files.writeString(root.resolve(KEY), "legacy");
+
+        // When
+        blobStore.delete(KEY);
+
+        // Then
+        assertTrue(blobStore.stat(KEY).isEmpty());
+    }
+
+    @Test
+    void listKeysShouldSkipUploadsInProgress() throws IOException {
+        // Given
+        blobStore.put(KEY, content("hello"), 5);
+        Files.writeString(root.resolve("legacy-file.txt"), "legacy");
+        blobStore.put(".uploads/id/0-5", content("hello"), 5);
+        Files.createDirectories(root.resolve(".staging"));
+        Files.writeString(root.resolve(".staging").resolve("upload"), "staged");
+
+        // When
+        List<String> keys;
+        try (Stream<String> stream = blobStore.listKeys()) {
+            keys = stream.sorted().toList();
+        }
+
+        // Then
+        assertEquals(List.of(KEY, "legacy-file.txt"), keys);
+    }
+
+    @Test
+    void listKeysWithPrefixShouldFindNestedKeys() throws IOException {
+        // Given
+        blobStore.put(KEY, content("hello"), 5);
+        blobStore.put(".uploads/a/0-5", content("hello"), 5);
+        blobStore.put(".uploads/b/5-5", content("hello"), 5);
+        Files.writeString(root.resolve(".uploads").resolve("a").resolve(".partial.part"), "partial");
+
+        // When
+        List<String> keys;
+        try (Stream<String> stream = blobStore.listKeys(".uploads/")) {
+            keys = stream.sorted().toList();
+        }
+
+        // Then
+        assertEquals(List.of(".uploads/a/0-5", ".uploads/b/5-5"), keys);
+        try (Stream<String> stream = blobStore.listKeys(".missing/")) {
+            assertEquals(0, stream.count());
+        }
+    }
+
+    @Test
+    void reshardShouldMoveFlatBlobsIntoShards() throws IOException {
+        // Given
+        Files.writeString(root.resolve(KEY), "legacy");
+        Files.writeString(root.resolve("0123456789abcdef"), "other");
+        Files.createDirectories(root.resolve(".staging"));
+
+        // When
+        long moved = blobStore.reshard();
+
+        // Then
+        assertEquals(2, moved);
+        assertFalse(Files.exists(root.resolve(KEY)));
+        assertEquals("legacy", Files.readString(root.resolve("ab").resolve("cd").resolve(KEY)));
+        assertEquals("other", Files.readString(root.resolve("01").resolve("23").resolve("0123456789abcdef")));
+        assertTrue(Files.isDirectory(root.resolve(".staging")));
+    }
+
+    @Test
+    void reshardShouldKeepBlobWrittenToItsShardMeanwhile() throws IOException {
+        // Given
+        Files.writeString(root.resolve(KEY), "legacy");
+        blobStore.put(KEY, content("newer"), 5);
+
+        // When
+        long moved = blobStore.reshard();
+
+        // Then
+        assertEquals(0, moved);
+        assertFalse(Files.exists(root.resolve(KEY)));
+        assertEquals("newer", Files.readString(root.resolve("ab").resolve("cd").resolve(KEY)));
+    }
+
+    private static InputStream content(String value) {
+        return new ByteArrayInputStream(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
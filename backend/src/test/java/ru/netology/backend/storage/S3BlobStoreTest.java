@@ -0,0 +1,155 @@
+package ru.netology.backend.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.netology.backend.exception.FileStorageException;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class S3BlobStoreTest {
+
+    private static final int PART_SIZE = 1024;
+
+    private FakeS3Server server;
+    private S3Client s3Client;
+    private S3BlobStore blobStore;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new FakeS3Server();
+        s3Client = S3Client.builder()
+                .endpointOverride(server.endpoint())
+                .region(Region.US_EAST_1)
+                .forcePathStyle(true)
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("key", "secret")))
+                .build();
+        blobStore = new S3BlobStore(s3Client, "bucket", "blobs", PART_SIZE);
+    }
+
+    @AfterEach
+    void tearDown() {
+        s3Client.close();
+        server.close();
+    }
+
+    @Test
+    void putShouldStoreSmallBlobInOneRequest() throws IOException {
+        // Given
+        byte[] content = randomBytes(100);
+
+        // When
+        blobStore.put("abc", new ByteArrayInputStream(content), content.length);
+
+        // Then
+        assertArrayEquals(content, server.objects().get("/bucket/blobs/abc"));
+        assertEquals(0, server.completedMultipartUploads());
+        try (InputStream in = blobStore.get("abc")) {
+            assertArrayEquals(content, in.readAllBytes());
+        }
+    }
+
+    @Test
+    void putShouldUseMultipartUploadForLargeStream() {
+        // Given
+        byte[] content = randomBytes(PART_SIZE * 3 + 17);
+
+        // When
+        blobStore.put("large", new ByteArrayInputStream(content), content.length);
+
+        // Then
+        assertArrayEquals(content, server.objects().get("/bucket/blobs/large"));
+        assertEquals(1, server.completedMultipartUploads());
+    }
+
+    @Test
+    void putShouldUseMultipartUploadForLargeFile() throws IOException {
+        // Given
+        byte[] content = randomBytes(PART_SIZE * 2 + 1);
+        Path file = Files.createTempFile("blob", ".bin");
+        Files.write(file, content);
+
+        // When
+        blobStore.put("file", file);
+
+        // Then
+        assertArrayEquals(content, server.objects().get("/bucket/blobs/file"));
+        assertEquals(1, server.completedMultipartUploads());
+        Files.delete(file);
+    }
+
+    @Test
+    void putShouldFailWhenStreamIsShorterThanDeclared() {
+        // Given
+        byte[] content = randomBytes(PART_SIZE + 10);
+
+        // When & Then
+        assertThrows(FileStorageException.class, () ->
+                blobStore.put("short", new ByteArrayInputStream(content), content.length + PART_SIZE));
+        assertFalse(server.objects().containsKey("/bucket/blobs/short"));
+    }
+
+    @Test
+    void getRangeShouldReturnRequestedBytes() throws IOException {
+        // Given
+        byte[] content = "0123456789".getBytes();
+        blobStore.put("range", new ByteArrayInputStream(content), content.length);
+
+        // When
+        byte[] range;
+        try (InputStream in = blobStore.getRange("range", 3, 4)) {
+            range = in.readAllBytes();
+        }
+
+        // Then
+        assertEquals("3456", new String(range));
+    }
+
+    @Test
+    void statShouldReturnSizeOrEmptyForMissingBlob() {
+        // Given
+        byte[] content = randomBytes(42);
+        blobStore.put("stat", new ByteArrayInputStream(content), content.length);
+
+        // When
+        Optional<BlobStat> existing = blobStore.stat("stat");
+        Optional<BlobStat> missing = blobStore.stat("missing");
+
+        // Then
+        assertTrue(existing.isPresent());
+        assertEquals(42, existing.get().getSize());
+        assertTrue(missing.isEmpty());
+    }
+
+    @Test
+    void deleteShouldRemoveBlob() {
+        // Given
+        byte[] content = randomBytes(10);
+        blobStore.put("gone", new ByteArrayInputStream(content), content.length);
+
+        // When
+        blobStore.delete("gone");
+
+        // Then
+        assertTrue(blobStore.stat("gone").isEmpty());
+        assertThrows(FileStorageException.class, () -> blobStore.get("gone"));
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,95 @@
+package ru.netology.backend.storage;
+
+import io.airlift.compress.zstd.ZstdInputStream;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SeekableCompressionTest {
+
+    @Test
+    void rangesShouldBeReadAcrossFrameBoundaries() throws IOException {
+        for (BlobCodec codec : new BlobCodec[]{BlobCodec.ZSTD, BlobCodec.LZ4}) {
+            // Given
+            byte[] content = content(SeekableCompression.FRAME_SIZE * 2 + 1000);
+            byte[] blob = compress(codec, content);
+
+            // When
+            SeekableCompression.SeekTable table = SeekableCompression.readSeekTable(source(blob), blob.length);
+            long offset = SeekableCompression.FRAME_SIZE - 10;
+            byte[] range;
+            try (InputStream in = SeekableCompression.openRange(codec, table, source(blob), offset, 1020)) {
+                range = in.readAllBytes();
+            }
+
+            // Then
+            assertEquals(3, table.getFrameCount());
+            assertEquals(content.length, table.getSize());
+            assertTrue(blob.length < content.length / 5, codec + " should shrink text");
+            assertArrayEquals(Arrays.copyOfRange(content, (int) offset, (int) offset + 1020), range);
+        }
+    }
+
+    @Test
+    void zstdBlobShouldBeZstdFramesFollowedBySkippableFrame() throws IOException {
+        // Given
+        byte[] content = content(SeekableCompression.FRAME_SIZE + 1);
+        byte[] blob = compress(BlobCodec.ZSTD, content);
+        int tableSize = 8 + 2 * 8 + 9;
+
+        // When
+        byte[] decompressed;
+        try (InputStream in = new ZstdInputStream(new ByteArrayInputStream(blob, 0, blob.length - tableSize))) {
+            decompressed = in.readAllBytes();
+        }
+        ByteBuffer table = ByteBuffer.wrap(blob, blob.length - tableSize, tableSize).order(ByteOrder.LITTLE_ENDIAN);
+
+        // Then
+        assertArrayEquals(content, decompressed);
+        // Decoders skip the seek table, so the blob can be sent with Content-Encoding: zstd
+        assertEquals(0x184D2A5E, table.getInt());
+        assertEquals(tableSize - 8, table.getInt());
+    }
+
+    @Test
+    void readSeekTableShouldRejectUncompressedContent() {
+        // Given
+        byte[] blob = content(100);
+
+        // When & Then
+        assertThrows(IOException.class, () -> SeekableCompression.readSeekTable(source(blob), blob.length));
+    }
+
+    private static byte[] compress(BlobCodec codec, byte[] content) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SeekableCompression.Writer writer = new SeekableCompression.Writer(codec, out);
+        for (int offset = 0; offset < content.length; offset += SeekableCompression.FRAME_SIZE) {
+            int length = Math.min(SeekableCompression.FRAME_SIZE, content.length - offset);
+            writer.writeFrame(Arrays.copyOfRange(content, offset, offset + length), length);
+        }
+        long size = writer.finish();
+        assertEquals(out.size(), size);
+        return out.toByteArray();
+    }
+
+    private static SeekableCompression.RangeSource source(byte[] blob) {
+        return (offset, length) -> new ByteArrayInputStream(blob, (int) offset, (int) length);
+    }
+
+    private static byte[] content(int size) {
+        StringBuilder text = new StringBuilder(size);
+        for (int line = 0; text.length() < size; line++) {
+            text.append(line).append(",2025-01-01T00:00:00Z,INFO,request served in ").append(line % 97).append("ms\n");
+        }
+        return text.substring(0, size).getBytes(StandardCharsets.US_ASCII);
+    }
+}
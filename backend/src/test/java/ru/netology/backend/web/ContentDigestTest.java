@@ -0,0 +1,45 @@
+package ru.netology.backend.web;
+
+import org.junit.jupiter.api.Test;
+import ru.netology.backend.exception.BadRequestException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.zip.CRC32C;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContentDigestTest {
+
+    // The sha-256 value is the example of RFC 9530 for {"hello": "world"}
+    private static final String FIELD = "sha-256=:X48E9qOokqqrvdts8nOJRJN3OWDUoyWxBf7kbu9DBPE=:, crc32c=:Q3lHIA==:";
+
+    @Test
+    void shouldParseAndFormatSha256AndCrc32c() throws Exception {
+        // Given
+        byte[] content = "{\"hello\": \"world\"}".getBytes(StandardCharsets.UTF_8);
+        String sha256 = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        CRC32C crc = new CRC32C();
+        crc.update(content);
+
+        // When
+        ContentDigest digest = ContentDigest.parse("unixsum=:AAAA:, " + FIELD);
+
+        // Then
+        assertEquals(sha256, digest.getSha256());
+        assertEquals(crc.getValue(), digest.getCrc32c());
+        assertTrue(digest.matches(sha256, crc.getValue()));
+        assertFalse(digest.matches(sha256, crc.getValue() + 1));
+        assertEquals(FIELD, new ContentDigest(sha256, crc.getValue()).toFieldValue());
+    }
+
+    @Test
+    void shouldIgnoreOtherAlgorithmsAndRejectMalformedValues() {
+        assertNull(ContentDigest.parse(null));
+        assertNull(ContentDigest.parse("sha-512=:AAAA:"));
+        assertThrows(BadRequestException.class, () -> ContentDigest.parse("sha-256=:AAAA:"));
+        assertThrows(BadRequestException.class, () -> ContentDigest.parse("sha-256=X48E9q"));
+        assertThrows(BadRequestException.class, () -> ContentDigest.parse("crc32c=:not base64:"));
+    }
+}
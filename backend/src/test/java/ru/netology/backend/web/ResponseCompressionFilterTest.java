@@ -0,0 +1,153 @@
+package ru.netology.backend.web;
+
+import io.airlift.compress.zstd.ZstdInputStream;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseCompressionFilterTest {
+
+    private static final String JSON = "[" + "{\"filename\":\"report.csv\",\"size\":1024},".repeat(200) + "{}]";
+
+    private ResponseCompressionFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        filter = new ResponseCompressionFilter(List.of("zstd", "gzip"), DataSize.ofKilobytes(1));
+    }
+
+    @Test
+    void shouldPickAcceptedCodingWithHighestWeight() {
+        assertEquals(ContentCoding.ZSTD, filter.negotiate("gzip, deflate, br, zstd"));
+        assertEquals(ContentCoding.GZIP, filter.negotiate("zstd;q=0.5, gzip"));
+        assertEquals(ContentCoding.ZSTD, filter.negotiate("*"));
+        assertNull(filter.negotiate("deflate, zstd;q=0"));
+        assertNull(filter.negotiate(null));
+    }
+
+    @Test
+    void shouldCompressJsonBody() throws Exception {
+        // Given
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // When
+        filter.doFilter(request("gzip"), response, json(JSON));
+
+        // Then
+        assertEquals("gzip", response.getHeader("Content-Encoding"));
+        assertEquals("Accept-Encoding", response.getHeader("Vary"));
+        assertNull(response.getHeader("Content-Length"));
+        assertTrue(response.getContentAsByteArray().length < JSON.length() / 10);
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(response.getContentAsByteArray()))) {
+            assertEquals(JSON, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void shouldCompressStreamedBodyOfUnknownLength() throws Exception {
+        // Given
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        FilterChain chain = (request, servletResponse) -> {
+            servletResponse.setContentType("application/x-ndjson");
+            for (int i = 0; i < 100; i++) {
+                servletResponse.getOutputStream().write(("{\"filename\":\"file-" + i + "\"}\n").getBytes());
+                servletResponse.getOutputStream().flush();
+            }
+        };
+
+        // When
+        filter.doFilter(request("zstd"), response, chain);
+
+        // Then
+        assertEquals("zstd", response.getHeader("Content-Encoding"));
+        try (InputStream in = new ZstdInputStream(new ByteArrayInputStream(response.getContentAsByteArray()))) {
+            assertTrue(new String(in.readAllBytes(), StandardCharsets.UTF_8).endsWith("{\"filename\":\"file-99\"}\n"));
+        }
+    }
+
+    @Test
+    void shouldPassThroughCompressedContent() throws Exception {
+        // Given
+        byte[] png = new byte[4096];
+        png[0] = (byte) 0x89;
+        png[1] = 'P';
+        png[2] = 'N';
+        png[3] = 'G';
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // When
+        filter.doFilter(request("gzip"), response, (request, servletResponse) -> {
+            servletResponse.setContentType("application/octet-stream");
+            servletResponse.setContentLength(png.length);
+            servletResponse.getOutputStream().write(png);
+        });
+
+        // Then
+        assertNull(response.getHeader("Content-Encoding"));
+        assertEquals(png.length, response.getContentLength());
+        assertArrayEquals(png, response.getContentAsByteArray());
+    }
+
+    @Test
+    void shouldPassThroughHighEntropyContentWithoutMagicNumber() throws Exception {
+        // Given
+        byte[] encrypted = new byte[8192];
+        new Random(1).nextBytes(encrypted);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // When
+        filter.doFilter(request("gzip"), response, (request, servletResponse) ->
+                servletResponse.getOutputStream().write(encrypted));
+
+        // Then
+        assertNull(response.getHeader("Content-Encoding"));
+        assertArrayEquals(encrypted, response.getContentAsByteArray());
+    }
+
+    @Test
+    void shouldLeaveEncodedAndSmallBodiesAlone() throws Exception {
+        // Given
+        MockHttpServletResponse encoded = new MockHttpServletResponse();
+        MockHttpServletResponse small = new MockHttpServletResponse();
+
+        // When
+        filter.doFilter(request("gzip, zstd"), encoded, (request, servletResponse) -> {
+            ((HttpServletResponse) servletResponse).setHeader("Content-Encoding", "zstd");
+            servletResponse.getOutputStream().write(JSON.getBytes());
+        });
+        filter.doFilter(request("gzip"), small, json("{\"auth-token\":\"abc\"}"));
+
+        // Then
+        assertEquals("zstd", encoded.getHeader("Content-Encoding"));
+        assertEquals(JSON, encoded.getContentAsString());
+        assertNull(small.getHeader("Content-Encoding"));
+        assertEquals("{\"auth-token\":\"abc\"}", small.getContentAsString());
+    }
+
+    private static MockHttpServletRequest request(String acceptEncoding) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/list");
+        request.addHeader("Accept-Encoding", acceptEncoding);
+        return request;
+    }
+
+    private static FilterChain json(String body) {
+        return (request, response) -> {
+            response.setContentType("application/json");
+            response.setCharacterEncoding("UTF-8");
+            response.getWriter().write(body);
+        };
+    }
+}
@@ -0,0 +1,112 @@
+package ru.netology.backend.web;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ZipStreamWriterTest {
+
+    private static final byte[] TEXT = "date,level,message\n2024-01-01,INFO,started\n".repeat(500)
+            .getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void shouldDeflateTextAndStoreContentThatIsAlreadyCompressed() throws IOException {
+        // Given
+        byte[] random = new byte[100_000];
+        new Random(1).nextBytes(random);
+        long lastModified = 1_700_000_000_000L;
+        Path archive = tempDir.resolve("files.zip");
+
+        // When
+        try (OutputStream out = Files.newOutputStream(archive);
+             ZipStreamWriter zip = new ZipStreamWriter(out, ZipStreamWriter.Method.DEFLATE, 1)) {
+            zip.putEntry("logs/app.csv", TEXT.length, lastModified, new ByteArrayInputStream(TEXT));
+            zip.putEntry("/отчёт.bin", random.length, lastModified, new ByteArrayInputStream(random));
+            zip.putEntry("empty.txt", 0, lastModified, InputStream.nullInputStream());
+            zip.finish();
+        }
+
+        // Then
+        try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+            assertEquals(3, zipFile.size());
+
+            ZipEntry text = zipFile.getEntry("logs/app.csv");
+            assertEquals(ZipEntry.DEFLATED, text.getMethod());
+            assertTrue(text.getCompressedSize() < TEXT.length / 10);
+            assertEquals(lastModified / 2000, text.getTime() / 2000);
+            try (InputStream in = zipFile.getInputStream(text)) {
+                assertArrayEquals(TEXT, in.readAllBytes());
+            }
+
+            ZipEntry binary = zipFile.getEntry("отчёт.bin");
+            assertEquals(ZipEntry.STORED, binary.getMethod());
+            try (InputStream in = zipFile.getInputStream(binary)) {
+                assertArrayEquals(random, in.readAllBytes());
+            }
+
+            assertEquals(0, zipFile.getEntry("empty.txt").getSize());
+        }
+    }
+
+    @Test
+    void shouldStoreEverythingWhenAsked() throws IOException {
+        // Given
+        Path archive = tempDir.resolve("stored.zip");
+
+        // When
+        try (OutputStream out = Files.newOutputStream(archive);
+             ZipStreamWriter zip = new ZipStreamWriter(out, ZipStreamWriter.Method.STORE, 1)) {
+            zip.putEntry("a.csv", TEXT.length, System.currentTimeMillis(), new ByteArrayInputStream(TEXT));
+            zip.finish();
+        }
+
+        // Then
+        try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+            ZipEntry entry = zipFile.getEntry("a.csv");
+            assertEquals(ZipEntry.STORED, entry.getMethod());
+            assertEquals(TEXT.length, entry.getCompressedSize());
+            try (InputStream in = zipFile.getInputStream(entry)) {
+                assertArrayEquals(TEXT, in.readAllBytes());
+            }
+        }
+    }
+
+    @Test
+    void shouldSwitchToZip64ForMoreEntriesThanTheClassicFormatCounts() throws IOException {
+        // Given
+        Path archive = tempDir.resolve("many.zip");
+        int count = 70_000;
+
+        // When
+        try (OutputStream out = Files.newOutputStream(archive);
+             ZipStreamWriter zip = new ZipStreamWriter(out, ZipStreamWriter.Method.STORE, 1)) {
+            for (int i = 0; i < count; i++) {
+                zip.putEntry("file-" + i, 1, 0, new ByteArrayInputStream(new byte[]{(byte) i}));
+            }
+            zip.finish();
+        }
+
+        // Then
+        try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+            assertEquals(count, zipFile.size());
+            try (InputStream in = zipFile.getInputStream(zipFile.getEntry("file-69999"))) {
+                assertEquals((byte) 69_999, (byte) in.read());
+            }
+        }
+    }
+}